@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.mediators;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.mediators.TestMediator;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.builtin.PropertyMediator;
+import org.apache.synapse.mediators.filters.FilterMediator;
+import org.apache.synapse.util.xpath.SynapseXPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the dispatch overhead of mediating a message through a sequence, i.e. the cost spent in
+ * AbstractListMediator between invocations of cheap child mediators.
+ * <p/>
+ * Run with {@code java -jar modules/benchmarks/target/benchmarks.jar SequenceDispatchBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceDispatchBenchmark {
+
+    private static final String PAYLOAD = "<m:getQuote xmlns:m=\"http://services.samples\">" +
+            "<m:request><m:symbol>IBM</m:symbol></m:request></m:getQuote>";
+
+    /** Number of mediators in the benchmarked sequence */
+    @Param({"5", "20", "50"})
+    public int sequenceLength;
+
+    private SequenceMediator flatSequence;
+
+    private SequenceMediator nestedSequence;
+
+    private MessageContext synCtx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        synCtx = TestUtils.createLightweightSynapseMessageContext(PAYLOAD, new SynapseConfiguration());
+
+        flatSequence = new SequenceMediator();
+        flatSequence.setName("flat");
+        for (int i = 0; i < sequenceLength; i++) {
+            flatSequence.addChild(i % 2 == 0 ? createPropertyMediator(i) : new TestMediator());
+        }
+        flatSequence.init(synCtx.getEnvironment());
+
+        // a typical sequence with a filter which branches into a nested list of mediators
+        nestedSequence = new SequenceMediator();
+        nestedSequence.setName("nested");
+        FilterMediator filter = new FilterMediator();
+        SynapseXPath xpath = new SynapseXPath("//m:symbol");
+        xpath.addNamespace("m", "http://services.samples");
+        filter.setSource(xpath);
+        filter.setRegex(Pattern.compile("IBM"));
+        for (int i = 0; i < sequenceLength; i++) {
+            if (i == sequenceLength / 2) {
+                nestedSequence.addChild(filter);
+            }
+            if (i % 2 == 0) {
+                filter.addChild(createPropertyMediator(i));
+            } else {
+                nestedSequence.addChild(createPropertyMediator(i));
+            }
+        }
+        nestedSequence.init(synCtx.getEnvironment());
+    }
+
+    @Benchmark
+    public boolean flatSequence() {
+        return flatSequence.mediate(synCtx);
+    }
+
+    @Benchmark
+    public boolean nestedSequence() {
+        return nestedSequence.mediate(synCtx);
+    }
+
+    private static PropertyMediator createPropertyMediator(int index) {
+        PropertyMediator propertyMediator = new PropertyMediator();
+        propertyMediator.setName("prop" + index);
+        propertyMediator.setValue("value" + index);
+        return propertyMediator;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stores messages into and fetches them from a message store at the same time, with producers and
+ * consumers running in separate threads. The throughput mode gives the rate of each side and the
+ * sample time mode gives the latency percentiles of each call. A fetch polls the store until it
+ * receives a message, so its rate is the rate messages are drained at and is bounded by the rate
+ * they are stored at. Allocation rates are reported with the gc profiler.
+ * <p/>
+ * The number of producer and consumer threads is set with {@code -tg}, e.g.
+ * {@code java -jar modules/benchmarks/target/benchmarks.jar MessageStoreBenchmark -tg 4,2 -prof gc}.
+ * See {@link MessageStoreFixture} for the stores which need an external database or broker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MessageStoreBenchmark {
+
+    /** Time a fetch polls an empty store for, so that consumers stop once producers are done */
+    private static final long FETCH_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long EMPTY_POLL_BACKOFF = TimeUnit.MICROSECONDS.toNanos(50);
+
+    @Param({MessageStoreFixture.IN_MEMORY, MessageStoreFixture.IN_MEMORY_OFF_HEAP, MessageStoreFixture.FILE,
+            MessageStoreFixture.JDBC, MessageStoreFixture.JMS})
+    public String store;
+
+    /** Size of the SOAP body of the stored messages in bytes */
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    private MessageStoreFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = MessageStoreFixture.create(store, payloadSize);
+    }
+
+    /**
+     * Empties the store between iterations, so a store which is filled faster than it is drained
+     * does not grow over the whole run.
+     */
+    @TearDown(Level.Iteration)
+    public void clear() {
+        fixture.getStore().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerState {
+
+        private MessageProducer producer;
+
+        @Setup(Level.Trial)
+        public void setUp(MessageStoreBenchmark benchmark) {
+            producer = benchmark.fixture.getStore().getProducer();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            producer.cleanup();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ConsumerState {
+
+        private MessageConsumer consumer;
+
+        @Setup(Level.Trial)
+        public void setUp(MessageStoreBenchmark benchmark) {
+            consumer = benchmark.fixture.getStore().getConsumer();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            consumer.cleanup();
+        }
+    }
+
+    @Benchmark
+    @Group("storeAndFetch")
+    @GroupThreads(1)
+    public boolean store(ProducerState state) {
+        return state.producer.storeMessage(fixture.newMessage());
+    }
+
+    @Benchmark
+    @Group("storeAndFetch")
+    @GroupThreads(1)
+    public MessageContext fetch(ConsumerState state) {
+        long deadline = System.nanoTime() + FETCH_TIMEOUT;
+        MessageContext message = state.consumer.receive();
+        while (message == null && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(EMPTY_POLL_BACKOFF);
+            message = state.consumer.receive();
+        }
+        if (message != null) {
+            state.consumer.ack();
+        }
+        return message;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link MessageStoreBenchmark} against the available stores with the gc profiler and compares
+ * the store and fetch throughput, their 99th percentile latency and the bytes allocated per
+ * operation with a baseline. Exits with a non zero status if any of them regressed.
+ * <p/>
+ * Run with {@code java -cp modules/benchmarks/target/benchmarks.jar
+ * org.apache.synapse.benchmarks.store.MessageStoreBenchmarkRunner} and the system properties
+ * <ul>
+ * <li>{@code benchmark.stores} stores to run against, all available stores by default</li>
+ * <li>{@code benchmark.producers}, {@code benchmark.consumers} number of threads, 1 by default</li>
+ * <li>{@code benchmark.payload.sizes} comma separated sizes of the message body in bytes</li>
+ * <li>{@code benchmark.baseline}, {@code benchmark.baseline.update}, {@code benchmark.tolerance} see
+ * {@link StoreBaseline#verify(String)}</li>
+ * </ul>
+ */
+public class MessageStoreBenchmarkRunner {
+
+    private static final String DEFAULT_BASELINE = "message-store-benchmark-baseline.properties";
+
+    private static final String ALLOCATION_RATE = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws Exception {
+        List<String> stores = MessageStoreSoak.selectedStores();
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(MessageStoreBenchmark.class.getName() + ".*")
+                .param("store", stores.toArray(new String[stores.size()]))
+                .threadGroups(Integer.getInteger("benchmark.producers", 1),
+                        Integer.getInteger("benchmark.consumers", 1))
+                .addProfiler(GCProfiler.class);
+        String payloadSizes = System.getProperty("benchmark.payload.sizes");
+        if (payloadSizes != null) {
+            options.param("payloadSize", payloadSizes.split(","));
+        }
+
+        Collection<RunResult> runResults = new Runner(options.build()).run();
+        if (!toBaseline(runResults).verify(DEFAULT_BASELINE)) {
+            System.exit(1);
+        }
+    }
+
+    static StoreBaseline toBaseline(Collection<RunResult> runResults) {
+        StoreBaseline results = new StoreBaseline();
+        for (RunResult runResult : runResults) {
+            BenchmarkParams params = runResult.getParams();
+            String prefix = "jmh." + params.getParam("store") + "." + params.getParam("payloadSize");
+            Map<String, Result> secondary = runResult.getSecondaryResults();
+            if (params.getMode() == Mode.Throughput) {
+                putScore(results, prefix + ".store.throughput", secondary.get("store"));
+                putScore(results, prefix + ".fetch.throughput", secondary.get("fetch"));
+                for (Map.Entry<String, Result> entry : secondary.entrySet()) {
+                    if (entry.getKey().endsWith(ALLOCATION_RATE)) {
+                        putScore(results, prefix + ".allocation", entry.getValue());
+                    }
+                }
+            } else if (params.getMode() == Mode.SampleTime) {
+                putPercentile(results, prefix + ".store.latency.p99", secondary.get("store"));
+                putPercentile(results, prefix + ".fetch.latency.p99", secondary.get("fetch"));
+            }
+        }
+        return results;
+    }
+
+    private static void putScore(StoreBaseline results, String metric, Result result) {
+        if (result != null) {
+            results.put(metric, result.getScore());
+        }
+    }
+
+    private static void putPercentile(StoreBaseline results, String metric, Result result) {
+        if (result != null) {
+            results.put(metric, result.getStatistics().getPercentile(99));
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.message.store.AbstractMessageStore;
+import org.apache.synapse.message.store.impl.file.FileMessageStore;
+import org.apache.synapse.message.store.impl.jdbc.JDBCMessageStore;
+import org.apache.synapse.message.store.impl.jdbc.JDBCMessageStoreConstants;
+import org.apache.synapse.message.store.impl.jms.JmsStore;
+import org.apache.synapse.message.store.impl.memory.InMemoryStore;
+import org.apache.synapse.message.store.impl.rabbitmq.RabbitMQStore;
+import org.apache.synapse.message.store.impl.resequencer.ResequenceMessageStore;
+import org.apache.synapse.util.MessageHelper;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Creates a message store of a given type together with a local stand-in of the system behind it,
+ * i.e. an embedded H2 database for the JDBC store and an embedded ActiveMQ broker for the JMS store.
+ * <p/>
+ * The resequence store relies on MySQL specific SQL and RabbitMQ has no embedded broker, so these
+ * two stores are only created when an external database or broker is given through the
+ * {@code benchmark.jdbc.*} and {@code benchmark.rabbitmq.*} system properties. Any system property
+ * starting with {@code store.} is passed on to the store as a parameter, so that tuning parameters
+ * can be compared without changing the benchmarks.
+ */
+public final class MessageStoreFixture implements AutoCloseable {
+
+    public static final String IN_MEMORY = "in-memory";
+    public static final String IN_MEMORY_OFF_HEAP = "in-memory-off-heap";
+    public static final String FILE = "file";
+    public static final String JDBC = "jdbc";
+    public static final String RESEQUENCE = "resequence";
+    public static final String JMS = "jms";
+    public static final String RABBITMQ = "rabbitmq";
+
+    public static final String[] STORES = {IN_MEMORY, IN_MEMORY_OFF_HEAP, FILE, JDBC, RESEQUENCE, JMS, RABBITMQ};
+
+    /** Synapse property carrying the time a message was created, used to measure its latency */
+    public static final String CREATED_TIME = "benchmark.created.nanos";
+
+    private static final String STORE_NAME = "BenchmarkStore";
+
+    private static final String TABLE_NAME = "benchmark_message_store";
+
+    private static final String BROKER_NAME = "storeBenchmarkBroker";
+
+    private static final String NAMESPACE = "http://services.samples";
+
+    private final String storeName;
+
+    private AbstractMessageStore store;
+
+    private final SynapseConfiguration synapseConfiguration;
+
+    private final Axis2SynapseEnvironment synapseEnvironment;
+
+    private final SOAPEnvelope envelope;
+
+    private final int payloadSize;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Path directory;
+
+    private BrokerService broker;
+
+    private Connection database;
+
+    private MessageStoreFixture(String storeName, int payloadSize) throws Exception {
+        this.storeName = storeName;
+        this.payloadSize = payloadSize;
+        synapseConfiguration = new SynapseConfiguration();
+        AxisConfiguration axisConfiguration = new AxisConfiguration();
+        synapseConfiguration.setAxisConfiguration(axisConfiguration);
+        synapseEnvironment = new Axis2SynapseEnvironment(new ConfigurationContext(axisConfiguration),
+                synapseConfiguration);
+        envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(AXIOMUtil.stringToOM(createPayload(payloadSize)));
+    }
+
+    /**
+     * Creates and initializes the given store
+     *
+     * @param storeName   one of {@link #STORES}
+     * @param payloadSize size of the body of the created messages in bytes
+     * @return the fixture, which has to be closed once done
+     * @throws Exception if the store or its stand-in cannot be started
+     */
+    public static MessageStoreFixture create(String storeName, int payloadSize) throws Exception {
+        MessageStoreFixture fixture = new MessageStoreFixture(storeName, payloadSize);
+        try {
+            fixture.store = fixture.createStore();
+            fixture.store.setName(STORE_NAME);
+            fixture.synapseConfiguration.addMessageStore(STORE_NAME, fixture.store);
+            fixture.store.init(fixture.synapseEnvironment);
+            return fixture;
+        } catch (Exception e) {
+            fixture.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param storeName one of {@link #STORES}
+     * @return whether the store can be created with the stand-ins or the system properties given
+     */
+    public static boolean isAvailable(String storeName) {
+        if (RESEQUENCE.equals(storeName)) {
+            return System.getProperty("benchmark.jdbc.url") != null;
+        } else if (RABBITMQ.equals(storeName)) {
+            return System.getProperty("benchmark.rabbitmq.host") != null;
+        }
+        return true;
+    }
+
+    public AbstractMessageStore getStore() {
+        return store;
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * Creates a new message with a unique id and the payload of this fixture. The envelope is
+     * cloned from a prepared one, so the cost is the same for every store.
+     *
+     * @return the message
+     */
+    public MessageContext newMessage() {
+        org.apache.axis2.context.MessageContext axis2Mc =
+                synapseEnvironment.getAxis2ConfigurationContext().createMessageContext();
+        MessageContext synCtx = new Axis2MessageContext(axis2Mc, synapseConfiguration, synapseEnvironment);
+        try {
+            synCtx.setEnvelope(MessageHelper.cloneSOAPEnvelope(envelope));
+        } catch (AxisFault e) {
+            throw new IllegalStateException("Cannot set the envelope of the benchmark message", e);
+        }
+        synCtx.setMessageID("urn:uuid:" + UUID.randomUUID());
+        synCtx.setProperty(CREATED_TIME, Long.toString(System.nanoTime()));
+        if (RESEQUENCE.equals(storeName)) {
+            synCtx.setProperty("benchmark.sequence", Long.toString(sequence.incrementAndGet()));
+        }
+        return synCtx;
+    }
+
+    private AbstractMessageStore createStore() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        AbstractMessageStore messageStore;
+        if (IN_MEMORY.equals(storeName)) {
+            messageStore = new InMemoryStore();
+        } else if (IN_MEMORY_OFF_HEAP.equals(storeName)) {
+            messageStore = new InMemoryStore();
+            parameters.put(InMemoryStore.RING_SIZE, Integer.toString(256 * 1024 * 1024));
+        } else if (FILE.equals(storeName)) {
+            messageStore = new FileMessageStore();
+            directory = Files.createTempDirectory("file-store-benchmark");
+            parameters.put(FileMessageStore.DIRECTORY, directory.toString());
+        } else if (JDBC.equals(storeName)) {
+            messageStore = new JDBCMessageStore();
+            createTables(parameters, false);
+        } else if (RESEQUENCE.equals(storeName)) {
+            messageStore = new ResequenceMessageStore();
+            createTables(parameters, true);
+            parameters.put("store.resequence.id.path",
+                    new SynapseXPath("$ctx:benchmark.sequence"));
+            parameters.put("store.resequence.timeout", "1");
+        } else if (JMS.equals(storeName)) {
+            messageStore = new JmsStore();
+            broker = new BrokerService();
+            broker.setBrokerName(BROKER_NAME);
+            broker.setPersistent(Boolean.getBoolean("benchmark.jms.persistent"));
+            broker.setUseJmx(false);
+            if (broker.isPersistent()) {
+                directory = Files.createTempDirectory("jms-store-benchmark");
+                broker.setDataDirectoryFile(directory.toFile());
+            }
+            broker.start();
+            broker.waitUntilStarted();
+            parameters.put(JmsStore.NAMING_FACTORY_INITIAL,
+                    "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+            parameters.put(JmsStore.PROVIDER_URL, "vm://" + BROKER_NAME + "?create=false");
+            parameters.put(JmsStore.CACHE, "true");
+        } else if (RABBITMQ.equals(storeName)) {
+            if (!isAvailable(RABBITMQ)) {
+                throw new IllegalStateException("RabbitMQ store requires -Dbenchmark.rabbitmq.host");
+            }
+            messageStore = new RabbitMQStore();
+            parameters.put(RabbitMQStore.HOST_NAME, System.getProperty("benchmark.rabbitmq.host"));
+            parameters.put(RabbitMQStore.HOST_PORT, System.getProperty("benchmark.rabbitmq.port", "5672"));
+            parameters.put(RabbitMQStore.USERNAME, System.getProperty("benchmark.rabbitmq.username", "guest"));
+            parameters.put(RabbitMQStore.PASSWORD, System.getProperty("benchmark.rabbitmq.password", "guest"));
+            parameters.put(RabbitMQStore.QUEUE_NAME, "benchmark_" + UUID.randomUUID());
+        } else {
+            throw new IllegalArgumentException("Unknown message store : " + storeName);
+        }
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("store.")) {
+                parameters.put(name, System.getProperty(name));
+            }
+        }
+        messageStore.setParameters(parameters);
+        return messageStore;
+    }
+
+    private void createTables(Map<String, Object> parameters, boolean resequence) throws SQLException {
+        String url = System.getProperty("benchmark.jdbc.url");
+        String driver = System.getProperty("benchmark.jdbc.driver");
+        String user = System.getProperty("benchmark.jdbc.username", "sa");
+        String password = System.getProperty("benchmark.jdbc.password", "");
+        if (url == null) {
+            if (resequence) {
+                throw new IllegalStateException("Resequence store requires a MySQL database given " +
+                        "with -Dbenchmark.jdbc.url");
+            }
+            url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+            driver = "org.h2.Driver";
+        }
+        database = DriverManager.getConnection(url, user, password);
+        Statement statement = database.createStatement();
+        try {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+            statement.execute("CREATE TABLE " + TABLE_NAME + " (indexId BIGINT NOT NULL AUTO_INCREMENT, " +
+                    "msg_id VARCHAR(200) NOT NULL, " + (resequence ? "seq_id BIGINT, " : "") +
+                    "message BLOB NOT NULL, PRIMARY KEY (indexId))");
+            if (resequence) {
+                statement.execute("CREATE TABLE IF NOT EXISTS tbl_lastprocessid (statement VARCHAR(255) " +
+                        "NOT NULL, seq_id BIGINT, PRIMARY KEY (statement))");
+                statement.execute("DELETE FROM tbl_lastprocessid WHERE statement='" + STORE_NAME + "'");
+            }
+        } finally {
+            statement.close();
+        }
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_DRIVER, driver);
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_URL, url);
+        parameters.put(JDBCMessageStoreConstants.JDBC_USERNAME, user);
+        parameters.put(JDBCMessageStoreConstants.JDBC_PASSWORD, password);
+        parameters.put(JDBCMessageStoreConstants.JDBC_TABLE, TABLE_NAME);
+    }
+
+    private static String createPayload(int payloadSize) {
+        StringBuilder payload = new StringBuilder("<m:orders xmlns:m=\"" + NAMESPACE + "\">");
+        int index = 0;
+        while (payload.length() < payloadSize) {
+            payload.append("<m:order><m:symbol>SYM").append(index).append("</m:symbol><m:quantity>")
+                    .append(index * 7).append("</m:quantity></m:order>");
+            index++;
+        }
+        return payload.append("</m:orders>").toString();
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            if (store != null) {
+                store.destroy();
+            }
+        } finally {
+            if (broker != null) {
+                broker.stop();
+                broker.waitUntilStopped();
+            }
+            if (database != null) {
+                database.close();
+            }
+            if (directory != null) {
+                deleteDirectory(directory);
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        Stream<Path> paths = Files.walk(path);
+        try {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } finally {
+            paths.close();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.endpoints.LatencyHistogram;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long running load against the message stores. Producers and consumers run for a given duration
+ * against each store in turn, while the end to end latency from creating a message until it is
+ * received is recorded. At the end the throughput, the latency percentiles and the bytes allocated
+ * per message by the producer and consumer threads are compared with a baseline, and the process
+ * exits with a non zero status if any of them regressed or a message was lost.
+ * <p/>
+ * A message is counted as received once, by the first consumer acknowledging it. Consumers of the
+ * in memory store do not compete for messages, each of them receives the head of the queue, so a
+ * message may be delivered to several consumers. Such deliveries are reported as duplicates.
+ * <p/>
+ * Run with {@code java -cp modules/benchmarks/target/benchmarks.jar
+ * org.apache.synapse.benchmarks.store.MessageStoreSoak} and the system properties
+ * <ul>
+ * <li>{@code benchmark.stores} stores to run against, all available stores by default</li>
+ * <li>{@code benchmark.producers}, {@code benchmark.consumers} number of threads, 4 by default</li>
+ * <li>{@code benchmark.payload.size} size of the message body in bytes, 4096 by default</li>
+ * <li>{@code benchmark.duration} seconds to run against each store, 600 by default</li>
+ * <li>{@code benchmark.backlog} messages producers get ahead of consumers at most, 10000 by default</li>
+ * <li>{@code benchmark.baseline}, {@code benchmark.baseline.update}, {@code benchmark.tolerance} see
+ * {@link StoreBaseline#verify(String)}</li>
+ * </ul>
+ */
+public class MessageStoreSoak {
+
+    private static final String DEFAULT_BASELINE = "message-store-soak-baseline.properties";
+
+    private static final long EMPTY_POLL_BACKOFF = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final MessageStoreFixture fixture;
+
+    private final int producers;
+
+    private final int consumers;
+
+    private final long backlog;
+
+    private final AtomicLong stored = new AtomicLong();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    // IDs of the messages stored and not received yet, at most the backlog
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    // end to end latencies in microseconds
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile boolean producing = true;
+
+    private volatile boolean consuming = true;
+
+    MessageStoreSoak(MessageStoreFixture fixture, int producers, int consumers, long backlog) {
+        this.fixture = fixture;
+        this.producers = producers;
+        this.consumers = consumers;
+        this.backlog = backlog;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producers = Integer.getInteger("benchmark.producers", 4);
+        int consumers = Integer.getInteger("benchmark.consumers", 4);
+        int payloadSize = Integer.getInteger("benchmark.payload.size", 4096);
+        long duration = TimeUnit.SECONDS.toNanos(Long.getLong("benchmark.duration", 600));
+        long backlog = Long.getLong("benchmark.backlog", 10000);
+
+        StoreBaseline results = new StoreBaseline();
+        boolean reliable = true;
+        for (String storeName : selectedStores()) {
+            MessageStoreFixture fixture = MessageStoreFixture.create(storeName, payloadSize);
+            try {
+                reliable &= new MessageStoreSoak(fixture, producers, consumers, backlog).run(duration, results);
+            } finally {
+                fixture.close();
+            }
+        }
+        if (!results.verify(DEFAULT_BASELINE) || !reliable) {
+            System.exit(1);
+        }
+    }
+
+    static List<String> selectedStores() {
+        List<String> stores = new ArrayList<String>();
+        String selected = System.getProperty("benchmark.stores");
+        if (selected != null) {
+            for (String store : selected.split(",")) {
+                stores.add(store.trim());
+            }
+            return stores;
+        }
+        for (String store : MessageStoreFixture.STORES) {
+            if (MessageStoreFixture.isAvailable(store)) {
+                stores.add(store);
+            } else {
+                System.out.println("Skipping the " + store + " store, no database or broker is configured");
+            }
+        }
+        return stores;
+    }
+
+    /**
+     * Runs the load against the store of the fixture and adds the measured metrics to the results
+     *
+     * @param duration nanoseconds to run for
+     * @param results  results of the run
+     * @return whether every message was stored and received without failures
+     * @throws InterruptedException if interrupted while waiting for the run
+     */
+    boolean run(long duration, StoreBaseline results) throws InterruptedException {
+        String prefix = "soak." + fixture.getStoreName() + "." + fixture.getPayloadSize();
+        System.out.println("Running " + producers + " producers and " + consumers + " consumers against the " +
+                fixture.getStoreName() + " store");
+
+        List<Thread> producerThreads = new ArrayList<Thread>();
+        for (int i = 0; i < producers; i++) {
+            producerThreads.add(start("soak-producer-" + i, new Runnable() {
+                public void run() {
+                    produce();
+                }
+            }));
+        }
+        List<Thread> consumerThreads = new ArrayList<Thread>();
+        for (int i = 0; i < consumers; i++) {
+            consumerThreads.add(start("soak-consumer-" + i, new Runnable() {
+                public void run() {
+                    consume();
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long lastReceived = 0;
+        while (System.nanoTime() - start < duration) {
+            Thread.sleep(1000);
+            long now = System.nanoTime();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                long receivedNow = received.get();
+                System.out.println(fixture.getStoreName() + " : " + (receivedNow - lastReceived) * 1000000000L /
+                        (now - lastReport) + " messages/s, " + pending.size() + " pending, " +
+                        duplicates.get() + " duplicates, " + failures.get() + " failures");
+                lastReport = now;
+                lastReceived = receivedNow;
+            }
+        }
+        long measured = System.nanoTime() - start;
+
+        // let the consumers drain what was stored, so that lost messages can be told apart
+        producing = false;
+        join(producerThreads);
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!pending.isEmpty() && System.nanoTime() - drainDeadline < 0) {
+            Thread.sleep(100);
+        }
+        consuming = false;
+        join(consumerThreads);
+
+        long lost = pending.size();
+        results.put(prefix + ".throughput", received.get() * 1000000000.0 / measured);
+        results.put(prefix + ".latency.p50", latency.getValueAtPercentile(50) / 1000.0);
+        results.put(prefix + ".latency.p99", latency.getValueAtPercentile(99) / 1000.0);
+        results.put(prefix + ".latency.p999", latency.getValueAtPercentile(99.9) / 1000.0);
+        results.put(prefix + ".latency.max", latency.getMax() / 1000.0);
+        results.put(prefix + ".allocation", received.get() > 0 ? allocatedBytes.get() / (double) received.get() : 0);
+        if (failures.get() > 0 || lost > 0) {
+            System.out.println("FAILED " + fixture.getStoreName() + " : " + failures.get() + " failures, " +
+                    lost + " messages not received");
+            return false;
+        }
+        return true;
+    }
+
+    private void produce() {
+        long allocatedAtStart = allocatedBytes();
+        MessageProducer producer = fixture.getStore().getProducer();
+        try {
+            while (producing) {
+                if (stored.get() - received.get() >= backlog) {
+                    LockSupport.parkNanos(EMPTY_POLL_BACKOFF);
+                    continue;
+                }
+                MessageContext message = fixture.newMessage();
+                // registered before it is stored, as a consumer may receive it right away
+                pending.add(message.getMessageID());
+                if (producer.storeMessage(message)) {
+                    stored.incrementAndGet();
+                } else {
+                    pending.remove(message.getMessageID());
+                    failures.incrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        } finally {
+            producer.cleanup();
+            allocatedBytes.addAndGet(allocatedBytes() - allocatedAtStart);
+        }
+    }
+
+    private void consume() {
+        long allocatedAtStart = allocatedBytes();
+        MessageConsumer consumer = fixture.getStore().getConsumer();
+        try {
+            while (consuming) {
+                MessageContext message = consumer.receive();
+                if (message == null) {
+                    LockSupport.parkNanos(EMPTY_POLL_BACKOFF);
+                    continue;
+                }
+                long receivedTime = System.nanoTime();
+                if (!consumer.ack()) {
+                    failures.incrementAndGet();
+                } else if (pending.remove(message.getMessageID())) {
+                    received.incrementAndGet();
+                    Object created = message.getProperty(MessageStoreFixture.CREATED_TIME);
+                    if (created != null) {
+                        latency.record(TimeUnit.NANOSECONDS.toMicros(
+                                receivedTime - Long.parseLong(created.toString())));
+                    }
+                } else {
+                    duplicates.incrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        } finally {
+            consumer.cleanup();
+            allocatedBytes.addAndGet(allocatedBytes() - allocatedAtStart);
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, zero if the JVM does not measure it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static Thread start(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import org.apache.synapse.message.store.impl.commons.Axis2Message;
+import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
+import org.apache.synapse.message.store.impl.commons.SynapseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the codecs of the messages written to the JDBC, JMS and RabbitMQ message stores. The
+ * java codec is the Java serialization of the message with the envelope as a string, as stored
+ * before the binary codec was introduced.
+ * <p/>
+ * Run with {@code java -jar modules/benchmarks/target/benchmarks.jar StorableMessageCodecBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorableMessageCodecBenchmark {
+
+    /** Size of the SOAP body of the stored message in bytes */
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    @Param({"java", "binary", "binary-deflate"})
+    public String codecName;
+
+    private StorableMessageCodec codec;
+
+    private StorableMessage message;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if ("java".equals(codecName)) {
+            codec = StorableMessageCodec.java();
+        } else {
+            codec = StorableMessageCodec.binary("binary-deflate".equals(codecName) ?
+                    StorableMessageCodec.Compression.DEFLATE : StorableMessageCodec.Compression.NONE);
+        }
+        message = createMessage(payloadSize, codec.isBinary());
+        encoded = codec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public StorableMessage decode() throws IOException {
+        return StorableMessageCodec.decode(encoded);
+    }
+
+    private static StorableMessage createMessage(int payloadSize, boolean envelopeBytes) {
+        StringBuilder envelope = new StringBuilder("<soapenv:Envelope xmlns:soapenv=" +
+                "\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><m:orders " +
+                "xmlns:m=\"http://services.samples\">");
+        int index = 0;
+        while (envelope.length() < payloadSize) {
+            envelope.append("<m:order><m:symbol>SYM").append(index).append("</m:symbol><m:quantity>")
+                    .append(index * 7).append("</m:quantity></m:order>");
+            index++;
+        }
+        envelope.append("</m:orders></soapenv:Body></soapenv:Envelope>");
+
+        Axis2Message axis2Message = new Axis2Message();
+        axis2Message.setMessageID("urn:uuid:5c6f2a3e-3b1d-4a7e-9a6b-2f0c1d7e8a90");
+        axis2Message.setOperationName(new QName("http://services.samples", "placeOrders", "m"));
+        axis2Message.setAction("urn:placeOrders");
+        axis2Message.setService("OrderProxy");
+        axis2Message.setToAddress("http://localhost:9000/services/SimpleStockQuoteService");
+        axis2Message.setTransportInName("http");
+        axis2Message.setTransportOutName("http");
+        if (envelopeBytes) {
+            axis2Message.setSoapEnvelopeBytes(envelope.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            axis2Message.setSoapEnvelope(envelope.toString());
+        }
+        Map<String, Object> abstractProperties = new HashMap<String, Object>();
+        for (int i = 0; i < 10; i++) {
+            abstractProperties.put("property" + i, "value" + i);
+        }
+        abstractProperties.put("retryCount", 3);
+        axis2Message.addProperty("ABSTRACT_MC_PROPERTIES", abstractProperties);
+        Map<String, String> headers = new TreeMap<String, String>();
+        headers.put("Content-Type", "text/xml; charset=UTF-8");
+        headers.put("SOAPAction", "urn:placeOrders");
+        headers.put("Host", "localhost:8280");
+        axis2Message.addProperty("TRANSPORT_HEADERS", headers);
+
+        SynapseMessage synapseMessage = new SynapseMessage();
+        for (int i = 0; i < 10; i++) {
+            synapseMessage.addProperty("synapse.property" + i, "value" + i);
+        }
+
+        StorableMessage message = new StorableMessage();
+        message.setAxis2message(axis2Message);
+        message.setSynapseMessage(synapseMessage);
+        return message;
+    }
+}
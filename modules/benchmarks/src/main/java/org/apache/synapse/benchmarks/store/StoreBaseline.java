@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Results of a message store benchmark run, keyed by metric name, which can be saved as a baseline
+ * and compared with the baseline of an earlier run. Metrics named {@code *.throughput} are better
+ * when higher, all other metrics, i.e. latencies and allocations, are better when lower.
+ */
+public class StoreBaseline {
+
+    private static final String THROUGHPUT_SUFFIX = ".throughput";
+
+    private final Map<String, Double> metrics = new TreeMap<String, Double>();
+
+    public void put(String metric, double value) {
+        if (!Double.isNaN(value)) {
+            metrics.put(metric, value);
+        }
+    }
+
+    public Map<String, Double> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Compares the metrics of this run with the given baseline. Metrics missing in either of them
+     * are not compared.
+     *
+     * @param baseline  results of the earlier run
+     * @param tolerance allowed relative difference, e.g. 0.1 for 10%
+     * @return a description of each metric which is worse than the baseline beyond the tolerance
+     */
+    public List<String> regressionsAgainst(StoreBaseline baseline, double tolerance) {
+        List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, Double> entry : metrics.entrySet()) {
+            Double expected = baseline.metrics.get(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            double actual = entry.getValue();
+            boolean regressed;
+            if (entry.getKey().endsWith(THROUGHPUT_SUFFIX)) {
+                regressed = actual < expected * (1 - tolerance);
+            } else {
+                regressed = actual > expected * (1 + tolerance);
+            }
+            if (regressed) {
+                regressions.add(entry.getKey() + " : " + format(actual) + " against the baseline of " +
+                        format(expected));
+            }
+        }
+        return regressions;
+    }
+
+    public static StoreBaseline load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        StoreBaseline baseline = new StoreBaseline();
+        for (String metric : properties.stringPropertyNames()) {
+            baseline.put(metric, Double.parseDouble(properties.getProperty(metric)));
+        }
+        return baseline;
+    }
+
+    public void save(File file, String comment) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Double> entry : metrics.entrySet()) {
+            properties.setProperty(entry.getKey(), format(entry.getValue()));
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, comment);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Compares this run with the baseline file given by the {@code benchmark.baseline} system
+     * property, or replaces the baseline with this run if {@code benchmark.baseline.update} is set.
+     *
+     * @param defaultFile baseline file used if no file is given
+     * @return whether no metric regressed
+     * @throws IOException if the baseline cannot be read or written
+     */
+    public boolean verify(String defaultFile) throws IOException {
+        File file = new File(System.getProperty("benchmark.baseline", defaultFile));
+        for (Map.Entry<String, Double> entry : metrics.entrySet()) {
+            System.out.println(entry.getKey() + " = " + format(entry.getValue()));
+        }
+        if (Boolean.getBoolean("benchmark.baseline.update") || !file.exists()) {
+            save(file, "Message store benchmark baseline");
+            System.out.println("Baseline written to " + file.getAbsolutePath());
+            return true;
+        }
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.1"));
+        List<String> regressions = regressionsAgainst(load(file), tolerance);
+        for (String regression : regressions) {
+            System.out.println("REGRESSION " + regression);
+        }
+        return regressions.isEmpty();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.benchmarks.throttle;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.neethi.PolicyEngine;
+import org.apache.synapse.commons.throttle.core.AccessRateController;
+import org.apache.synapse.commons.throttle.core.Throttle;
+import org.apache.synapse.commons.throttle.core.ThrottleConstants;
+import org.apache.synapse.commons.throttle.core.ThrottleContext;
+import org.apache.synapse.commons.throttle.core.ThrottleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of IP based throttling decisions made concurrently by several threads
+ * for a configurable number of distinct callers. A single caller models the worst case where all
+ * requests contend for the state of the same caller.
+ * <p/>
+ * Run with {@code java -jar modules/benchmarks/target/benchmarks.jar AccessRateControllerBenchmark -t 8}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class AccessRateControllerBenchmark {
+
+    private static final String POLICY = "<wsp:Policy xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\" " +
+            "xmlns:throttle=\"http://www.wso2.org/products/wso2commons/throttle\">" +
+            "<throttle:ModuleThrottleAssertion><wsp:Policy>" +
+            "<throttle:ID throttle:type=\"IP\">other</throttle:ID>" +
+            "<wsp:Policy><throttle:Control><wsp:Policy>" +
+            "<throttle:MaximumCount>1000000</throttle:MaximumCount>" +
+            "<throttle:UnitTime>1000</throttle:UnitTime>" +
+            "</wsp:Policy></throttle:Control></wsp:Policy>" +
+            "</wsp:Policy></throttle:ModuleThrottleAssertion></wsp:Policy>";
+
+    /** Number of distinct caller IP addresses */
+    @Param({"1", "64", "10000"})
+    public int callers;
+
+    private AccessRateController controller;
+
+    private ThrottleContext throttleContext;
+
+    private String[] callerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        OMElement policy = AXIOMUtil.stringToOM(POLICY);
+        Throttle throttle = ThrottleFactory.createModuleThrottle(PolicyEngine.getPolicy(policy));
+        throttleContext = throttle.getThrottleContext(ThrottleConstants.IP_BASED_THROTTLE_KEY);
+        controller = new AccessRateController();
+        callerIds = new String[callers];
+        for (int i = 0; i < callers; i++) {
+            callerIds[i] = "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public boolean canAccess() throws Exception {
+        String callerId = callerIds[ThreadLocalRandom.current().nextInt(callerIds.length)];
+        return controller.canAccess(throttleContext, callerId, ThrottleConstants.IP_BASE).isAccessAllowed();
+    }
+}
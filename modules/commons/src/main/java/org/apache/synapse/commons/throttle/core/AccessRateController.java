@@ -38,14 +38,21 @@ public class AccessRateController {
     private static final String ACCESS_DENIED =
             "You cannot access this service since you have been prohibited permanently.";
 
-    /* The Object for used to lock in synchronizing */
-    private final Object lock = new Object();
+    /* Number of lock stripes, should be a power of two */
+    private static final int LOCK_STRIPES = 64;
+
+    /* The Objects used to lock in synchronizing. Runtime state of a caller is only accessed while
+     holding the stripe its id maps to, so requests of different callers do not serialize */
+    private final Object[] locks = new Object[LOCK_STRIPES];
 
     private boolean debugOn = false;  //is debug enable
     private static final String SYMBOL_UNDERSCORE = "_";
 
     public AccessRateController() {
         debugOn = log.isDebugEnabled();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
     }
 
     /**
@@ -103,7 +110,7 @@ public class AccessRateController {
             accessInformation.setAccessAllowed(true);
             return accessInformation;
         } else if (configuration.getAccessState() == ThrottleConstants.ACCESS_CONTROLLED) {
-            synchronized (lock) {
+            synchronized (lockFor(callerID)) {
                 CallerContext caller = throttleContext.getCallerContext(callerID);
                 if (caller == null) {
                     //if caller has not already registered ,then create new caller description and
@@ -139,4 +146,16 @@ public class AccessRateController {
         accessInformation.setAccessAllowed(true);
         return accessInformation;
     }
+
+    /**
+     * Returns the lock guarding the runtime state of the given caller
+     *
+     * @param callerID - Identifier for remote caller
+     * @return the lock of the stripe the caller belongs to
+     */
+    private Object lockFor(String callerID) {
+        int hash = callerID.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[hash & (LOCK_STRIPES - 1)];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,391 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DistributedCounterManager} which accumulates counter increments locally and pushes them
+ * to the underlying distributed counter manager in batches, instead of making a remote call for
+ * each request.
+ * <p/>
+ * Increments of a key are summed locally and flushed periodically in a single
+ * {@link DistributedCounterManager#addCounters(Map)} call. The values returned by the flush are
+ * used as the last known global value of each key, so the counter value seen by this node lags
+ * behind the global value by at most one flush interval. The number of unflushed increments of a
+ * key is bounded by the max pending delta, a key is flushed immediately once it is reached.
+ * <p/>
+ * Operations which set, alter or remove a counter discard the pending increments of the key and
+ * are passed through, as are the timestamp, lock and window operations. The expiry time set with a
+ * counter is remembered, and set again if a flush re-creates a counter which expired in the
+ * meantime, as an increment creates it without an expiry.
+ */
+public class BatchingDistributedCounterManager implements DistributedCounterManager {
+
+    private static final Log log = LogFactory.getLog(BatchingDistributedCounterManager.class);
+
+    private final DistributedCounterManager delegate;
+
+    private final long maxPendingDelta;
+
+    private final Map<String, PendingCounter> counters = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flushExecutor;
+
+    /**
+     * Creates a batching counter manager which is flushed by a background thread
+     *
+     * @param delegate        the distributed counter manager to push the counters to
+     * @param flushInterval   interval between flushes in milliseconds
+     * @param maxPendingDelta maximum unflushed increment of a key before it is flushed immediately
+     */
+    public BatchingDistributedCounterManager(DistributedCounterManager delegate, long flushInterval,
+                                             long maxPendingDelta) {
+        this(delegate, maxPendingDelta, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Throttle-Counter-Flush-" + delegate.getType());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a batching counter manager which is only flushed through {@link #flush()}
+     *
+     * @param delegate        the distributed counter manager to push the counters to
+     * @param maxPendingDelta maximum unflushed increment of a key before it is flushed immediately
+     */
+    public BatchingDistributedCounterManager(DistributedCounterManager delegate, long maxPendingDelta) {
+        this(delegate, maxPendingDelta, null);
+    }
+
+    private BatchingDistributedCounterManager(DistributedCounterManager delegate, long maxPendingDelta,
+                                              ScheduledExecutorService flushExecutor) {
+        this.delegate = delegate;
+        this.maxPendingDelta = maxPendingDelta;
+        this.flushExecutor = flushExecutor;
+    }
+
+    public DistributedCounterManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Pushes the pending increments of all the keys to the distributed counter manager and
+     * refreshes the last known global values of the keys accessed since the previous flush, which
+     * picks up the increments made by other nodes. Keys which were not accessed since the previous
+     * flush are evicted, so their next access reads the global value again.
+     */
+    public void flush() {
+        Map<String, Long> deltas = new HashMap<>();
+        for (Map.Entry<String, PendingCounter> entry : counters.entrySet()) {
+            PendingCounter counter = entry.getValue();
+            long delta = counter.pending.getAndSet(0);
+            if (delta != 0 || counter.touched) {
+                deltas.put(entry.getKey(), delta);
+            } else {
+                counters.remove(entry.getKey(), counter);
+                counter.evicted = true;
+                // an increment which got hold of the counter before it was evicted
+                long residue = counter.pending.getAndSet(0);
+                if (residue != 0) {
+                    deltas.put(entry.getKey(), residue);
+                }
+            }
+            counter.touched = false;
+        }
+        if (!deltas.isEmpty()) {
+            push(deltas);
+        }
+    }
+
+    /**
+     * Flushes the pending increments and stops the background flush, if any
+     */
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flush();
+    }
+
+    private void flushKey(String key, PendingCounter counter) {
+        long delta = counter.pending.getAndSet(0);
+        if (delta != 0) {
+            Map<String, Long> deltas = new HashMap<>(1);
+            deltas.put(key, delta);
+            push(deltas);
+        }
+    }
+
+    private void push(Map<String, Long> deltas) {
+        Map<String, Long> updatedValues;
+        try {
+            updatedValues = delegate.addCounters(deltas);
+        } catch (RuntimeException e) {
+            log.warn("Error while flushing " + deltas.size() + " throttle counters, will be retried", e);
+            for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+                add(delta.getKey(), delta.getValue(), false);
+            }
+            return;
+        }
+        for (Map.Entry<String, Long> updatedValue : updatedValues.entrySet()) {
+            PendingCounter counter = counters.get(updatedValue.getKey());
+            if (counter == null || updatedValue.getValue() == null) {
+                continue;
+            }
+            counter.globalValue = updatedValue.getValue();
+            long expiryTime = counter.expiryTime;
+            if (expiryTime > 0 && updatedValue.getValue().equals(deltas.get(updatedValue.getKey()))) {
+                // the counter expired and the increment created it again, without an expiry
+                try {
+                    delegate.setExpiry(updatedValue.getKey(), expiryTime);
+                } catch (RuntimeException e) {
+                    log.warn("Error while setting the expiry of throttle counter " + updatedValue.getKey(), e);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Flushed " + deltas.size() + " throttle counters");
+        }
+    }
+
+    private PendingCounter counterFor(String key) {
+        PendingCounter counter = counters.get(key);
+        if (counter == null) {
+            // the remote call is made outside of the map, so that it does not block other keys
+            PendingCounter loaded = new PendingCounter(delegate.getCounter(key));
+            counter = counters.putIfAbsent(key, loaded);
+            if (counter == null) {
+                counter = loaded;
+            }
+        }
+        counter.touched = true;
+        return counter;
+    }
+
+    private long add(String key, long value) {
+        return add(key, value, true);
+    }
+
+    private long add(String key, long value, boolean flushIfFull) {
+        while (true) {
+            PendingCounter counter = counterFor(key);
+            long pending = counter.pending.addAndGet(value);
+            if (!counter.evicted) {
+                if (flushIfFull && Math.abs(pending) >= maxPendingDelta) {
+                    flushKey(key, counter);
+                }
+                return counter.estimate();
+            }
+            // a flush evicted the counter after it was looked up, the increment may have missed the
+            // flush, so it goes to the counter which replaces it
+            value = counter.pending.getAndSet(0);
+            if (value == 0) {
+                return counterFor(key).estimate();
+            }
+        }
+    }
+
+    @Override
+    public long getCounter(String key) {
+        return counterFor(key).estimate();
+    }
+
+    @Override
+    public void setCounter(String key, long value) {
+        counters.remove(key);
+        delegate.setCounter(key, value);
+    }
+
+    @Override
+    public void setCounterWithExpiry(String key, long value, long expiryTime) {
+        counters.remove(key);
+        delegate.setCounterWithExpiry(key, value, expiryTime);
+        counters.put(key, new PendingCounter(value, expiryTime));
+    }
+
+    @Override
+    public long addAndGetCounter(String key, long value) {
+        return add(key, value);
+    }
+
+    @Override
+    public void removeCounter(String key) {
+        counters.remove(key);
+        delegate.removeCounter(key);
+    }
+
+    @Override
+    public long asyncGetAndAddCounter(String key, long value) {
+        return add(key, value) - value;
+    }
+
+    @Override
+    public long asyncAddCounter(String key, long value) {
+        return add(key, value);
+    }
+
+    @Override
+    public long asyncGetAndAlterCounter(String key, long value) {
+        counters.remove(key);
+        return delegate.asyncGetAndAlterCounter(key, value);
+    }
+
+    @Override
+    public long asyncGetAlterAndSetExpiryOfCounter(String key, long value, long expiryTimeStamp) {
+        counters.remove(key);
+        long previous = delegate.asyncGetAlterAndSetExpiryOfCounter(key, value, expiryTimeStamp);
+        counters.put(key, new PendingCounter(value, expiryTimeStamp));
+        return previous;
+    }
+
+    @Override
+    public long getTimestamp(String key) {
+        return delegate.getTimestamp(key);
+    }
+
+    @Override
+    public void setTimestamp(String key, long timeStamp) {
+        delegate.setTimestamp(key, timeStamp);
+    }
+
+    @Override
+    public void setTimestampWithExpiry(String key, long timeStamp, long expiryTimeStamp) {
+        delegate.setTimestampWithExpiry(key, timeStamp, expiryTimeStamp);
+    }
+
+    @Override
+    public void removeTimestamp(String key) {
+        delegate.removeTimestamp(key);
+    }
+
+    @Override
+    public boolean isEnable() {
+        return delegate.isEnable();
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    @Override
+    public void setExpiry(String key, long expiryTimeStamp) {
+        delegate.setExpiry(key, expiryTimeStamp);
+        PendingCounter counter = counters.get(key);
+        if (counter != null) {
+            counter.expiryTime = expiryTimeStamp;
+        }
+    }
+
+    @Override
+    public long getTtl(String key) {
+        return delegate.getTtl(key);
+    }
+
+    @Override
+    public long setLock(String key, String value) {
+        return delegate.setLock(key, value);
+    }
+
+    @Override
+    public boolean setLockWithExpiry(String key, String value, long expiryTimeStamp)
+            throws DistributedCounterException {
+        return delegate.setLockWithExpiry(key, value, expiryTimeStamp);
+    }
+
+    @Override
+    public long getKeyLockRetrievalTimeout() {
+        return delegate.getKeyLockRetrievalTimeout();
+    }
+
+    @Override
+    public void removeLock(String key) {
+        delegate.removeLock(key);
+    }
+
+    @Override
+    public Map<String, Long> addCounters(Map<String, Long> deltas) {
+        Map<String, Long> updatedValues = new HashMap<>(deltas.size());
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            updatedValues.put(delta.getKey(), add(delta.getKey(), delta.getValue()));
+        }
+        return updatedValues;
+    }
+
+    @Override
+    public long[] getWindowState(String key) throws DistributedCounterException {
+        return delegate.getWindowState(key);
+    }
+
+    @Override
+    public void setWindow(String key, long count, long ts, long expiryTime) throws DistributedCounterException {
+        delegate.setWindow(key, count, ts, expiryTime);
+    }
+
+    @Override
+    public long incrWindowCounter(String key, long delta, long expiryTime) throws DistributedCounterException {
+        return delegate.incrWindowCounter(key, delta, expiryTime);
+    }
+
+    /**
+     * Locally accumulated state of a distributed counter
+     */
+    private static class PendingCounter {
+
+        /** Increments not flushed yet, taken atomically by the flush */
+        private final AtomicLong pending = new AtomicLong();
+
+        /** Global value of the counter as of the last flush, including the increments of this node */
+        private volatile long globalValue;
+
+        /** Whether the counter was accessed since the last flush */
+        private volatile boolean touched = true;
+
+        /** Whether the counter was evicted by a flush, increments made after it go to a new counter */
+        private volatile boolean evicted;
+
+        /** Expiry time set with the counter, 0 if not known */
+        private volatile long expiryTime;
+
+        PendingCounter(long globalValue) {
+            this.globalValue = globalValue;
+        }
+
+        PendingCounter(long globalValue, long expiryTime) {
+            this.globalValue = globalValue;
+            this.expiryTime = expiryTime;
+        }
+
+        long estimate() {
+            return globalValue + pending.get();
+        }
+    }
+}
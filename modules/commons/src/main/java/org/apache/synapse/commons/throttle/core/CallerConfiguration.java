@@ -36,6 +36,8 @@ public abstract class CallerConfiguration {
 
     /* The int value that indicate that access is fully denied/allowed or controlled for this IP */
     private int accessState = ThrottleConstants.ACCESS_CONTROLLED;
+    /* The rate limiting algorithm used to control the access of the caller */
+    private int algorithm = ThrottleConstants.FIXED_WINDOW_ALGORITHM;
 
     protected CallerConfiguration() {
         super();
@@ -133,6 +135,24 @@ public abstract class CallerConfiguration {
         this.accessState = accessState;
     }
 
+    /**
+     * To get the rate limiting algorithm
+     *
+     * @return int value indicate the algorithm, one of the algorithm constants in ThrottleConstants
+     */
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * To set the rate limiting algorithm
+     *
+     * @param algorithm the algorithm, one of the algorithm constants in ThrottleConstants
+     */
+    public void setAlgorithm(int algorithm) {
+        this.algorithm = algorithm;
+    }
+
     /**
      * To get ID
      *
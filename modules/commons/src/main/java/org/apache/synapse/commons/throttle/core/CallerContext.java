@@ -20,6 +20,8 @@ package org.apache.synapse.commons.throttle.core;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.throttle.core.algorithm.RateLimitAlgorithm;
+import org.apache.synapse.commons.throttle.core.algorithm.RateLimitAlgorithms;
 import org.apache.synapse.commons.throttle.core.internal.DistributedThrottleProcessor;
 import org.apache.synapse.commons.throttle.core.internal.ThrottleServiceDataHolder;
 
@@ -62,6 +64,9 @@ public abstract class CallerContext implements Serializable, Cloneable {
     private AtomicLong localCount = new AtomicLong(0);
     private AtomicLong localHits = new AtomicLong(0);
 
+    /* The runtime state of the rate limiting algorithm, if other than the fixed window is used */
+    private long[] algorithmState;
+
     /**
      * Used for debugging purposes. *
      */
@@ -85,6 +90,7 @@ public abstract class CallerContext implements Serializable, Cloneable {
         clone.localCount = new AtomicLong(this.localCount.longValue());
 
         clone.roleId = this.roleId;
+        clone.algorithmState = this.algorithmState != null ? this.algorithmState.clone() : null;
         localCount.set(0);
         return clone;
     }
@@ -426,7 +432,12 @@ public abstract class CallerContext implements Serializable, Cloneable {
 
         DistributedThrottleProcessor distributedThrottleProcessor = ThrottleServiceDataHolder.getInstance()
                 .getDistributedThrottleProcessor();
-        if (distributedThrottleProcessor != null && distributedThrottleProcessor.isEnable()) {
+        RateLimitAlgorithm algorithm = RateLimitAlgorithms.getAlgorithm(configuration.getAlgorithm());
+        if (algorithm != null) {
+            // the rate limiting algorithms keep node local state, distributed counters are not used
+            canAccess = canAccessBasedOnAlgorithm(algorithm, configuration, currentTime,
+                    eventCount == null ? 1L : eventCount);
+        } else if (distributedThrottleProcessor != null && distributedThrottleProcessor.isEnable()) {
             long startTime = System.currentTimeMillis();
             canAccess = distributedThrottleProcessor.canAccessBasedOnUnitTime(this, configuration, throttleContext,
                     requestContext);
@@ -440,6 +451,44 @@ public abstract class CallerContext implements Serializable, Cloneable {
         return canAccess;
     }
 
+    /**
+     * To verify access using a rate limiting algorithm other than the fixed window
+     *
+     * @param algorithm     -The rate limiting algorithm
+     * @param configuration -The Configuration for this caller
+     * @param currentTime   -The system current time
+     * @param permits       -The number of requests to be accounted
+     * @return boolean      -The boolean value which say access will allow or not
+     */
+    private boolean canAccessBasedOnAlgorithm(RateLimitAlgorithm algorithm, CallerConfiguration configuration,
+                                              long currentTime, long permits) {
+        if (this.nextAccessTime > currentTime) {
+            if (log.isDebugEnabled()) {
+                log.debug("Prohibit period is not yet over for caller " + this.id);
+            }
+            return false;
+        }
+        long[] state = this.algorithmState;
+        if (state == null || !algorithm.isCompatible(state, configuration)) {
+            state = algorithm.createState(configuration, currentTime);
+            this.algorithmState = state;
+        }
+        boolean canAccess;
+        synchronized (state) {
+            canAccess = algorithm.tryAcquire(state, configuration, currentTime, permits);
+        }
+        // keeps the caller, with the state of the algorithm, from being cleaned up while it is active
+        this.nextTimeWindow = Math.max(this.nextTimeWindow, currentTime + configuration.getUnitTime());
+        if (canAccess) {
+            this.nextAccessTime = 0;
+        } else if (configuration.getProhibitTimePeriod() > 0) {
+            this.nextAccessTime = currentTime + configuration.getProhibitTimePeriod();
+            // nor while it is prohibited, which would let it escape the prohibit time period
+            this.nextTimeWindow = Math.max(this.nextTimeWindow, this.nextAccessTime);
+        }
+        return canAccess;
+    }
+
     private boolean canAccessBasedOnUnitTime(CallerConfiguration configuration, ThrottleContext throttleContext,
                                              long currentTime, Long eventCount) {
         if (this.nextTimeWindow > currentTime) {
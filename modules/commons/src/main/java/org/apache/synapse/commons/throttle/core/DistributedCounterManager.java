@@ -17,6 +17,9 @@
  */
 package org.apache.synapse.commons.throttle.core;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * This interface used to replicate throttling counters and windows in distributed manner.
  */
@@ -147,6 +150,22 @@ public interface DistributedCounterManager {
 
     public void removeLock(String key);
 
+    /**
+     * Increments a set of distributed counters in one call and returns their updated values.
+     * Implementations backed by a remote store should override this to send all the updates in a
+     * single round trip, e.g. as a pipeline.
+     *
+     * @param deltas values to add, keyed by the distributed counter key
+     * @return the updated distributed counter values, keyed by the distributed counter key
+     */
+    default Map<String, Long> addCounters(Map<String, Long> deltas) {
+        Map<String, Long> updatedValues = new HashMap<>(deltas.size());
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            updatedValues.put(delta.getKey(), asyncAddCounter(delta.getKey(), delta.getValue()));
+        }
+        return updatedValues;
+    }
+
      /**
      * Atomically reads the window timestamp and counter for the given key.
      *
@@ -97,6 +97,8 @@ public final class ThrottleConstants {
 
     public static final String PROHIBIT_TIME_PERIOD_PARAMETER_NAME = "ProhibitTimePeriod";
 
+    public static final String ALGORITHM_PARAMETER_NAME = "Algorithm";
+
     public static final String ID_PARAMETER_NAME = "ID";
 
     public static final String MAXIMUM_CONCURRENT_ACCESS_PARAMETER_NAME = "MaximumConcurrentAccess";
@@ -115,6 +117,22 @@ public final class ThrottleConstants {
 
     public static final int ACCESS_ALLOWED = 2;
 
+    /* Rate limiting algorithms - the default fixed window counter, token bucket, generic cell
+    rate algorithm and sliding window log */
+
+    public static final int FIXED_WINDOW_ALGORITHM = 0;
+
+    public static final int TOKEN_BUCKET_ALGORITHM = 1;
+
+    public static final int GCRA_ALGORITHM = 2;
+
+    public static final int SLIDING_LOG_ALGORITHM = 3;
+
+    /* The maximum count a sliding window log can be configured with, as it keeps a timestamp
+    per allowed request */
+
+    public static final int MAX_SLIDING_LOG_SIZE = 10000;
+
     /* The default clean up time indicates how often cleaning up process should execute  */
 
     public static final long DEFAULT_THROTTLE_CLEAN_PERIOD = 5 * 1000 * 60;
@@ -193,4 +211,9 @@ public final class ThrottleConstants {
     public static final String THROTTLE_SYNC_ASYNC_HYBRID_MODE_ENABLED = "throttling.sync-async_hybrid_mode.enable";
     public static final String HYBRID_THROTTLE_PROCESSOR_WINDOW_TYPE = "throttling.hybrid_throttle_processor_window.type";
     public static final String LOCAL_QUOTA_BUFFER_PERCENTAGE = "throttling.local_quota_buffer_percentage";
+    public static final String DISTRIBUTED_COUNTER_BATCHING_ENABLED = "throttling.distributed.counter.batching.enable";
+    public static final String DISTRIBUTED_COUNTER_BATCHING_FLUSH_INTERVAL =
+            "throttling.distributed.counter.batching.flush_interval";
+    public static final String DISTRIBUTED_COUNTER_BATCHING_MAX_PENDING_DELTA =
+            "throttling.distributed.counter.batching.max_pending_delta";
 }
@@ -38,8 +38,10 @@ public abstract class ThrottleContext {
 
     private static Log log = LogFactory.getLog(ThrottleContext.class.getName());
 
-    /* The callersMap that contains all registered callers for a particular throttle */
-    private Map callersMap;
+    /* The callersMap that contains all registered callers for a particular throttle, keyed by
+     their next time window. Callers sharing a time window are kept in an immutable LinkedList
+     which is replaced on each change, so that callers can be added concurrently */
+    private ConcurrentNavigableMap<Long, Object> callersMap;
     /* For mapping id (ip | domainame) to TimeStamp */
     private Map keyToTimeStampMap;
     /* The Time which next cleaning for this throttle will have to take place */
@@ -80,7 +82,7 @@ public abstract class ThrottleContext {
         }
         this.throttleReplicator = throttleReplicator;
         this.keyToTimeStampMap = new ConcurrentHashMap();
-        this.callersMap = new ConcurrentSkipListMap();
+        this.callersMap = new ConcurrentSkipListMap<Long, Object>();
         this.nextCleanTime = 0;
         this.throttleConfiguration = throttleConfiguration;
         this.debugOn = log.isDebugEnabled();
@@ -126,12 +128,10 @@ public abstract class ThrottleContext {
                         return (CallerContext) co;
                     } else if (co instanceof LinkedList) {    // callers with same time window
                         LinkedList callers = (LinkedList) co;
-                        synchronized (callers) {
-                            for (Iterator it = callers.iterator(); it.hasNext(); ) {
-                                CallerContext cc = (CallerContext) it.next();
-                                if (cc != null && id.equals(cc.getId())) {
-                                    return cc;
-                                }
+                        for (Iterator it = callers.iterator(); it.hasNext(); ) {
+                            CallerContext cc = (CallerContext) it.next();
+                            if (cc != null && id.equals(cc.getId())) {
+                                return cc;
                             }
                         }
                     }
@@ -174,27 +174,8 @@ public abstract class ThrottleContext {
             dataHolder.addCallerContext(id, callerContext);
         }
         // for clean up list
-        Long time = new Long(callerContext.getNextTimeWindow());
-        if (!callersMap.containsKey(time)) {
-            callersMap.put(time, callerContext);
-        } else {
-            //if there are callersMap with same timewindow ,then use linkedList to hold those
-            Object callerObject = callersMap.get(time);
-            if (callerObject != null) {
-                if (callerObject instanceof CallerContext) {
-                    LinkedList callersWithSameTimeStamp = new LinkedList();
-                    callersWithSameTimeStamp.add(callerObject);
-                    callersWithSameTimeStamp.add(callerContext);
-                    callersMap.remove(time);
-                    callersMap.put(time, callersWithSameTimeStamp);
-                } else if (callerObject instanceof LinkedList) {
-                    LinkedList callersWithSameTimeStamp = (LinkedList) callerObject;
-                    synchronized (callersWithSameTimeStamp) {
-                        callersWithSameTimeStamp.add(callerContext);
-                    }
-                }
-            }
-        }
+        Long time = callerContext.getNextTimeWindow();
+        callersMap.merge(time, callerContext, ThrottleContext::mergeCallers);
         //set Time Vs key
         keyToTimeStampMap.put(id, time);
     }
@@ -226,11 +207,52 @@ public abstract class ThrottleContext {
             dataHolder.removeCaller(id);
         }
         if (time != null) {
-            callersMap.remove(time);
+            callersMap.computeIfPresent(time, (key, callers) -> withoutCaller(callers, id));
             keyToTimeStampMap.remove(id);
         }
     }
 
+    /**
+     * Merges a caller into the callers registered against the same time window
+     *
+     * @param registered the caller or the list of callers already registered for the time window
+     * @param caller     the caller to be added
+     * @return the callers to be registered for the time window
+     */
+    private static Object mergeCallers(Object registered, Object caller) {
+        LinkedList callersWithSameTimeStamp = new LinkedList();
+        if (registered instanceof LinkedList) {
+            callersWithSameTimeStamp.addAll((LinkedList) registered);
+        } else {
+            callersWithSameTimeStamp.add(registered);
+        }
+        callersWithSameTimeStamp.add(caller);
+        return callersWithSameTimeStamp;
+    }
+
+    /**
+     * Removes the caller with the given id from the callers registered against a time window
+     *
+     * @param registered the caller or the list of callers registered for the time window
+     * @param id         the id of the caller to be removed
+     * @return the remaining callers of the time window or null if there are none
+     */
+    private static Object withoutCaller(Object registered, String id) {
+        if (registered instanceof CallerContext) {
+            return id.equals(((CallerContext) registered).getId()) ? null : registered;
+        }
+        LinkedList remaining = new LinkedList();
+        for (Object caller : (LinkedList) registered) {
+            if (!id.equals(((CallerContext) caller).getId())) {
+                remaining.add(caller);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        return remaining.size() == 1 ? remaining.getFirst() : remaining;
+    }
+
     /**
      * /**
      * processing cleaning list- only process callerContexts which unit time already had over
@@ -278,21 +300,19 @@ public abstract class ThrottleContext {
                             }
                             if (o instanceof LinkedList) { //In the case nextAccessTime of callers are same
                                 LinkedList callers = (LinkedList) o;
-                                synchronized (callers) {
-                                    for (Iterator ite = callers.iterator(); ite.hasNext(); ) {
-                                        CallerContext c = (CallerContext) ite.next();
-                                        String key = c.getId();
-                                        String role = c.getRoleId();
-                                        if (key != null) {
-                                            if (dataHolder != null && keyPrefix != null) {
-                                                c = (CallerContext) dataHolder.getCallerContext(key);
-                                            }
-                                            if (c != null) {
-                                                c.cleanUpCallers(
-                                                        this.throttleConfiguration.getCallerConfiguration(role)
-                                                        , this
-                                                        , time);
-                                            }
+                                for (Iterator ite = callers.iterator(); ite.hasNext(); ) {
+                                    CallerContext c = (CallerContext) ite.next();
+                                    String key = c.getId();
+                                    String role = c.getRoleId();
+                                    if (key != null) {
+                                        if (dataHolder != null && keyPrefix != null) {
+                                            c = (CallerContext) dataHolder.getCallerContext(key);
+                                        }
+                                        if (c != null) {
+                                            c.cleanUpCallers(
+                                                    this.throttleConfiguration.getCallerConfiguration(role)
+                                                    , this
+                                                    , time);
                                         }
                                     }
                                 }
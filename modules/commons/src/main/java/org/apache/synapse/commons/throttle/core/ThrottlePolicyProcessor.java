@@ -25,6 +25,7 @@ import org.apache.neethi.All;
 import org.apache.neethi.ExactlyOne;
 import org.apache.neethi.Policy;
 import org.apache.neethi.builders.xml.XmlPrimtiveAssertion;
+import org.apache.synapse.commons.throttle.core.algorithm.RateLimitAlgorithms;
 import org.apache.synapse.commons.throttle.core.factory.CallerConfigurationFactory;
 import org.apache.synapse.commons.throttle.core.factory.ThrottleConfigurationFactory;
 import org.apache.synapse.commons.throttle.core.factory.ThrottleContextFactory;
@@ -252,6 +253,15 @@ public class ThrottlePolicyProcessor {
                                                                     " number for prohibit time ",
                                                             ignored);
                                                 }
+                                            } else if (n.equals(
+                                                    ThrottleConstants.
+                                                            ALGORITHM_PARAMETER_NAME)) {
+                                                int algorithm = RateLimitAlgorithms.parse(v);
+                                                if (algorithm < 0) {
+                                                    handleException("Undefined rate limiting " +
+                                                            "algorithm " + v + " for Throttle Policy");
+                                                }
+                                                cn.setAlgorithm(algorithm);
                                             } else {
                                                 handleException("Undefined Policy" +
                                                         " property for Throttle Policy");
@@ -268,6 +278,13 @@ public class ThrottlePolicyProcessor {
                                     }
                                 }
                                 if (isFoundUnitTime && isFoundMaxCount) {
+                                    if (cn.getAlgorithm() == ThrottleConstants.SLIDING_LOG_ALGORITHM
+                                            && cn.getMaximumRequestPerUnitTime() >
+                                            ThrottleConstants.MAX_SLIDING_LOG_SIZE) {
+                                        handleException("Maximum Count of a sliding log " +
+                                                "cannot exceed " +
+                                                ThrottleConstants.MAX_SLIDING_LOG_SIZE);
+                                    }
                                     isExactlyOneFound = true;
                                 } else {
                                     handleException("Maximum Count and UnitTime are " +
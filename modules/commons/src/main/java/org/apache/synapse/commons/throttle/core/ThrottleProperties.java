@@ -40,6 +40,9 @@ public class ThrottleProperties implements Serializable {
 	private String hybridThrottleProcessorWindowType = "start_time_based";
 	private String localQuotaBufferPercentage = "20";
 	private boolean unifiedThrottleReplicatorEnabled = false;
+	private boolean distributedCounterBatchingEnabled = false;
+	private String distributedCounterBatchingFlushInterval = "100";
+	private String distributedCounterBatchingMaxPendingDelta = "100";
 
 	public String getWindowReplicatorPoolSize() {
 		return windowReplicatorPoolSize;
@@ -202,4 +205,28 @@ public class ThrottleProperties implements Serializable {
 	public void setUnifiedThrottleReplicatorEnabled(boolean unifiedThrottleReplicatorEnabled) {
 		this.unifiedThrottleReplicatorEnabled = unifiedThrottleReplicatorEnabled;
 	}
+
+	public boolean isDistributedCounterBatchingEnabled() {
+		return distributedCounterBatchingEnabled;
+	}
+
+	public void setDistributedCounterBatchingEnabled(boolean distributedCounterBatchingEnabled) {
+		this.distributedCounterBatchingEnabled = distributedCounterBatchingEnabled;
+	}
+
+	public String getDistributedCounterBatchingFlushInterval() {
+		return distributedCounterBatchingFlushInterval;
+	}
+
+	public void setDistributedCounterBatchingFlushInterval(String distributedCounterBatchingFlushInterval) {
+		this.distributedCounterBatchingFlushInterval = distributedCounterBatchingFlushInterval;
+	}
+
+	public String getDistributedCounterBatchingMaxPendingDelta() {
+		return distributedCounterBatchingMaxPendingDelta;
+	}
+
+	public void setDistributedCounterBatchingMaxPendingDelta(String distributedCounterBatchingMaxPendingDelta) {
+		this.distributedCounterBatchingMaxPendingDelta = distributedCounterBatchingMaxPendingDelta;
+	}
 }
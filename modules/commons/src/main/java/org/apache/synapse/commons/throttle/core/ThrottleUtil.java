@@ -185,6 +185,25 @@ public class ThrottleUtil {
 							throttleProperties.setLocalQuotaBufferPercentage(localQuotaBufferPercentage);
 						}
 					}
+					if (key.contains(ThrottleConstants.DISTRIBUTED_COUNTER_BATCHING_ENABLED)) {
+						String distributedCounterBatchingEnabled = properties.getProperty(key);
+						if (StringUtils.isNotEmpty(distributedCounterBatchingEnabled)) {
+							throttleProperties.setDistributedCounterBatchingEnabled(
+									Boolean.parseBoolean(distributedCounterBatchingEnabled));
+						}
+					}
+					if (key.contains(ThrottleConstants.DISTRIBUTED_COUNTER_BATCHING_FLUSH_INTERVAL)) {
+						String flushInterval = properties.getProperty(key);
+						if (StringUtils.isNotEmpty(flushInterval)) {
+							throttleProperties.setDistributedCounterBatchingFlushInterval(flushInterval);
+						}
+					}
+					if (key.contains(ThrottleConstants.DISTRIBUTED_COUNTER_BATCHING_MAX_PENDING_DELTA)) {
+						String maxPendingDelta = properties.getProperty(key);
+						if (StringUtils.isNotEmpty(maxPendingDelta)) {
+							throttleProperties.setDistributedCounterBatchingMaxPendingDelta(maxPendingDelta);
+						}
+					}
 				}
 			} catch (IOException e) {
 				log.debug("Setting the Default Throttle Properties");
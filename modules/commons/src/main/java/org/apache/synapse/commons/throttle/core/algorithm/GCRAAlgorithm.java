@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import org.apache.synapse.commons.throttle.core.CallerConfiguration;
+
+/**
+ * Generic cell rate algorithm. Requests are expected to arrive every unitTime / maxCount
+ * milliseconds (the emission interval) and the caller can run ahead of that schedule by up to one
+ * unit time, which allows a burst of maximum count requests. Only the theoretical arrival time of
+ * the next request is kept per caller.
+ * <p/>
+ * Times are kept relative to the first access of the caller and in units of 1/maxCount
+ * milliseconds, so that the emission interval is exact integer arithmetic.
+ */
+public class GCRAAlgorithm implements RateLimitAlgorithm {
+
+    private static final int THEORETICAL_ARRIVAL_TIME = 0;
+    private static final int BASE_TIME = 1;
+    private static final int MAX_REQUEST = 2;
+    private static final int UNIT_TIME = 3;
+
+    public long[] createState(CallerConfiguration configuration, long currentTime) {
+        return new long[]{0, currentTime, configuration.getMaximumRequestPerUnitTime(),
+                configuration.getUnitTime()};
+    }
+
+    public boolean isCompatible(long[] state, CallerConfiguration configuration) {
+        return state.length == 4 && state[MAX_REQUEST] == configuration.getMaximumRequestPerUnitTime()
+                && state[UNIT_TIME] == configuration.getUnitTime();
+    }
+
+    public boolean tryAcquire(long[] state, CallerConfiguration configuration, long currentTime, long permits) {
+        long maxRequest = state[MAX_REQUEST];
+        long unitTime = state[UNIT_TIME];
+        long now = (currentTime - state[BASE_TIME]) * maxRequest;
+        long theoreticalArrivalTime = Math.max(state[THEORETICAL_ARRIVAL_TIME], now);
+        // the emission interval is unitTime / maxRequest, i.e. unitTime in the scaled units
+        long newTheoreticalArrivalTime = theoreticalArrivalTime + permits * unitTime;
+        if (newTheoreticalArrivalTime - now > unitTime * maxRequest) {
+            return false;
+        }
+        state[THEORETICAL_ARRIVAL_TIME] = newTheoreticalArrivalTime;
+        if (now > unitTime * maxRequest * 1024) {
+            // rebase the times to keep the scaled values small for long living callers
+            long shift = now / maxRequest;
+            state[BASE_TIME] += shift;
+            state[THEORETICAL_ARRIVAL_TIME] -= shift * maxRequest;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import org.apache.synapse.commons.throttle.core.CallerConfiguration;
+
+/**
+ * A rate limiting algorithm which decides whether a caller can access according to the maximum
+ * count and the unit time of its configuration.
+ * <p/>
+ * Implementations are stateless. The runtime state of each caller is kept in a primitive array
+ * created by {@link #createState(CallerConfiguration, long)}, so checking access does not
+ * allocate. Callers should not access the same state array concurrently.
+ */
+public interface RateLimitAlgorithm {
+
+    /**
+     * Creates the runtime state of a caller which accesses for the first time
+     *
+     * @param configuration the configuration of the caller
+     * @param currentTime   the current system time
+     * @return the initial state of the caller
+     */
+    long[] createState(CallerConfiguration configuration, long currentTime);
+
+    /**
+     * Checks whether the given state was created for a configuration equivalent to the given one,
+     * so it can still be used after the configuration is changed.
+     *
+     * @param state         the state of the caller
+     * @param configuration the current configuration of the caller
+     * @return true if the state can be used with the configuration
+     */
+    boolean isCompatible(long[] state, CallerConfiguration configuration);
+
+    /**
+     * Try to take the given number of permits, updating the state of the caller on success
+     *
+     * @param state         the state of the caller
+     * @param configuration the configuration of the caller
+     * @param currentTime   the current system time
+     * @param permits       the number of permits requested
+     * @return true if the caller can access
+     */
+    boolean tryAcquire(long[] state, CallerConfiguration configuration, long currentTime, long permits);
+}
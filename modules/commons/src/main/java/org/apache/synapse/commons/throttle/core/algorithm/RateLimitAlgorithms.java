@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import org.apache.synapse.commons.throttle.core.ThrottleConstants;
+
+/**
+ * Resolves the rate limiting algorithms which can be selected in a throttle policy
+ */
+public final class RateLimitAlgorithms {
+
+    private static final RateLimitAlgorithm TOKEN_BUCKET = new TokenBucketAlgorithm();
+    private static final RateLimitAlgorithm GCRA = new GCRAAlgorithm();
+    private static final RateLimitAlgorithm SLIDING_LOG = new SlidingLogAlgorithm();
+
+    private RateLimitAlgorithms() {
+    }
+
+    /**
+     * Returns the implementation of the given algorithm
+     *
+     * @param algorithm one of the algorithm constants in ThrottleConstants
+     * @return the algorithm or null for the fixed window algorithm, which is implemented by the
+     * CallerContext itself
+     */
+    public static RateLimitAlgorithm getAlgorithm(int algorithm) {
+        switch (algorithm) {
+            case ThrottleConstants.TOKEN_BUCKET_ALGORITHM:
+                return TOKEN_BUCKET;
+            case ThrottleConstants.GCRA_ALGORITHM:
+                return GCRA;
+            case ThrottleConstants.SLIDING_LOG_ALGORITHM:
+                return SLIDING_LOG;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parses the name of an algorithm as given in a throttle policy
+     *
+     * @param name the name of the algorithm, e.g. TokenBucket
+     * @return one of the algorithm constants in ThrottleConstants or -1 if the name is unknown
+     */
+    public static int parse(String name) {
+        String normalized = name.trim().replace("-", "").replace("_", "").toLowerCase();
+        if ("fixedwindow".equals(normalized)) {
+            return ThrottleConstants.FIXED_WINDOW_ALGORITHM;
+        } else if ("tokenbucket".equals(normalized)) {
+            return ThrottleConstants.TOKEN_BUCKET_ALGORITHM;
+        } else if ("gcra".equals(normalized)) {
+            return ThrottleConstants.GCRA_ALGORITHM;
+        } else if ("slidinglog".equals(normalized) || "slidingwindowlog".equals(normalized)) {
+            return ThrottleConstants.SLIDING_LOG_ALGORITHM;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import org.apache.synapse.commons.throttle.core.CallerConfiguration;
+
+/**
+ * Sliding window log which allows at most maximum count requests within any unit time long
+ * period. The access times of the allowed requests are kept in a ring buffer, so the memory used
+ * per caller is proportional to the maximum count.
+ */
+public class SlidingLogAlgorithm implements RateLimitAlgorithm {
+
+    /* state layout - the head index, the number of logged requests, followed by the ring buffer */
+    private static final int HEAD = 0;
+    private static final int SIZE = 1;
+    private static final int LOG_START = 2;
+
+    public long[] createState(CallerConfiguration configuration, long currentTime) {
+        return new long[LOG_START + configuration.getMaximumRequestPerUnitTime()];
+    }
+
+    public boolean isCompatible(long[] state, CallerConfiguration configuration) {
+        return state.length == LOG_START + configuration.getMaximumRequestPerUnitTime();
+    }
+
+    public boolean tryAcquire(long[] state, CallerConfiguration configuration, long currentTime, long permits) {
+        int capacity = state.length - LOG_START;
+        int head = (int) state[HEAD];
+        int size = (int) state[SIZE];
+
+        // evict the requests which have left the window
+        long windowStart = currentTime - configuration.getUnitTime();
+        while (size > 0 && state[LOG_START + head] <= windowStart) {
+            head = (head + 1) % capacity;
+            size--;
+        }
+        state[HEAD] = head;
+
+        if (size + permits > capacity) {
+            state[SIZE] = size;
+            return false;
+        }
+        for (long i = 0; i < permits; i++) {
+            state[LOG_START + (head + size) % capacity] = currentTime;
+            size++;
+        }
+        state[SIZE] = size;
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import org.apache.synapse.commons.throttle.core.CallerConfiguration;
+
+/**
+ * Token bucket holding up to the maximum count of tokens, which is refilled continuously at the
+ * rate of maximum count tokens per unit time. A full bucket allows a burst of maximum count
+ * requests, after which requests are admitted at the refill rate.
+ * <p/>
+ * Tokens are kept in units of 1/unitTime of a token so that refilling is exact integer arithmetic.
+ */
+public class TokenBucketAlgorithm implements RateLimitAlgorithm {
+
+    private static final int TOKENS = 0;
+    private static final int LAST_REFILL_TIME = 1;
+    private static final int CAPACITY = 2;
+
+    public long[] createState(CallerConfiguration configuration, long currentTime) {
+        long capacity = capacityOf(configuration);
+        return new long[]{capacity, currentTime, capacity};
+    }
+
+    public boolean isCompatible(long[] state, CallerConfiguration configuration) {
+        return state.length == 3 && state[CAPACITY] == capacityOf(configuration);
+    }
+
+    public boolean tryAcquire(long[] state, CallerConfiguration configuration, long currentTime, long permits) {
+        long elapsed = currentTime - state[LAST_REFILL_TIME];
+        if (elapsed > 0) {
+            long capacity = state[CAPACITY];
+            long maxRequest = configuration.getMaximumRequestPerUnitTime();
+            // refilling for longer than a unit time always fills up the bucket
+            long refill = elapsed >= configuration.getUnitTime() ? capacity : elapsed * maxRequest;
+            state[TOKENS] = Math.min(capacity, state[TOKENS] + refill);
+            state[LAST_REFILL_TIME] = currentTime;
+        }
+        long cost = permits * configuration.getUnitTime();
+        if (state[TOKENS] >= cost) {
+            state[TOKENS] -= cost;
+            return true;
+        }
+        return false;
+    }
+
+    private static long capacityOf(CallerConfiguration configuration) {
+        return (long) configuration.getMaximumRequestPerUnitTime() * configuration.getUnitTime();
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.synapse.commons.throttle.core.internal;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.throttle.core.BatchingDistributedCounterManager;
 import org.apache.synapse.commons.throttle.core.DistributedCounterManager;
 import org.apache.synapse.commons.throttle.core.ThrottleProperties;
 import org.apache.synapse.commons.throttle.core.ThrottleUtil;
@@ -55,11 +56,28 @@ public class ThrottleServiceDataHolder {
 	}
 
 	public void addDistributedCounterManager(DistributedCounterManager distributedCounterManager){
-		distributedCounterManagerMap.put(distributedCounterManager.getType(),distributedCounterManager);
+		if (throttleProperties != null && throttleProperties.isDistributedCounterBatchingEnabled()) {
+			long flushInterval = Long.parseLong(throttleProperties.getDistributedCounterBatchingFlushInterval());
+			long maxPendingDelta = Long.parseLong(throttleProperties.getDistributedCounterBatchingMaxPendingDelta());
+			if (log.isDebugEnabled()) {
+				log.debug("Batching updates of the " + distributedCounterManager.getType() +
+						" distributed counters every " + flushInterval + "ms");
+			}
+			distributedCounterManager = new BatchingDistributedCounterManager(distributedCounterManager,
+					flushInterval, maxPendingDelta);
+		}
+		shutdownIfBatching(distributedCounterManagerMap.put(distributedCounterManager.getType(),
+				distributedCounterManager));
 	}
 	public void removeDistributedCounterManager(DistributedCounterManager distributedCounterManager){
 		if (distributedCounterManager != null){
-			distributedCounterManagerMap.remove(distributedCounterManager.getType());
+			shutdownIfBatching(distributedCounterManagerMap.remove(distributedCounterManager.getType()));
+		}
+	}
+
+	private void shutdownIfBatching(DistributedCounterManager distributedCounterManager) {
+		if (distributedCounterManager instanceof BatchingDistributedCounterManager) {
+			((BatchingDistributedCounterManager) distributedCounterManager).shutdown();
 		}
 	}
 
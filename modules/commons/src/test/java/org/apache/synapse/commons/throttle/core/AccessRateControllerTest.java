@@ -0,0 +1,125 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.commons.throttle.core;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.impl.builder.StAXOMBuilder;
+import org.apache.neethi.PolicyEngine;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AccessRateControllerTest extends TestCase {
+
+    private static final int MAX_COUNT = 20;
+
+    private String policy = "<wsp:Policy xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\"\n" +
+            "            xmlns:throttle=\"http://www.wso2.org/products/wso2commons/throttle\">\n" +
+            "<throttle:ModuleThrottleAssertion>\n" +
+            "    <wsp:Policy>\n" +
+            "        <throttle:ID throttle:type=\"IP\">other</throttle:ID>\n" +
+            "        <wsp:Policy>\n" +
+            "            <throttle:Control>\n" +
+            "                <wsp:Policy>\n" +
+            "                    <throttle:MaximumCount>" + MAX_COUNT + "</throttle:MaximumCount>\n" +
+            "                    <throttle:UnitTime>600000</throttle:UnitTime>\n" +
+            "                </wsp:Policy>\n" +
+            "            </throttle:Control>\n" +
+            "        </wsp:Policy>\n" +
+            "    </wsp:Policy>\n" +
+            "</throttle:ModuleThrottleAssertion>\n" +
+            "</wsp:Policy>";
+
+    public void testAllowedRequestsPerCallerUnderContention() throws Exception {
+        Throttle throttle = ThrottleFactory.createModuleThrottle(PolicyEngine.getPolicy(createOMElement(policy)));
+        final ThrottleContext throttleContext = throttle.getThrottleContext(ThrottleConstants.IP_BASED_THROTTLE_KEY);
+        final AccessRateController controller = new AccessRateController();
+
+        final int callers = 16;
+        final int requestsPerCaller = MAX_COUNT * 3;
+        final AtomicInteger[] allowed = new AtomicInteger[callers];
+        for (int i = 0; i < callers; i++) {
+            allowed[i] = new AtomicInteger();
+        }
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < callers * requestsPerCaller; i++) {
+            final int caller = i % callers;
+            executorService.submit(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        if (controller.canAccess(throttleContext, "10.0.0." + caller,
+                                ThrottleConstants.IP_BASE).isAccessAllowed()) {
+                            allowed[caller].incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(0, errors.get());
+        for (int i = 0; i < callers; i++) {
+            assertEquals("Allowed requests of caller " + i, MAX_COUNT, allowed[i].get());
+            assertNotNull(throttleContext.getCallerContext("10.0.0." + i));
+        }
+    }
+
+    public void testProhibitedCallerIsNotCleanedUp() throws Exception {
+        String prohibitingPolicy = policy.replace("<throttle:MaximumCount>" + MAX_COUNT,
+                "<throttle:Algorithm>TokenBucket</throttle:Algorithm>\n" +
+                "                    <throttle:ProhibitTimePeriod>60000</throttle:ProhibitTimePeriod>\n" +
+                "                    <throttle:MaximumCount>1").replace("600000", "1000");
+        Throttle throttle = ThrottleFactory.createModuleThrottle(
+                PolicyEngine.getPolicy(createOMElement(prohibitingPolicy)));
+        ThrottleContext throttleContext = throttle.getThrottleContext(ThrottleConstants.IP_BASED_THROTTLE_KEY);
+        AccessRateController controller = new AccessRateController();
+
+        assertTrue(controller.canAccess(throttleContext, "10.0.0.1", ThrottleConstants.IP_BASE).isAccessAllowed());
+        assertFalse(controller.canAccess(throttleContext, "10.0.0.1", ThrottleConstants.IP_BASE).isAccessAllowed());
+
+        // the unit time is long over, but the caller is still prohibited
+        CallerContext caller = throttleContext.getCallerContext("10.0.0.1");
+        caller.cleanUpCallers(throttleContext.getThrottleConfiguration().getCallerConfiguration(caller.getRoleId()),
+                throttleContext, System.currentTimeMillis() + 10000);
+
+        assertNotNull(throttleContext.getCallerContext("10.0.0.1"));
+        assertFalse(controller.canAccess(throttleContext, "10.0.0.1", ThrottleConstants.IP_BASE).isAccessAllowed());
+    }
+
+    private OMElement createOMElement(String xml) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        return new StAXOMBuilder(reader).getDocumentElement();
+    }
+}
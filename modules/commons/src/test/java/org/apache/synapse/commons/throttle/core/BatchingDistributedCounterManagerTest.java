@@ -0,0 +1,285 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchingDistributedCounterManagerTest extends TestCase {
+
+    private InMemoryCounterManager store;
+
+    private BatchingDistributedCounterManager batching;
+
+    @Override
+    protected void setUp() throws Exception {
+        store = new InMemoryCounterManager();
+        batching = new BatchingDistributedCounterManager(store, 100);
+    }
+
+    public void testIncrementsAreFlushedInBatches() {
+        for (int i = 0; i < 50; i++) {
+            batching.asyncGetAndAddCounter("a", 1);
+            batching.asyncGetAndAddCounter("b", 1);
+        }
+        assertEquals(0, store.getCounter("a"));
+        assertEquals(50, batching.getCounter("a"));
+
+        batching.flush();
+        assertEquals(50, store.getCounter("a"));
+        assertEquals(50, store.getCounter("b"));
+        assertEquals(1, store.batches.get());
+        assertEquals(50, batching.getCounter("a"));
+    }
+
+    public void testGetAndAddReturnsValueBeforeIncrement() {
+        store.setCounter("a", 10);
+        assertEquals(10, batching.asyncGetAndAddCounter("a", 1));
+        assertEquals(11, batching.asyncGetAndAddCounter("a", 1));
+        assertEquals(13, batching.addAndGetCounter("a", 1));
+    }
+
+    public void testMaxPendingDeltaForcesFlush() {
+        for (int i = 0; i < 100; i++) {
+            batching.asyncAddCounter("a", 1);
+        }
+        assertEquals(100, store.getCounter("a"));
+        assertEquals(100, batching.getCounter("a"));
+        assertEquals(1, store.batches.get());
+    }
+
+    public void testFlushReconcilesIncrementsOfOtherNodes() {
+        batching.asyncAddCounter("a", 5);
+        store.addAndGetCounter("a", 20);
+        assertEquals(5, batching.getCounter("a"));
+
+        batching.flush();
+        assertEquals(25, batching.getCounter("a"));
+
+        // a key which is only read is refreshed too
+        store.addAndGetCounter("a", 10);
+        batching.flush();
+        assertEquals(35, batching.getCounter("a"));
+    }
+
+    public void testIdleKeysAreEvicted() {
+        batching.asyncAddCounter("a", 5);
+        batching.flush();
+        batching.flush();
+        store.setCounter("a", 42);
+        assertEquals(42, batching.getCounter("a"));
+    }
+
+    public void testSetAndRemoveDiscardPendingIncrements() {
+        batching.asyncAddCounter("a", 5);
+        batching.setCounter("a", 1);
+        batching.flush();
+        assertEquals(1, store.getCounter("a"));
+
+        batching.asyncAddCounter("b", 5);
+        batching.removeCounter("b");
+        batching.flush();
+        assertEquals(0, store.getCounter("b"));
+    }
+
+    public void testFailedFlushIsRetried() {
+        batching.asyncAddCounter("a", 5);
+        store.fail = true;
+        batching.flush();
+        assertEquals(0, store.getCounter("a"));
+        assertEquals(5, batching.getCounter("a"));
+
+        store.fail = false;
+        batching.flush();
+        assertEquals(5, store.getCounter("a"));
+    }
+
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        final int threads = 8;
+        final int increments = 10000;
+        final BatchingDistributedCounterManager manager = new BatchingDistributedCounterManager(store, 5, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < increments; i++) {
+                        manager.asyncAddCounter("key" + (i % 4), 1);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        manager.shutdown();
+
+        long total = 0;
+        for (int i = 0; i < 4; i++) {
+            total += store.getCounter("key" + i);
+        }
+        assertEquals(threads * increments, total);
+        assertTrue(store.calls.get() < threads * increments);
+    }
+
+    public void testExpiryIsSetAgainWhenFlushRecreatesCounter() {
+        batching.setCounterWithExpiry("a", 0, 12345L);
+        batching.asyncAddCounter("a", 5);
+        // the counter expires in the store before the flush
+        store.removeCounter("a");
+        batching.flush();
+        assertEquals(5, store.getCounter("a"));
+        assertEquals(Long.valueOf(12345L), store.expiries.get("a"));
+
+        // a counter which did not expire keeps its expiry
+        store.expiries.clear();
+        batching.asyncAddCounter("a", 5);
+        batching.flush();
+        assertEquals(10, store.getCounter("a"));
+        assertTrue(store.expiries.isEmpty());
+    }
+
+    public void testSetCounterWithExpiryKeepsValue() {
+        batching.setCounterWithExpiry("a", 7, 12345L);
+        assertEquals(7, batching.getCounter("a"));
+        assertEquals(8, batching.addAndGetCounter("a", 1));
+        batching.flush();
+        assertEquals(8, store.getCounter("a"));
+    }
+
+    /**
+     * Distributed counter manager stand-in which keeps the counters in memory
+     */
+    private static class InMemoryCounterManager implements DistributedCounterManager {
+
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+
+        private volatile boolean fail;
+
+        private AtomicLong counter(String key) {
+            return counters.computeIfAbsent(key, k -> new AtomicLong());
+        }
+
+        @Override
+        public Map<String, Long> addCounters(Map<String, Long> deltas) {
+            if (fail) {
+                throw new IllegalStateException("Store is not reachable");
+            }
+            batches.incrementAndGet();
+            return DistributedCounterManager.super.addCounters(deltas);
+        }
+
+        public long getCounter(String key) {
+            return counter(key).get();
+        }
+
+        public void setCounter(String key, long value) {
+            counter(key).set(value);
+        }
+
+        public void setCounterWithExpiry(String key, long value, long expiryTime) {
+            setCounter(key, value);
+        }
+
+        public long addAndGetCounter(String key, long value) {
+            calls.incrementAndGet();
+            return counter(key).addAndGet(value);
+        }
+
+        public void removeCounter(String key) {
+            counters.remove(key);
+        }
+
+        public long asyncGetAndAddCounter(String key, long value) {
+            calls.incrementAndGet();
+            return counter(key).getAndAdd(value);
+        }
+
+        public long asyncAddCounter(String key, long value) {
+            return addAndGetCounter(key, value);
+        }
+
+        public long asyncGetAndAlterCounter(String key, long value) {
+            return counter(key).getAndSet(value);
+        }
+
+        public long asyncGetAlterAndSetExpiryOfCounter(String key, long value, long expiryTimeStamp) {
+            return asyncGetAndAlterCounter(key, value);
+        }
+
+        public long getTimestamp(String key) {
+            return 0;
+        }
+
+        public void setTimestamp(String key, long timeStamp) {
+        }
+
+        public void setTimestampWithExpiry(String key, long timeStamp, long expiryTimeStamp) {
+        }
+
+        public void removeTimestamp(String key) {
+        }
+
+        public boolean isEnable() {
+            return true;
+        }
+
+        public String getType() {
+            return "in-memory";
+        }
+
+        public void setExpiry(String key, long expiryTimeStamp) {
+            expiries.put(key, expiryTimeStamp);
+        }
+
+        public long getTtl(String key) {
+            return 0;
+        }
+
+        public long setLock(String key, String value) {
+            return 0;
+        }
+
+        public boolean setLockWithExpiry(String key, String value, long expiryTimeStamp) {
+            return true;
+        }
+
+        public long getKeyLockRetrievalTimeout() {
+            return 0;
+        }
+
+        public void removeLock(String key) {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.throttle.core.algorithm;
+
+import junit.framework.TestCase;
+import org.apache.synapse.commons.throttle.core.CallerConfiguration;
+import org.apache.synapse.commons.throttle.core.ThrottleConstants;
+import org.apache.synapse.commons.throttle.core.impl.ipbase.IPBaseCallerConfiguration;
+
+public class RateLimitAlgorithmTest extends TestCase {
+
+    private static final long START = 1_000_000L;
+
+    private final CallerConfiguration configuration = new IPBaseCallerConfiguration(1000, 10, 0, "other");
+
+    public void testTokenBucketBurstAndRefill() {
+        RateLimitAlgorithm algorithm = new TokenBucketAlgorithm();
+        long[] state = algorithm.createState(configuration, START);
+
+        assertEquals(10, acquire(algorithm, state, START, 20));
+        // one token is refilled every 100 ms
+        assertEquals(0, acquire(algorithm, state, START + 99, 1));
+        assertEquals(1, acquire(algorithm, state, START + 100, 5));
+        assertEquals(5, acquire(algorithm, state, START + 600, 10));
+        // the bucket never holds more than the maximum count
+        assertEquals(10, acquire(algorithm, state, START + 100000, 20));
+    }
+
+    public void testGCRASpacesRequestsAfterBurst() {
+        RateLimitAlgorithm algorithm = new GCRAAlgorithm();
+        long[] state = algorithm.createState(configuration, START);
+
+        assertEquals(10, acquire(algorithm, state, START, 20));
+        assertEquals(0, acquire(algorithm, state, START + 50, 1));
+        assertEquals(1, acquire(algorithm, state, START + 100, 5));
+        assertEquals(1, acquire(algorithm, state, START + 200, 5));
+        // after a long idle period the full burst is available again
+        assertEquals(10, acquire(algorithm, state, START + 10000000, 20));
+    }
+
+    public void testSlidingLogHasNoWindowEdgeBurst() {
+        RateLimitAlgorithm algorithm = new SlidingLogAlgorithm();
+        long[] state = algorithm.createState(configuration, START);
+
+        assertEquals(10, acquire(algorithm, state, START + 900, 20));
+        // a fixed window starting at START would allow a second burst here
+        assertEquals(0, acquire(algorithm, state, START + 1100, 20));
+        assertEquals(10, acquire(algorithm, state, START + 1900, 20));
+    }
+
+    public void testMultiplePermits() {
+        RateLimitAlgorithm algorithm = new SlidingLogAlgorithm();
+        long[] state = algorithm.createState(configuration, START);
+
+        assertTrue(algorithm.tryAcquire(state, configuration, START, 8));
+        assertFalse(algorithm.tryAcquire(state, configuration, START, 3));
+        assertTrue(algorithm.tryAcquire(state, configuration, START, 2));
+    }
+
+    public void testStateCompatibility() {
+        RateLimitAlgorithm algorithm = new TokenBucketAlgorithm();
+        long[] state = algorithm.createState(configuration, START);
+        assertTrue(algorithm.isCompatible(state, configuration));
+        assertFalse(algorithm.isCompatible(state, new IPBaseCallerConfiguration(1000, 20, 0, "other")));
+    }
+
+    public void testParse() {
+        assertEquals(ThrottleConstants.TOKEN_BUCKET_ALGORITHM, RateLimitAlgorithms.parse("TokenBucket"));
+        assertEquals(ThrottleConstants.GCRA_ALGORITHM, RateLimitAlgorithms.parse(" gcra "));
+        assertEquals(ThrottleConstants.SLIDING_LOG_ALGORITHM, RateLimitAlgorithms.parse("sliding-log"));
+        assertEquals(ThrottleConstants.FIXED_WINDOW_ALGORITHM, RateLimitAlgorithms.parse("FixedWindow"));
+        assertEquals(-1, RateLimitAlgorithms.parse("leaky"));
+    }
+
+    private int acquire(RateLimitAlgorithm algorithm, long[] state, long time, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (algorithm.tryAcquire(state, configuration, time, 1)) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+}
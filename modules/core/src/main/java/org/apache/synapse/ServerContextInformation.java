@@ -129,6 +129,19 @@ public class ServerContextInformation {
         return 0;
     }
 
+    /**
+     * Returns the largest delay, in milliseconds, observed between the expiry time of a callback
+     * and the time it was actually expired.
+     *
+     * @return the maximum timeout skew of the callbacks
+     */
+    public long getMaxCallbackTimeoutSkew() {
+        if (synapseCallbackReceiver != null) {
+            return synapseCallbackReceiver.getMaxTimeoutSkew();
+        }
+        return 0;
+    }
+
     public SynapseDebugManager getSynapseDebugManager(){
         return debugManager;
     }
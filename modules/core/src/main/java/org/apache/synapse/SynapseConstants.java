@@ -373,6 +373,11 @@ public final class SynapseConstants {
             = "synapse.sal.endpoints.sesssion.timeout.default";    
 
     public static final long SAL_ENDPOINTS_DEFAULT_SESSION_TIMEOUT = 120000;
+    /** Maximum number of sessions kept by the session affinity endpoints, -1 for no limit */
+    public static final String SAL_SESSIONS_MAX_SIZE = "synapse.sal.sessions.max.size";
+    public static final int DEFAULT_SAL_SESSIONS_MAX_SIZE = -1;
+    /** Either expiring-first or reject, applied when a session is established on a full table */
+    public static final String SAL_SESSIONS_EVICTION_POLICY = "synapse.sal.sessions.eviction.policy";
     
 
     /** A name to use for anonymous sequences in the sequence stack */
@@ -406,6 +411,11 @@ public final class SynapseConstants {
     public static final String NO_DEFAULT_CONTENT_TYPE = "NoDefaultContentType";
     // Synapse property to store Blocking Message Sender to do blocking invocation
     public static final String BLOCKING_MSG_SENDER = "blockingMsgSender";
+    // Synapse property to run blocking Call mediator invocations on virtual threads. While blocking Call
+    // mediators are deployed in this mode, new messages maintain the continuation stack to resume from
+    public static final String BLOCKING_CALL_VIRTUAL_THREADS = "synapse.blocking.call.virtual.threads";
+    // Synapse property to limit the blocking Call mediator invocations running on virtual threads at a time
+    public static final String BLOCKING_CALL_VIRTUAL_THREADS_MAX = "synapse.blocking.call.virtual.threads.max";
 
     /** Synapse server instance name */
     public static final String SERVER_NAME = "serverName";
@@ -497,6 +507,7 @@ public final class SynapseConstants {
     public static final int ENDPOINT_ADDRESS_NONE_READY = 303001;
     public static final int ENDPOINT_WSDL_NONE_READY = 303002;
     public static final int ENDPOINT_AUTH_FAILURE = 303003;
+    public static final int ENDPOINT_CONCURRENCY_LIMIT_REACHED = 303004;
     // Failure on endpoint in the session 
     public static final int ENDPOINT_SAL_NOT_READY = 309001;
     public static final int ENDPOINT_SAL_INVALID_PATH = 309002;
@@ -630,6 +641,39 @@ public final class SynapseConstants {
             "suspend.duration.on.maximum.recursive.failover";
     public static final String EXCLUDE_PAYLOAD_DETAILS_FROM_ERROR = "exclude.payload.details.from.error";
 
+    /**
+     * Enables the adaptive concurrency limit of leaf endpoints. An endpoint property with the same
+     * name overrides the global value for that endpoint
+     */
+    public static final String ENDPOINT_ADAPTIVE_CONCURRENCY = "synapse.endpoint.adaptive.concurrency.enabled";
+    public static final String ENDPOINT_ADAPTIVE_CONCURRENCY_INITIAL_LIMIT =
+            "synapse.endpoint.adaptive.concurrency.initial.limit";
+    public static final String ENDPOINT_ADAPTIVE_CONCURRENCY_MIN_LIMIT =
+            "synapse.endpoint.adaptive.concurrency.min.limit";
+    public static final String ENDPOINT_ADAPTIVE_CONCURRENCY_MAX_LIMIT =
+            "synapse.endpoint.adaptive.concurrency.max.limit";
+    public static final int DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_MIN_LIMIT = 1;
+    public static final int DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_MAX_LIMIT = 1000;
+    /** Message property holding the concurrency permit taken for a message sent to an endpoint */
+    public static final String ENDPOINT_CONCURRENCY_PERMIT = "_ENDPOINT_CONCURRENCY_PERMIT";
+    /** Message property holding the requests counted as outstanding by load balance algorithms */
+    public static final String LB_OUTSTANDING_REQUEST = "_LB_OUTSTANDING_REQUEST";
+
+    /**
+     * Enables hedging of load balance and failover endpoints. An endpoint property with the same
+     * name overrides the global value for that endpoint
+     */
+    public static final String ENDPOINT_HEDGING = "synapse.endpoint.hedging.enabled";
+    public static final String ENDPOINT_HEDGING_DELAY_PERCENTILE = "synapse.endpoint.hedging.delay.percentile";
+    public static final String ENDPOINT_HEDGING_MIN_DELAY = "synapse.endpoint.hedging.min.delay";
+    public static final String ENDPOINT_HEDGING_BUDGET = "synapse.endpoint.hedging.budget";
+    public static final int DEFAULT_ENDPOINT_HEDGING_DELAY_PERCENTILE = 95;
+    public static final int DEFAULT_ENDPOINT_HEDGING_MIN_DELAY = 10;
+    public static final int DEFAULT_ENDPOINT_HEDGING_BUDGET = 5;
+    /** Message property shared by the attempts of a hedged message */
+    public static final String HEDGED_REQUEST = "_HEDGED_REQUEST";
+
     /**
      * Synapse Configuration holder property name, used for handling synapse import deployments
      */
@@ -102,7 +102,7 @@ public class SynapseControllerFactory {
             }
 
             log.info("The timeout handler will run every : " +
-                    (SynapseConfigUtils.getTimeoutHandlerInterval() / 1000) + "s");
+                    SynapseConfigUtils.getTimeoutHandlerInterval() + "ms");
         }
     }
 
@@ -42,6 +42,9 @@ import org.apache.synapse.config.xml.FactoryUtils;
 import org.apache.synapse.config.xml.rest.VersionStrategyFactory;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.analysis.ContentBuildAnalysisView;
+import org.apache.synapse.mediators.analysis.ContentBuildAnalyzer;
+import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.api.dispatch.DispatcherHelper;
 import org.apache.synapse.api.dispatch.RESTDispatcher;
 import org.apache.synapse.api.version.DefaultStrategy;
@@ -617,6 +620,7 @@ public class API extends AbstractRequestProcessor implements ManagedLifecycle, A
         auditInfo("Initializing API: " + getName());
         for (Resource resource : resources.values()) {
             resource.init(se);
+            analyzeContentBuild(resource);
         }
         
         for (Handler handler : handlers) {
@@ -647,8 +651,13 @@ public class API extends AbstractRequestProcessor implements ManagedLifecycle, A
 
     public void destroy() {
         auditInfo("Destroying API: " + getName());
+        ContentBuildAnalysisView analysisView = ContentBuildAnalysisView.getInstance();
         for (Resource resource : resources.values()) {
             resource.destroy();
+            String artifactName = getContentBuildArtifactName(resource);
+            analysisView.removeReport(artifactName + "/in");
+            analysisView.removeReport(artifactName + "/out");
+            analysisView.removeReport(artifactName + "/fault");
         }
 
         for (Handler handler : handlers) {
@@ -658,6 +667,33 @@ public class API extends AbstractRequestProcessor implements ManagedLifecycle, A
         }
     }
 
+    /**
+     * Records the content build analysis of the inline sequences of the given resource
+     *
+     * @param resource resource of this API
+     */
+    private void analyzeContentBuild(Resource resource) {
+        String artifactName = getContentBuildArtifactName(resource);
+        addContentBuildReport(artifactName + "/in", resource.getInSequence());
+        addContentBuildReport(artifactName + "/out", resource.getOutSequence());
+        addContentBuildReport(artifactName + "/fault", resource.getFaultSequence());
+    }
+
+    private void addContentBuildReport(String artifactName, SequenceMediator sequence) {
+        if (sequence != null && sequence.getKey() == null) {
+            ContentBuildAnalysisView.getInstance().addReport(ContentBuildAnalyzer.analyze(artifactName, sequence));
+        }
+    }
+
+    private String getContentBuildArtifactName(Resource resource) {
+        StringBuilder artifactName = new StringBuilder("API:").append(getName()).append(':');
+        artifactName.append(StringUtils.join(resource.getMethods(), ','));
+        if (resource.getDispatcherHelper() != null) {
+            artifactName.append(' ').append(resource.getDispatcherHelper().getString());
+        }
+        return artifactName.toString();
+    }
+
     public VersionStrategy getVersionStrategy() {
         return versionStrategy;
     }
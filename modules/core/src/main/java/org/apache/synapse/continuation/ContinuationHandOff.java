@@ -0,0 +1,99 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.continuation;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defers the hand over of a message context to another thread until the thread mediating it has
+ * returned from the entry point of the mediation, e.g. a message receiver.
+ * <p/>
+ * A mediator which continues the flow of a message on another thread, using the ContinuationState
+ * stack, returns false and unwinds the sequences it was reached from. Those sequences and the entry
+ * point still work on the message context while they return, so the other thread must not be
+ * started before. Entry points open a hand off scope around the mediation and close it once they
+ * are done with the message context, which starts the deferred hand overs. A mediator can only
+ * defer a hand over while a scope is open on the current thread.
+ */
+public final class ContinuationHandOff {
+
+    private static final Log log = LogFactory.getLog(ContinuationHandOff.class);
+
+    private static final ThreadLocal<List<Runnable>> deferred = new ThreadLocal<List<Runnable>>();
+
+    private ContinuationHandOff() {
+    }
+
+    /**
+     * Open a hand off scope on the current thread
+     *
+     * @return true if a scope was opened, false if one is already open, in which case the caller
+     * must not close it
+     */
+    public static boolean open() {
+        if (deferred.get() != null) {
+            return false;
+        }
+        deferred.set(new ArrayList<Runnable>(1));
+        return true;
+    }
+
+    /**
+     * @return whether a hand off can be deferred on the current thread
+     */
+    public static boolean isOpen() {
+        return deferred.get() != null;
+    }
+
+    /**
+     * Defer a hand over until the scope of the current thread is closed
+     *
+     * @param handOver task starting the other thread
+     */
+    public static void defer(Runnable handOver) {
+        List<Runnable> handOvers = deferred.get();
+        if (handOvers == null) {
+            throw new IllegalStateException("No hand off scope is open on the current thread");
+        }
+        handOvers.add(handOver);
+    }
+
+    /**
+     * Close the scope of the current thread and run the hand overs deferred in it
+     */
+    public static void close() {
+        List<Runnable> handOvers = deferred.get();
+        deferred.remove();
+        if (handOvers == null) {
+            return;
+        }
+        for (Runnable handOver : handOvers) {
+            try {
+                handOver.run();
+            } catch (RuntimeException e) {
+                log.error("Error while handing over a message to continue its mediation", e);
+            }
+        }
+    }
+}
@@ -169,7 +169,9 @@ public class ContinuationStackManager {
     }
 
     /**
-     * Get a clone of a SeqContinuationState
+     * Get a clone of a SeqContinuationState.
+     * The chain of ReliantContinuationStates is copied iteratively, since the positions of the
+     * original chain keep changing while the original flow proceeds.
      *
      * @param oriSeqContinuationState original SeqContinuationState
      * @return cloned SeqContinuationState
@@ -180,30 +182,37 @@ public class ContinuationStackManager {
                 new SeqContinuationState(oriSeqContinuationState.getSeqType(),
                                          oriSeqContinuationState.getSeqName());
         clone.setPosition(oriSeqContinuationState.getPosition());
-        if (oriSeqContinuationState.hasChild()) {
-            clone.setChildContState(getClonedReliantContState(
-                    oriSeqContinuationState.getChildContState()));
+
+        ContinuationState tail = clone;
+        ContinuationState oriChild = oriSeqContinuationState.getChildContState();
+        while (oriChild != null) {
+            ReliantContinuationState oriReliantState = (ReliantContinuationState) oriChild;
+            ReliantContinuationState reliantClone =
+                    new ReliantContinuationState(oriReliantState.getSubBranch());
+            reliantClone.setPosition(oriReliantState.getPosition());
+            tail.setChildContState(reliantClone);
+            tail = reliantClone;
+            oriChild = oriReliantState.getChildContState();
         }
         return clone;
     }
 
-    /*
-     * Get a clone of the ReliantContinuationState
+    /**
+     * Copy the ContinuationState Stack of a MessageContext to another MessageContext.
+     * Each SeqContinuationState is cloned, so that the two flows can proceed independently.
+     *
+     * @param fromCtx MessageContext to copy the ContinuationStates from
+     * @param toCtx   MessageContext to copy the ContinuationStates to
      */
-    private static ReliantContinuationState getClonedReliantContState(
-            org.apache.synapse.ContinuationState continuationState) {
-
-        ReliantContinuationState oriConstState =
-                (ReliantContinuationState) continuationState;
-        ReliantContinuationState clone =
-                new ReliantContinuationState(oriConstState.getSubBranch());
-
-        clone.setPosition(oriConstState.getPosition());
-        if (oriConstState.hasChild()) {
-            clone.setChildContState(
-                    getClonedReliantContState(oriConstState.getChildContState()));
+    public static void copyContinuationStateStack(MessageContext fromCtx, MessageContext toCtx) {
+        Stack<ContinuationState> continuationStates = fromCtx.getContinuationStateStack();
+        for (int i = 0, size = continuationStates.size(); i < size; i++) {
+            ContinuationState continuationState = continuationStates.get(i);
+            if (continuationState != null) {
+                toCtx.pushContinuationState(
+                        getClonedSeqContinuationState((SeqContinuationState) continuationState));
+            }
         }
-        return clone;
     }
 
     /**
@@ -213,13 +222,11 @@ public class ContinuationStackManager {
     public static void clearStack(MessageContext synCtx) {
         Stack<ContinuationState> continuationStack = synCtx.getContinuationStateStack();
         if (synCtx.isContinuationEnabled()) {
-            synchronized (continuationStack){
-                continuationStack.clear();
-                if (RuntimeStatisticCollector.isOpenTelemetryEnabled()) {
-                    OpenTelemetryManager openTelemetryManager = OpenTelemetryManagerHolder.getOpenTelemetryManager();
-                    if (openTelemetryManager != null) {
-                        openTelemetryManager.getHandler().handleStateStackClearance(synCtx);
-                    }
+            continuationStack.clear();
+            if (RuntimeStatisticCollector.isOpenTelemetryEnabled()) {
+                OpenTelemetryManager openTelemetryManager = OpenTelemetryManagerHolder.getOpenTelemetryManager();
+                if (openTelemetryManager != null) {
+                    openTelemetryManager.getHandler().handleStateStackClearance(synCtx);
                 }
             }
         }
@@ -231,12 +238,10 @@ public class ContinuationStackManager {
      */
     public static ContinuationState peakContinuationStateStack(MessageContext synCtx){
         Stack<ContinuationState> continuationStack = synCtx.getContinuationStateStack();
-        synchronized (continuationStack) {
-            if (!continuationStack.isEmpty()) {
-                return continuationStack.peek();
-            } else {
-                return null;
-            }
+        if (!continuationStack.isEmpty()) {
+            return continuationStack.peek();
+        } else {
+            return null;
         }
     }
 
@@ -245,15 +250,13 @@ public class ContinuationStackManager {
      */
     public static void popContinuationStateStack(MessageContext synCtx){
         Stack<ContinuationState> continuationStack = synCtx.getContinuationStateStack();
-        synchronized (continuationStack) {
-            if (!continuationStack.isEmpty()) {
-                ContinuationState poppedContinuationState = continuationStack.pop();
-                if (RuntimeStatisticCollector.isOpenTelemetryEnabled()) {
-                    OpenTelemetryManager openTelemetryManager = OpenTelemetryManagerHolder.getOpenTelemetryManager();
-                    if (openTelemetryManager != null) {
-                        openTelemetryManager.getHandler()
-                                .handleStateStackRemoval(poppedContinuationState, synCtx);
-                    }
+        if (!continuationStack.isEmpty()) {
+            ContinuationState poppedContinuationState = continuationStack.pop();
+            if (RuntimeStatisticCollector.isOpenTelemetryEnabled()) {
+                OpenTelemetryManager openTelemetryManager = OpenTelemetryManagerHolder.getOpenTelemetryManager();
+                if (openTelemetryManager != null) {
+                    openTelemetryManager.getHandler()
+                            .handleStateStackRemoval(poppedContinuationState, synCtx);
                 }
             }
         }
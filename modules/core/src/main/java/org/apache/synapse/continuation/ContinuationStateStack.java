@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.continuation;
+
+import org.apache.synapse.ContinuationState;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Stack;
+
+/**
+ * ContinuationState Stack which resides in the MessageContext.
+ * <p/>
+ * A continuation stack is owned by a single message context and is only mutated by the thread
+ * which is currently mediating that message. Hence the stack operations used on the mediation
+ * path (push, pop, peek and emptiness checks) work directly on the backing array without taking
+ * the monitor of the underlying {@link java.util.Vector}. Remaining operations keep the
+ * inherited behaviour, so the stack can still be passed wherever a {@link Stack} is expected.
+ */
+public class ContinuationStateStack extends Stack<ContinuationState> {
+
+    private static final long serialVersionUID = 4615471327474836172L;
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    @Override
+    public ContinuationState push(ContinuationState item) {
+        modCount++;
+        if (elementCount == elementData.length) {
+            elementData = Arrays.copyOf(elementData, Math.max(elementData.length << 1, DEFAULT_CAPACITY));
+        }
+        elementData[elementCount++] = item;
+        return item;
+    }
+
+    @Override
+    public ContinuationState pop() {
+        if (elementCount == 0) {
+            throw new EmptyStackException();
+        }
+        modCount++;
+        ContinuationState top = stateAt(--elementCount);
+        elementData[elementCount] = null;
+        return top;
+    }
+
+    @Override
+    public ContinuationState peek() {
+        if (elementCount == 0) {
+            throw new EmptyStackException();
+        }
+        return stateAt(elementCount - 1);
+    }
+
+    @Override
+    public boolean empty() {
+        return elementCount == 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return elementCount == 0;
+    }
+
+    @Override
+    public int size() {
+        return elementCount;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        Arrays.fill(elementData, 0, elementCount, null);
+        elementCount = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ContinuationState stateAt(int index) {
+        return (ContinuationState) elementData[index];
+    }
+}
@@ -187,6 +187,20 @@ public interface SynapseEnvironment {
      */
     public boolean isContinuationEnabled();
 
+    /**
+     * Increment/Decrement the count of blocking Call mediators which continue the flow on virtual
+     * threads by 1
+     * @param isIncrement whether to increment the count
+     */
+    public void updateBlockingCallMediatorCount(boolean isIncrement);
+
+    /**
+     * Whether new messages should maintain the ContinuationState stack, so that blocking Call
+     * mediators can continue their flow on virtual threads
+     * @return whether blocking calls need the continuation stack
+     */
+    public boolean isBlockingCallContinuationEnabled();
+
     /**
      * Add an artifact reference not available in the environment.
      * @param key artifact reference key
@@ -53,6 +53,9 @@ public class AsyncCallback implements AxisCallback {
 
     private SynapseConstants.ENDPOINT_TIMEOUT_TYPE timeoutType;
 
+    /** Time the request was handed over for sending, as returned by System.nanoTime() */
+    private final long sendTime = System.nanoTime();
+
     public AsyncCallback( org.apache.axis2.context.MessageContext messageContext,MessageContext synapseOutMsgCtx) {
         this.synapseOutMsgCtx = synapseOutMsgCtx;
         this.axis2OutMsgCtx = messageContext;
@@ -91,6 +94,10 @@ public class AsyncCallback implements AxisCallback {
         return axis2OutMsgCtx;
     }
 
+    public long getSendTime() {
+        return sendTime;
+    }
+
     public long getTimeOutOn() {
         return timeOutOn;
     }
@@ -37,6 +37,7 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.continuation.ContinuationStateStack;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.mediators.base.SequenceMediator;
@@ -87,7 +88,7 @@ public class Axis2MessageContext implements MessageContext {
     /**
      * ContinuationState stack which is used to store ContinuationStates of mediation flow
      */
-    private final Stack<ContinuationState> continuationStateStack = new Stack<ContinuationState>();
+    private final Stack<ContinuationState> continuationStateStack = new ContinuationStateStack();
 
     /**
      * The Axis2 MessageContext reference
@@ -335,7 +336,7 @@ public class Axis2MessageContext implements MessageContext {
         setAxis2MessageContext(axisMsgCtx);
         this.synCfg = synCfg;
         this.synEnv = synEnv;
-        if (synEnv != null && synEnv.isContinuationEnabled()) {
+        if (synEnv != null && (synEnv.isContinuationEnabled() || synEnv.isBlockingCallContinuationEnabled())) {
             continuationEnabled = true;
         }
     }
@@ -51,6 +51,7 @@ import org.apache.synapse.config.SequenceFlowObserversLoader;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.config.SynapseHandlersLoader;
+import org.apache.synapse.continuation.ContinuationHandOff;
 import org.apache.synapse.continuation.ContinuationStackManager;
 import org.apache.synapse.continuation.SeqContinuationState;
 import org.apache.synapse.core.SynapseEnvironment;
@@ -88,6 +89,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is the Axis2 implementation of the SynapseEnvironment
@@ -129,10 +131,13 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
     TenantInfoInitiator tenantInfoInitiator;
 
     /** Call mediators count */
-    private int callMediatorCount = 0;
+    private final AtomicInteger callMediatorCount = new AtomicInteger(0);
 
     /** Continuation is enabled/disabled*/
-    private boolean continuation = false;
+    private volatile boolean continuation = false;
+
+    /** Blocking Call mediators continuing the flow on virtual threads */
+    private final AtomicInteger blockingCallMediatorCount = new AtomicInteger(0);
 
     /** Unavailable Artifacts referred in the configuration */
     private List<String> unavailableArtifacts = new ArrayList<String>();
@@ -268,6 +273,7 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
     }
 
     public boolean injectMessage(final MessageContext synCtx) {
+        boolean handOffScope = ContinuationHandOff.open();
         try {
 
             if (log.isDebugEnabled()) {
@@ -404,6 +410,9 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
                 debugManager.advertiseMediationFlowTerminatePoint(synCtx);
                 debugManager.releaseMediationFlowLock();
             }
+            if (handOffScope) {
+                ContinuationHandOff.close();
+            }
         }
     }
 
@@ -823,7 +832,7 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
      * @param synCtx MessageContext
      * @return whether mediation is completed
      */
-    private boolean mediateFromContinuationStateStack(MessageContext synCtx) {
+    public boolean mediateFromContinuationStateStack(MessageContext synCtx) {
 
         // Sync mediator ID from MessageContext to ThreadContext when thread switches
         MediatorIdLogSetter.getInstance().syncToThreadContext(synCtx);
@@ -1006,18 +1015,22 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
      *
      * @param isIncrement whether to increment the count
      */
-    public synchronized void updateCallMediatorCount(boolean isIncrement) {
+    public void updateCallMediatorCount(boolean isIncrement) {
         if (isIncrement) {
-            callMediatorCount++;
+            callMediatorCount.incrementAndGet();
             if (!continuation) {
+                continuation = true;
                 log.info("Continuation call is set to true");
             }
-            continuation = true;
         } else {
-            callMediatorCount--;
-            if (callMediatorCount == 0) {
+            if (callMediatorCount.decrementAndGet() == 0) {
                 continuation = false;
-                log.info("Continuation call is set to false");
+                // a concurrent increment may have raced with the reset, hence re-check the count
+                if (callMediatorCount.get() > 0) {
+                    continuation = true;
+                } else {
+                    log.info("Continuation call is set to false");
+                }
             }
         }
     }
@@ -1033,6 +1046,25 @@ public class Axis2SynapseEnvironment implements SynapseEnvironment {
         return continuation;
     }
 
+    /**
+     * Increment/Decrement the count of blocking Call mediators which continue the flow on virtual
+     * threads. Unlike the Call mediator count, this does not enable continuation for the environment,
+     * only new messages maintain the ContinuationState stack while the count is positive.
+     *
+     * @param isIncrement whether to increment the count
+     */
+    public void updateBlockingCallMediatorCount(boolean isIncrement) {
+        if (isIncrement) {
+            blockingCallMediatorCount.incrementAndGet();
+        } else {
+            blockingCallMediatorCount.decrementAndGet();
+        }
+    }
+
+    public boolean isBlockingCallContinuationEnabled() {
+        return blockingCallMediatorCount.get() > 0;
+    }
+
     /**
      * Add an artifact reference not available in the environment.
      * This stored reference will get cleared when artifact becomes available
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Deadline ordered index of the callbacks waiting in the SynapseCallbackReceiver.
+ * <p/>
+ * Message IDs are grouped into buckets of {@code resolution} milliseconds according to the time
+ * their callbacks expire on. The TimeoutHandler only visits the buckets which have become due,
+ * so the cost of a timeout sweep depends on the number of expired callbacks rather than on the
+ * number of outstanding callbacks. Entries of callbacks which complete before they expire are
+ * removed from their bucket when the response is received.
+ */
+public class CallbackTimeoutIndex {
+
+    private final long resolution;
+
+    private final ConcurrentSkipListMap<Long, ConcurrentMap<String, Long>> buckets =
+            new ConcurrentSkipListMap<Long, ConcurrentMap<String, Long>>();
+
+    /**
+     * @param resolution bucket width in milliseconds
+     */
+    public CallbackTimeoutIndex(long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Timeout index resolution should be a positive value");
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * Index a callback against the time it expires on.
+     *
+     * @param messageId  message ID the callback is registered with
+     * @param timeOutOn  time the callback expires on
+     */
+    public void add(String messageId, long timeOutOn) {
+        Long key = bucketOf(timeOutOn);
+        while (true) {
+            ConcurrentMap<String, Long> bucket = buckets.get(key);
+            if (bucket == null) {
+                ConcurrentMap<String, Long> newBucket = new ConcurrentHashMap<String, Long>();
+                bucket = buckets.putIfAbsent(key, newBucket);
+                if (bucket == null) {
+                    bucket = newBucket;
+                }
+            }
+            bucket.put(messageId, timeOutOn);
+            // the bucket may have been taken by a concurrent sweep before the entry was added
+            if (buckets.get(key) == bucket) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a callback which is no longer waiting for a timeout.
+     *
+     * @param messageId message ID the callback is registered with
+     * @param timeOutOn time the callback expires on
+     */
+    public void remove(String messageId, long timeOutOn) {
+        ConcurrentMap<String, Long> bucket = buckets.get(bucketOf(timeOutOn));
+        if (bucket != null) {
+            bucket.remove(messageId);
+        }
+    }
+
+    /**
+     * Remove and return the message IDs of all callbacks which expire on or before the given time.
+     * Callbacks of due buckets which have not expired yet are kept in the index.
+     *
+     * @param currentTime the current time
+     * @return message IDs of the expired callbacks, in the order of their expiry buckets
+     */
+    public List<String> pollExpired(long currentTime) {
+        ConcurrentNavigableMap<Long, ConcurrentMap<String, Long>> due =
+                buckets.headMap(bucketOf(currentTime), true);
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> expired = new ArrayList<String>();
+        List<Map.Entry<String, Long>> notExpired = null;
+        for (Long key : new ArrayList<Long>(due.keySet())) {
+            ConcurrentMap<String, Long> bucket = buckets.remove(key);
+            if (bucket == null) {
+                continue;
+            }
+            for (Map.Entry<String, Long> entry : bucket.entrySet()) {
+                if (entry.getValue() <= currentTime) {
+                    expired.add(entry.getKey());
+                } else {
+                    if (notExpired == null) {
+                        notExpired = new ArrayList<Map.Entry<String, Long>>();
+                    }
+                    notExpired.add(entry);
+                }
+            }
+        }
+        if (notExpired != null) {
+            for (Map.Entry<String, Long> entry : notExpired) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Number of callbacks in the index
+     *
+     * @return number of indexed callbacks
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<String, Long> bucket : buckets.values()) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    public long getResolution() {
+        return resolution;
+    }
+
+    private long bucketOf(long time) {
+        return time / resolution;
+    }
+}
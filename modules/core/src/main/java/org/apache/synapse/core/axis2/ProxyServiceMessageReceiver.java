@@ -35,6 +35,7 @@ import org.apache.synapse.aspects.flow.statistics.collectors.OpenEventCollector;
 import org.apache.synapse.aspects.flow.statistics.collectors.RuntimeStatisticCollector;
 import org.apache.synapse.commons.CorrelationConstants;
 import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.continuation.ContinuationHandOff;
 import org.apache.synapse.transport.customlogsetter.CustomLogSetter;
 import org.apache.synapse.aspects.ComponentType;
 import org.apache.synapse.carbonext.TenantInfoConfigurator;
@@ -64,6 +65,18 @@ public class ProxyServiceMessageReceiver extends SynapseMessageReceiver {
     private ProxyService proxy = null;
 
     public void receive(org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        // a flow continued on another thread is only handed over once this receiver is done with it
+        boolean handOffScope = ContinuationHandOff.open();
+        try {
+            receiveMessage(mc);
+        } finally {
+            if (handOffScope) {
+                ContinuationHandOff.close();
+            }
+        }
+    }
+
+    private void receiveMessage(org.apache.axis2.context.MessageContext mc) throws AxisFault {
 
         boolean traceOn = proxy.getAspectConfiguration().isTracingEnabled();
         boolean traceOrDebugOn = traceOn || log.isDebugEnabled();
@@ -49,10 +49,13 @@ import org.apache.synapse.commons.throttle.core.ConcurrentAccessReplicator;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.endpoints.AbstractEndpoint;
+import org.apache.synapse.endpoints.AdaptiveConcurrencyLimiter;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.FailoverEndpoint;
+import org.apache.synapse.endpoints.HedgedRequest;
 import org.apache.synapse.endpoints.LoadbalanceEndpoint;
 import org.apache.synapse.endpoints.OAuthConfiguredHTTPEndpoint;
+import org.apache.synapse.endpoints.algorithms.LeastOutstandingRequests;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.endpoints.auth.oauth.MessageCache;
 import org.apache.synapse.endpoints.auth.oauth.OAuthUtils;
@@ -64,6 +67,7 @@ import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.Pipe;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
+import org.apache.synapse.transport.passthru.util.RelayUtils;
 import org.apache.synapse.util.ConcurrencyThrottlingUtils;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.util.ResponseAcceptEncodingProcessor;
@@ -86,6 +90,9 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
     private static final Log log = LogFactory.getLog(SynapseCallbackReceiver.class);
     private final boolean isCallbackControlledAckEnabled;
     private final boolean isClientApiNonBlockingModeEnabled;
+    /** Deadline ordered index of the callbacks in the callback store */
+    private final CallbackTimeoutIndex timeoutIndex;
+    private final TimeoutHandler timeoutHandler;
 
     /**
      * Create the *single* instance of this class that would be used by all anonymous services
@@ -96,14 +103,18 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
     public SynapseCallbackReceiver(SynapseConfiguration synCfg,
                                    ServerContextInformation contextInformation) {
 
-        // create the Timer object and a TimeoutHandler task
-        TimeoutHandler timeoutHandler = new TimeoutHandler(callbackStore, contextInformation);
+        long timeoutHandlerInterval = SynapseConfigUtils.getTimeoutHandlerInterval();
+
+        // create the Timer object and a TimeoutHandler task. Callbacks are indexed in buckets of the
+        // timeout handler interval, so that each run only visits the callbacks which are due
+        timeoutIndex = new CallbackTimeoutIndex(timeoutHandlerInterval);
+        timeoutHandler = new TimeoutHandler(callbackStore, timeoutIndex, contextInformation,
+                timeoutHandlerInterval);
         isCallbackControlledAckEnabled = CallbackAckConfigUtil.isCallbackControlledAckEnabled();
         isClientApiNonBlockingModeEnabled = CallbackAckConfigUtil.isClientApiNonBlockingModeEnabled();
         Timer timeOutTimer = synCfg.getSynapseTimer();
-        long timeoutHandlerInterval = SynapseConfigUtils.getTimeoutHandlerInterval();
 
-        // schedule timeout handler to run every n seconds (n : specified or defaults to 15s)
+        // schedule timeout handler to run every n milliseconds (n : specified or defaults to 15s)
         timeOutTimer.schedule(timeoutHandler, 0, timeoutHandlerInterval);
     }
 
@@ -111,8 +122,38 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
         return callbackStore.size();
     }
 
+    /**
+     * Returns the number of times callbacks were expired by the timeout handler.
+     *
+     * @return number of expired callbacks
+     */
+    public long getExpiredCallbackCount() {
+        return timeoutHandler.getExpiredCallbackCount();
+    }
+
+    /**
+     * Returns the delay, in milliseconds, between the expiry time of the most recently expired
+     * callback and the time the timeout handler expired it.
+     *
+     * @return last observed timeout skew
+     */
+    public long getLastTimeoutSkew() {
+        return timeoutHandler.getLastTimeoutSkew();
+    }
+
+    /**
+     * Returns the largest delay, in milliseconds, observed between the expiry time of a callback
+     * and the time the timeout handler expired it.
+     *
+     * @return maximum observed timeout skew
+     */
+    public long getMaxTimeoutSkew() {
+        return timeoutHandler.getMaxTimeoutSkew();
+    }
+
     public void addCallback(String MsgID, AxisCallback callback) {
         callbackStore.put(MsgID, callback);
+        timeoutIndex.add(MsgID, ((AsyncCallback) callback).getTimeOutOn());
         if (log.isDebugEnabled()) {
             log.debug("Callback added. Total callbacks waiting for : " + callbackStore.size());
         }
@@ -168,6 +209,10 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
                 messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED))) {
             if (callbackStore.containsKey(messageCtx.getMessageID())) {
                 AsyncCallback callback = (AsyncCallback) callbackStore.remove(messageCtx.getMessageID());
+                if (callback != null) {
+                    timeoutIndex.remove(messageCtx.getMessageID(), callback.getTimeOutOn());
+                    AdaptiveConcurrencyLimiter.releasePermit(callback.getSynapseOutMsgCtx());
+                }
                 if (RuntimeStatisticCollector.isStatisticsEnabled()) {
                     CallbackStatisticCollector.callbackCompletionEvent(callback.getSynapseOutMsgCtx(),
                             messageCtx.getMessageID());
@@ -191,6 +236,9 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
 
         if (messageID != null) {
             AsyncCallback callback = (AsyncCallback)callbackStore.remove(messageID);
+            if (callback != null) {
+                timeoutIndex.remove(messageID, callback.getTimeOutOn());
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Callback removed for request message id : " + messageID +
                         ". Pending callbacks count : " + callbackStore.size());
@@ -218,6 +266,8 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
                 }
                 //callback expired by timeout handler, hence dropping the message without proceed further
                 if (isMarkedForRemoval) {
+                    AdaptiveConcurrencyLimiter.dropPermit(SynapseOutMsgCtx);
+                    LeastOutstandingRequests.dropRequests(SynapseOutMsgCtx);
                     handleNoCallback(messageID, messageCtx);
                     return;
                 }
@@ -414,6 +464,35 @@ public class SynapseCallbackReceiver extends CallbackReceiver {
             if (faultStack != null && !faultStack.isEmpty()
                 && faultStack.peek() instanceof Endpoint) {
                 successfulEndpoint = (Endpoint) faultStack.pop();
+                long responseTime = System.nanoTime() - callback.getSendTime();
+                if (successfulEndpoint.getMetricsMBean() != null) {
+                    successfulEndpoint.getMetricsMBean().recordResponseTime(responseTime);
+                }
+                if (successfulEndpoint instanceof AbstractEndpoint) {
+                    ((AbstractEndpoint) successfulEndpoint).onResponse(synapseOutMsgCtx, responseTime);
+                }
+                if (!faultStack.isEmpty() && faultStack.peek() instanceof LoadbalanceEndpoint) {
+                    ((LoadbalanceEndpoint) faultStack.peek()).onChildEndpointResponse(successfulEndpoint,
+                            synapseOutMsgCtx, responseTime);
+                }
+                // the load balance endpoints further down the fault stack are not told about the response
+                LeastOutstandingRequests.completeRequests(synapseOutMsgCtx, responseTime);
+            }
+
+            // only the first response to a hedged message is processed
+            HedgedRequest hedgedRequest =
+                    (HedgedRequest) synapseOutMsgCtx.getProperty(SynapseConstants.HEDGED_REQUEST);
+            if (hedgedRequest != null) {
+                if (!hedgedRequest.complete()) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Discarding the response to the request with message Id : " + messageID +
+                                " as a response to another attempt of the hedged message was already received");
+                    }
+                    RelayUtils.discardMessage(response);
+                    return;
+                }
+                // the hedged request is over, later calls of the same flow are not hedged by it
+                synapseOutMsgCtx.getPropertyKeySet().remove(SynapseConstants.HEDGED_REQUEST);
             }
 
             if (log.isDebugEnabled()) {
@@ -29,6 +29,7 @@ import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.carbonext.TenantInfoConfigurator;
 import org.apache.synapse.commons.CorrelationConstants;
+import org.apache.synapse.continuation.ContinuationHandOff;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.util.logging.LoggingUtils;
 
@@ -43,6 +44,18 @@ public class SynapseMessageReceiver implements MessageReceiver {
     private static final Log trace = LogFactory.getLog(SynapseConstants.TRACE_LOGGER);
 
     public void receive(org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        // a flow continued on another thread is only handed over once this receiver is done with it
+        boolean handOffScope = ContinuationHandOff.open();
+        try {
+            receiveMessage(mc);
+        } finally {
+            if (handOffScope) {
+                ContinuationHandOff.close();
+            }
+        }
+    }
+
+    private void receiveMessage(org.apache.axis2.context.MessageContext mc) throws AxisFault {
 
         MessageContext synCtx = MessageContextCreatorForAxis2.getSynapseMessageContext(mc);
 
@@ -34,6 +34,8 @@ import org.apache.synapse.aspects.flow.statistics.collectors.CallbackStatisticCo
 import org.apache.synapse.aspects.flow.statistics.collectors.RuntimeStatisticCollector;
 import org.apache.synapse.commons.CorrelationConstants;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.endpoints.AdaptiveConcurrencyLimiter;
+import org.apache.synapse.endpoints.algorithms.LeastOutstandingRequests;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 import org.apache.synapse.commons.logger.ContextAwareLogger;
 import org.apache.synapse.rest.RESTConstants;
@@ -50,6 +52,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An object of this class is registered to be invoked in some predefined time intervals. This
@@ -59,6 +62,9 @@ import java.util.TimerTask;
  * although longer intervals would introduce larger error between the actual timeout and the
  * specified timeout.
  *
+ * Expired callbacks are looked up through the deadline ordered {@link CallbackTimeoutIndex},
+ * hence each invocation only visits the callbacks which are due instead of the whole store.
+ *
  * For each invocation this gets a time value to be compared against the timeouts of the callback
  * objects. This time is the System.currentTimeMillis() for Java 1.4 and System.nanoTime() for
  * Java 1.5 and later.
@@ -69,6 +75,8 @@ public class TimeoutHandler extends TimerTask {
 
     /** The callback map - already a Collections.synchronized() hash map */
     private final Map callbackStore;
+    /** Deadline ordered index of the callbacks in the callback store */
+    private final CallbackTimeoutIndex timeoutIndex;
     /** a lock to prevent concurrent execution while ensuring least overhead */
     private final Object lock = new Object();
     private boolean alreadyExecuting = false;
@@ -77,9 +85,33 @@ public class TimeoutHandler extends TimerTask {
     private static final String SEND_TIMEOUT_MESSAGE = "Send timeout";
     private ServerContextInformation contextInfo = null;
     private PassThroughConfiguration conf = PassThroughConfiguration.getInstance();
+    /** Time the expired session affinity sessions were last cleared */
+    private long lastSessionCleanupTime = 0;
+    /** Interval the handler is run at, the expired sessions are cleared at most this often */
+    private final long timeoutHandlerInterval;
+
+    /** Number of callbacks expired so far */
+    private final AtomicLong expiredCallbackCount = new AtomicLong(0);
+    /** Delay between the expiry time of the last expired callback and the time it was expired */
+    private volatile long lastTimeoutSkew = 0;
+    /** Largest delay observed between the expiry time of a callback and the time it was expired */
+    private volatile long maxTimeoutSkew = 0;
+
+    public TimeoutHandler(Map callbacks, CallbackTimeoutIndex timeoutIndex, ServerContextInformation contextInfo) {
+        this(callbacks, timeoutIndex, contextInfo, SynapseConfigUtils.getTimeoutHandlerInterval());
+    }
 
-    public TimeoutHandler(Map callbacks, ServerContextInformation contextInfo) {
+    /**
+     * @param callbacks              callback store
+     * @param timeoutIndex           deadline ordered index of the callbacks in the store
+     * @param contextInfo            server runtime information
+     * @param timeoutHandlerInterval interval, in milliseconds, the handler is scheduled at
+     */
+    public TimeoutHandler(Map callbacks, CallbackTimeoutIndex timeoutIndex, ServerContextInformation contextInfo,
+                          long timeoutHandlerInterval) {
         this.callbackStore = callbacks;
+        this.timeoutHandlerInterval = timeoutHandlerInterval;
+        this.timeoutIndex = timeoutIndex;
         this.contextInfo = contextInfo;
         this.globalTimeout = SynapseConfigUtils.getGlobalTimeoutInterval();
         log.info("This engine will expire all callbacks after " +
@@ -111,194 +143,238 @@ public class TimeoutHandler extends TimerTask {
 
     private void processCallbacks() {
 
-        //clear all the expired sessions
-        SALSessions.getInstance().clearSessions();
+        long currentTime = currentTime();
 
-        // checks if callback store contains at least one entry before proceeding. otherwise getting
-        // the time for doing nothing would be a inefficient task.
-
-        // we have to synchronize this on the callbackStore as iterators of thread safe collections
-        // are not thread safe. callbackStore can be modified
-        // concurrently by the SynapseCallbackReceiver.
-        synchronized(callbackStore) {
+        //clear all the expired sessions, at most once per the handler interval
+        if (currentTime - lastSessionCleanupTime >= timeoutHandlerInterval) {
+            lastSessionCleanupTime = currentTime;
+            SALSessions.getInstance().clearSessions();
+        }
 
-            if (callbackStore.size() > 0) {
+        // only the callbacks which are due are visited. The callback store is a synchronized map,
+        // hence it is safe to look up and remove individual callbacks without locking the whole
+        // store while the fault handlers are executed.
+        List<String> expiredKeys = timeoutIndex.pollExpired(currentTime);
+        if (expiredKeys.isEmpty()) {
+            return;
+        }
 
-                long currentTime = currentTime();
-                boolean closeSocketOnEndpointTimeout = false;
-                List toRemove = new ArrayList();
+        boolean closeSocketOnEndpointTimeout = false;
+        List toRemove = new ArrayList();
 
-                for (Object key : callbackStore.keySet()) {
+        for (String key : expiredKeys) {
 
-                    AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
-                    if (callback == null) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("There is no callback for key :" + key);
-                        }
-                        continue;
-                    }
+            AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
+            if (callback == null) {
+                // response has already been received for this callback
+                continue;
+            }
 
-                    if (callback.getTimeOutOn() <= currentTime) {
+            if (callback.getTimeOutOn() > currentTime) {
+                // timeout of the callback has been changed after it was indexed
+                timeoutIndex.add(key, callback.getTimeOutOn());
+                continue;
+            }
 
-                        synchronized (callback) {
-                            if (callback.isMarkedForRemoval()) {
-                                continue;
-                            }
-                            callback.setMarkedForRemoval();
-                            toRemove.add(key);
-                        }
-                        if (!"true".equals(callback.getSynapseOutMsgCtx().getProperty(SynapseConstants.OUT_ONLY))) {
-                            org.apache.axis2.context.MessageContext axis2MessageContext = callback.getAxis2OutMsgCtx();
-                            String timeoutWarnLog = "Expiring message ID : " + key + "; dropping message after "
-                                    + callback.getTimeoutType().toString() + " of : "
-                                    + (callback.getTimeoutDuration() / 1000) + " seconds for "
-                                    + getEndpointLogMessage(callback.getSynapseOutMsgCtx(),
-                                    callback.getAxis2OutMsgCtx()) + ", "
-                                    + getServiceLogMessage(callback.getSynapseOutMsgCtx())
-                                    + "Correlation ID : " + callback.getAxis2OutMsgCtx().getProperty(
-                                    CorrelationConstants.CORRELATION_ID);
-                            if (conf.isCloseSocketOnEndpointTimeout()) {
-                                ContextAwareLogger.getLogger(axis2MessageContext, log, true)
-                                        .warn(timeoutWarnLog + ", Closing the Target Connection");
-                            } else {
-                                ContextAwareLogger.getLogger(axis2MessageContext, log, true)
-                                        .warn(timeoutWarnLog);
-                            }
-                        }
+            synchronized (callback) {
+                if (callback.isMarkedForRemoval()) {
+                    continue;
+                }
+                callback.setMarkedForRemoval();
+                toRemove.add(key);
+            }
+            recordTimeoutSkew(currentTime - callback.getTimeOutOn());
+            if (!"true".equals(callback.getSynapseOutMsgCtx().getProperty(SynapseConstants.OUT_ONLY))) {
+                org.apache.axis2.context.MessageContext axis2MessageContext = callback.getAxis2OutMsgCtx();
+                String timeoutWarnLog = "Expiring message ID : " + key + "; dropping message after "
+                        + callback.getTimeoutType().toString() + " of : "
+                        + (callback.getTimeoutDuration() / 1000) + " seconds for "
+                        + getEndpointLogMessage(callback.getSynapseOutMsgCtx(),
+                        callback.getAxis2OutMsgCtx()) + ", "
+                        + getServiceLogMessage(callback.getSynapseOutMsgCtx())
+                        + "Correlation ID : " + callback.getAxis2OutMsgCtx().getProperty(
+                        CorrelationConstants.CORRELATION_ID);
+                if (conf.isCloseSocketOnEndpointTimeout()) {
+                    ContextAwareLogger.getLogger(axis2MessageContext, log, true)
+                            .warn(timeoutWarnLog + ", Closing the Target Connection");
+                } else {
+                    ContextAwareLogger.getLogger(axis2MessageContext, log, true)
+                            .warn(timeoutWarnLog);
+                }
+            }
 
-                        if (callback.getTimeOutAction() != SynapseConstants.NONE) {
-
-                            // activate the fault sequence of the current sequence mediator
-                            MessageContext msgContext = callback.getSynapseOutMsgCtx();
-                            org.apache.axis2.context.MessageContext axis2MessageContext = callback.getAxis2OutMsgCtx();
-
-                            // Callback-controlled ack: for RabbitMQ timeouts we:
-                            // 1. Set CLIENT_API_NON_BLOCKING so Timer Thread Does not get blocked in any scenario.
-                            // 2. Log and explicitly invoke onAppError to close channel / release resources early
-                            //    preventing connection / buffer leaks since the message has already timed out.
-                            if (CallbackAckConfigUtil.isCallbackControlledAckEnabled()) {
-                                if (CallbackAckConfigUtil.isRabbitMQTransport(axis2MessageContext)) {
-                                    TransportOutDescription transportOut =
-                                            callback.getAxis2OutMsgCtx().getTransportOut();
-
-                                    ((Axis2MessageContext) msgContext).getAxis2MessageContext().setProperty
-                                            (SynapseConstants.CLIENT_API_NON_BLOCKING, Boolean.TRUE);
-                                    log.warn("Callback Controlled ack is enabled. " +
-                                            "Closing the RabbitMQ Channel for the timed out message : " + key);
-                                    transportOut.getSender().onAppError(callback.getAxis2OutMsgCtx());
-                                }
-                            }
-
-                            /* Clear the pipe to prevent release of the associated writer buffer
-                               to the buffer factory.
-                               This is to prevent same buffer is getting released to both source
-                               and target buffer factories. Otherwise when a late response arrives,
-                               buffer is released to both factories and makes system unstable
-                            */
-                            ((Axis2MessageContext) msgContext).getAxis2MessageContext().
-                                    removeProperty(PassThroughConstants.PASS_THROUGH_PIPE);
-
-                            // add an error code to the message context, so that error sequences
-                            // can identify the cause of error
-                            msgContext.setProperty(SynapseConstants.ERROR_CODE,
-                                                   SynapseConstants.HANDLER_TIME_OUT);
-                            msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
-                                                   SEND_TIMEOUT_MESSAGE);
-                            NHttpServerConnection sourceConn = (NHttpServerConnection) axis2MessageContext.
-                                    getProperty(PassThroughConstants.PASS_THROUGH_SOURCE_CONNECTION);
-                            if (sourceConn != null && SourceContext.get(sourceConn).getState()
-                                    != ProtocolState.REQUEST_DONE) {
-                                //Suspend input to avoid invoking input ready method and set this property here
-                                //to avoid invoking the input ready method, while fault response is mediating through
-                                //the mediation since we have set REQUEST_DONE state in SourceHandler responseReady
-                                // method
-                                sourceConn.suspendInput();
-                                SourceContext sourceContext = (SourceContext) sourceConn.getContext().getAttribute
-                                        (TargetContext.CONNECTION_INFORMATION);
-                                if (sourceContext != null) {
-                                    sourceContext.setIsSourceRequestMarkedToBeDiscarded(true);
-                                }
-                                // This is to gurantee that the connection is closed after the response is sent and
-                                // not to release the buffer to the factory
-                                SourceContext.get(sourceConn).setShutDown(true);
-
-                                // We have to close the target connection since the request is invalid
-                                closeSocketOnEndpointTimeout = true;
-                            }
-
-                            /* Clear the NO_KEEPALIVE property to prevent closing response connection when going through
-                               the fault sequence due to end point time out. Since the axis2 message context used here
-                               is the same axis2 message context used in request path and the intention of this property
-                               is to Disable HTTP keep alive for outgoing requests. If it is required this can be put
-                               in fault sequence.
-                            */
-                            ((Axis2MessageContext) msgContext).getAxis2MessageContext().
-                                    removeProperty(PassThroughConstants.NO_KEEPALIVE);
-
-                            if (!CallbackAckConfigUtil.isPreservePayloadOnTimeout()) {
-                                SOAPEnvelope soapEnvelope;
-                                if (msgContext.isSOAP11()) {
-                                    soapEnvelope = OMAbstractFactory.
-                                            getSOAP11Factory().createSOAPEnvelope();
-                                    soapEnvelope.addChild(
-                                            OMAbstractFactory.getSOAP11Factory().createSOAPBody());
-                                } else {
-                                    soapEnvelope = OMAbstractFactory.
-                                            getSOAP12Factory().createSOAPEnvelope();
-                                    soapEnvelope.addChild(
-                                            OMAbstractFactory.getSOAP12Factory().createSOAPBody());
-                                }
-                                try {
-                                    msgContext.setEnvelope(soapEnvelope);
-                                } catch (Throwable ex) {
-                                    ContextAwareLogger.getLogger(axis2MessageContext, log, true)
-                                            .error("Exception or Error occurred resetting SOAP Envelope", ex);
-                                    continue;
-                                }
-                            }
-
-                            Stack<FaultHandler> faultStack = msgContext.getFaultStack();
-                            if (!faultStack.isEmpty()) {
-                                FaultHandler faultHandler = faultStack.pop();
-                                if (faultHandler != null) {
-                                    try {
-                                        faultHandler.handleFault(msgContext);
-                                    } catch (Throwable ex) {
-                                        ContextAwareLogger.getLogger(axis2MessageContext, log, true)
-                                                .warn("Exception or Error occurred while "
-                                                        + "executing the fault handler", ex);
-                                        continue;
-                                    }
-                                }
-                            }
-                        }
+            if (callback.getTimeOutAction() != SynapseConstants.NONE) {
+
+                // activate the fault sequence of the current sequence mediator
+                MessageContext msgContext = callback.getSynapseOutMsgCtx();
+                org.apache.axis2.context.MessageContext axis2MessageContext = callback.getAxis2OutMsgCtx();
+
+                // Callback-controlled ack: for RabbitMQ timeouts we:
+                // 1. Set CLIENT_API_NON_BLOCKING so Timer Thread Does not get blocked in any scenario.
+                // 2. Log and explicitly invoke onAppError to close channel / release resources early
+                //    preventing connection / buffer leaks since the message has already timed out.
+                if (CallbackAckConfigUtil.isCallbackControlledAckEnabled()) {
+                    if (CallbackAckConfigUtil.isRabbitMQTransport(axis2MessageContext)) {
+                        TransportOutDescription transportOut =
+                                callback.getAxis2OutMsgCtx().getTransportOut();
+
+                        ((Axis2MessageContext) msgContext).getAxis2MessageContext().setProperty
+                                (SynapseConstants.CLIENT_API_NON_BLOCKING, Boolean.TRUE);
+                        log.warn("Callback Controlled ack is enabled. " +
+                                "Closing the RabbitMQ Channel for the timed out message : " + key);
+                        transportOut.getSender().onAppError(callback.getAxis2OutMsgCtx());
                     }
                 }
 
-                for(Object key : toRemove) {
-
-                    AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
-                    if (callback == null) {
-                        // we will get here if we get a response from the Backend while clearing callbacks
-                        continue;
+                /* Clear the pipe to prevent release of the associated writer buffer
+                   to the buffer factory.
+                   This is to prevent same buffer is getting released to both source
+                   and target buffer factories. Otherwise when a late response arrives,
+                   buffer is released to both factories and makes system unstable
+                */
+                ((Axis2MessageContext) msgContext).getAxis2MessageContext().
+                        removeProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+
+                // add an error code to the message context, so that error sequences
+                // can identify the cause of error
+                msgContext.setProperty(SynapseConstants.ERROR_CODE,
+                                       SynapseConstants.HANDLER_TIME_OUT);
+                msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
+                                       SEND_TIMEOUT_MESSAGE);
+                NHttpServerConnection sourceConn = (NHttpServerConnection) axis2MessageContext.
+                        getProperty(PassThroughConstants.PASS_THROUGH_SOURCE_CONNECTION);
+                if (sourceConn != null && SourceContext.get(sourceConn).getState()
+                        != ProtocolState.REQUEST_DONE) {
+                    //Suspend input to avoid invoking input ready method and set this property here
+                    //to avoid invoking the input ready method, while fault response is mediating through
+                    //the mediation since we have set REQUEST_DONE state in SourceHandler responseReady
+                    // method
+                    sourceConn.suspendInput();
+                    SourceContext sourceContext = (SourceContext) sourceConn.getContext().getAttribute
+                            (TargetContext.CONNECTION_INFORMATION);
+                    if (sourceContext != null) {
+                        sourceContext.setIsSourceRequestMarkedToBeDiscarded(true);
                     }
+                    // This is to gurantee that the connection is closed after the response is sent and
+                    // not to release the buffer to the factory
+                    SourceContext.get(sourceConn).setShutDown(true);
 
-                    org.apache.synapse.MessageContext synapseOutMsgCtx = callback.getSynapseOutMsgCtx();
-                    ConcurrencyThrottlingUtils.decrementConcurrencyThrottleAccessController(synapseOutMsgCtx);
-                    callbackStore.remove(key);
-                    if (RuntimeStatisticCollector.isStatisticsEnabled()) {
-                        CallbackStatisticCollector.callbackCompletionEvent(callback.getSynapseOutMsgCtx(), (String) key);
+                    // We have to close the target connection since the request is invalid
+                    closeSocketOnEndpointTimeout = true;
+                }
+
+                /* Clear the NO_KEEPALIVE property to prevent closing response connection when going through
+                   the fault sequence due to end point time out. Since the axis2 message context used here
+                   is the same axis2 message context used in request path and the intention of this property
+                   is to Disable HTTP keep alive for outgoing requests. If it is required this can be put
+                   in fault sequence.
+                */
+                ((Axis2MessageContext) msgContext).getAxis2MessageContext().
+                        removeProperty(PassThroughConstants.NO_KEEPALIVE);
+
+                if (!CallbackAckConfigUtil.isPreservePayloadOnTimeout()) {
+                    SOAPEnvelope soapEnvelope;
+                    if (msgContext.isSOAP11()) {
+                        soapEnvelope = OMAbstractFactory.
+                                getSOAP11Factory().createSOAPEnvelope();
+                        soapEnvelope.addChild(
+                                OMAbstractFactory.getSOAP11Factory().createSOAPBody());
+                    } else {
+                        soapEnvelope = OMAbstractFactory.
+                                getSOAP12Factory().createSOAPEnvelope();
+                        soapEnvelope.addChild(
+                                OMAbstractFactory.getSOAP12Factory().createSOAPBody());
+                    }
+                    try {
+                        msgContext.setEnvelope(soapEnvelope);
+                    } catch (Throwable ex) {
+                        ContextAwareLogger.getLogger(axis2MessageContext, log, true)
+                                .error("Exception or Error occurred resetting SOAP Envelope", ex);
+                        continue;
                     }
+                }
 
-                    if (closeSocketOnEndpointTimeout || conf.isCloseSocketOnEndpointTimeout() ) {                        TransportOutDescription transportOut = callback.getAxis2OutMsgCtx().getTransportOut();
-                        if (transportOut != null && transportOut.getSender() != null) {
-                            // Call the TransportSender's onAppError method to release any resources
-                            transportOut.getSender().onAppError(callback.getAxis2OutMsgCtx());
+                Stack<FaultHandler> faultStack = msgContext.getFaultStack();
+                if (!faultStack.isEmpty()) {
+                    FaultHandler faultHandler = faultStack.pop();
+                    if (faultHandler != null) {
+                        try {
+                            faultHandler.handleFault(msgContext);
+                        } catch (Throwable ex) {
+                            ContextAwareLogger.getLogger(axis2MessageContext, log, true)
+                                    .warn("Exception or Error occurred while "
+                                            + "executing the fault handler", ex);
+                            continue;
                         }
                     }
                 }
             }
         }
+
+        for(Object key : toRemove) {
+
+            // removing the callback claims it, so that the throttle is not released again by the
+            // callback receiver for a response which arrives while clearing callbacks
+            AsyncCallback callback = (AsyncCallback) callbackStore.remove(key);
+            if (callback == null) {
+                // we will get here if we get a response from the Backend while clearing callbacks
+                continue;
+            }
+
+            org.apache.synapse.MessageContext synapseOutMsgCtx = callback.getSynapseOutMsgCtx();
+            ConcurrencyThrottlingUtils.decrementConcurrencyThrottleAccessController(synapseOutMsgCtx);
+            // the fault handlers return the permit of the endpoint, which is not the case when the
+            // timeout action is none or the message has no fault handler
+            AdaptiveConcurrencyLimiter.dropPermit(synapseOutMsgCtx);
+            LeastOutstandingRequests.dropRequests(synapseOutMsgCtx);
+            if (RuntimeStatisticCollector.isStatisticsEnabled()) {
+                CallbackStatisticCollector.callbackCompletionEvent(callback.getSynapseOutMsgCtx(), (String) key);
+            }
+
+            if (closeSocketOnEndpointTimeout || conf.isCloseSocketOnEndpointTimeout() ) {                        TransportOutDescription transportOut = callback.getAxis2OutMsgCtx().getTransportOut();
+                if (transportOut != null && transportOut.getSender() != null) {
+                    // Call the TransportSender's onAppError method to release any resources
+                    transportOut.getSender().onAppError(callback.getAxis2OutMsgCtx());
+                }
+            }
+        }
+    }
+
+    private void recordTimeoutSkew(long skew) {
+        expiredCallbackCount.incrementAndGet();
+        lastTimeoutSkew = skew;
+        if (skew > maxTimeoutSkew) {
+            maxTimeoutSkew = skew;
+        }
+    }
+
+    /**
+     * Returns the number of callbacks expired by this handler.
+     *
+     * @return number of expired callbacks
+     */
+    public long getExpiredCallbackCount() {
+        return expiredCallbackCount.get();
+    }
+
+    /**
+     * Returns the delay, in milliseconds, between the expiry time of the most recently expired
+     * callback and the time it was actually expired.
+     *
+     * @return last observed timeout skew
+     */
+    public long getLastTimeoutSkew() {
+        return lastTimeoutSkew;
+    }
+
+    /**
+     * Returns the largest delay, in milliseconds, observed between the expiry time of a callback
+     * and the time it was actually expired.
+     *
+     * @return maximum observed timeout skew
+     */
+    public long getMaxTimeoutSkew() {
+        return maxTimeoutSkew;
     }
 
     /**
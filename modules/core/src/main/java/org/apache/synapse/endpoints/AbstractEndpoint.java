@@ -108,6 +108,9 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
     /** The MBean managing the endpoint */
     EndpointView metricsMBean = null;
 
+    /** Adaptive limit of the messages in flight through this endpoint, null if not enabled */
+    private AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+
     /** The name of the file where this endpoint is defined */
     protected String fileName;
 
@@ -156,6 +159,14 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
         return context;
     }
 
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
     public String getName() {
         return endpointName;
     }
@@ -304,6 +315,17 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
 
             context = new EndpointContext(getName(), getDefinition(), isClusteringEnabled,
                     cc, metricsMBean);
+
+            if (concurrencyLimiter == null && definition != null && isLeafEndpoint() &&
+                    isEnabledByProperty(SynapseConstants.ENDPOINT_ADAPTIVE_CONCURRENCY)) {
+                concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                        getIntProperty(SynapseConstants.ENDPOINT_ADAPTIVE_CONCURRENCY_INITIAL_LIMIT,
+                                SynapseConstants.DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_INITIAL_LIMIT),
+                        getIntProperty(SynapseConstants.ENDPOINT_ADAPTIVE_CONCURRENCY_MIN_LIMIT,
+                                SynapseConstants.DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_MIN_LIMIT),
+                        getIntProperty(SynapseConstants.ENDPOINT_ADAPTIVE_CONCURRENCY_MAX_LIMIT,
+                                SynapseConstants.DEFAULT_ENDPOINT_ADAPTIVE_CONCURRENCY_MAX_LIMIT));
+            }
         }
         initialized = true;
 
@@ -318,6 +340,49 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
                 definition.isAddressingOn() || definition.isUseMTOM()|| definition.isUseSwa());
     }
 
+    /**
+     * Checks whether a feature is enabled for this endpoint, by an endpoint property or else by the
+     * synapse property of the given name
+     *
+     * @param name name of the property
+     * @return true if the feature is enabled
+     */
+    protected boolean isEnabledByProperty(String name) {
+        MediatorProperty property = getProperty(name);
+        if (property != null && property.getValue() != null) {
+            return JavaUtils.isTrueExplicitly(property.getValue());
+        }
+        return JavaUtils.isTrueExplicitly(SynapsePropertiesLoader.getPropertyValue(name, "false"));
+    }
+
+    /**
+     * Creates the request hedger of a load balance or failover endpoint, if hedging is enabled
+     *
+     * @return the request hedger or null if hedging is not enabled for this endpoint
+     */
+    protected RequestHedger createRequestHedger() {
+        if (!isEnabledByProperty(SynapseConstants.ENDPOINT_HEDGING)) {
+            return null;
+        }
+        return new RequestHedger(
+                getIntProperty(SynapseConstants.ENDPOINT_HEDGING_DELAY_PERCENTILE,
+                        SynapseConstants.DEFAULT_ENDPOINT_HEDGING_DELAY_PERCENTILE),
+                getIntProperty(SynapseConstants.ENDPOINT_HEDGING_MIN_DELAY,
+                        SynapseConstants.DEFAULT_ENDPOINT_HEDGING_MIN_DELAY),
+                getIntProperty(SynapseConstants.ENDPOINT_HEDGING_BUDGET,
+                        SynapseConstants.DEFAULT_ENDPOINT_HEDGING_BUDGET));
+    }
+
+    protected int getIntProperty(String name, int defaultValue) {
+        String value = SynapsePropertiesLoader.getPropertyValue(name, String.valueOf(defaultValue));
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value : " + value + " for " + name + ", using the default : " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     public List<String> getCommentsList() {
         return commentsList;
     }
@@ -340,6 +405,19 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
 
         logSetter();
 
+        // fast fail the message rather than queueing it for a backend which is already saturated
+        if (concurrencyLimiter != null && !"true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY))) {
+            AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquirePermit();
+            if (permit == null) {
+                String msg = "Endpoint : " + getName() + " reached its concurrency limit of " +
+                        concurrencyLimiter.getLimit() + " messages in flight";
+                log.warn(msg);
+                informFailure(synCtx, SynapseConstants.ENDPOINT_CONCURRENCY_LIMIT_REACHED, msg);
+                return;
+            }
+            synCtx.setProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT, permit);
+        }
+
         Integer statisticReportingIndex = null;
         boolean isStatisticsEnabled = RuntimeStatisticCollector.isStatisticsEnabled();
         if (isStatisticsEnabled) {
@@ -427,7 +505,12 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
         }
 
         // Send the message through this endpoint
-        synCtx.getEnvironment().send(definition, synCtx);
+        try {
+            synCtx.getEnvironment().send(definition, synCtx);
+        } catch (RuntimeException e) {
+            releaseConcurrencyPermit(synCtx, -1);
+            throw e;
+        }
 
         if (isStatisticsEnabled) {
             CloseEventCollector.closeEntryEvent(synCtx, getReportingName(), ComponentType.ENDPOINT,
@@ -574,6 +657,7 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
      * @param synCtx the message at hand
      */
     public void onFault(MessageContext synCtx) {
+        releaseConcurrencyPermit(synCtx, -1);
         EndpointDefinition endpointDefinition = getDefinition();
         if (endpointDefinition != null && endpointDefinition.getTimeoutAction() == SynapseConstants.DISCARD) {
             log.info("Ignoring fault handlers since the timeout action is set to DISCARD");
@@ -591,6 +675,41 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
         // do nothing
     }
 
+    /**
+     * The SynapseCallback Receiver notifies an endpoint when a response is received for a message
+     * sent through it, before the response is processed
+     *
+     * @param synCtx       the message sent through this endpoint
+     * @param responseTime time taken to receive the response in nanoseconds
+     */
+    public void onResponse(MessageContext synCtx, long responseTime) {
+        releaseConcurrencyPermit(synCtx, responseTime);
+    }
+
+    /**
+     * Return the concurrency permit taken for the given message, if it was taken from the limiter of
+     * this endpoint and not returned already
+     *
+     * @param synCtx       the message sent through this endpoint
+     * @param responseTime the response time in nanoseconds, or a negative value if the message failed
+     */
+    private void releaseConcurrencyPermit(MessageContext synCtx, long responseTime) {
+        if (concurrencyLimiter == null) {
+            return;
+        }
+        Object permit = synCtx.getProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT);
+        if (!(permit instanceof AdaptiveConcurrencyLimiter.Permit) ||
+                ((AdaptiveConcurrencyLimiter.Permit) permit).getLimiter() != concurrencyLimiter) {
+            return;
+        }
+        synCtx.getPropertyKeySet().remove(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT);
+        if (responseTime < 0) {
+            ((AdaptiveConcurrencyLimiter.Permit) permit).onDropped();
+        } else {
+            ((AdaptiveConcurrencyLimiter.Permit) permit).onSuccess(responseTime);
+        }
+    }
+
 
     /**
      * Should this mediator perform tracing? True if its explicitly asked to
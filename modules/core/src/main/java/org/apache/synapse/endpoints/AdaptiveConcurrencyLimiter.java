@@ -0,0 +1,279 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of messages in flight to an endpoint, adapting the limit to the response
+ * times of the backend with a gradient algorithm. A long term average of the response time is
+ * compared with the latest response time; when the backend starts queueing, the response times grow
+ * and the limit shrinks in proportion, and while they are stable the limit keeps growing by a
+ * small queue allowance. Failures and timeouts shrink the limit multiplicatively, at most once per
+ * response time, so that a burst of failures of the messages in flight backs off only once.
+ * <p/>
+ * Acquiring and releasing permits is lock free. Limit updates are skipped rather than waited for
+ * when another thread is already updating the limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** Number of samples the long term response time average is computed over */
+    private static final int LONG_WINDOW = 600;
+    /** Response time growth tolerated before the limit is reduced */
+    private static final double RTT_TOLERANCE = 1.5;
+    /** Weight of a new limit estimate against the current limit */
+    private static final double SMOOTHING = 0.2;
+    /** Factor the limit is multiplied with when a message fails or times out */
+    private static final double BACKOFF_RATIO = 0.9;
+    /** Minimum time between two back offs in nanoseconds */
+    private static final long MIN_BACKOFF_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    /** Current limit, only written by the thread holding the update flag */
+    private volatile double estimatedLimit;
+    private volatile int limit;
+    /** Long term average of the response time in nanoseconds, 0 until the first sample */
+    private double longRtt;
+    /** Time before which failures do not shrink the limit again, only written with the update flag */
+    private long nextBackoff;
+
+    /**
+     * Create a limiter
+     *
+     * @param initialLimit the limit until response times are known
+     * @param minLimit     the limit never drops below this
+     * @param maxLimit     the limit never grows above this
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits, minimum : " + minLimit +
+                    " maximum : " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        setLimit(initialLimit);
+        nextBackoff = nanoTime();
+    }
+
+    /**
+     * Take a permit to send a message
+     *
+     * @return true if the message can be sent, false if the limit is reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take a permit to send a message, which can be attached to the message and returned once
+     *
+     * @return the permit, or null if the limit is reached
+     */
+    public Permit tryAcquirePermit() {
+        return tryAcquire() ? new Permit(this) : null;
+    }
+
+    /**
+     * Return the permit attached to the given message as a failed message, if it holds one which
+     * is not returned already. This is used where a message is dropped without going through its
+     * endpoint, e.g. when its callback expires with no timeout action.
+     *
+     * @param synCtx the message
+     */
+    public static void dropPermit(MessageContext synCtx) {
+        Permit permit = removePermit(synCtx);
+        if (permit != null) {
+            permit.onDropped();
+        }
+    }
+
+    /**
+     * Return the permit attached to the given message without taking the outcome into account
+     *
+     * @param synCtx the message
+     */
+    public static void releasePermit(MessageContext synCtx) {
+        Permit permit = removePermit(synCtx);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private static Permit removePermit(MessageContext synCtx) {
+        if (synCtx == null) {
+            return null;
+        }
+        Object permit = synCtx.getProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT);
+        if (!(permit instanceof Permit)) {
+            return null;
+        }
+        synCtx.getPropertyKeySet().remove(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT);
+        return (Permit) permit;
+    }
+
+    /**
+     * Return a permit for a message which received a response
+     *
+     * @param responseTime the response time in nanoseconds
+     */
+    public void onSuccess(long responseTime) {
+        int current = inFlight.getAndDecrement();
+        if (responseTime <= 0 || !updating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            double rtt = responseTime;
+            if (longRtt == 0) {
+                longRtt = rtt;
+            } else {
+                longRtt += (rtt - longRtt) / LONG_WINDOW;
+                // the backend recovered from a slow period, do not let the old average hold the
+                // limit up
+                if (longRtt > 2 * rtt) {
+                    longRtt *= 0.95;
+                }
+            }
+
+            double estimate = estimatedLimit;
+            // an endpoint which is not loaded gives no evidence that a larger limit is safe
+            if (current < estimate / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRtt / rtt));
+            double newLimit = estimate * gradient + Math.sqrt(estimate);
+            setLimit(estimate * (1 - SMOOTHING) + newLimit * SMOOTHING);
+        } finally {
+            updating.set(false);
+        }
+    }
+
+    /**
+     * Return a permit for a message which failed or timed out
+     */
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        if (updating.compareAndSet(false, true)) {
+            try {
+                long now = nanoTime();
+                if (now - nextBackoff >= 0) {
+                    setLimit(estimatedLimit * BACKOFF_RATIO);
+                    // the other messages in flight were sent against the same backend state
+                    nextBackoff = now + Math.max(MIN_BACKOFF_INTERVAL, (long) longRtt);
+                }
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * Return a permit without taking the outcome of the message into account
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return the current limit of messages in flight
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of messages in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of messages rejected since the limiter was created
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * A permit taken for a single message. It is returned to the limiter at most once, whichever
+     * of the response, the fault or the timeout of the message comes first.
+     */
+    public static final class Permit {
+
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Permit(AdaptiveConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        public AdaptiveConcurrencyLimiter getLimiter() {
+            return limiter;
+        }
+
+        public void onSuccess(long responseTime) {
+            if (returned.compareAndSet(false, true)) {
+                limiter.onSuccess(responseTime);
+            }
+        }
+
+        public void onDropped() {
+            if (returned.compareAndSet(false, true)) {
+                limiter.onDropped();
+            }
+        }
+
+        public void release() {
+            if (returned.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+    }
+}
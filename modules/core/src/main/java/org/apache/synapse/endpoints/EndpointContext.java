@@ -30,6 +30,8 @@ import org.apache.synapse.util.Replicator;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is one of the key classes of the Endpoint management in Synapse. It maintains the
@@ -63,20 +65,30 @@ public class EndpointContext {
      */
     public static final int ST_OFF = 4;
 
-    /** The state of the endpoint at present */
-    private int  localState = ST_ACTIVE;
-    /** The time in ms, until the next retry - depending on a timeout or suspension */
-    private long localNextRetryTime = -1;
-    /** The number of attempts left for timeout failures, until they make the endpoint suspended */
-    private int  localRemainingRetries = -1;
+    // layout of the local state word : the state in the lowest 3 bits, the remaining retries
+    // (offset by one so that -1 is representable) in the next 16 bits and the next retry time in
+    // ms in the upper 44 bits
+    private static final int STATE_BITS = 3;
+    private static final int RETRIES_BITS = 16;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final long RETRIES_MASK = (1L << RETRIES_BITS) - 1;
+    private static final long NEXT_RETRY_TIME_MASK = (1L << (64 - 1 - STATE_BITS - RETRIES_BITS)) - 1;
+    private static final int MAX_LOCAL_RETRIES = (int) RETRIES_MASK - 1;
+
+    /**
+     * The state of the endpoint at present, the number of attempts left for timeout failures until
+     * they make the endpoint suspended and the time in ms until the next retry (depending on a
+     * timeout or suspension), packed into a single word so that they are read and changed together
+     */
+    private final AtomicLong localStateWord = new AtomicLong(pack(ST_ACTIVE, -1, -1));
     /** The duration in ms for the last suspension */
-    private long localLastSuspendDuration = -1;
+    private volatile long localLastSuspendDuration = -1;
     /** The maximum number of failover attempts allowed for the endpoint */
     private int maximumRetryLimit =
             Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(SynapseConstants.MAX_FAILOVER_RETRIES_CONFIG,
                     String.valueOf(SynapseConstants.DEFAULT_MAX_FAILOVER_RETRIES)));
     /** The number of attempts left for endpoint failures, until they make the endpoint suspended */
-    private int maximumRemainingRetries = maximumRetryLimit;
+    private final AtomicInteger maximumRemainingRetries = new AtomicInteger(maximumRetryLimit);
     /** The endpoint suspension duration in ms if the maximum retry attempts exceeded */
     private long suspendDurationOnMaximumFailover = Long.parseLong(SynapsePropertiesLoader
             .getPropertyValue(SynapseConstants.SUSPEND_DURATION_ON_MAX_FAILOVER_CONFIG,
@@ -87,7 +99,8 @@ public class EndpointContext {
             Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(SynapseConstants.MAX_FAILOVER_RECUSIVE_RETRIES_CONFIG,
                     String.valueOf(SynapseConstants.DEFAULT_MAX_FAILOVER_RETRIES)));
     /** The number of attempts left for endpoint failures, until they make the endpoint suspended */
-    private int maximumRemainingRecursiveRetries = maximumRecursiveRetryLimit;
+    private final AtomicInteger maximumRemainingRecursiveRetries =
+            new AtomicInteger(maximumRecursiveRetryLimit);
     /** The endpoint suspension duration in ms if the maximum retry attempts exceeded */
     private long suspendDurationOnMaximumRecursiveFailover = Long.parseLong(SynapsePropertiesLoader
             .getPropertyValue(SynapseConstants.SUSPEND_DURATION_ON_MAX_RECURSIVE_FAILOVER_CONFIG,
@@ -167,6 +180,8 @@ public class EndpointContext {
             return;
         }
 
+        int localState = stateOf(localStateWord.get());
+
         switch (state) {
             case ST_ACTIVE:
                 metricsBean.resetConsecutiveSuspensions();
@@ -269,43 +284,58 @@ public class EndpointContext {
              * The isSwitchOff flag becomes true when the endpoint is switched off manually. This state is maintained
              * until the endpoint is activated.
              */
-            if (isSwitchOff) {
-                localState = ST_OFF;
+            if (isSwitchOff || definition == null) {
+                updateLocalState(isSwitchOff ? ST_OFF : state);
             } else {
-                localState = state;
-                if (definition == null) return;
                 switch (state) {
-                    case ST_ACTIVE: {
-                        localRemainingRetries = definition.getRetriesOnTimeoutBeforeSuspend();
+                    case ST_ACTIVE:
+                    case ST_OFF: {
+                        // when switching off, mark as in maintenence, and reset all other information
+                        long word;
+                        do {
+                            word = localStateWord.get();
+                        } while (!localStateWord.compareAndSet(word, pack(state,
+                                definition.getRetriesOnTimeoutBeforeSuspend(), nextRetryTimeOf(word))));
                         localLastSuspendDuration = -1;
-                        maximumRemainingRetries = maximumRetryLimit;
+                        maximumRemainingRetries.set(maximumRetryLimit);
                         if (maximumRecursiveRetryLimit != -1) {
-                            maximumRemainingRetries = maximumRecursiveRetryLimit;
+                            maximumRemainingRetries.set(maximumRecursiveRetryLimit);
                         }
                         break;
                     }
                     case ST_TIMEOUT: {
-                        int retries = localRemainingRetries;
-                        if (retries == -1) {
-                            retries = definition.getRetriesOnTimeoutBeforeSuspend();
-                        }
-
-                        if (retries <= 0) {
-                            log.info("Endpoint : " + endpointName + printEndpointAddress()
-                                    + " has been marked for SUSPENSION, "
-                                    + "but no further retries remain. Thus it will be SUSPENDED.");
-
-                            setState(ST_SUSPENDED);
-
-                        } else {
-                            localRemainingRetries = retries - 1;
-                            localNextRetryTime =
-                                    System.currentTimeMillis() + definition.getRetryDurationOnTimeout();
-                            log.warn("Endpoint : " + endpointName + printEndpointAddress()
-                                    + " is marked as TIMEOUT and " +
-                                    "will be retried : " + localRemainingRetries + " more time/s " +
-                                    "after : " + new Date(localNextRetryTime)
-                                    + " until its marked SUSPENDED for failure");
+                        while (true) {
+                            long word = localStateWord.get();
+                            int retries = remainingRetriesOf(word);
+                            if (retries == -1) {
+                                retries = definition.getRetriesOnTimeoutBeforeSuspend();
+                            }
+
+                            if (retries <= 0) {
+                                if (!localStateWord.compareAndSet(word, pack(ST_TIMEOUT, retries,
+                                        nextRetryTimeOf(word)))) {
+                                    continue;
+                                }
+                                log.info("Endpoint : " + endpointName + printEndpointAddress()
+                                        + " has been marked for SUSPENSION, "
+                                        + "but no further retries remain. Thus it will be SUSPENDED.");
+
+                                setState(ST_SUSPENDED);
+
+                            } else {
+                                long nextRetryTime =
+                                        System.currentTimeMillis() + definition.getRetryDurationOnTimeout();
+                                if (!localStateWord.compareAndSet(word, pack(ST_TIMEOUT, retries - 1,
+                                        nextRetryTime))) {
+                                    continue;
+                                }
+                                log.warn("Endpoint : " + endpointName + printEndpointAddress()
+                                        + " is marked as TIMEOUT and " +
+                                        "will be retried : " + (retries - 1) + " more time/s " +
+                                        "after : " + new Date(nextRetryTime)
+                                        + " until its marked SUSPENDED for failure");
+                            }
+                            break;
                         }
                         break;
                     }
@@ -313,22 +343,56 @@ public class EndpointContext {
                         computeNextRetryTimeForSuspended();
                         break;
                     }
-                    case ST_OFF: {
-                        // mark as in maintenence, and reset all other information
-                        localRemainingRetries = definition == null ?
-                                -1 : definition.getRetriesOnTimeoutBeforeSuspend();
-                        localLastSuspendDuration = -1;
-                        maximumRemainingRetries = maximumRetryLimit;
-                        if (maximumRecursiveRetryLimit != -1) {
-                            maximumRemainingRetries = maximumRecursiveRetryLimit;
-                        }
-                        break;
-                    }
                 }
             }
         }
     }
 
+    /**
+     * Changes the local state of the endpoint, leaving the remaining retries and the next retry
+     * time as they are
+     *
+     * @param state the new state of the endpoint
+     */
+    private void updateLocalState(int state) {
+        long word;
+        do {
+            word = localStateWord.get();
+        } while (!localStateWord.compareAndSet(word, (word & ~STATE_MASK) | state));
+    }
+
+    /**
+     * Changes the local state of the endpoint to suspended until the given time, leaving the
+     * remaining retries as they are
+     *
+     * @param nextRetryTime the time in ms, until the next retry
+     */
+    private void suspendLocally(long nextRetryTime) {
+        long word;
+        do {
+            word = localStateWord.get();
+        } while (!localStateWord.compareAndSet(word,
+                pack(ST_SUSPENDED, remainingRetriesOf(word), nextRetryTime)));
+    }
+
+    private static long pack(int state, int remainingRetries, long nextRetryTime) {
+        long retries = Math.min(Math.max(remainingRetries, -1), MAX_LOCAL_RETRIES) + 1;
+        long time = Math.min(Math.max(nextRetryTime, 0), NEXT_RETRY_TIME_MASK);
+        return (time << (STATE_BITS + RETRIES_BITS)) | (retries << STATE_BITS) | (state & STATE_MASK);
+    }
+
+    private static int stateOf(long word) {
+        return (int) (word & STATE_MASK);
+    }
+
+    private static int remainingRetriesOf(long word) {
+        return (int) ((word >>> STATE_BITS) & RETRIES_MASK) - 1;
+    }
+
+    private static long nextRetryTimeOf(long word) {
+        return word >>> (STATE_BITS + RETRIES_BITS);
+    }
+
     /**
      * Endpoint has processed a message successfully
      */
@@ -343,7 +407,8 @@ public class EndpointContext {
                 setState(ST_ACTIVE);
             }
         } else {
-            if (localState != ST_ACTIVE && localState != ST_OFF) {
+            int state = stateOf(localStateWord.get());
+            if (state != ST_ACTIVE && state != ST_OFF) {
                 log.info("Endpoint : " + endpointName + printEndpointAddress()
                         + " currently " + getStateAsString() +
                         " will now be marked active since it processed its last message");
@@ -413,8 +478,8 @@ public class EndpointContext {
             Replicator.setAndReplicateState(LAST_SUSPEND_DURATION_KEY, nextSuspendDuration, cfgCtx);
             Replicator.setAndReplicateState(NEXT_RETRY_TIME_KEY, nextRetryTime, cfgCtx);
         } else {
+            suspendLocally(nextRetryTime);
             localLastSuspendDuration = nextSuspendDuration;
-            localNextRetryTime = nextRetryTime;
         }
 
         log.warn("Suspending endpoint : " + endpointName + printEndpointAddress() +
@@ -490,13 +555,16 @@ public class EndpointContext {
 
         } else {
 
+            // a single read of the state word, so the common case of an active endpoint is cheap
+            long word = localStateWord.get();
+            int localState = stateOf(word);
             if (localState == ST_ACTIVE) {
                 return true;
 
             } else if (localState == ST_OFF) {
                 return false;
 
-            } else if (System.currentTimeMillis() >= localNextRetryTime) {
+            } else if (System.currentTimeMillis() >= nextRetryTimeOf(word)) {
 
                 // if we are not active, but reached the next retry time, return true but do not
                 // make a state change. We will make the state change on a successful send
@@ -507,7 +575,7 @@ public class EndpointContext {
                         log.debug("Endpoint : " + endpointName + printEndpointAddress()
                                 + " which is currently in timeout " +
                                 "state is ready to be retried. Remaining retries before " +
-                                "suspension : " + localRemainingRetries);
+                                "suspension : " + remainingRetriesOf(word));
                     }
 
                 } else {
@@ -525,7 +593,7 @@ public class EndpointContext {
             log.debug("Endpoint : " + endpointName + printEndpointAddress()
                     + " not ready and is currently : "
                     + getStateAsString() + ". Next retry will be after : "
-                    + new Date(localNextRetryTime));
+                    + new Date(nextRetryTimeOf(localStateWord.get())));
         }
 
         return false;
@@ -562,7 +630,7 @@ public class EndpointContext {
             }
             return isState;
         } else {
-            return localState == s;
+            return stateOf(localStateWord.get()) == s;
         }
     }
 
@@ -573,7 +641,7 @@ public class EndpointContext {
      * @return the current state as a string
      */
     private String getStateAsString() {
-        Integer state = localState;
+        Integer state = stateOf(localStateWord.get());
         if (isClustered) {
             state = (Integer) cfgCtx.getPropertyNonReplicable(STATE_KEY);
             if (state == null) {
@@ -658,31 +726,30 @@ public class EndpointContext {
                 return false;
             }
         } else {
-            int maximumRemainingRetriesCount = isRecursiveEndpoint ? maximumRemainingRecursiveRetries :
+            AtomicInteger remainingMaxRetries = isRecursiveEndpoint ? maximumRemainingRecursiveRetries :
                     maximumRemainingRetries;
-            if (maximumRemainingRetriesCount == -1) {
-                //disable endpoint suspension
-                return false;
-            }
-
-            if (log.isDebugEnabled()) {
-                log.debug("Endpoint : " + endpointName + printEndpointAddress()
-                        + " has " + maximumRemainingRetriesCount + " maximum retries before suspension");
-            }
+            while (true) {
+                int maximumRemainingRetriesCount = remainingMaxRetries.get();
+                if (maximumRemainingRetriesCount == -1) {
+                    //disable endpoint suspension
+                    return false;
+                }
 
-            if (maximumRemainingRetriesCount <= 0) {
-                if (isRecursiveEndpoint) {
-                    maximumRemainingRecursiveRetries = maximumRecursiveRetryLimit;
+                if (maximumRemainingRetriesCount <= 0) {
+                    if (isRecursiveEndpoint) {
+                        remainingMaxRetries.compareAndSet(maximumRemainingRetriesCount,
+                                maximumRecursiveRetryLimit);
+                    }
+                } else if (!remainingMaxRetries.compareAndSet(maximumRemainingRetriesCount,
+                        maximumRemainingRetriesCount - 1)) {
+                    continue;
                 }
-                return true;
-            } else {
-                maximumRemainingRetriesCount -= 1;
-                if (isRecursiveEndpoint) {
-                    maximumRemainingRecursiveRetries = maximumRemainingRetriesCount;
-                } else {
-                    maximumRemainingRetries = maximumRemainingRetriesCount;
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Endpoint : " + endpointName + printEndpointAddress()
+                            + " has " + maximumRemainingRetriesCount + " maximum retries before suspension");
                 }
-                return false;
+                return maximumRemainingRetriesCount <= 0;
             }
         }
     }
@@ -701,9 +768,8 @@ public class EndpointContext {
             Replicator.setAndReplicateState(LAST_SUSPEND_DURATION_KEY, suspendDuration, cfgCtx);
             Replicator.setAndReplicateState(NEXT_RETRY_TIME_KEY, nextRetryTime, cfgCtx);
         } else {
-            localState = ST_SUSPENDED;
+            suspendLocally(nextRetryTime);
             localLastSuspendDuration = suspendDuration;
-            localNextRetryTime = nextRetryTime;
         }
 
         log.warn("Endpoint : " + endpointName + printEndpointAddress() +
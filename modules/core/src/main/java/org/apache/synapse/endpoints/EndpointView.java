@@ -26,14 +26,20 @@ import org.apache.commons.logging.LogFactory;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class is the metrics collector and JMX control point for Endpoints
+ * <p/>
+ * The metrics are updated on every message sent to or received from the endpoint, by many
+ * threads at once, so they are kept in {@link LongAdder}s and accumulators which never block the
+ * caller. Response times are recorded into a {@link LatencyHistogram}, from which the response
+ * time percentiles are computed when read.
  */
 public class EndpointView implements EndpointViewMBean, MessageLevelMetricsCollector {
 
     private static final Log log = LogFactory.getLog(EndpointView.class);
-    private static final Long ONE = 1L;
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(20,
         new ThreadFactory() {
             public Thread newThread(Runnable r) {
@@ -48,38 +54,40 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     private Endpoint endpoint = null;
 
     // metrics collected / maintained
-    private long messagesReceived;
-    private long faultsReceiving;
-    private long timeoutsReceiving;
-    private long bytesReceived;
-    private long minSizeReceived;
-    private long maxSizeReceived;
-    private double avgSizeReceived;
-    private final Map<Integer, Long> receivingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
-
-    private long messagesSent;
-    private long faultsSending;
-    private long timeoutsSending;
-    private long bytesSent;
-    private long minSizeSent;
-    private long maxSizeSent;
-    private double avgSizeSent;
-
-    private int consecutiveSuspensions;
-    private int consecutiveTimeouts;
-    private int totalSuspensions;
-    private int totalTimeouts;
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder faultsReceiving = new LongAdder();
+    private final LongAdder timeoutsReceiving = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAccumulator minSizeReceived = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxSizeReceived = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalSizeReceived = new LongAdder();
+    private final LongAdder sizesReceived = new LongAdder();
+    private final StatusCodeCounters receivingFaultTable = new StatusCodeCounters();
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder faultsSending = new LongAdder();
+    private final LongAdder timeoutsSending = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAccumulator minSizeSent = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxSizeSent = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalSizeSent = new LongAdder();
+    private final LongAdder sizesSent = new LongAdder();
+
+    /** Time between sending a request and receiving its response, in microseconds */
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+
+    private final AtomicInteger consecutiveSuspensions = new AtomicInteger(0);
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger(0);
+    private final AtomicInteger totalSuspensions = new AtomicInteger(0);
+    private final AtomicInteger totalTimeouts = new AtomicInteger(0);
     private AtomicInteger suspensions = new AtomicInteger(0);
     private AtomicInteger timeouts = new AtomicInteger(0);
     private Date suspendedAt;
     private Date timedoutAt;
 
-    private final Map<Integer, Long> sendingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final StatusCodeCounters sendingFaultTable = new StatusCodeCounters();
 
-    private final Map<Integer, Long> responseCodeTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final StatusCodeCounters responseCodeTable = new StatusCodeCounters();
 
     private long lastResetTime = System.currentTimeMillis();
 
@@ -274,10 +282,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(receivingFaultTable, e.getMetricsMBean().getReceivingFaultTable());
                 }
             }
-            addTableMaps(receivingFaultTable, this.receivingFaultTable);
+            addTableMaps(receivingFaultTable, this.receivingFaultTable.toMap());
             return receivingFaultTable;
         } else {
-            return receivingFaultTable;
+            return receivingFaultTable.toMap();
         }
     }
 
@@ -293,10 +301,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(sendingFaultTable, e.getMetricsMBean().getSendingFaultTable());
                 }
             }
-            addTableMaps(sendingFaultTable, this.sendingFaultTable);
+            addTableMaps(sendingFaultTable, this.sendingFaultTable.toMap());
             return sendingFaultTable;
         } else {
-            return sendingFaultTable;
+            return sendingFaultTable.toMap();
         }
     }
 
@@ -314,7 +322,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return responseCodeTable;
         } else {
-            return responseCodeTable;
+            return responseCodeTable.toMap();
         }
     }
 
@@ -335,39 +343,39 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     }
 
     public int getConsecutiveEndpointSuspensions() {
-        return consecutiveSuspensions;
+        return consecutiveSuspensions.get();
     }
 
     public void incrementSuspensions() {
-        consecutiveSuspensions++;
-        totalSuspensions++;
+        consecutiveSuspensions.incrementAndGet();
+        totalSuspensions.incrementAndGet();
         suspensions.incrementAndGet();
     }
 
     public void resetConsecutiveSuspensions() {
-        consecutiveSuspensions = 0;
+        consecutiveSuspensions.set(0);
     }
 
     public int getConsecutiveEndpointTimeouts() {
-        return consecutiveTimeouts;
+        return consecutiveTimeouts.get();
     }
 
     public void incrementTimeouts() {
-        consecutiveTimeouts++;
-        totalTimeouts++;
+        consecutiveTimeouts.incrementAndGet();
+        totalTimeouts.incrementAndGet();
         timeouts.incrementAndGet();
     }
 
     public void resetConsecutiveTimeouts() {
-        consecutiveTimeouts = 0;
+        consecutiveTimeouts.set(0);
     }
 
     public int getTotalEndpointSuspensions() {
-        return totalSuspensions;
+        return totalSuspensions.get();
     }
 
     public int getTotalEndpointTimeouts() {
-        return totalTimeouts;
+        return totalTimeouts.get();
     }
 
     public int getLastMinuteEndpointSuspensions() {
@@ -424,7 +432,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesReceived;
         } else {
-            return messagesReceived;
+            return messagesReceived.sum();
         }
     }
 
@@ -442,7 +450,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsReceiving;
         } else {
-            return faultsReceiving;
+            return faultsReceiving.sum();
         }
     }
 
@@ -460,7 +468,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsReceiving;
         } else {
-            return timeoutsReceiving;
+            return timeoutsReceiving.sum();
         }
     }
 
@@ -478,7 +486,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesReceived;
         } else {
-            return bytesReceived;
+            return bytesReceived.sum();
         }
     }
 
@@ -496,7 +504,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesSent;
         } else {
-            return messagesSent;
+            return messagesSent.sum();
         }
     }
 
@@ -514,7 +522,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsSending;
         } else {
-            return faultsSending;
+            return faultsSending.sum();
         }
     }
 
@@ -532,7 +540,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsSending;
         } else {
-            return timeoutsSending;
+            return timeoutsSending.sum();
         }
     }
 
@@ -550,7 +558,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesSent;
         } else {
-            return bytesSent;
+            return bytesSent.sum();
         }
     }
 
@@ -568,7 +576,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeReceived;
         } else {
-            return minSizeReceived;
+            return minOf(this.minSizeReceived);
         }
     }
 
@@ -586,7 +594,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeReceived;
         } else {
-            return maxSizeReceived;
+            return this.maxSizeReceived.get();
         }
     }
 
@@ -604,7 +612,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeSent;
         } else {
-            return minSizeSent;
+            return minOf(this.minSizeSent);
         }
     }
 
@@ -622,7 +630,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeSent;
         } else {
-            return maxSizeSent;
+            return this.maxSizeSent.get();
         }
     }
 
@@ -639,7 +647,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeReceived;
         } else {
-            return avgSizeReceived;
+            return averageOf(totalSizeReceived, sizesReceived);
         }
     }
 
@@ -655,32 +663,166 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeSent;
         } else {
-            return avgSizeSent;
+            return averageOf(totalSizeSent, sizesSent);
+        }
+    }
+
+    /**
+     * Average time taken to receive a response, in milliseconds
+     * @return the average response time
+     */
+    public double getAvgResponseTime() {
+        return aggregatedResponseTimes().getMean() / 1000;
+    }
+
+    /**
+     * Longest time taken to receive a response, in milliseconds
+     * @return the maximum response time
+     */
+    public double getMaxResponseTime() {
+        return aggregatedResponseTimes().getMax() / 1000.0;
+    }
+
+    public double getResponseTime50thPercentile() {
+        return getResponseTimePercentile(50);
+    }
+
+    public double getResponseTime95thPercentile() {
+        return getResponseTimePercentile(95);
+    }
+
+    public double getResponseTime99thPercentile() {
+        return getResponseTimePercentile(99);
+    }
+
+    public double getResponseTime999thPercentile() {
+        return getResponseTimePercentile(99.9);
+    }
+
+    /**
+     * Response time below which the given percentage of the responses were received, in
+     * milliseconds. For a group endpoint the response times of all the children are considered.
+     * @param percentile the percentile, between 0 and 100
+     * @return the response time at the given percentile or 0 if no response was received
+     */
+    public double getResponseTimePercentile(double percentile) {
+        return aggregatedResponseTimes().getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Record the time taken to receive a response from this endpoint
+     * @param nanos the response time in nanoseconds
+     */
+    public void recordResponseTime(long nanos) {
+        responseTimes.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    LatencyHistogram getResponseTimes() {
+        return responseTimes;
+    }
+
+    /**
+     * @return a copy of the response times recorded so far, of all the children for a group endpoint
+     */
+    LatencyHistogram getResponseTimeSnapshot() {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        snapshot.add(aggregatedResponseTimes());
+        return snapshot;
+    }
+
+    private LatencyHistogram aggregatedResponseTimes() {
+        if (endpoint.getChildren() == null) {
+            return responseTimes;
+        }
+        LatencyHistogram aggregated = new LatencyHistogram();
+        for (Endpoint e : endpoint.getChildren()) {
+            if (e.getMetricsMBean() != null) {
+                aggregated.add(e.getMetricsMBean().aggregatedResponseTimes());
+            }
+        }
+        return aggregated;
+    }
+
+    /**
+     * Current adaptive limit of the messages in flight. For a group endpoint the limits of the
+     * children are summed up
+     * @return the concurrency limit, or -1 if the adaptive concurrency limit is not enabled
+     */
+    public int getConcurrencyLimit() {
+        int limit = -1;
+        for (AdaptiveConcurrencyLimiter limiter : concurrencyLimiters()) {
+            limit = Math.max(limit, 0) + limiter.getLimit();
+        }
+        return limit;
+    }
+
+    /**
+     * Number of messages in flight counted against the adaptive concurrency limit
+     * @return the number of messages waiting for a response
+     */
+    public int getMessagesInFlight() {
+        int inFlight = 0;
+        for (AdaptiveConcurrencyLimiter limiter : concurrencyLimiters()) {
+            inFlight += limiter.getInFlight();
+        }
+        return inFlight;
+    }
+
+    /**
+     * Number of messages failed without being sent as the adaptive concurrency limit was reached
+     * @return the number of rejected messages
+     */
+    public long getConcurrencyLimitRejections() {
+        long rejected = 0;
+        for (AdaptiveConcurrencyLimiter limiter : concurrencyLimiters()) {
+            rejected += limiter.getRejected();
+        }
+        return rejected;
+    }
+
+    private List<AdaptiveConcurrencyLimiter> concurrencyLimiters() {
+        List<AdaptiveConcurrencyLimiter> limiters = new ArrayList<AdaptiveConcurrencyLimiter>();
+        collectConcurrencyLimiters(endpoint, limiters);
+        return limiters;
+    }
+
+    private static void collectConcurrencyLimiters(Endpoint endpoint, List<AdaptiveConcurrencyLimiter> limiters) {
+        if (endpoint instanceof AbstractEndpoint &&
+                ((AbstractEndpoint) endpoint).getConcurrencyLimiter() != null) {
+            limiters.add(((AbstractEndpoint) endpoint).getConcurrencyLimiter());
+        }
+        if (endpoint.getChildren() != null) {
+            for (Endpoint e : endpoint.getChildren()) {
+                collectConcurrencyLimiters(e, limiters);
+            }
         }
     }
 
     // --- MessageLevelMetricsCollector methods ---
     public void resetStatistics() {
 
-        messagesReceived  = 0;
-        faultsReceiving   = 0;
-        timeoutsReceiving = 0;
-        bytesReceived     = 0;
-        minSizeReceived   = 0;
-        maxSizeReceived   = 0;
-        avgSizeReceived   = 0;
+        messagesReceived.reset();
+        faultsReceiving.reset();
+        timeoutsReceiving.reset();
+        bytesReceived.reset();
+        minSizeReceived.reset();
+        maxSizeReceived.reset();
+        totalSizeReceived.reset();
+        sizesReceived.reset();
         receivingFaultTable.clear();
 
-        messagesSent      = 0;
-        faultsSending     = 0;
-        timeoutsSending   = 0;
-        bytesSent         = 0;
-        minSizeSent       = 0;
-        maxSizeSent       = 0;
-        avgSizeSent       = 0;
+        messagesSent.reset();
+        faultsSending.reset();
+        timeoutsSending.reset();
+        bytesSent.reset();
+        minSizeSent.reset();
+        maxSizeSent.reset();
+        totalSizeSent.reset();
+        sizesSent.reset();
         sendingFaultTable.clear();
 
         responseCodeTable.clear();
+        responseTimes.reset();
         lastResetTime = System.currentTimeMillis();
 
         if (endpoint.getChildren() != null) {
@@ -693,68 +835,52 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         log.info("Endpoint statistics reset for : " + endpointName + " (and/or its children)");
     }
 
-    public synchronized void incrementMessagesReceived() {
-        messagesReceived++;
+    public void incrementMessagesReceived() {
+        messagesReceived.increment();
     }
 
-    public synchronized void incrementFaultsReceiving(int errorCode) {
-        faultsReceiving++;
-        Object o = receivingFaultTable.get(errorCode);
-        if (o == null) {
-            receivingFaultTable.put(errorCode, ONE);
-        } else {
-            receivingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsReceiving(int errorCode) {
+        faultsReceiving.increment();
+        receivingFaultTable.increment(errorCode);
     }
 
-    public synchronized void incrementTimeoutsReceiving() {
-        timeoutsReceiving++;
+    public void incrementTimeoutsReceiving() {
+        timeoutsReceiving.increment();
     }
 
-    public synchronized void incrementBytesReceived(long size) {
-        bytesReceived += size;
+    public void incrementBytesReceived(long size) {
+        bytesReceived.add(size);
     }
 
-    public synchronized void incrementMessagesSent() {
-        messagesSent++;
+    public void incrementMessagesSent() {
+        messagesSent.increment();
     }
 
-    public synchronized void incrementFaultsSending(int errorCode) {
-        faultsSending++;
-        Object o = sendingFaultTable.get(errorCode);
-        if (o == null) {
-            sendingFaultTable.put(errorCode, ONE);
-        } else {
-            sendingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsSending(int errorCode) {
+        faultsSending.increment();
+        sendingFaultTable.increment(errorCode);
     }
 
-    public synchronized void incrementTimeoutsSending() {
-        timeoutsSending++;
+    public void incrementTimeoutsSending() {
+        timeoutsSending.increment();
     }
 
-    public synchronized void incrementBytesSent(long size) {
-        bytesSent += size;
+    public void incrementBytesSent(long size) {
+        bytesSent.add(size);
     }
 
-    public synchronized void notifyReceivedMessageSize(long size) {
-        if (minSizeReceived == 0 || size < minSizeReceived) {
-            minSizeReceived = size;
-        }
-        if (size > maxSizeReceived) {
-            maxSizeReceived = size;
-        }
-        avgSizeReceived = (avgSizeReceived == 0 ? size : (avgSizeReceived + size) / 2);
+    public void notifyReceivedMessageSize(long size) {
+        minSizeReceived.accumulate(size);
+        maxSizeReceived.accumulate(size);
+        totalSizeReceived.add(size);
+        sizesReceived.increment();
     }
 
-    public synchronized void notifySentMessageSize(long size) {
-        if (minSizeSent == 0 || size < minSizeSent) {
-            minSizeSent = size;
-        }
-        if (size > maxSizeSent) {
-            maxSizeSent = size;
-        }
-        avgSizeSent = (avgSizeSent == 0 ? size : (avgSizeSent + size) / 2);
+    public void notifySentMessageSize(long size) {
+        minSizeSent.accumulate(size);
+        maxSizeSent.accumulate(size);
+        totalSizeSent.add(size);
+        sizesSent.increment();
     }
 
     /**
@@ -763,14 +889,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param errorCode the code to report
      */
     public void reportSendingFault(int errorCode) {
-        synchronized(sendingFaultTable) {
-            Object o = sendingFaultTable.get(errorCode);
-            if (o == null) {
-                sendingFaultTable.put(errorCode, ONE);
-            } else {
-                sendingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        sendingFaultTable.increment(errorCode);
     }
 
     /**
@@ -779,14 +898,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param errorCode the code to report
      */
     public void reportReceivingFault(int errorCode) {
-        synchronized(receivingFaultTable) {
-            Object o = receivingFaultTable.get(errorCode);
-            if (o == null) {
-                receivingFaultTable.put(errorCode, ONE);
-            } else {
-                receivingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        receivingFaultTable.increment(errorCode);
     }
 
     /**
@@ -794,17 +906,20 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param respCode response code
      */
     public void reportResponseCode(int respCode) {
-        synchronized(responseCodeTable) {
-            Object o = responseCodeTable.get(respCode);
-            if (o == null) {
-                responseCodeTable.put(respCode, ONE);
-            } else {
-                responseCodeTable.put(respCode, (Long) o + 1);
-            }
-        }
+        responseCodeTable.increment(respCode);
     }
 
     //---------- utility methods ---------------
+    private static long minOf(LongAccumulator min) {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    private static double averageOf(LongAdder total, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
     private static void addTableMaps(Map<Integer, Long> t, Map<Integer, Long> s) {
         for (Map.Entry<Integer, Long> o : s.entrySet()) {
             if (t.containsKey(o.getKey())) {
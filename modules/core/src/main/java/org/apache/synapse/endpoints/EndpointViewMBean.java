@@ -44,6 +44,17 @@ public interface EndpointViewMBean {
     public Map getSendingFaultTable();
     public Map getResponseCodeTable();
 
+    public double getAvgResponseTime();
+    public double getMaxResponseTime();
+    public double getResponseTime50thPercentile();
+    public double getResponseTime95thPercentile();
+    public double getResponseTime99thPercentile();
+    public double getResponseTime999thPercentile();
+
+    public int getConcurrencyLimit();
+    public int getMessagesInFlight();
+    public long getConcurrencyLimitRejections();
+
     public Date getSuspendedAt();
     public Date getTimedoutAt();
     public int getConsecutiveEndpointSuspensions();
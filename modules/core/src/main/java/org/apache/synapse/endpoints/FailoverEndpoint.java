@@ -74,14 +74,26 @@ public class FailoverEndpoint extends AbstractEndpoint {
     /** check message need to be built before sending */
     private boolean buildMessage = false;
 
+    /** Sends copies of slow messages to the next child, null if hedging is not enabled */
+    private RequestHedger requestHedger = null;
+
     public void init(SynapseEnvironment synapseEnvironment) {
         if (!initialized) {
             super.init(synapseEnvironment);
+            requestHedger = createRequestHedger();
             buildMessage = Boolean.parseBoolean(
                     SynapsePropertiesLoader.getPropertyValue(SynapseConstants.BUILD_MESSAGE_ON_FAILOVER, "false"));
         }
     }
 
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (requestHedger != null) {
+            requestHedger.destroy();
+        }
+    }
+
     public void send(MessageContext synCtx) {
         if (RuntimeStatisticCollector.isStatisticsEnabled()) {
             java.lang.Integer currentIndex = null;
@@ -173,6 +185,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                     if (isARetry && metricsMBean != null) {
                         metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                     }
+                    hedge(synCtx, endpoint, isARetry);
                     synCtx.pushFaultHandler(this);
                     if(endpoint instanceof AbstractEndpoint){
                     	org.apache.axis2.context.MessageContext axisMC = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
@@ -223,6 +236,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                 if (isARetry && metricsMBean != null) {
                     metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                 }
+                hedge(synCtx, currentEndpoint, isARetry);
                 synCtx.pushFaultHandler(this);
                 currentEndpoint.send(synCtx);
 
@@ -235,6 +249,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                         if (isARetry && metricsMBean != null) {
                             metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                         }
+                        hedge(synCtx, currentEndpoint, isARetry);
                         synCtx.pushFaultHandler(this);
                         currentEndpoint.send(synCtx);
                         break;
@@ -252,7 +267,20 @@ public class FailoverEndpoint extends AbstractEndpoint {
         }
     }
 
+    /**
+     * Prepare a hedged attempt of the message to the next child, unless the message is a retry
+     */
+    private void hedge(MessageContext synCtx, Endpoint endpoint, boolean isARetry) {
+        if (requestHedger != null && !isARetry) {
+            requestHedger.hedge(synCtx, this, endpoint);
+        }
+    }
+
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synMessageContext) {
+        // another attempt of a hedged message may still succeed
+        if (!HedgedRequest.onAttemptFailed(synMessageContext)) {
+            return;
+        }
         //If there is a failure in child endpoint, restore the original message envelope from the message context
         if (synMessageContext.getProperty(SynapseConstants.LB_FO_ENDPOINT_ORIGINAL_MESSAGE) != null) {
             try {
@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+
+import java.util.TimerTask;
+
+/**
+ * Tracks the attempts of a message sent more than once by a {@link RequestHedger}. The original
+ * message and its hedged copy share an instance, so that only the first response is processed and
+ * a fault is only handled when no other attempt can still succeed.
+ */
+public class HedgedRequest {
+
+    private static final Log log = LogFactory.getLog(HedgedRequest.class);
+
+    /** Number of attempts sent and not failed yet */
+    private int pending = 1;
+
+    /** Set when a response was processed or a fault was handed over to the fault handlers */
+    private boolean done = false;
+
+    /** The scheduled hedged attempt, cancelled once it is not needed anymore */
+    private TimerTask hedge;
+
+    synchronized void setHedge(TimerTask hedge) {
+        this.hedge = hedge;
+    }
+
+    /**
+     * @return true once a response was processed or the fault was handed over to the fault handlers
+     */
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Called before sending the hedged attempt
+     *
+     * @return true if the hedged attempt should be sent
+     */
+    synchronized boolean startHedge() {
+        if (done) {
+            return false;
+        }
+        pending++;
+        return true;
+    }
+
+    /**
+     * Called when a response is received for one of the attempts
+     *
+     * @return true if this is the first response, which should be processed
+     */
+    public synchronized boolean complete() {
+        if (done) {
+            return false;
+        }
+        done = true;
+        cancelHedge();
+        return true;
+    }
+
+    /**
+     * Called when one of the attempts fails
+     *
+     * @return true if the fault should be handled, false if another attempt can still succeed or
+     * already succeeded
+     */
+    synchronized boolean fail() {
+        pending--;
+        if (done || pending > 0) {
+            return false;
+        }
+        done = true;
+        cancelHedge();
+        return true;
+    }
+
+    private void cancelHedge() {
+        if (hedge != null) {
+            hedge.cancel();
+            hedge = null;
+        }
+    }
+
+    /**
+     * Checks whether the fault of the given message should be handled by the fault handlers.
+     * Messages which are not hedged are always handled. Once the fault of a hedged message is
+     * handled, the message is not treated as hedged anymore, so that a retry of it proceeds as usual.
+     *
+     * @param synCtx the failed message
+     * @return true if the fault should be handled, false if it should be ignored
+     */
+    public static boolean onAttemptFailed(MessageContext synCtx) {
+        HedgedRequest request = (HedgedRequest) synCtx.getProperty(SynapseConstants.HEDGED_REQUEST);
+        if (request == null) {
+            return true;
+        }
+        if (!request.fail()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Ignoring the failure of a hedged attempt of the message : " +
+                        synCtx.getMessageID() + " as another attempt is pending or succeeded");
+            }
+            return false;
+        }
+        synCtx.getPropertyKeySet().remove(SynapseConstants.HEDGED_REQUEST);
+        return true;
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.endpoints.algorithms.AlgorithmContext;
 import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
+import org.apache.synapse.endpoints.algorithms.ResponseAwareLoadbalanceAlgorithm;
 import org.apache.synapse.transport.util.MessageHandlerProvider;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.json.JSONObject;
@@ -106,6 +107,9 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
      */
     private boolean buildMessageAtt = false;
 
+    /** Sends copies of slow messages to another child, null if hedging is not enabled */
+    private RequestHedger requestHedger = null;
+
     @Override
     public void init(SynapseEnvironment synapseEnvironment) {
         ConfigurationContext cc =
@@ -122,6 +126,7 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
                 ManagedLifecycle lifecycle = (ManagedLifecycle) algorithm;
                 lifecycle.init(synapseEnvironment);
             }
+            requestHedger = createRequestHedger();
             loadBalanceEPInitialized = true;
             buildMessage = Boolean.parseBoolean(
                     SynapsePropertiesLoader.getPropertyValue(SynapseConstants.BUILD_MESSAGE_ON_FAILOVER, "false"));
@@ -131,6 +136,9 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
     @Override
     public void destroy() {
         super.destroy();
+        if (requestHedger != null) {
+            requestHedger.destroy();
+        }
 
         // if the loadbalancing algorithm implements the ManagedLifecycle interface
         // destroy the algorithm
@@ -240,6 +248,9 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
                     metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_LB_FAIL_OVER);
                 }
             }
+            if (requestHedger != null && synCtx.getProperty(SynapseConstants.LAST_ENDPOINT) == null) {
+                requestHedger.hedge(synCtx, this, endpoint);
+            }
             synCtx.pushFaultHandler(this);
             endpoint.send(synCtx);
 
@@ -340,9 +351,31 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
     }
 
 
+    /**
+     * Informs a response aware algorithm that a child endpoint has responded to a message
+     *
+     * @param endpoint     the child endpoint which responded
+     * @param synCtx       the message the child endpoint responded to
+     * @param responseTime time taken to receive the response in nanoseconds
+     */
+    public void onChildEndpointResponse(Endpoint endpoint, MessageContext synCtx, long responseTime) {
+        if (algorithm instanceof ResponseAwareLoadbalanceAlgorithm) {
+            ((ResponseAwareLoadbalanceAlgorithm) algorithm).onResponse(endpoint, synCtx, responseTime);
+        }
+    }
+
     @Override
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synMessageContext) {
 
+        if (algorithm instanceof ResponseAwareLoadbalanceAlgorithm) {
+            ((ResponseAwareLoadbalanceAlgorithm) algorithm).onFailure(endpoint, synMessageContext);
+        }
+
+        // another attempt of a hedged message may still succeed
+        if (!HedgedRequest.onAttemptFailed(synMessageContext)) {
+            return;
+        }
+
         //If there is a failure in child endpoint, restore the original message envelope from the message context
         if (synMessageContext.getProperty(SynapseConstants.LB_FO_ENDPOINT_ORIGINAL_MESSAGE) != null) {
             try {
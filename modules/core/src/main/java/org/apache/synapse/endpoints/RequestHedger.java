@@ -0,0 +1,347 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.FaultHandler;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+import org.apache.synapse.transport.util.MessageHandlerProvider;
+import org.apache.synapse.util.MessageHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a copy of a message to another child of a load balance or failover endpoint when the
+ * response of the first child does not arrive within the hedge delay. The first response of either
+ * attempt is processed and the other one is discarded, which cuts the tail latency against
+ * replicated backends. Only use it with idempotent services.
+ * <p/>
+ * The hedge delay is the configured percentile of the response times of the endpoint, so that
+ * only the slowest messages are hedged. It is recomputed every {@link #DELAY_REFRESH_PERIOD} ms
+ * from the responses received within that period, so that it follows the current latency of the
+ * endpoint, and kept as it is while too few responses were received. The extra load is capped by
+ * a budget, which is the percentage of the messages that may be hedged.
+ * <p/>
+ * A message which is already built is only copied when the hedge delay passes without a response.
+ * A streamed message can not be read again once it is sent, so it is built and copied before it is
+ * sent, but only while the endpoint is slow, i.e. a message of the endpoint waited longer than the
+ * hedge delay within the last {@link #SLOW_PERIOD} ms. Other messages keep passing through.
+ */
+public class RequestHedger {
+
+    private static final Log log = LogFactory.getLog(RequestHedger.class);
+
+    /** Budget is kept in thousandths of a hedge */
+    private static final long HEDGE_COST = 1000;
+    /** Hedges which can be saved up for a burst of slow responses */
+    private static final long MAX_BUDGET = 10 * HEDGE_COST;
+    /** Time in ms streamed messages are copied for after a message waited longer than the hedge delay */
+    static final long SLOW_PERIOD = 10000;
+    /** Time in ms between two computations of the hedge delay */
+    static final long DELAY_REFRESH_PERIOD = 5000;
+    /** Responses needed within a refresh period to compute the hedge delay again */
+    static final long MIN_DELAY_SAMPLES = 20;
+
+    private final int delayPercentile;
+    private final long minDelay;
+    private final long budgetPerMessage;
+    private final AtomicLong budget = new AtomicLong();
+    /** Time until which streamed messages are copied before they are sent */
+    private volatile long slowUntil = 0;
+    /** Current hedge delay in ms */
+    private volatile long delay;
+    /** Response times of the endpoint at the last refresh of the delay, only used by the refresh task */
+    private LatencyHistogram lastResponseTimes;
+    private final AtomicReference<TimerTask> delayRefresh = new AtomicReference<TimerTask>();
+
+    /**
+     * Create a hedger
+     *
+     * @param delayPercentile percentile of the response times to wait before hedging
+     * @param minDelay        minimum time to wait before hedging in ms, also used until response
+     *                        times are known
+     * @param budgetPercent   the percentage of the messages that may be hedged
+     */
+    public RequestHedger(int delayPercentile, long minDelay, int budgetPercent) {
+        if (delayPercentile <= 0 || delayPercentile > 100 || minDelay < 0 || budgetPercent < 0) {
+            throw new IllegalArgumentException("Invalid hedging configuration, delay percentile : " +
+                    delayPercentile + " minimum delay : " + minDelay + " budget : " + budgetPercent);
+        }
+        this.delayPercentile = delayPercentile;
+        this.minDelay = minDelay;
+        this.budgetPerMessage = budgetPercent * HEDGE_COST / 100;
+        this.delay = minDelay;
+    }
+
+    /**
+     * Prepare a hedged attempt of a message, which is about to be sent to the given child of the
+     * parent endpoint. This must be called before the message is sent, as a streamed message may
+     * have to be copied.
+     *
+     * @param synCtx  the message
+     * @param parent  the load balance or failover endpoint
+     * @param primary the child the message is sent to
+     */
+    public void hedge(final MessageContext synCtx, final AbstractEndpoint parent, final Endpoint primary) {
+        if ("true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY)) ||
+                parent.getChildren() == null || parent.getChildren().size() < 2) {
+            return;
+        }
+        addBudget();
+        if (budget.get() < HEDGE_COST) {
+            return;
+        }
+        Timer timer = synCtx.getConfiguration() != null ? synCtx.getConfiguration().getSynapseTimer() : null;
+        if (timer == null) {
+            return;
+        }
+        startDelayRefresh(timer, parent);
+
+        final boolean built = Boolean.TRUE.equals(((Axis2MessageContext) synCtx).getAxis2MessageContext()
+                .getProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED));
+        MessageContext copy = null;
+        if (!built && isSlow()) {
+            copy = copy(synCtx);
+            if (copy == null) {
+                return;
+            }
+        }
+        final MessageContext preparedCopy = copy;
+        // the primary send adds its own properties, which must not be carried over to a later copy
+        final Set<Object> propertyKeys = built ? new HashSet<Object>(synCtx.getPropertyKeySet()) : null;
+        // the primary send pushes the fault handlers of its attempt, the hedge must only fail over once
+        final List<FaultHandler> faultHandlers = new ArrayList<FaultHandler>(synCtx.getFaultStack());
+        final EndpointReference to = synCtx.getTo();
+        final HedgedRequest request = new HedgedRequest();
+        synCtx.setProperty(SynapseConstants.HEDGED_REQUEST, request);
+
+        TimerTask task = new TimerTask() {
+            public void run() {
+                if (request.isDone()) {
+                    return;
+                }
+                // the response did not arrive within the hedge delay
+                slowUntil = System.currentTimeMillis() + SLOW_PERIOD;
+                if (!built && preparedCopy == null) {
+                    return;
+                }
+                Runnable send = new Runnable() {
+                    public void run() {
+                        sendHedge(synCtx, preparedCopy, propertyKeys, faultHandlers, to, request, parent,
+                                primary);
+                    }
+                };
+                ExecutorService executor = synCtx.getEnvironment().getExecutorService();
+                try {
+                    if (executor != null) {
+                        executor.execute(send);
+                    } else {
+                        send.run();
+                    }
+                } catch (RejectedExecutionException e) {
+                    log.warn("Unable to hedge the message : " + synCtx.getMessageID() + " as the executor " +
+                            "is busy");
+                }
+            }
+        };
+        request.setHedge(task);
+        try {
+            timer.schedule(task, delay);
+        } catch (IllegalStateException e) {
+            // the timer is cancelled when the configuration is destroyed
+            synCtx.getPropertyKeySet().remove(SynapseConstants.HEDGED_REQUEST);
+        }
+    }
+
+    /**
+     * Stop computing the hedge delay, when the endpoint is destroyed
+     */
+    public void destroy() {
+        TimerTask refresh = delayRefresh.getAndSet(null);
+        if (refresh != null) {
+            refresh.cancel();
+        }
+    }
+
+    private void startDelayRefresh(Timer timer, final Endpoint parent) {
+        if (delayRefresh.get() != null) {
+            return;
+        }
+        TimerTask refresh = new TimerTask() {
+            public void run() {
+                refreshDelay(parent);
+            }
+        };
+        if (!delayRefresh.compareAndSet(null, refresh)) {
+            return;
+        }
+        try {
+            timer.schedule(refresh, 0, DELAY_REFRESH_PERIOD);
+        } catch (IllegalStateException e) {
+            // the timer is cancelled when the configuration is destroyed
+            delayRefresh.compareAndSet(refresh, null);
+        }
+    }
+
+    /**
+     * Compute the hedge delay from the responses received since the last refresh
+     *
+     * @param parent the load balance or failover endpoint
+     */
+    void refreshDelay(Endpoint parent) {
+        EndpointView view = parent.getMetricsMBean();
+        if (view == null) {
+            return;
+        }
+        LatencyHistogram responseTimes = view.getResponseTimeSnapshot();
+        LatencyHistogram recent = new LatencyHistogram();
+        recent.add(responseTimes);
+        if (lastResponseTimes != null && lastResponseTimes.getCount() <= responseTimes.getCount()) {
+            // otherwise the statistics were reset since the last refresh
+            recent.subtract(lastResponseTimes);
+        }
+        lastResponseTimes = responseTimes;
+        if (recent.getCount() >= MIN_DELAY_SAMPLES) {
+            long percentile = (long) Math.ceil(recent.getValueAtPercentile(delayPercentile) / 1000.0);
+            delay = Math.max(minDelay, percentile);
+        }
+    }
+
+    long getDelay() {
+        return delay;
+    }
+
+    boolean isSlow() {
+        return System.currentTimeMillis() < slowUntil;
+    }
+
+    private MessageContext copy(MessageContext synCtx) {
+        try {
+            org.apache.axis2.context.MessageContext axis2MsgCtx =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            MessageHandlerProvider.getMessageHandler(axis2MsgCtx).buildMessage(axis2MsgCtx);
+            MessageContext hedgeCtx = MessageHelper.cloneMessageContext(synCtx);
+            ((Axis2MessageContext) hedgeCtx).getAxis2MessageContext().setServerSide(
+                    axis2MsgCtx.isServerSide());
+            return hedgeCtx;
+        } catch (Exception e) {
+            log.warn("Unable to copy the message : " + synCtx.getMessageID() + " for hedging, it will " +
+                    "only be sent once", e);
+            return null;
+        }
+    }
+
+    void sendHedge(MessageContext synCtx, MessageContext hedgeCtx, Set<Object> propertyKeys,
+                   List<FaultHandler> faultHandlers, EndpointReference to, HedgedRequest request,
+                   AbstractEndpoint parent, Endpoint primary) {
+        Endpoint target = selectTarget(parent.getChildren(), primary);
+        if (target == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("No other ready child endpoint of : " + parent.getName() + " to hedge the message : " +
+                        synCtx.getMessageID());
+            }
+            return;
+        }
+        if (!tryAcquireBudget()) {
+            return;
+        }
+        if (hedgeCtx == null) {
+            // the message was built before it was sent, it is only copied now that the hedge is needed
+            hedgeCtx = request.isDone() ? null : copy(synCtx);
+            if (hedgeCtx != null) {
+                hedgeCtx.getPropertyKeySet().retainAll(propertyKeys);
+                hedgeCtx.setTo(to);
+            }
+        }
+        if (hedgeCtx == null || !request.startHedge()) {
+            budget.addAndGet(HEDGE_COST);
+            return;
+        }
+        hedgeCtx.setProperty(SynapseConstants.HEDGED_REQUEST, request);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Hedging the message : " + hedgeCtx.getMessageID() + " of endpoint : " +
+                    parent.getName() + " to the child endpoint : " + target.getName());
+        }
+        // a copy taken after the primary send also carries the fault handlers of the primary attempt
+        Stack<FaultHandler> faultStack = hedgeCtx.getFaultStack();
+        faultStack.clear();
+        faultStack.addAll(faultHandlers);
+        hedgeCtx.pushFaultHandler(parent);
+        try {
+            target.send(hedgeCtx);
+        } catch (Exception e) {
+            log.warn("Error while sending the hedged attempt of the message : " + hedgeCtx.getMessageID(), e);
+            request.fail();
+        }
+    }
+
+    /**
+     * Selects the first ready child after the child the message was sent to
+     */
+    static Endpoint selectTarget(List<Endpoint> children, Endpoint primary) {
+        int size = children.size();
+        int start = children.indexOf(primary);
+        for (int i = 1; i <= size; i++) {
+            Endpoint candidate = children.get((start + i + size) % size);
+            if (candidate != primary && candidate.readyToSend()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    void addBudget() {
+        while (true) {
+            long current = budget.get();
+            long next = Math.min(MAX_BUDGET, current + budgetPerMessage);
+            if (next == current || budget.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    boolean tryAcquireBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts occurrences of response and error codes. Codes in the HTTP status code range are
+ * counted in a table indexed by the code, so counting them does not box the code or contend on a
+ * lock. Other codes, such as the Synapse transport error codes, fall back to a concurrent map.
+ */
+final class StatusCodeCounters {
+
+    private static final int DIRECT_RANGE = 1000;
+
+    private final AtomicReferenceArray<LongAdder> direct = new AtomicReferenceArray<LongAdder>(DIRECT_RANGE);
+
+    private final ConcurrentMap<Integer, LongAdder> overflow = new ConcurrentHashMap<Integer, LongAdder>();
+
+    void increment(int code) {
+        if (code >= 0 && code < DIRECT_RANGE) {
+            LongAdder counter = direct.get(code);
+            if (counter == null) {
+                direct.compareAndSet(code, null, new LongAdder());
+                counter = direct.get(code);
+            }
+            counter.increment();
+        } else {
+            LongAdder counter = overflow.get(code);
+            if (counter == null) {
+                LongAdder newCounter = new LongAdder();
+                counter = overflow.putIfAbsent(code, newCounter);
+                if (counter == null) {
+                    counter = newCounter;
+                }
+            }
+            counter.increment();
+        }
+    }
+
+    /**
+     * @return a snapshot of the codes seen since the last reset, with their counts
+     */
+    Map<Integer, Long> toMap() {
+        Map<Integer, Long> snapshot = new HashMap<Integer, Long>();
+        for (int code = 0; code < DIRECT_RANGE; code++) {
+            LongAdder counter = direct.get(code);
+            if (counter != null && counter.sum() > 0) {
+                snapshot.put(code, counter.sum());
+            }
+        }
+        for (Map.Entry<Integer, LongAdder> entry : overflow.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count > 0) {
+                snapshot.put(entry.getKey(), count);
+            }
+        }
+        return snapshot;
+    }
+
+    void clear() {
+        for (int code = 0; code < DIRECT_RANGE; code++) {
+            LongAdder counter = direct.get(code);
+            if (counter != null) {
+                counter.reset();
+            }
+        }
+        overflow.clear();
+    }
+}
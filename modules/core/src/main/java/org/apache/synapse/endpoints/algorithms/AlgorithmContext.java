@@ -25,6 +25,7 @@ import org.apache.synapse.util.Replicator;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Keeps the runtime state of the algorithm
@@ -54,6 +55,9 @@ public class AlgorithmContext {
     /* The map of properties stored locally */
     private Map<String, Object> localProperties;
 
+    /* Sequence of the messages dispatched, used by the lock free algorithms when not clustered */
+    private final AtomicLong sequence = new AtomicLong();
+
     public AlgorithmContext(boolean clusteringEnabled, ConfigurationContext cfgCtx, String endpointName) {
 
         this.cfgCtx = cfgCtx;
@@ -95,9 +99,24 @@ public class AlgorithmContext {
      */
     public void setCurrentEndpointIndex(int currentEPR) {
         this.currentEPR = currentEPR;
+        this.sequence.set(currentEPR);
         cfgCtx.setNonReplicableProperty(CURRENT_EPR_PROP_KEY, currentEPR);
     }
 
+    /**
+     * Returns the sequence number of the next message, without any locking. Only meaningful
+     * when clustering is disabled, as the sequence is not shared across the cluster.
+     *
+     * @return the number of messages dispatched before this one
+     */
+    public long nextSequence() {
+        return sequence.getAndIncrement();
+    }
+
+    public boolean isClusteringEnabled() {
+        return isClusteringEnabled;
+    }
+
     /**
      * Get the configuration context instance . This is only available for cluster env.
      *
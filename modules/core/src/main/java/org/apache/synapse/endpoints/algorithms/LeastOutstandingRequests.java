@@ -0,0 +1,388 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.axis2.clustering.Member;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.IndirectEndpoint;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Least outstanding requests load balancing with the power of two choices. For each message two
+ * ready endpoints are picked at random and the message is sent to the one with fewer requests
+ * awaiting a response. Compared to round robin this moves load away from slow endpoints, while
+ * sampling only two endpoints avoids the herding of always picking the least loaded one.
+ * <p/>
+ * The number of outstanding requests is counted per endpoint without locking. It is incremented
+ * when an endpoint is chosen, and the request is attached to the message so that it is decremented
+ * exactly once: when the load balance endpoint reports a response or a failure, when a response
+ * arrives through a nested endpoint, which the load balance endpoint is not told about, or when the
+ * message is dropped, e.g. its callback expires with no timeout action. Out only messages are not
+ * counted as no response is expected for them.
+ */
+public class LeastOutstandingRequests implements ResponseAwareLoadbalanceAlgorithm {
+
+    private static final Log log = LogFactory.getLog(LeastOutstandingRequests.class);
+
+    private volatile List<Endpoint> endpoints;
+
+    private volatile AtomicIntegerArray outstanding = new AtomicIntegerArray(0);
+
+    private List<Member> members;
+
+    public void setApplicationMembers(List<Member> members) {
+        this.members = members;
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.outstanding = new AtomicIntegerArray(endpoints == null ? 0 : endpoints.size());
+        this.endpoints = endpoints;
+    }
+
+    public void setLoadBalanceEndpoint(Endpoint endpoint) {
+    }
+
+    /**
+     * Choose the less loaded of two randomly picked ready endpoints. If there are no ready
+     * endpoints, returns null.
+     *
+     * @param synCtx           MessageContext instance which holds all per-message properties
+     * @param algorithmContext The context in which holds run time states related to the algorithm
+     * @return endpoint to send the next message
+     */
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        List<Endpoint> endpoints = this.endpoints;
+        int size = endpoints.size();
+        if (size == 0) {
+            return null;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int chosen;
+        if (size == 1) {
+            chosen = endpoints.get(first).readyToSend() ? first : -1;
+        } else {
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            boolean firstReady = endpoints.get(first).readyToSend();
+            boolean secondReady = endpoints.get(second).readyToSend();
+            if (firstReady && secondReady) {
+                chosen = cost(second) < cost(first) ? second : first;
+            } else if (firstReady) {
+                chosen = first;
+            } else if (secondReady) {
+                chosen = second;
+            } else {
+                chosen = nextReady(endpoints, first);
+            }
+        }
+
+        if (chosen < 0) {
+            return null;
+        }
+        if (synCtx == null || !"true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY))) {
+            AtomicIntegerArray outstanding = this.outstanding;
+            if (chosen < outstanding.length()) {
+                outstanding.incrementAndGet(chosen);
+                if (synCtx != null) {
+                    track(synCtx, outstanding, chosen);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Chose endpoint at position " + chosen + " with " + getOutstandingRequests(chosen) +
+                    " outstanding requests");
+        }
+        return endpoints.get(chosen);
+    }
+
+    public void onResponse(Endpoint endpoint, MessageContext synCtx, long responseTime) {
+        if (synCtx != null) {
+            OutstandingRequest request = pendingRequest(synCtx);
+            if (request != null) {
+                request.complete(responseTime);
+            }
+            return;
+        }
+        int index = indexOf(endpoint);
+        if (index >= 0) {
+            completed(outstanding, index);
+            onResponse(index, responseTime);
+        }
+    }
+
+    public void onFailure(Endpoint endpoint, MessageContext synCtx) {
+        if (synCtx != null) {
+            OutstandingRequest request = pendingRequest(synCtx);
+            if (request != null) {
+                request.complete(-1);
+            }
+            return;
+        }
+        int index = indexOf(endpoint);
+        if (index >= 0) {
+            completed(outstanding, index);
+        }
+    }
+
+    /**
+     * Complete the outstanding requests of all the load balance endpoints the given message was
+     * sent through, which are not completed already, as it has received a response
+     *
+     * @param synCtx       the message
+     * @param responseTime time taken to receive the response in nanoseconds
+     */
+    public static void completeRequests(MessageContext synCtx, long responseTime) {
+        OutstandingRequest request = removeRequests(synCtx);
+        while (request != null) {
+            request.complete(responseTime);
+            request = request.previous;
+        }
+    }
+
+    /**
+     * Complete the outstanding requests of the given message without a response, where it is
+     * dropped without its load balance endpoint being informed, e.g. when its callback expires with
+     * no timeout action
+     *
+     * @param synCtx the message
+     */
+    public static void dropRequests(MessageContext synCtx) {
+        completeRequests(synCtx, -1);
+    }
+
+    private static OutstandingRequest removeRequests(MessageContext synCtx) {
+        if (synCtx == null) {
+            return null;
+        }
+        Object request = synCtx.getProperty(SynapseConstants.LB_OUTSTANDING_REQUEST);
+        if (!(request instanceof OutstandingRequest)) {
+            return null;
+        }
+        synCtx.getPropertyKeySet().remove(SynapseConstants.LB_OUTSTANDING_REQUEST);
+        return (OutstandingRequest) request;
+    }
+
+    /**
+     * Attach the request to the message, after the pending requests of the other load balance
+     * endpoints the message passed through. A pending request of this algorithm is one the message
+     * is retried for without a failure being reported, so it is completed.
+     */
+    private void track(MessageContext synCtx, AtomicIntegerArray outstanding, int index) {
+        Object current = synCtx.getProperty(SynapseConstants.LB_OUTSTANDING_REQUEST);
+        OutstandingRequest previous = null;
+        if (current instanceof OutstandingRequest) {
+            for (OutstandingRequest request = (OutstandingRequest) current; request != null;
+                 request = request.previous) {
+                if (request.algorithm == this) {
+                    request.complete(-1);
+                } else if (!request.isCompleted()) {
+                    previous = new OutstandingRequest(request, previous);
+                }
+            }
+        }
+        synCtx.setProperty(SynapseConstants.LB_OUTSTANDING_REQUEST,
+                new OutstandingRequest(this, outstanding, index, previous));
+    }
+
+    private OutstandingRequest pendingRequest(MessageContext synCtx) {
+        Object current = synCtx.getProperty(SynapseConstants.LB_OUTSTANDING_REQUEST);
+        if (!(current instanceof OutstandingRequest)) {
+            return null;
+        }
+        for (OutstandingRequest request = (OutstandingRequest) current; request != null;
+             request = request.previous) {
+            if (request.algorithm == this && !request.isCompleted()) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of requests sent to the endpoint at the given position, which are yet
+     * to be responded
+     *
+     * @param index position of the endpoint
+     * @return number of outstanding requests
+     */
+    public int getOutstandingRequests(int index) {
+        AtomicIntegerArray outstanding = this.outstanding;
+        return index < outstanding.length() ? outstanding.get(index) : 0;
+    }
+
+    /**
+     * The load of the endpoint at the given position, the endpoint with the lower cost is chosen
+     *
+     * @param index position of the endpoint
+     * @return cost of sending the next message to the endpoint
+     */
+    protected double cost(int index) {
+        return getOutstandingRequests(index);
+    }
+
+    /**
+     * Invoked when the endpoint at the given position has responded, after its outstanding
+     * requests are updated
+     *
+     * @param index        position of the endpoint
+     * @param responseTime time taken to receive the response in nanoseconds
+     */
+    protected void onResponse(int index, long responseTime) {
+    }
+
+    private static void completed(AtomicIntegerArray outstanding, int index) {
+        if (index < outstanding.length()) {
+            // never go below zero, e.g. for responses to messages sent before a reset
+            int current;
+            do {
+                current = outstanding.get(index);
+            } while (current > 0 && !outstanding.compareAndSet(index, current, current - 1));
+        }
+    }
+
+    /**
+     * Returns the position of the given endpoint, also matching the endpoints referred through
+     * indirect endpoints, or -1 if the endpoint is not one of the load balanced endpoints
+     */
+    protected int indexOf(Endpoint endpoint) {
+        List<Endpoint> endpoints = this.endpoints;
+        if (endpoints == null || endpoint == null) {
+            return -1;
+        }
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint candidate = endpoints.get(i);
+            if (candidate == endpoint || (candidate instanceof IndirectEndpoint &&
+                    ((IndirectEndpoint) candidate).getRealEndpoint() == endpoint)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int nextReady(List<Endpoint> endpoints, int start) {
+        int size = endpoints.size();
+        for (int i = 1; i < size; i++) {
+            int index = (start + i) % size;
+            if (endpoints.get(index).readyToSend()) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
+        List<Member> members = this.members;
+        if (members == null || members.isEmpty()) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get((start + i) % members.size());
+            if (!member.isSuspended()) {
+                return member;
+            }
+        }
+        return members.get(start);
+    }
+
+    public void reset(AlgorithmContext algorithmContext) {
+        if (log.isDebugEnabled()) {
+            log.debug("Resetting the " + getName() + " loadbalancing algorithm ...");
+        }
+        AtomicIntegerArray outstanding = this.outstanding;
+        for (int i = 0; i < outstanding.length(); i++) {
+            outstanding.set(i, 0);
+        }
+    }
+
+    public String getName() {
+        return "LeastOutstandingRequests";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new LeastOutstandingRequests();
+    }
+
+    /**
+     * A request counted as outstanding for an endpoint, which is attached to the message sent to it
+     * so that it is completed once, whichever path the outcome of the message takes. The counts
+     * taken before the endpoints were changed are completed against the counts they were taken from.
+     */
+    private static final class OutstandingRequest {
+
+        private final LeastOutstandingRequests algorithm;
+
+        private final AtomicIntegerArray outstanding;
+
+        private final int index;
+
+        /** Pending request of another load balance endpoint the message passed through */
+        private final OutstandingRequest previous;
+
+        private final AtomicBoolean completed;
+
+        OutstandingRequest(LeastOutstandingRequests algorithm, AtomicIntegerArray outstanding, int index,
+                           OutstandingRequest previous) {
+            this.algorithm = algorithm;
+            this.outstanding = outstanding;
+            this.index = index;
+            this.previous = previous;
+            this.completed = new AtomicBoolean();
+        }
+
+        /**
+         * The same request with another chain of previous requests, sharing its completion
+         */
+        OutstandingRequest(OutstandingRequest request, OutstandingRequest previous) {
+            this.algorithm = request.algorithm;
+            this.outstanding = request.outstanding;
+            this.index = request.index;
+            this.previous = previous;
+            this.completed = request.completed;
+        }
+
+        boolean isCompleted() {
+            return completed.get();
+        }
+
+        void complete(long responseTime) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            completed(outstanding, index);
+            if (responseTime > 0) {
+                algorithm.onResponse(index, responseTime);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Peak EWMA load balancing. Each endpoint keeps an exponentially weighted moving average of its
+ * response times, which jumps to any response time above the average and decays towards the
+ * response times below it. The cost of an endpoint is the average multiplied by the number of
+ * its outstanding requests plus one, and the cheaper of two randomly picked ready endpoints is
+ * chosen, as in {@link LeastOutstandingRequests}.
+ * <p/>
+ * The average decays with the time elapsed since the previous response rather than the number of
+ * responses, so an endpoint which was slow and stopped receiving messages becomes eligible again
+ * after about the decay time. An endpoint which has not responded yet is costed with the mean
+ * average of the other endpoints, so that a new or reset endpoint is not flooded with requests
+ * before its first response arrives.
+ */
+public class PeakEWMA extends LeastOutstandingRequests {
+
+    /** Default decay time of the response time average, in milliseconds */
+    public static final long DEFAULT_DECAY_TIME = 10000;
+
+    private volatile long decayTime = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DECAY_TIME);
+
+    private volatile AtomicReferenceArray<Average> averages = new AtomicReferenceArray<Average>(0);
+
+    @Override
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.averages = new AtomicReferenceArray<Average>(endpoints == null ? 0 : endpoints.size());
+        super.setEndpoints(endpoints);
+    }
+
+    /**
+     * @param decayTime decay time of the response time average in milliseconds
+     */
+    public void setDecayTime(long decayTime) {
+        this.decayTime = TimeUnit.MILLISECONDS.toNanos(decayTime);
+    }
+
+    public long getDecayTime() {
+        return TimeUnit.NANOSECONDS.toMillis(decayTime);
+    }
+
+    /**
+     * Returns the current response time average of the endpoint at the given position
+     *
+     * @param index position of the endpoint
+     * @return the decayed average in nanoseconds, 0 if the endpoint has not responded yet
+     */
+    public double getResponseTimeAverage(int index) {
+        AtomicReferenceArray<Average> averages = this.averages;
+        Average average = index < averages.length() ? averages.get(index) : null;
+        return average == null ? 0 : average.decayed(System.nanoTime(), decayTime);
+    }
+
+    @Override
+    protected double cost(int index) {
+        AtomicReferenceArray<Average> averages = this.averages;
+        Average average = index < averages.length() ? averages.get(index) : null;
+        long now = System.nanoTime();
+        double responseTime = average != null ? average.decayed(now, decayTime) : meanAverage(averages, now);
+        return responseTime * (getOutstandingRequests(index) + 1);
+    }
+
+    /**
+     * Mean of the averages of the endpoints which have responded, used as the average of the ones
+     * which have not. If no endpoint has responded yet the endpoints are costed by their
+     * outstanding requests alone.
+     */
+    private double meanAverage(AtomicReferenceArray<Average> averages, long now) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < averages.length(); i++) {
+            Average average = averages.get(i);
+            if (average != null) {
+                sum += average.decayed(now, decayTime);
+                count++;
+            }
+        }
+        return count == 0 ? 1 : sum / count;
+    }
+
+    @Override
+    protected void onResponse(int index, long responseTime) {
+        AtomicReferenceArray<Average> averages = this.averages;
+        if (index >= averages.length()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Average current;
+        Average updated;
+        do {
+            current = averages.get(index);
+            updated = current == null ? new Average(responseTime, now) :
+                    current.observe(responseTime, now, decayTime);
+        } while (!averages.compareAndSet(index, current, updated));
+    }
+
+    @Override
+    public void reset(AlgorithmContext algorithmContext) {
+        super.reset(algorithmContext);
+        AtomicReferenceArray<Average> averages = this.averages;
+        for (int i = 0; i < averages.length(); i++) {
+            averages.set(i, null);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "PeakEWMA";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        PeakEWMA clone = new PeakEWMA();
+        clone.decayTime = decayTime;
+        return clone;
+    }
+
+    /**
+     * An immutable response time average and the time it was last updated
+     */
+    private static final class Average {
+
+        private final double value;
+
+        private final long timestamp;
+
+        Average(double value, long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        double decayed(long now, long decayTime) {
+            return value * weight(now, decayTime);
+        }
+
+        Average observe(long responseTime, long now, long decayTime) {
+            if (responseTime > value) {
+                return new Average(responseTime, now);
+            }
+            double weight = weight(now, decayTime);
+            return new Average(value * weight + responseTime * (1 - weight), now);
+        }
+
+        private double weight(long now, long decayTime) {
+            return Math.exp(-Math.max(now - timestamp, 0) / (double) decayTime);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.List;
+
+/**
+ * Picks an endpoint which is ready to send without locking. The endpoint at the requested
+ * position is used if it is ready. Otherwise a snapshot of the ready endpoints is taken as a
+ * bitmap and the message is spread over the ready endpoints, so that the traffic of a failed
+ * endpoint does not all fall on its neighbour.
+ */
+final class ReadyEndpointSelector {
+
+    private ReadyEndpointSelector() {
+    }
+
+    /**
+     * @param endpoints the endpoints to choose from
+     * @param position  position of the preferred endpoint
+     * @param sequence  sequence number of the message, used to spread over the ready endpoints
+     * @return position of the chosen endpoint or -1 if no endpoint is ready
+     */
+    static int select(List<Endpoint> endpoints, int position, long sequence) {
+        if (endpoints.get(position).readyToSend()) {
+            return position;
+        }
+
+        int size = endpoints.size();
+        long[] ready = new long[(size + 63) >>> 6];
+        int readyCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i != position && endpoints.get(i).readyToSend()) {
+                ready[i >>> 6] |= 1L << i;
+                readyCount++;
+            }
+        }
+        if (readyCount == 0) {
+            return -1;
+        }
+
+        int target = (int) ((sequence & Long.MAX_VALUE) % readyCount);
+        for (int word = 0; word < ready.length; word++) {
+            int bits = Long.bitCount(ready[word]);
+            if (target < bits) {
+                long value = ready[word];
+                for (int i = 0; i < target; i++) {
+                    value &= value - 1;
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(value);
+            }
+            target -= bits;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.endpoints.Endpoint;
+
+/**
+ * A load balance algorithm which bases its decisions on how the endpoints respond. The load
+ * balance endpoint informs the algorithm about the outcome of each message it has dispatched to a
+ * child endpoint, through one of the two methods of this interface.
+ */
+public interface ResponseAwareLoadbalanceAlgorithm extends LoadbalanceAlgorithm {
+
+    /**
+     * Invoked when a child endpoint has responded to a message
+     *
+     * @param endpoint     the endpoint which responded
+     * @param synCtx       the message the endpoint responded to
+     * @param responseTime time taken to receive the response in nanoseconds
+     */
+    void onResponse(Endpoint endpoint, MessageContext synCtx, long responseTime);
+
+    /**
+     * Invoked when sending a message to a child endpoint has failed or timed out
+     *
+     * @param endpoint the endpoint which failed
+     * @param synCtx   the message which failed
+     */
+    void onFailure(Endpoint endpoint, MessageContext synCtx);
+}
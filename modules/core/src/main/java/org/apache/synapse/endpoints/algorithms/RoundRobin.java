@@ -31,6 +31,10 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * This is the implementation of the round robin load balancing algorithm. It simply iterates
  * through the endpoint list one by one for until an active endpoint is found.
+ * <p/>
+ * Unless clustering is enabled, the position is taken from an atomic sequence of the algorithm
+ * context, so concurrent messages do not serialize on the selection. The clustered mode keeps the
+ * position in the configuration context and still synchronizes on the algorithm context.
  */
 public class RoundRobin implements LoadbalanceAlgorithm {
 
@@ -39,7 +43,7 @@ public class RoundRobin implements LoadbalanceAlgorithm {
     /**
      * Endpoints list for the round robin algorithm
      */
-    private List endpoints = null;
+    private volatile List<Endpoint> endpoints = null;
 
     private List<Member> members;
 
@@ -49,7 +53,7 @@ public class RoundRobin implements LoadbalanceAlgorithm {
 
     }
 
-    public RoundRobin(List endpoints) {
+    public RoundRobin(List<Endpoint> endpoints) {
         this.endpoints = endpoints;
     }
 
@@ -74,13 +78,25 @@ public class RoundRobin implements LoadbalanceAlgorithm {
      */
     public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
 
+        if (!algorithmContext.isClusteringEnabled()) {
+            List<Endpoint> endpoints = this.endpoints;
+            int size = endpoints.size();
+            if (size == 0) {
+                return null;
+            }
+            long sequence = algorithmContext.nextSequence();
+            int position = ReadyEndpointSelector.select(endpoints, (int) ((sequence & Long.MAX_VALUE) % size),
+                    sequence);
+            return position < 0 ? null : endpoints.get(position);
+        }
+
         Endpoint nextEndpoint;
         int attempts = 0;
         synchronized (algorithmContext) {
             int currentEPR = algorithmContext.getCurrentEndpointIndex();
             do {
                 // two successive clients could get the same endpoint if not synchronized.
-                nextEndpoint = (Endpoint) endpoints.get(currentEPR);
+                nextEndpoint = endpoints.get(currentEPR);
 
                 if (currentEPR == endpoints.size() - 1) {
                     currentEPR = 0;
@@ -104,6 +120,22 @@ public class RoundRobin implements LoadbalanceAlgorithm {
         if (members.size() == 0) {
             return null;
         }
+        if (!algorithmContext.isClusteringEnabled()) {
+            List<Member> members = this.members;
+            long sequence = algorithmContext.nextSequence() & Long.MAX_VALUE;
+            Member current = null;
+            for (int i = 0; i < members.size(); i++) {
+                current = members.get((int) ((sequence + i) % members.size()));
+                if (!current.isSuspended()) {
+                    break;
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Members       : " + members.size());
+                log.debug("Current member: " + current);
+            }
+            return current;
+        }
         Member current = null;
         lock.lock();
         try {
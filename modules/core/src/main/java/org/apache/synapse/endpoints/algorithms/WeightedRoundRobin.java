@@ -32,11 +32,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.List;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This algorithm sends messages based on the weights of the endpoints. For example we may
@@ -46,25 +42,28 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <li>Epr 2: 3</li>
  * <li>Epr 3: 2</li>
  * </ul>
- * <p> This algorithm will send the first 5 messages through Epr1, next 3 messages through
- * Epr2 and next 2 messages with Epr3. Then algorithm moves again to the first endpoint
- * and cycle continues.</p>  
+ * <p> Out of every 10 messages this algorithm will send 5 messages through Epr1, 3 messages
+ * through Epr2 and 2 messages through Epr3. The messages of an endpoint are interleaved with the
+ * messages of the others, as in the smooth weighted round robin of nginx, i.e. the order is
+ * Epr1, Epr2, Epr3, Epr1, Epr1, Epr2, Epr1, Epr3, Epr2, Epr1 and then the cycle continues.</p>
+ * <p> The order is computed once into a schedule, which is walked with an atomic cursor, so
+ * selecting an endpoint does not take a lock. If the scheduled endpoint is not ready to send, the
+ * message is sent to one of the ready endpoints.</p>
  */
 public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycle {
 
     private static final Log log = LogFactory.getLog(WeightedRoundRobin.class);
 
-    /** We keep a sorted array of endpoint states, first state will point to the
-     * endpoint with the highest weight */
-    private EndpointState[] endpointStates = null;
+    /** The weights of the endpoints and the schedule computed from them */
+    private volatile Schedule schedule = null;
 
     /** Endpoint list */
     private List<Endpoint> endpoints;
 
     private Endpoint loadBalanceEndpoint;
 
-    /** Keep track of the current poistion we are operating on the endpointStates array */
-    private int endpointCursor = 0;
+    /** Keep track of the current position we are operating on the schedule */
+    private final AtomicLong cursor = new AtomicLong();
 
     /** If a weight is not specified by the user, we use the default as 1 */
     private static final int DEFAULT_WEIGHT = 1;
@@ -77,9 +76,13 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
 
     private boolean isThreadLocal = false;
 
-    private AlgorithmThreadLocal threadedAlgorithm = null;
-
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Cursors of the threads, when each thread does its own weighted round robin */
+    private final ThreadLocal<long[]> threadLocalCursor = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
 
     private WeightedRoundRobinViewMBean view;
 
@@ -99,48 +102,26 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
     public Endpoint getNextEndpoint(MessageContext synapseMessageContext,
                                     AlgorithmContext algorithmContext) {
 
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            if (!isThreadLocal) {
-                synchronized (this) {
-                    EndpointState state = endpointStates[endpointCursor];
-                    if (state.getCurrentWeight() == 0) {
-                        // reset the current state
-                        state.reset();
-
-                        // go to the next endpoint
-                        if (endpointCursor == endpointStates.length - 1) {
-                            endpointCursor = 0;
-                        } else {
-                            ++endpointCursor;
-                        }
-
-                        state = endpointStates[endpointCursor];
-                    }
-
-                    // we are about to use this endpoint, so decrement its current count
-                    state.decrementCurrentWeight();
-
-                    // return the endpoint corresponding to the current position
-                    return endpoints.get(state.getEndpointPosition());
-                }
-            } else {
-                if (threadedAlgorithm != null) {
-                    Algorithm algo = threadedAlgorithm.get();
-
-                    int position = algo.getNextEndpoint();
+        Schedule schedule = this.schedule;
+        if (schedule == null) {
+            String msg = "Algorithm: WeightedRoundRobin algorithm not initialized properly";
+            log.error(msg);
+            throw new SynapseException(msg);
+        }
 
-                    return endpoints.get(position);
-                } else {
-                    String msg = "Algorithm: WeightedRoundRobin algorithm not initialized properly";
-                    log.error(msg);
-                    throw new SynapseException(msg);
-                }
-            }
-        } finally {
-            readLock.unlock();
+        long sequence;
+        if (isThreadLocal) {
+            // individual threads do their own weighted round robin without considering the
+            // global state of the endpoints
+            sequence = threadLocalCursor.get()[0]++;
+        } else {
+            sequence = cursor.getAndIncrement();
         }
+
+        int[] order = schedule.order;
+        int position = ReadyEndpointSelector.select(endpoints,
+                order[(int) ((sequence & Long.MAX_VALUE) % order.length)], sequence);
+        return position < 0 ? null : endpoints.get(position);
     }        
 
     public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
@@ -148,11 +129,7 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
     }
 
     public void reset(AlgorithmContext algorithmContext) {
-        for (EndpointState state : endpointStates) {
-            state.reset();
-        }
-
-        endpointCursor = 0;
+        cursor.set(0);
     }
 
     public String getName() {
@@ -170,17 +147,14 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
             throw new SynapseException(msg);
         }
 
-        endpointStates = new EndpointState[endpoints.size()];
+        int[] weights = new int[endpoints.size()];
 
         for (int i = 0; i < endpoints.size(); i++) {
             Endpoint endpoint = endpoints.get(i);
-            if (!(endpoint instanceof PropertyInclude)) {
-                EndpointState state = new EndpointState(i, DEFAULT_WEIGHT);
-                endpointStates[i] = state;
-            } else {
+            weights[i] = DEFAULT_WEIGHT;
+            if (endpoint instanceof PropertyInclude) {
                 MediatorProperty property =
                         ((PropertyInclude) endpoint).getProperty(LOADBALANCE_WEIGHT);
-                EndpointState state;
                 if (property != null) {
                     int weight = Integer.parseInt(property.getValue());
 
@@ -190,15 +164,13 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
                         throw new SynapseException(msg);
                     }
 
-                    state = new EndpointState(i, weight);
-                } else {
-                    state = new EndpointState(i, DEFAULT_WEIGHT);
+                    weights[i] = weight;
                 }
-
-                endpointStates[i] = state;
             }
         }
 
+        schedule = new Schedule(weights);
+
         if (loadBalanceEndpoint instanceof PropertyInclude) {
             MediatorProperty threadLocalProperty = ((PropertyInclude) loadBalanceEndpoint).
                     getProperty(LOADBALANCE_ThEADLOCAL);
@@ -217,152 +189,69 @@ public class WeightedRoundRobin implements LoadbalanceAlgorithm, ManagedLifecycl
     public void destroy() {}
 
     /**
-     * Implementation of the thread local.
-     */
-    private class AlgorithmThreadLocal extends ThreadLocal<Algorithm> {
-        @Override
-        protected Algorithm initialValue() {
-            return new Algorithm(endpointStates);
-        }
-    }
-
-    /**
-     * This is a thread local implementation of the algorithm. This way, individual threads will
-     * do their own weighted round robin without considering the global state of the endpoints.
-     */
-    private static class Algorithm {
-
-        /**
-         * We keep a sorted array of endpoint states, first state will point to the
-         * endpoint with the highest weight
-         */
-        private EndpointState[] threadLocalEndpointStates = null;
-
-        /**
-         * Keep track of the current poistion we are operating on the endpointStates array
-         */
-        private int threadLocalEndpointCursor = 0;
-
-        public Algorithm(EndpointState[] states) {
-            threadLocalEndpointStates = new EndpointState[states.length];
-            for (int i = 0; i < states.length; i++) {
-                threadLocalEndpointStates[i] = new EndpointState(states[i].getEndpointPosition(),
-                        states[i].getWeight());
-            }
-        }
-
-        public int getNextEndpoint() {
-            EndpointState state = threadLocalEndpointStates[threadLocalEndpointCursor];
-            if (state.getCurrentWeight() == 0) {
-                // reset the current state
-                state.reset();
-
-                // go to the next enpoint
-                if (threadLocalEndpointCursor == threadLocalEndpointStates.length - 1) {
-                    threadLocalEndpointCursor = 0;
-                } else {
-                    ++threadLocalEndpointCursor;
-                }
-
-                state = threadLocalEndpointStates[threadLocalEndpointCursor];
-            }
-
-            // we are about to use this endpoint, so decrement its current count
-            state.decrementCurrentWeight();
-
-            // return the endpoint corresponfing to the current poistion
-            return state.getEndpointPosition();
-        }
-    }
-
-
-    /**
-     * Simple class for holding the states about the endpoints. 
+     * The weights of the endpoints and the order in which the endpoints are used. A new schedule
+     * is published whenever a weight changes, so a schedule is never modified after creation.
      */
-    private static class EndpointState {
-        /** Position of the endpoint, represented by this state */
-        private int endpointPosition = 0;
+    private static class Schedule {
 
-        /** Weight of the endpoint */
-        private int weight = 0;
+        /** Weights of the endpoints, indexed by the position of the endpoint */
+        private final int[] weights;
 
-        /** Current weight of the endpoint */
-        private int currentWeight = 0;
+        /** Positions of the endpoints in the order they receive messages */
+        private final int[] order;
 
-        public EndpointState(int endpointPosition, int weight) {
-            this.endpointPosition = endpointPosition;
-            this.weight = weight;
-            this.currentWeight = weight;
-        }
+        Schedule(int[] weights) {
+            this.weights = weights;
 
-        public int getEndpointPosition() {
-            return endpointPosition;
-        }
+            int divisor = 0;
+            int total = 0;
+            for (int weight : weights) {
+                divisor = gcd(divisor, weight);
+                total += weight;
+            }
+            if (divisor > 1) {
+                total /= divisor;
+            }
 
-        public int getWeight() {
-            return weight;
+            // smooth weighted round robin: every round each endpoint earns its weight and the
+            // richest endpoint is chosen and pays the total weight
+            order = new int[total];
+            int[] current = new int[weights.length];
+            for (int i = 0; i < total; i++) {
+                int chosen = 0;
+                for (int j = 0; j < weights.length; j++) {
+                    current[j] += weights[j] / divisor;
+                    if (current[j] > current[chosen]) {
+                        chosen = j;
+                    }
+                }
+                current[chosen] -= total;
+                order[i] = chosen;
+            }
         }
 
-        public int getCurrentWeight() {
-            return currentWeight;
+        private static int gcd(int a, int b) {
+            return b == 0 ? a : gcd(b, a % b);
         }
+    }
 
-        public void decrementCurrentWeight() {
-            --currentWeight;
+    public synchronized void changeWeight(int pos, int weight) {
+        Schedule current = schedule;
+        if (pos < 0 || pos >= current.weights.length) {
+            throw new SynapseException("The specified endpoint position cannot be found");
         }
-
-        public void reset() {
-            currentWeight = weight;
+        if (weight <= 0) {
+            throw new SynapseException("Weight must be greater than zero");
         }
-    }
 
-    private void calculate() {
-        // now we are going to sort
-        Arrays.sort(endpointStates, new Comparator<EndpointState>() {
-            public int compare(EndpointState o1, EndpointState o2) {
-                return o2.getWeight() - o1.getWeight();
-            }
-        });
-    }
-
-    public void changeWeight(int pos, int weight) {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            EndpointState state = null;
-            for (EndpointState s : endpointStates) {
-                if (s.getEndpointPosition() == pos) {
-                    state = s;
-                }
-            }
-
-            if (state == null) {
-                throw new SynapseException("The specified endpoint position cannot be found");
-            }
-
-            state.weight = weight;
+        int[] weights = current.weights.clone();
+        weights[pos] = weight;
+        schedule = new Schedule(weights);
 
-            calculate();
-
-            reset(null);
-        } finally {
-            writeLock.unlock();
-        }
+        reset(null);
     }
 
     public int[] getCurrentWeights() {
-        int weights[] = new int[endpointStates.length];
-
-        for (int i = 0; i < weights.length; i++) {
-            weights[i] = 1;
-        }
-
-        for (EndpointState state : endpointStates) {
-            if (state.getEndpointPosition() < weights.length && state.getEndpointPosition() >= 0) {
-                weights[state.getEndpointPosition()] = state.getWeight();
-            }
-        }
-
-        return weights;
+        return schedule.weights.clone();
     }
 }
@@ -26,6 +26,8 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.IndirectEndpoint;
 import org.apache.synapse.endpoints.SALoadbalanceEndpoint;
@@ -55,14 +57,19 @@ public class SALSessions {
 
     /*Cache all path with its endpoint sequence. This is only need for a clustered environment */
     private final Map<List<String>, List<Endpoint>> namesToEndpointsMap =
-            new HashMap<List<String>, List<Endpoint>>();
+            new ConcurrentHashMap<List<String>, List<Endpoint>>();
 
     /* Non- clustered environment , all the established sessions*/
-    private final Map<String, SessionInformation> establishedSessions =
-            new ConcurrentHashMap<String, SessionInformation>();
+    private volatile SessionTable establishedSessions =
+            new SessionTable(-1, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+
+    /* Non- clustered environment , endpoint sequences shared by the established sessions*/
+    private final Map<List<Endpoint>, List<Endpoint>> endpointSequences =
+            new ConcurrentHashMap<List<Endpoint>, List<Endpoint>>();
+
     /* all child endpoints .  This is only need for a clustered environment*/
     private final Map<String, Map<String, Endpoint>> childEndpoints =
-            new HashMap<String, Map<String, Endpoint>>();
+            new ConcurrentHashMap<String, Map<String, Endpoint>>();
 
     private SALSessions() {
     }
@@ -87,11 +94,44 @@ public class SALSessions {
             if (isClusteringEnable) {
                 isClustered = isClusteringEnable;
                 configCtx = cc;
+            } else {
+                int maxSize = readMaxSize();
+                SessionTable.EvictionPolicy policy = SessionTable.EvictionPolicy.fromString(
+                        SynapsePropertiesLoader.getPropertyValue(
+                                SynapseConstants.SAL_SESSIONS_EVICTION_POLICY, null));
+                if (maxSize != establishedSessions.getMaxSize() ||
+                        policy != establishedSessions.getEvictionPolicy()) {
+                    SessionTable sessionTable = new SessionTable(maxSize, policy);
+                    for (SessionInformation information : establishedSessions.values()) {
+                        sessionTable.put(information);
+                    }
+                    establishedSessions = sessionTable;
+                }
+                MBeanRegistrar.getInstance().registerMBean(new SALSessionsView(this),
+                        SALSessionsView.MBEAN_CATEGORY, SALSessionsView.MBEAN_ID);
             }
             initialized = true;
         }
     }
 
+    /**
+     * Reads the maximum number of sessions from synapse.properties, falling back to the default
+     * when the value is not a number
+     *
+     * @return maximum number of sessions, -1 or 0 for no limit
+     */
+    private static int readMaxSize() {
+        String value = SynapsePropertiesLoader.getPropertyValue(SynapseConstants.SAL_SESSIONS_MAX_SIZE,
+                String.valueOf(SynapseConstants.DEFAULT_SAL_SESSIONS_MAX_SIZE));
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value " + value + " for " + SynapseConstants.SAL_SESSIONS_MAX_SIZE +
+                    ", using " + SynapseConstants.DEFAULT_SAL_SESSIONS_MAX_SIZE);
+            return SynapseConstants.DEFAULT_SAL_SESSIONS_MAX_SIZE;
+        }
+    }
+
     /**
      * This method only use in a clustered environment.
      *
@@ -208,7 +248,7 @@ public class SALSessions {
             if (isClustered) {
                 Replicator.setAndReplicateState(SESSION_IDS + sessionID, newInformation, configCtx);
             } else {
-                establishedSessions.put(sessionID, newInformation);
+                establishedSessions.put(newInformation);
             }
         }
     }
@@ -293,9 +333,7 @@ public class SALSessions {
 		if (createSession) {
 			SessionInformation newInformation;
 
-			List<String> paths = new ArrayList<String>();
-			// add the new path
-			paths.add(path);
+			List<String> paths = Collections.singletonList(path);
 
 			if (currentMember == null) {
 				newInformation = createSessionInformation(synCtx, sessionId, endpoints, paths);
@@ -310,7 +348,7 @@ public class SALSessions {
 			if (isClustered) {
 				Replicator.setAndReplicateState(SESSION_IDS + sessionId, newInformation, configCtx);
 			} else {
-				establishedSessions.put(sessionId, newInformation);
+				establishedSessions.put(newInformation);
 			}
 		}
 	}
@@ -466,24 +504,11 @@ public class SALSessions {
                 }
 
             } else {
-
-                toBeRemoved = new ArrayList<String>();
-                for (SessionInformation information : establishedSessions.values()) {
-
-                    if (information != null && information.isExpired()) {
-                        String id = information.getId();
-                        if (log.isDebugEnabled()) {
-                            log.debug("Expired session with id :" + id);
-                        }
-                        toBeRemoved.add(id);
-                    }
-                    // this is a safe precaution to avoid adding to ArrayList going OoM
-                    if(toBeRemoved.size() > 10000){
-                    	removeSessions(toBeRemoved);
-                    }
+                // only the sessions indexed under the elapsed ticks of the timing wheel are visited
+                int expired = establishedSessions.expire(System.currentTimeMillis());
+                if (expired > 0 && log.isDebugEnabled()) {
+                    log.debug("Cleared " + expired + " expired sessions");
                 }
-                removeSessions(toBeRemoved);
-
             }
         } catch (Throwable ignored) {
             log.debug("Ignored error clearing sessions : Error " + ignored);
@@ -496,20 +521,33 @@ public class SALSessions {
         
     }
 
-    private void removeSessions(List<String> toBeRemoved) {
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    SessionTable getSessionTable() {
+        return establishedSessions;
+    }
 
-    	if (!toBeRemoved.isEmpty()) {
-            if (log.isDebugEnabled()) {
-                log.debug("Clearing expired sessions");
+    int getEndpointSequenceCount() {
+        return endpointSequences.size();
+    }
+
+    /*
+     * Returns the shared instance of the given endpoint sequence, so that the sessions established
+     * through the same endpoints refer to a single list instead of holding a copy each
+     */
+    private List<Endpoint> internEndpointSequence(List<Endpoint> endpoints) {
+
+        List<Endpoint> sequence = endpointSequences.get(endpoints);
+        if (sequence == null) {
+            sequence = Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints));
+            List<Endpoint> existing = endpointSequences.putIfAbsent(sequence, sequence);
+            if (existing != null) {
+                sequence = existing;
             }
-            establishedSessions.keySet().removeAll(toBeRemoved);
         }
-    	
-    	toBeRemoved.clear();
-	}
-
-	public boolean isInitialized() {
-        return initialized;
+        return sequence;
     }
 
     /**
@@ -531,6 +569,7 @@ public class SALSessions {
         log.info("Clearing all states ");
         initialized = false;
         establishedSessions.clear();
+        endpointSequences.clear();
         namesToEndpointsMap.clear();
         childEndpoints.clear();
     }
@@ -616,16 +655,12 @@ public class SALSessions {
      * @param member subjected {@link Member}
      */
     public void removeSessionsOfMember(Member member){
-        for (Iterator<SessionInformation> iterator = establishedSessions.values().iterator(); iterator.hasNext();) {
-        	SessionInformation info = iterator.next();
+        for (SessionInformation info : establishedSessions.values()) {
 
             if (member.equals(info.getMember())) {
-            	//We don't want to lose sessions of this member. So we merely set the member to null and
-            	//put it back to establishedSessions so that those can be used later.
+            	//We don't want to lose sessions of this member. So we merely set the member to null
+            	//and keep the session in establishedSessions so that it can be used later.
             	info.setMember(null);
-                iterator.remove();
-                
-                establishedSessions.put(info.getId(),info);
                 log.debug("Session associated with member " + member.toString() +
                 		 " is updated ; session id : " + info.getId());
             }
@@ -721,7 +756,7 @@ public class SALSessions {
         Endpoint rootEndpoint = endpoints.get(0);
 
         SessionInformation information = new SessionInformation(id,
-                endpoints, expiryTime);
+                internEndpointSequence(endpoints), expiryTime);
 
         if (isClustered) {
             List<String> epNameList = getEndpointNames(endpoints);
@@ -777,7 +812,7 @@ public class SALSessions {
         Endpoint rootEndpoint = endpoints.get(0);
 
         SessionInformation information = new SessionInformation(id,
-                endpoints, expiryTime);
+                internEndpointSequence(endpoints), expiryTime);
         information.setPath(paths);
 
         if (isClustered) {
@@ -0,0 +1,65 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+/**
+ * Exposes the state of the {@link SALSessions} session table over JMX
+ */
+public class SALSessionsView implements SALSessionsViewMBean {
+
+    public static final String MBEAN_CATEGORY = "SALSessions";
+
+    public static final String MBEAN_ID = "SALSessions";
+
+    private final SALSessions sessions;
+
+    public SALSessionsView(SALSessions sessions) {
+        this.sessions = sessions;
+    }
+
+    public int getSessionCount() {
+        return sessions.getSessionTable().size();
+    }
+
+    public int getMaxSessions() {
+        int maxSize = sessions.getSessionTable().getMaxSize();
+        return maxSize > 0 ? maxSize : -1;
+    }
+
+    public String getEvictionPolicy() {
+        return sessions.getSessionTable().getEvictionPolicy().toString();
+    }
+
+    public long getEvictedSessions() {
+        return sessions.getSessionTable().getEvictions();
+    }
+
+    public long getRejectedSessions() {
+        return sessions.getSessionTable().getRejections();
+    }
+
+    public long getExpiredSessions() {
+        return sessions.getSessionTable().getExpirations();
+    }
+
+    public int getEndpointSequenceCount() {
+        return sessions.getEndpointSequenceCount();
+    }
+}
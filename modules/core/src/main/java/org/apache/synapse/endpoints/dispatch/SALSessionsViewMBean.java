@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+/**
+ * JMX view of the sessions established by the session affinity load balance endpoints in a non
+ * clustered environment
+ */
+public interface SALSessionsViewMBean {
+
+    /**
+     * @return number of live sessions in the session table
+     */
+    int getSessionCount();
+
+    /**
+     * @return maximum number of sessions kept, or -1 if the session table is not bounded
+     */
+    int getMaxSessions();
+
+    /**
+     * @return policy applied when a session is established on a full session table
+     */
+    String getEvictionPolicy();
+
+    /**
+     * @return number of sessions evicted to make room for new sessions
+     */
+    long getEvictedSessions();
+
+    /**
+     * @return number of sessions which were not established as the session table was full
+     */
+    long getRejectedSessions();
+
+    /**
+     * @return number of sessions removed on expiry
+     */
+    long getExpiredSessions();
+
+    /**
+     * @return number of distinct endpoint sequences shared by the sessions
+     */
+    int getEndpointSequenceCount();
+}
@@ -0,0 +1,274 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of the sessions established in a non clustered environment. Besides the lookup map, the
+ * sessions are indexed by their expiry time in a hashed timing wheel, so that clearing the expired
+ * sessions only visits the wheel slots which became due since the previous sweep instead of
+ * scanning the whole table. Sessions expiring beyond the span of the wheel stay in their slot and
+ * are re-indexed when the slot is visited.
+ * <p/>
+ * The table can be bounded. When it is full, either the session closest to its expiry is evicted
+ * or the new session is not established, according to the {@link EvictionPolicy}. Sessions are
+ * established one at a time in a bounded table, so that concurrent puts cannot grow it beyond its
+ * maximum size.
+ */
+class SessionTable {
+
+    private static final Log log = LogFactory.getLog(SessionTable.class);
+
+    /** What to do when a session is established on a full table */
+    enum EvictionPolicy {
+        /** Evict the session which is closest to its expiry */
+        EXPIRING_FIRST,
+        /** Do not establish the new session */
+        REJECT;
+
+        static EvictionPolicy fromString(String policy) {
+            return "reject".equalsIgnoreCase(policy) ? REJECT : EXPIRING_FIRST;
+        }
+    }
+
+    static final long DEFAULT_TICK = 1000;
+
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final Map<String, SessionInformation> sessions =
+            new ConcurrentHashMap<String, SessionInformation>();
+
+    private final Queue<SessionInformation>[] wheel;
+
+    private final long tick;
+
+    private final int maxSize;
+
+    private final EvictionPolicy evictionPolicy;
+
+    /** Last tick of which the wheel slot has been swept */
+    private volatile long sweptTick;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    SessionTable(int maxSize, EvictionPolicy evictionPolicy) {
+        this(maxSize, evictionPolicy, DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    SessionTable(int maxSize, EvictionPolicy evictionPolicy, long tick, int wheelSize) {
+        this.maxSize = maxSize;
+        this.evictionPolicy = evictionPolicy;
+        this.tick = tick;
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<SessionInformation>();
+        }
+        this.sweptTick = System.currentTimeMillis() / tick - 1;
+    }
+
+    SessionInformation get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Establish or replace a session
+     *
+     * @param information the session
+     * @return false if the table is full and the session has not been established
+     */
+    boolean put(SessionInformation information) {
+        if (maxSize <= 0) {
+            establish(information);
+            return true;
+        }
+        // the size check and the insert have to be atomic, the sweep holds the same lock
+        synchronized (this) {
+            String id = information.getId();
+            if (sessions.size() >= maxSize && !sessions.containsKey(id)) {
+                if (evictionPolicy == EvictionPolicy.REJECT) {
+                    rejections.incrementAndGet();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Session table is full. Session with id " + id + " is not established");
+                    }
+                    return false;
+                }
+                evictExpiringFirst();
+            }
+            establish(information);
+            return true;
+        }
+    }
+
+    private void establish(SessionInformation information) {
+        if (sessions.put(information.getId(), information) != information) {
+            schedule(information);
+        }
+    }
+
+    void remove(String id) {
+        // the wheel entry of the session is dropped when its slot is visited
+        sessions.remove(id);
+    }
+
+    Collection<SessionInformation> values() {
+        return sessions.values();
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    void clear() {
+        sessions.clear();
+        for (Queue<SessionInformation> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * Remove the sessions expired before the given time
+     *
+     * @param now current time in milliseconds
+     * @return number of sessions removed
+     */
+    synchronized int expire(long now) {
+        long currentTick = now / tick;
+        if (currentTick - sweptTick > wheel.length) {
+            // every slot is due, visit each of them once
+            sweptTick = currentTick - wheel.length;
+        }
+        int expired = 0;
+        List<SessionInformation> due = new ArrayList<SessionInformation>();
+        // only the ticks which have fully elapsed are swept
+        while (sweptTick < currentTick - 1) {
+            sweptTick++;
+            Queue<SessionInformation> slot = wheel[slotOf(sweptTick)];
+            for (SessionInformation information; (information = slot.poll()) != null; ) {
+                due.add(information);
+            }
+            for (SessionInformation information : due) {
+                if (sessions.get(information.getId()) != information) {
+                    // removed or replaced since it was indexed
+                    continue;
+                }
+                if (information.getExpiryTime() < now) {
+                    if (sessions.remove(information.getId()) != null) {
+                        expired++;
+                        if (log.isDebugEnabled()) {
+                            log.debug("Expired session with id :" + information.getId());
+                        }
+                    }
+                } else {
+                    // renewed or beyond the span of the wheel
+                    schedule(information);
+                }
+            }
+            due.clear();
+        }
+        expirations.addAndGet(expired);
+        return expired;
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    long getRejections() {
+        return rejections.get();
+    }
+
+    long getExpirations() {
+        return expirations.get();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    private void schedule(SessionInformation information) {
+        long expiryTick = Math.max(information.getExpiryTime() / tick, sweptTick + 1);
+        wheel[slotOf(expiryTick)].add(information);
+    }
+
+    private int slotOf(long tickIndex) {
+        return (int) (tickIndex % wheel.length);
+    }
+
+    /*
+     * Walks the wheel from the next due slot and evicts the first live session found, which is the
+     * one closest to its expiry, apart from sessions expiring beyond the span of the wheel. If
+     * every session expires beyond the span of the wheel, any one of them is evicted.
+     */
+    private void evictExpiringFirst() {
+        long start = sweptTick + 1;
+        for (int i = 0; i < wheel.length; i++) {
+            int slotIndex = slotOf(start + i);
+            Queue<SessionInformation> slot = wheel[slotIndex];
+            for (SessionInformation information; (information = slot.poll()) != null; ) {
+                if (sessions.get(information.getId()) != information) {
+                    continue;
+                }
+                long expiryTick = Math.max(information.getExpiryTime() / tick, sweptTick + 1);
+                if (slotOf(expiryTick) != slotIndex) {
+                    // renewed since it was indexed
+                    schedule(information);
+                    continue;
+                }
+                if (sessions.remove(information.getId()) != null) {
+                    evicted(information);
+                    return;
+                }
+            }
+        }
+        for (SessionInformation information : sessions.values()) {
+            if (sessions.remove(information.getId(), information)) {
+                evicted(information);
+                return;
+            }
+        }
+    }
+
+    private void evicted(SessionInformation information) {
+        evictions.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Session table is full. Evicted session with id : " + information.getId());
+        }
+    }
+}
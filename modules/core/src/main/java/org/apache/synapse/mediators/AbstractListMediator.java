@@ -33,9 +33,9 @@ import org.apache.synapse.SynapseLog;
 import org.apache.synapse.aspects.flow.statistics.collectors.RuntimeStatisticCollector;
 import org.apache.synapse.aspects.flow.statistics.data.artifact.ArtifactHolder;
 import org.apache.synapse.commons.json.Constants;
-import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.analysis.ContentBuildAnalyzer;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.mediators.util.MediatorIdLogSetter;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
@@ -44,8 +44,10 @@ import org.apache.synapse.transport.util.MessageHandlerProvider;
 import org.apache.synapse.unittest.MediatorRegistry;
 import org.apache.synapse.unittest.UnitTestModeUtils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -70,15 +72,15 @@ public abstract class AbstractListMediator extends AbstractMediator
     protected Pattern msgBuildFailureExpattern = Pattern.compile(MSG_BUILD_FAILURE_EXCEPTION_PATTERN);
 
     /** the list of child mediators held. These are executed sequentially */
-    protected final List<Mediator> mediators = new ArrayList<Mediator>();
+    protected final List<Mediator> mediators = new MediatorList();
 
     private boolean sequenceContentAware = false;
 
     /**
-     * Whether Streaming Xpath is enabled in synapse.properties file.
+     * Execution plan of the child mediators, compiled when the mediator is initialized. It is compiled
+     * again on the next mediation whenever the list of child mediators has been modified.
      */
-    private static boolean isStreamXpathEnabled = SynapsePropertiesLoader.
-            getBooleanProperty(SynapseConstants.STREAMING_XPATH_PROCESSING, Boolean.FALSE);
+    private volatile CompiledMediatorList compiledMediators = null;
 
     public boolean mediate(MessageContext synCtx) {
         return  mediate(synCtx,0);
@@ -92,7 +94,8 @@ public abstract class AbstractListMediator extends AbstractMediator
         // to pass it on; else, do nothing -> i.e. let the parents state flow
         setEffectiveTraceState(synCtx);
         int myEffectiveTraceState = synCtx.getTracingState();
-        if (this instanceof SequenceMediator & mediatorPosition == 0) {
+        CompiledMediatorList compiled = getCompiledMediators();
+        if (compiled.isSequence & mediatorPosition == 0) {
             List<SequenceFlowObserver> observers = synCtx.getEnvironment().getSequenceObservers();
             for (SequenceFlowObserver observer : observers) {
                 observer.start(synCtx, ((SequenceMediator) this).getName());
@@ -103,14 +106,22 @@ public abstract class AbstractListMediator extends AbstractMediator
         Integer statisticReportingIndex = 0;
         boolean mediatorIdSet = false;
         try {
-            SynapseLog synLog = getLog(synCtx);
-            if (synLog.isTraceOrDebugEnabled()) {
-                synLog.traceOrDebug("Sequence <" + getType() + "> :: mediate()");
-                synLog.traceOrDebug("Mediation started from mediator position : " + mediatorPosition);
+            SynapseLog synLog = null;
+            if (isTraceOrDebugOn(isTraceOn(synCtx)) || synCtx.getServiceLog() != null) {
+                synLog = getLog(synCtx);
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Sequence <" + getType() + "> :: mediate()");
+                    synLog.traceOrDebug("Mediation started from mediator position : " + mediatorPosition);
+                }
             }
-            for (int i = mediatorPosition; i < mediators.size(); i++) {
+            boolean statisticsEnabled = RuntimeStatisticCollector.isStatisticsEnabled();
+            boolean unitTestMode = UnitTestModeUtils.isUnitTestMode();
+            Mediator[] children = compiled.mediators;
+            boolean[] buildBefore = compiled.buildBefore;
+            int last = children.length - 1;
+            for (int i = mediatorPosition; i < children.length; i++) {
                 // ensure correct trace state after each invocation of a mediator
-                mediator = mediators.get(i);
+                mediator = children[i];
 
                 // Add mediator ID to synCtx and sync to ThreadContext for logging
                 if (mediator instanceof AbstractMediator) {
@@ -118,49 +129,39 @@ public abstract class AbstractListMediator extends AbstractMediator
                         ((AbstractMediator) mediator).getMediatorId());
                 }
 
-                if (sequenceContentAware && (mediator.isContentAware() || isStreamXpathEnabled) &&
+                if (buildBefore[i] &&
                         (!Boolean.TRUE.equals(synCtx.getProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED)))) {
+                    if (synLog == null) {
+                        synLog = getLog(synCtx);
+                    }
                     buildMessage(synCtx, synLog);
                 }
 
-                if (RuntimeStatisticCollector.isStatisticsEnabled()) {
+                if (statisticsEnabled) {
                     statisticReportingIndex = mediator.reportOpenStatistics(synCtx, i == mediatorPosition);
-                    synCtx.setTracingState(myEffectiveTraceState);
+                }
+                synCtx.setTracingState(myEffectiveTraceState);
 
-                    // Track mediator execution for unit test coverage
+                // Track mediator execution for unit test coverage
+                if (unitTestMode) {
                     trackMediatorExecution(mediator, synCtx);
-                    if (!mediator.mediate(synCtx)) {
+                }
+
+                if (!mediator.mediate(synCtx)) {
+                    if (statisticsEnabled) {
                         mediator.reportCloseStatistics(synCtx, statisticReportingIndex);
-                        returnVal = false;
-                        break;
                     }
-                    if (i == mediators.size() - 1) {
-                        if (this instanceof SequenceMediator) {
-                            List<SequenceFlowObserver> observers = synCtx.getEnvironment().getSequenceObservers();
-                            for (SequenceFlowObserver observer : observers) {
-                                observer.complete(synCtx, ((SequenceMediator) this).getName());
-                            }
-                        }
+                    returnVal = false;
+                    break;
+                }
+                if (i == last && compiled.isSequence) {
+                    List<SequenceFlowObserver> observers = synCtx.getEnvironment().getSequenceObservers();
+                    for (SequenceFlowObserver observer : observers) {
+                        observer.complete(synCtx, ((SequenceMediator) this).getName());
                     }
+                }
+                if (statisticsEnabled) {
                     mediator.reportCloseStatistics(synCtx, statisticReportingIndex);
-                } else {
-                    synCtx.setTracingState(myEffectiveTraceState);
-
-                    // Track mediator execution for unit test coverage
-                    trackMediatorExecution(mediator, synCtx);
-
-                    if (!mediator.mediate(synCtx)) {
-                        returnVal = false;
-                        break;
-                    }
-                    if (i == mediators.size() - 1) {
-                        if (this instanceof SequenceMediator) {
-                            List<SequenceFlowObserver> observers = synCtx.getEnvironment().getSequenceObservers();
-                            for (SequenceFlowObserver observer : observers) {
-                                observer.complete(synCtx, ((SequenceMediator) this).getName());
-                            }
-                        }
-                    }
                 }
             }
         } catch (SynapseException synEx) {
@@ -201,6 +202,21 @@ public abstract class AbstractListMediator extends AbstractMediator
         return returnVal;
     }
 
+    /**
+     * Returns the compiled execution plan of the child mediators, compiling it if the list of
+     * child mediators has changed since it was last compiled.
+     *
+     * @return compiled child mediator list
+     */
+    private CompiledMediatorList getCompiledMediators() {
+        CompiledMediatorList compiled = compiledMediators;
+        if (compiled == null || compiled.version != ((MediatorList) mediators).version) {
+            compiled = new CompiledMediatorList(this, (MediatorList) mediators, sequenceContentAware);
+            compiledMediators = compiled;
+        }
+        return compiled;
+    }
+
     private void reportStatistics(MessageContext synCtx, Mediator mediator, Integer statisticReportingIndex) {
         if (RuntimeStatisticCollector.isStatisticsEnabled() && mediator != null) {
             // check to see if the span closed as error.
@@ -280,6 +296,7 @@ public abstract class AbstractListMediator extends AbstractMediator
                 sequenceContentAware = true;
             }
         }
+        compiledMediators = new CompiledMediatorList(this, (MediatorList) mediators, sequenceContentAware);
     }
 
     /**
@@ -315,11 +332,9 @@ public abstract class AbstractListMediator extends AbstractMediator
      * @param synCtx   message context
      */
     private void trackMediatorExecution(Mediator mediator, MessageContext synCtx) {
-        if (UnitTestModeUtils.isUnitTestMode()) {
-            String artifactKey = (String) synCtx.getProperty(COVERAGE_ARTIFACT_KEY);
-            if (artifactKey != null) {
-                MediatorRegistry.getInstance().markMediatorExecuted(mediator, artifactKey);
-            }
+        String artifactKey = (String) synCtx.getProperty(COVERAGE_ARTIFACT_KEY);
+        if (artifactKey != null) {
+            MediatorRegistry.getInstance().markMediatorExecuted(mediator, artifactKey);
         }
     }
 
@@ -355,4 +370,85 @@ public abstract class AbstractListMediator extends AbstractMediator
             log.error("Exception or Error occurred resetting SOAP Envelope", e);
         }
     }
+
+    /**
+     * List of child mediators which counts its modifications. Every change made through the list,
+     * including the ones made through {@link #getList()}, its iterators and sub lists, passes through
+     * {@link #set}, {@link #add} or {@link #remove}, so a compiled plan can tell whether it is stale.
+     */
+    private static final class MediatorList extends AbstractList<Mediator> implements RandomAccess {
+
+        private final ArrayList<Mediator> elements = new ArrayList<Mediator>();
+
+        /** Incremented on every modification of the list */
+        private volatile int version = 0;
+
+        @Override
+        public Mediator get(int index) {
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public Mediator set(int index, Mediator element) {
+            Mediator previous = elements.set(index, element);
+            version++;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Mediator element) {
+            elements.add(index, element);
+            modCount++;
+            version++;
+        }
+
+        @Override
+        public Mediator remove(int index) {
+            Mediator previous = elements.remove(index);
+            modCount++;
+            version++;
+            return previous;
+        }
+    }
+
+    /**
+     * Flat execution plan of the child mediators of a list mediator. Decisions which only depend on
+     * the configuration, such as whether the message has to be built before a mediator is invoked,
+     * are taken once when the plan is compiled rather than for each message.
+     * <p/>
+     * The message is only built before a mediator whose own content build requirement, as worked out
+     * by {@link ContentBuildAnalyzer}, needs a built message. Mediators evaluating a streaming XPath
+     * do not force a build, and the children of nested list mediators are built for by the nested
+     * list itself, so the message is built at the earliest point of the executing branch.
+     */
+    private static final class CompiledMediatorList {
+
+        private final Mediator[] mediators;
+
+        /** Whether the message should be built before invoking the mediator at each position */
+        private final boolean[] buildBefore;
+
+        private final boolean isSequence;
+
+        /** Version of the child mediator list this plan was compiled from */
+        private final int version;
+
+        private CompiledMediatorList(AbstractListMediator owner, MediatorList mediatorList,
+                                     boolean sequenceContentAware) {
+            // read the version first, a change made while compiling then causes another compilation
+            this.version = mediatorList.version;
+            this.mediators = mediatorList.toArray(new Mediator[0]);
+            this.buildBefore = new boolean[mediators.length];
+            for (int i = 0; i < mediators.length; i++) {
+                buildBefore[i] = sequenceContentAware &&
+                        ContentBuildAnalyzer.requirementOf(mediators[i]).requiresBuild();
+            }
+            this.isSequence = owner instanceof SequenceMediator;
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.apache.synapse.SynapseException;
 import org.apache.synapse.aspects.flow.statistics.StatisticsCloseEventListener;
 import org.apache.synapse.aspects.flow.statistics.collectors.RuntimeStatisticCollector;
 import org.apache.synapse.carbonext.TenantInfoConfigurator;
+import org.apache.synapse.continuation.ContinuationHandOff;
 import org.apache.synapse.continuation.ContinuationStackManager;
 import org.apache.synapse.continuation.SeqContinuationState;
 import org.apache.synapse.debug.SynapseDebugManager;
@@ -82,6 +83,7 @@ public class MediatorWorker implements Runnable {
      * Synapse MessageContext using the specified Sequence Mediator
      */
     public void run() {
+        boolean handOffScope = ContinuationHandOff.open();
         try {
             //Set tenant info when different thread executes the mediation
             TenantInfoConfigurator configurator = synCtx.getEnvironment().getTenantInfoConfigurator();
@@ -159,6 +161,9 @@ public class MediatorWorker implements Runnable {
             
             // Clear ThreadContext when thread finishes to prevent context leakage
             MediatorIdLogSetter.getInstance().clearMediatorId();
+            if (handOffScope) {
+                ContinuationHandOff.close();
+            }
         }
         synCtx = null;
         seq = null;
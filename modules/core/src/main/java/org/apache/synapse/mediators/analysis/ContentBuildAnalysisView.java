@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the content build reports of the deployed sequences and API resources and exposes them
+ * over JMX. The view is registered with the MBean server when the first report is added.
+ */
+public class ContentBuildAnalysisView implements ContentBuildAnalysisViewMBean {
+
+    public static final String MBEAN_CATEGORY = "ContentBuildAnalysis";
+
+    public static final String MBEAN_ID = "ContentBuildAnalysis";
+
+    private static final ContentBuildAnalysisView instance = new ContentBuildAnalysisView();
+
+    private final Map<String, ContentBuildReport> reports = new ConcurrentHashMap<String, ContentBuildReport>();
+
+    private volatile boolean registered = false;
+
+    private ContentBuildAnalysisView() {
+    }
+
+    public static ContentBuildAnalysisView getInstance() {
+        return instance;
+    }
+
+    /**
+     * Add or replace the report of an artifact
+     *
+     * @param report content build report of the artifact
+     */
+    public void addReport(ContentBuildReport report) {
+        reports.put(report.getArtifactName(), report);
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    MBeanRegistrar.getInstance().registerMBean(this, MBEAN_CATEGORY, MBEAN_ID);
+                    registered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the report of an undeployed artifact
+     *
+     * @param artifactName name of the artifact
+     */
+    public void removeReport(String artifactName) {
+        reports.remove(artifactName);
+    }
+
+    public ContentBuildReport getReport(String artifactName) {
+        return reports.get(artifactName);
+    }
+
+    public String[] getAnalyzedArtifacts() {
+        return new TreeSet<String>(reports.keySet()).toArray(new String[0]);
+    }
+
+    public String[] getArtifactsRequiringFullBuild() {
+        List<String> artifacts = new ArrayList<String>();
+        for (String artifactName : getAnalyzedArtifacts()) {
+            ContentBuildReport report = reports.get(artifactName);
+            if (report != null && report.getRequirement() == ContentBuildRequirement.FULL) {
+                artifacts.add(artifactName);
+            }
+        }
+        return artifacts.toArray(new String[0]);
+    }
+
+    public String getBuildRequirement(String artifactName) {
+        ContentBuildReport report = reports.get(artifactName);
+        return report != null ? report.getRequirement().toString() : null;
+    }
+
+    public String getEarliestBuildPoint(String artifactName) {
+        ContentBuildReport report = reports.get(artifactName);
+        return report != null ? report.getEarliestBuildPoint() : null;
+    }
+
+    public String[] getFullBuildMediators(String artifactName) {
+        ContentBuildReport report = reports.get(artifactName);
+        return report != null ? report.getFullBuildMediators().toArray(new String[0]) : new String[0];
+    }
+
+    public String[] getPartialBuildMediators(String artifactName) {
+        ContentBuildReport report = reports.get(artifactName);
+        return report != null ? report.getPartialBuildMediators().toArray(new String[0]) : new String[0];
+    }
+}
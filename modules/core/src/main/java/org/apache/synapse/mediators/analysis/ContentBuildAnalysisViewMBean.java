@@ -0,0 +1,60 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+/**
+ * JMX view of the content build analysis of the deployed mediation flows
+ */
+public interface ContentBuildAnalysisViewMBean {
+
+    /**
+     * @return names of all the analyzed artifacts
+     */
+    String[] getAnalyzedArtifacts();
+
+    /**
+     * @return names of the artifacts with at least one branch which fully builds the message
+     */
+    String[] getArtifactsRequiringFullBuild();
+
+    /**
+     * @param artifactName name of the artifact
+     * @return build requirement of the artifact or null if it has not been analyzed
+     */
+    String getBuildRequirement(String artifactName);
+
+    /**
+     * @param artifactName name of the artifact
+     * @return path of the first mediator of the artifact the message is built for
+     */
+    String getEarliestBuildPoint(String artifactName);
+
+    /**
+     * @param artifactName name of the artifact
+     * @return paths of the mediators of the artifact which force a full message build
+     */
+    String[] getFullBuildMediators(String artifactName);
+
+    /**
+     * @param artifactName name of the artifact
+     * @return paths of the mediators of the artifact which access the payload without a full build
+     */
+    String[] getPartialBuildMediators(String artifactName);
+}
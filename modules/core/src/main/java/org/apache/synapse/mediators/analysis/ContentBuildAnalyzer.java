@@ -0,0 +1,169 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.config.xml.SwitchCase;
+import org.apache.synapse.config.xml.SynapsePath;
+import org.apache.synapse.config.xml.XMLConfigConstants;
+import org.apache.synapse.mediators.AbstractListMediator;
+import org.apache.synapse.mediators.ListMediator;
+import org.apache.synapse.mediators.filters.FilterMediator;
+import org.apache.synapse.mediators.filters.SwitchMediator;
+import org.apache.synapse.mediators.transform.HeaderMediator;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import java.util.List;
+
+/**
+ * Static analysis of a mediation flow which works out how much of the message payload each branch
+ * of the flow needs to access. The analysis is run when an artifact is deployed, so it only relies
+ * on the configuration of the mediators. The requirement of each mediator is also used by
+ * {@link AbstractListMediator} to decide before which child mediators the message is built, so the
+ * message is built at most once, right before the first mediator of the executing branch which
+ * needs it.
+ * <p/>
+ * Branches of filter and switch mediators and the children of any list mediator are visited
+ * recursively. Sequences referred by key are not followed, as they are analyzed on their own.
+ */
+public class ContentBuildAnalyzer {
+
+    private static final Log log = LogFactory.getLog(ContentBuildAnalyzer.class);
+
+    private ContentBuildAnalyzer() {
+    }
+
+    /**
+     * Analyze the given mediation flow
+     *
+     * @param artifactName name of the artifact the flow belongs to
+     * @param flow         the list mediator to be analyzed
+     * @return the content build report of the flow
+     */
+    public static ContentBuildReport analyze(String artifactName, ListMediator flow) {
+        ContentBuildReport report = new ContentBuildReport(artifactName);
+        if (flow != null) {
+            analyzeList(flow.getList(), "", report);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Content build analysis of " + report);
+        }
+        return report;
+    }
+
+    /**
+     * Works out the build requirement of the given mediator itself, without considering its
+     * child mediators.
+     *
+     * @param mediator the mediator
+     * @return build requirement of the mediator
+     */
+    public static ContentBuildRequirement requirementOf(Mediator mediator) {
+        if (mediator instanceof FilterMediator) {
+            FilterMediator filter = (FilterMediator) mediator;
+            return requirementOf(filter.getXpath() != null ? filter.getXpath() : filter.getSource());
+        } else if (mediator instanceof SwitchMediator) {
+            return requirementOf(((SwitchMediator) mediator).getSource());
+        } else if (mediator instanceof HeaderMediator) {
+            HeaderMediator header = (HeaderMediator) mediator;
+            ContentBuildRequirement expressionRequirement = requirementOf(header.getExpression());
+            if (XMLConfigConstants.SCOPE_TRANSPORT.equals(header.getScope())) {
+                return expressionRequirement;
+            }
+            return ContentBuildRequirement.HEADERS.combine(expressionRequirement);
+        } else if (mediator instanceof AbstractListMediator && !definesContentAwareness(mediator)) {
+            // content awareness of a plain list mediator is derived from its children
+            return ContentBuildRequirement.NONE;
+        }
+        return mediator.isContentAware() ? ContentBuildRequirement.FULL : ContentBuildRequirement.NONE;
+    }
+
+    /**
+     * Works out the build requirement of evaluating the given path
+     *
+     * @param path the path, may be null
+     * @return build requirement of evaluating the path
+     */
+    public static ContentBuildRequirement requirementOf(SynapsePath path) {
+        if (path == null) {
+            return ContentBuildRequirement.NONE;
+        }
+        if (SynapsePath.JSON_PATH.equals(path.getPathType())) {
+            return ContentBuildRequirement.JSON;
+        }
+        if (path instanceof SynapseXPath && ((SynapseXPath) path).isStreamable()) {
+            return ContentBuildRequirement.STREAMING_XPATH;
+        }
+        return path.isContentAware() ? ContentBuildRequirement.FULL : ContentBuildRequirement.NONE;
+    }
+
+    private static void analyzeList(List<Mediator> mediators, String parentPath, ContentBuildReport report) {
+        for (int i = 0; i < mediators.size(); i++) {
+            Mediator mediator = mediators.get(i);
+            String path = parentPath + i + ":" + nameOf(mediator);
+            report.record(path, requirementOf(mediator));
+
+            if (mediator instanceof FilterMediator) {
+                FilterMediator filter = (FilterMediator) mediator;
+                analyzeList(filter.getList(), path + "/then/", report);
+                if (filter.getElseMediator() != null) {
+                    analyzeList(filter.getElseMediator().getList(), path + "/else/", report);
+                }
+            } else if (mediator instanceof SwitchMediator) {
+                SwitchMediator switchMediator = (SwitchMediator) mediator;
+                List<SwitchCase> cases = switchMediator.getCases();
+                for (int j = 0; j < cases.size(); j++) {
+                    analyzeCase(cases.get(j), path + "/case" + j + "/", report);
+                }
+                analyzeCase(switchMediator.getDefaultCase(), path + "/default/", report);
+            } else if (mediator instanceof ListMediator) {
+                analyzeList(((ListMediator) mediator).getList(), path + "/", report);
+            }
+        }
+    }
+
+    private static void analyzeCase(SwitchCase switchCase, String path, ContentBuildReport report) {
+        if (switchCase != null && switchCase.getCaseMediator() != null) {
+            analyzeList(switchCase.getCaseMediator().getList(), path, report);
+        }
+    }
+
+    private static boolean definesContentAwareness(Mediator mediator) {
+        try {
+            return mediator.getClass().getMethod("isContentAware").getDeclaringClass() !=
+                    AbstractListMediator.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static String nameOf(Mediator mediator) {
+        String type = mediator.getType();
+        if (type == null) {
+            type = mediator.getClass().getSimpleName();
+        }
+        if (type.endsWith("Mediator") && type.length() > "Mediator".length()) {
+            type = type.substring(0, type.length() - "Mediator".length());
+        }
+        return type.toLowerCase();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the content build analysis of a mediation flow. Mediators are identified by their
+ * path in the flow, e.g. {@code 2:filter/then/0:log} refers to the first mediator in the then
+ * branch of the filter mediator at the third position of the flow.
+ */
+public class ContentBuildReport {
+
+    private final String artifactName;
+
+    private ContentBuildRequirement requirement = ContentBuildRequirement.NONE;
+
+    /** Path of the first mediator the message is built for, in mediation order */
+    private String earliestBuildPoint;
+
+    private final List<String> fullBuildMediators = new ArrayList<String>();
+
+    private final List<String> partialBuildMediators = new ArrayList<String>();
+
+    public ContentBuildReport(String artifactName) {
+        this.artifactName = artifactName;
+    }
+
+    void record(String path, ContentBuildRequirement mediatorRequirement) {
+        if (mediatorRequirement == ContentBuildRequirement.NONE) {
+            return;
+        }
+        requirement = requirement.combine(mediatorRequirement);
+        if (earliestBuildPoint == null && mediatorRequirement.requiresBuild()) {
+            earliestBuildPoint = path;
+        }
+        if (mediatorRequirement == ContentBuildRequirement.FULL) {
+            fullBuildMediators.add(path);
+        } else {
+            partialBuildMediators.add(path + " (" + mediatorRequirement + ")");
+        }
+    }
+
+    public String getArtifactName() {
+        return artifactName;
+    }
+
+    /**
+     * @return the most expensive build requirement of any branch of the flow
+     */
+    public ContentBuildRequirement getRequirement() {
+        return requirement;
+    }
+
+    /**
+     * @return path of the first mediator the message is built for or null if it is never built
+     */
+    public String getEarliestBuildPoint() {
+        return earliestBuildPoint;
+    }
+
+    /**
+     * @return paths of the mediators which force the message to be fully built
+     */
+    public List<String> getFullBuildMediators() {
+        return Collections.unmodifiableList(fullBuildMediators);
+    }
+
+    /**
+     * @return paths of the mediators which access the payload without fully building it
+     */
+    public List<String> getPartialBuildMediators() {
+        return Collections.unmodifiableList(partialBuildMediators);
+    }
+
+    @Override
+    public String toString() {
+        return artifactName + " : " + requirement +
+                (earliestBuildPoint != null ? ", first built at " + earliestBuildPoint : "") +
+                (fullBuildMediators.isEmpty() ? "" : ", full build forced by " + fullBuildMediators);
+    }
+}
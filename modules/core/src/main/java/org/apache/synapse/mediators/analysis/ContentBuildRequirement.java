@@ -0,0 +1,66 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+/**
+ * Amount of the message payload a mediator needs to access, ordered from the cheapest to the most
+ * expensive. The requirement of a mediation flow is the most expensive requirement of its mediators.
+ * The levels from {@link #HEADERS} onwards require the message to be built before the mediator is
+ * invoked.
+ */
+public enum ContentBuildRequirement {
+
+    /** The payload is not accessed, only properties or transport headers are used */
+    NONE,
+
+    /** The payload is read through a streaming XPath without building the message */
+    STREAMING_XPATH,
+
+    /**
+     * Only the SOAP headers are accessed. The envelope is built with the deferred builder, so the
+     * body is not parsed unless a later mediator reads it.
+     */
+    HEADERS,
+
+    /** The payload is accessed as JSON through a JSON path */
+    JSON,
+
+    /** The message has to be fully built into an object model */
+    FULL;
+
+    /**
+     * Returns the more expensive of this and the given requirement
+     *
+     * @param other requirement to combine with
+     * @return the combined requirement
+     */
+    public ContentBuildRequirement combine(ContentBuildRequirement other) {
+        return other != null && other.ordinal() > ordinal() ? other : this;
+    }
+
+    /**
+     * Whether the message has to be built before a mediator with this requirement is invoked
+     *
+     * @return true if the message has to be built
+     */
+    public boolean requiresBuild() {
+        return ordinal() >= HEADERS.ordinal();
+    }
+}
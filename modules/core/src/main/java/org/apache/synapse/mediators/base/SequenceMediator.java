@@ -42,6 +42,8 @@ import org.apache.synapse.mediators.AbstractListMediator;
 import org.apache.synapse.mediators.FlowContinuableMediator;
 import org.apache.synapse.mediators.MediatorFaultHandler;
 import org.apache.synapse.mediators.Value;
+import org.apache.synapse.mediators.analysis.ContentBuildAnalysisView;
+import org.apache.synapse.mediators.analysis.ContentBuildAnalyzer;
 
 import java.util.Stack;
 
@@ -73,6 +75,8 @@ public class SequenceMediator extends AbstractListMediator implements Nameable,
     private String fileName;
     /** type of the sequence*/
     private SequenceType sequenceType = SequenceType.NAMED;
+    /** prefix of the names content build reports of named sequences are kept against */
+    private static final String CONTENT_BUILD_ARTIFACT_PREFIX = "Sequence:";
     /** Reference to the synapse environment */
     private SynapseEnvironment synapseEnv;
     /** Name of the car file which the sequence deployed from */
@@ -328,6 +332,9 @@ public class SequenceMediator extends AbstractListMediator implements Nameable,
                     // sequences referred by key-expressions are treated as unavailable at initialization
                     se.addUnavailableArtifactRef(key.getExpression().toString());
                 }
+            } else if (name != null && sequenceType == SequenceType.NAMED) {
+                ContentBuildAnalysisView.getInstance().addReport(
+                        ContentBuildAnalyzer.analyze(CONTENT_BUILD_ARTIFACT_PREFIX + name, this));
             }
         }
     }
@@ -353,6 +360,8 @@ public class SequenceMediator extends AbstractListMediator implements Nameable,
                 } else {
                     synapseEnv.removeUnavailableArtifactRef(key.getExpression().toString());
                 }
+            } else if (name != null && sequenceType == SequenceType.NAMED) {
+                ContentBuildAnalysisView.getInstance().removeReport(CONTENT_BUILD_ARTIFACT_PREFIX + name);
             }
         }
     }
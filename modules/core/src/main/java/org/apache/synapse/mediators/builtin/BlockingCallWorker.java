@@ -0,0 +1,103 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.FaultHandler;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.aspects.flow.statistics.StatisticsCloseEventListener;
+import org.apache.synapse.aspects.flow.statistics.collectors.RuntimeStatisticCollector;
+import org.apache.synapse.carbonext.TenantInfoConfigurator;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.util.MediatorIdLogSetter;
+import org.apache.synapse.util.logging.LoggingUtils;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Performs a blocking Call mediator invocation on a virtual thread and continues the mediation
+ * flow using the ContinuationState stack once the response is received.
+ * <p/>
+ * The worker is started once the Synapse worker thread which reached the Call mediator has returned
+ * from the entry point of the mediation, so the message context has a single owner at a time. The
+ * message context still observes the blocking semantics, i.e. the response replaces the payload of
+ * the same message context before the next mediator is executed. The flow is continued in the same
+ * way as the response of a non-blocking call. The permit taken for the worker is returned once the
+ * flow ends on the virtual thread.
+ */
+class BlockingCallWorker implements Runnable {
+
+    private static final Log log = LogFactory.getLog(BlockingCallWorker.class);
+
+    private final CallMediator callMediator;
+    private final MessageContext synCtx;
+    private final Semaphore permits;
+
+    BlockingCallWorker(CallMediator callMediator, MessageContext synCtx, Semaphore permits) {
+        this.callMediator = callMediator;
+        this.synCtx = synCtx;
+        this.permits = permits;
+    }
+
+    public void run() {
+        try {
+            TenantInfoConfigurator configurator = synCtx.getEnvironment().getTenantInfoConfigurator();
+            if (configurator != null) {
+                configurator.applyTenantInfo(synCtx);
+            }
+            MediatorIdLogSetter.getInstance().syncToThreadContext(synCtx);
+
+            if (!callMediator.invokeBlocking(synCtx)) {
+                return;
+            }
+            // applies the target of the response and continues after the Call mediator
+            ((Axis2SynapseEnvironment) synCtx.getEnvironment()).mediateFromContinuationStateStack(synCtx);
+
+        } catch (SynapseException syne) {
+            handleFault("Error while continuing the mediation after the blocking call", syne);
+        } catch (Exception e) {
+            handleFault("Unexpected error while continuing the mediation after the blocking call", e);
+        } catch (Throwable e) {
+            log.error(LoggingUtils.getFormattedLog(synCtx,
+                    "Unexpected error while performing the blocking call, message dropped"), e);
+        } finally {
+            if (RuntimeStatisticCollector.isStatisticsEnabled()) {
+                new StatisticsCloseEventListener().invokeCloseEventEntry(synCtx);
+            }
+            MediatorIdLogSetter.getInstance().clearMediatorId();
+            permits.release();
+        }
+    }
+
+    private void handleFault(String msg, Exception e) {
+        log.error(LoggingUtils.getFormattedLog(synCtx, msg), e);
+        if (synCtx.getServiceLog() != null) {
+            synCtx.getServiceLog().error(msg, e);
+        }
+        if (!synCtx.getFaultStack().isEmpty()) {
+            ((FaultHandler) synCtx.getFaultStack().pop()).handleFault(synCtx, e);
+        } else {
+            log.warn(LoggingUtils.getFormattedLog(synCtx,
+                    "Exception encountered but no fault handler found - message dropped"));
+        }
+    }
+}
@@ -23,8 +23,10 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
+import org.apache.axis2.context.OperationContext;
 import org.apache.axis2.description.TransportOutDescription;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.ContinuationState;
 import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
@@ -35,7 +37,10 @@ import org.apache.synapse.aspects.AspectConfiguration;
 import org.apache.synapse.aspects.ComponentType;
 import org.apache.synapse.aspects.flow.statistics.StatisticIdentityGenerator;
 import org.apache.synapse.aspects.flow.statistics.data.artifact.ArtifactHolder;
+import org.apache.synapse.aspects.flow.statistics.util.StatisticsConstants;
 import org.apache.synapse.commons.json.JsonUtil;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.continuation.ContinuationHandOff;
 import org.apache.synapse.continuation.ContinuationStackManager;
 import org.apache.synapse.continuation.SeqContinuationState;
 import org.apache.synapse.core.SynapseEnvironment;
@@ -56,6 +61,8 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Call Mediator sends a message using specified semantics. If it contains an endpoint it will
@@ -92,6 +99,18 @@ public class CallMediator extends AbstractMediator implements ManagedLifecycle {
         DEFAULT_AXIS2_XML = Paths.get(confPath, "axis2", "axis2_blocking_client.xml").toString();
     }
 
+    /** Whether blocking invocations are performed on virtual threads, releasing the worker thread */
+    private static final boolean blockingCallOnVirtualThreads = SynapsePropertiesLoader.getBooleanProperty(
+            SynapseConstants.BLOCKING_CALL_VIRTUAL_THREADS, false);
+
+    private static final ThreadFactory blockingCallThreadFactory =
+            Thread.ofVirtual().name("BlockingCallWorker-", 0).factory();
+
+    private static final int DEFAULT_MAX_VIRTUAL_BLOCKING_CALLS = 1000;
+
+    /** Bounds the blocking invocations in flight on virtual threads, further ones block their worker thread */
+    private static final Semaphore virtualBlockingCallPermits = new Semaphore(readMaxVirtualBlockingCalls());
+
     private BlockingMsgSender blockingMsgSender = null;
 
     private ConfigurationContext configCtx = null;
@@ -216,6 +235,95 @@ public class CallMediator extends AbstractMediator implements ManagedLifecycle {
     private boolean handleBlockingCall(MessageContext synInCtx, String originalMessageType, String originalContentType,
                                        Map originalTransportHeaders) {
 
+        // the flow can only be resumed on the virtual thread if the continuation stack is maintained, and
+        // handed over once the entry point of the mediation is done with the message, otherwise the call
+        // blocks the current thread
+        if (blockingCallOnVirtualThreads && !Thread.currentThread().isVirtual()
+                && synInCtx.isContinuationEnabled() && !synInCtx.getContinuationStateStack().isEmpty()
+                && ContinuationHandOff.isOpen() && virtualBlockingCallPermits.tryAcquire()) {
+            return offloadBlockingCall(synInCtx);
+        }
+        return performBlockingCall(synInCtx, originalMessageType, originalContentType, originalTransportHeaders);
+    }
+
+    /**
+     * Hand over the blocking invocation and the rest of the mediation flow to a virtual thread, so that the
+     * Synapse worker thread is not parked during the backend round trip. The virtual thread is started once
+     * the entry point of the mediation has returned, and continues the flow from the ContinuationState stack
+     * in the same way as the response of a non-blocking call.
+     *
+     * @param synInCtx message context
+     * @return false, as the flow is continued by the virtual thread
+     */
+    private boolean offloadBlockingCall(final MessageContext synInCtx) {
+
+        SynapseLog synLog = getLog(synInCtx);
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Handing over the blocking call to a virtual thread");
+        }
+
+        ContinuationStackManager.updateSeqContinuationState(synInCtx, getMediatorPosition());
+        OperationContext opCtx = ((Axis2MessageContext) synInCtx).getAxis2MessageContext().getOperationContext();
+        if (opCtx != null) {
+            opCtx.setProperty(Constants.RESPONSE_WRITTEN, "SKIP");
+        }
+        synInCtx.setProperty(StatisticsConstants.CONTINUE_STATISTICS_FLOW, true);
+
+        final BlockingCallWorker worker = new BlockingCallWorker(this, synInCtx, virtualBlockingCallPermits);
+        ContinuationHandOff.defer(new Runnable() {
+            public void run() {
+                try {
+                    blockingCallThreadFactory.newThread(worker).start();
+                } catch (RuntimeException | Error e) {
+                    log.warn("Could not start a virtual thread for the blocking call, performing it in place", e);
+                    worker.run();
+                }
+            }
+        });
+        return false;
+    }
+
+    private static int readMaxVirtualBlockingCalls() {
+        String value = SynapsePropertiesLoader.getPropertyValue(SynapseConstants.BLOCKING_CALL_VIRTUAL_THREADS_MAX,
+                String.valueOf(DEFAULT_MAX_VIRTUAL_BLOCKING_CALLS));
+        try {
+            int max = Integer.parseInt(value.trim());
+            if (max > 0) {
+                return max;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        LogFactory.getLog(CallMediator.class).warn("Invalid value " + value + " for "
+                + SynapseConstants.BLOCKING_CALL_VIRTUAL_THREADS_MAX
+                + ", using " + DEFAULT_MAX_VIRTUAL_BLOCKING_CALLS);
+        return DEFAULT_MAX_VIRTUAL_BLOCKING_CALLS;
+    }
+
+    /**
+     * Perform the blocking invocation in the current thread
+     *
+     * @param synInCtx message context
+     * @return  continue the mediation flow or not
+     */
+    private boolean performBlockingCall(MessageContext synInCtx, String originalMessageType,
+                                        String originalContentType, Map originalTransportHeaders) {
+        if (!invokeBlocking(synInCtx)) {
+            return false;
+        }
+        postMediate(synInCtx, originalMessageType, originalContentType, originalTransportHeaders);
+        return true;
+    }
+
+    /**
+     * Send the request and wait for the response in the current thread, without applying the target of the
+     * response
+     *
+     * @param synInCtx message context
+     * @return  continue the mediation flow or not
+     */
+    boolean invokeBlocking(MessageContext synInCtx) {
+
         SynapseLog synLog = getLog(synInCtx);
 
         if (synLog.isTraceOrDebugEnabled()) {
@@ -286,7 +394,6 @@ public class CallMediator extends AbstractMediator implements ManagedLifecycle {
             log.error("Error while performing the call operation in blocking mode");
             return false;
         }
-        postMediate(synInCtx, originalMessageType, originalContentType, originalTransportHeaders);
         return true;
     }
 
@@ -457,6 +564,10 @@ public class CallMediator extends AbstractMediator implements ManagedLifecycle {
                 log.error(msg, axisFault);
                 throw new SynapseException(msg, axisFault);
             }
+            if (blockingCallOnVirtualThreads) {
+                // new messages keep the continuation stack so that the flow can be resumed on a virtual thread
+                synapseEnvironment.updateBlockingCallMediatorCount(true);
+            }
         } else {
             synapseEnvironment.updateCallMediatorCount(true);
         }
@@ -481,6 +592,9 @@ public class CallMediator extends AbstractMediator implements ManagedLifecycle {
                     log.warn("Error stopping JMS transport sender on CallMediator destroy", e);
                 }
             }
+            if (blockingCallOnVirtualThreads) {
+                synapseEnv.updateBlockingCallMediatorCount(false);
+            }
         } else {
             synapseEnv.updateCallMediatorCount(false);
         }
@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2024, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.message;
+
+import org.apache.synapse.MessageContext;
+
+/**
+ * A consumer of a message store which lets several messages be taken from the store at a time and
+ * acknowledged one by one, in any order. A claimed message stays in the store until it is
+ * acknowledged, so it is not lost if the server stops while the message is being processed.
+ */
+public interface ClaimingMessageConsumer extends MessageConsumer {
+
+    /**
+     * Receives the next message of the store which is not claimed already and claims it. The message
+     * is not handed out again until it is released.
+     * @return the claimed message or {@code null} if no message is waiting.
+     */
+    MessageContext claim();
+
+    /**
+     * Acknowledges a claimed message so that it will be removed from the store.
+     * @param message message returned by {@link #claim()}.
+     * @return {@code true} if the acknowledgement is successful. {@code false} otherwise.
+     */
+    boolean ack(MessageContext message);
+
+    /**
+     * Gives up the claim on a message without acknowledging it. The message stays in the store and is
+     * claimed again.
+     * @param message message returned by {@link #claim()}.
+     * @return {@code true} if the message was claimed by this consumer. {@code false} otherwise.
+     */
+    boolean release(MessageContext message);
+}
@@ -0,0 +1,40 @@
+/**
+ *  Copyright (c) 2024, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.message;
+
+/**
+ * A consumer of a message store which hands out messages by their priority, see
+ * {@link org.apache.synapse.message.store.MessagePriority}.
+ */
+public interface PriorityMessageConsumer extends MessageConsumer {
+
+    /**
+     * Returns the highest priority of the messages waiting in the store, apart from the last message
+     * received.
+     * @return the priority or -1 if no other message is waiting.
+     */
+    int getWaitingPriority();
+
+    /**
+     * Gives up the last message received without acknowledging it. The message stays in the store
+     * and the next receive returns the message of the highest priority.
+     * @return {@code true} if the message was released, {@code false} otherwise.
+     */
+    boolean release();
+}
@@ -81,4 +81,24 @@ public final class ForwardingProcessorConstants {
      * Message store to keep un-processable messages of message processor
      */
     public static final String FAIL_MESSAGES_STORE = "message.processor.failMessagesStore";
+
+    /**
+     * Number of workers forwarding messages at once, messages are forwarded one by one if not set
+     */
+    public static final String CONCURRENCY = "concurrency";
+
+    /**
+     * Expression evaluated over a message to find its partition, order of delivery is kept within a partition
+     */
+    public static final String PARTITION_KEY = "partition.key";
+
+    /**
+     * Number of messages each worker takes from the store ahead of forwarding them
+     */
+    public static final String WORKER_QUEUE_SIZE = "worker.queue.size";
+
+    /**
+     * Whether a message being retried is put back in the store when a message of higher priority is waiting
+     */
+    public static final String PRIORITY_BYPASS = "priority.bypass";
 }
@@ -57,12 +57,14 @@ import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.EndpointDefinition;
 import org.apache.synapse.endpoints.TemplateEndpoint;
 import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.PriorityMessageConsumer;
 import org.apache.synapse.message.StoreForwardException;
 import org.apache.synapse.message.processor.MessageProcessor;
 import org.apache.synapse.message.processor.MessageProcessorConstants;
 import org.apache.synapse.message.processor.MessageProcessorUtils;
 import org.apache.synapse.message.processor.impl.ScheduledMessageProcessor;
 import org.apache.synapse.message.senders.blocking.BlockingMsgSender;
+import org.apache.synapse.message.store.MessagePriority;
 import org.apache.synapse.message.store.MessageStore;
 import org.apache.synapse.rest.RESTConstants;
 import org.apache.synapse.task.Task;
@@ -79,6 +81,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -151,6 +154,22 @@ public class ForwardingService implements Task, ManagedLifecycle {
 	private int maxDeliverAttempts = 4;
 	private int attemptCount = 0;
 
+	/*
+	 * Whether a failing message is put back in the store instead of being retried while a message
+	 * of higher priority is waiting. The attempt count of each message put back is kept by its
+	 * message id for when it is fetched again, as more messages may give way before it is.
+	 */
+	private boolean isPriorityBypass = false;
+	private boolean yielded = false;
+	private static final int MAX_YIELDED_MESSAGES = 1000;
+	private final Map<String, Integer> yieldedAttemptCounts = new LinkedHashMap<String, Integer>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			// a message removed from the store by other means is never fetched again
+			return size() > MAX_YIELDED_MESSAGES;
+		}
+	};
+
 	/*
 	 * Number of connection attempts to store before shutting down the processor.
 	 * -1 value to indicate that retry needs to happen forever.
@@ -200,6 +219,12 @@ public class ForwardingService implements Task, ManagedLifecycle {
      */
     private final Object storeMessageLock = new Object();
 
+	/**
+	 * Worker of a partitioned forwarding service which hands messages over to this service, null
+	 * if this service consumes the store itself
+	 */
+	private ForwardingWorker worker;
+
 	public ForwardingService(MessageProcessor messageProcessor, BlockingMsgSender sender,
 							 SynapseEnvironment synapseEnvironment, long threshouldInterval) {
 		this.messageProcessor = messageProcessor;
@@ -209,6 +234,12 @@ public class ForwardingService implements Task, ManagedLifecycle {
 		this.interval = threshouldInterval;
 	}
 
+	ForwardingService(MessageProcessor messageProcessor, BlockingMsgSender sender,
+					  SynapseEnvironment synapseEnvironment, long thresholdInterval, ForwardingWorker worker) {
+		this(messageProcessor, sender, synapseEnvironment, thresholdInterval);
+		this.worker = worker;
+	}
+
 	public ForwardingService(MessageProcessor messageProcessor, BlockingMsgSender sender,
 							 SynapseEnvironment synapseEnvironment, long thresholdInterval,
 							 boolean isDeactivatedAtStartup) {
@@ -287,6 +318,8 @@ public class ForwardingService implements Task, ManagedLifecycle {
 				if (!this.messageProcessor.isDeactivated() && !this.messageProcessor.isServerShuttingDown()) {
 					messageContext = fetch();
 					if (messageContext != null) {
+						// retrying a message which gave way to a message of higher priority
+						attemptCount = takeYieldedAttemptCount(messageContext);
 
 						Set proSet = messageContext.getPropertyKeySet();
 						if (proSet != null) {
@@ -474,6 +507,11 @@ public class ForwardingService implements Task, ManagedLifecycle {
 			isMaxDeliveryAttemptDropEnabled = true;
 		}
 
+		if (parametersMap.get(ForwardingProcessorConstants.PRIORITY_BYPASS) != null) {
+			isPriorityBypass = Boolean.parseBoolean(
+					parametersMap.get(ForwardingProcessorConstants.PRIORITY_BYPASS).toString());
+		}
+
 		// Setting the interval value.
 		String intervalParameter = (String) parametersMap.get(MessageProcessorConstants.INTERVAL);
 		if (StringUtils.isNotBlank(intervalParameter)) {
@@ -544,6 +582,37 @@ public class ForwardingService implements Task, ManagedLifecycle {
 		return fetchedMessage;
 	}
 
+	/**
+	 * Forwards a message handed over to the worker of a {@link PartitionedForwardingService}. Retries
+	 * and deactivation apply to the partition of the worker instead of the whole processor.
+	 *
+	 * @param messageContext message taken from the store
+	 * @return true if the message was forwarded, dropped or moved to the fail messages store, false
+	 * if it has to go back to the store
+	 */
+	boolean forward(MessageContext messageContext) {
+		if (!initialized) {
+			init(synapseEnvironment);
+		}
+		resetService();
+		isTerminated = false;
+		Set proSet = messageContext.getPropertyKeySet();
+		if (proSet != null) {
+			proSet.remove(ForwardingProcessorConstants.BLOCKING_SENDER_ERROR);
+		}
+		// every attempt works on a copy, so the original envelope is the one to store back
+		SOAPEnvelope originalEnvelope = messageContext.getEnvelope();
+		dispatch(messageContext);
+		if (!isSuccessful) {
+			try {
+				messageContext.setEnvelope(originalEnvelope);
+			} catch (AxisFault e) {
+				log.warn("Could not restore the original envelope of message " + messageContext.getMessageID(), e);
+			}
+		}
+		return isSuccessful;
+	}
+
 	/**
 	 * Sends the message to a given endpoint.
 	 *
@@ -606,7 +675,7 @@ public class ForwardingService implements Task, ManagedLifecycle {
 			}
 			try {
 				// Send message to the client
-				while (!isSuccessful && !isTerminated) {
+				while (!isSuccessful && !isTerminated && !yielded) {
 					tryToDispatchToEndpoint(messageContext, endpoint, originalEnvelop, originalByteArrayInputStream);
 
 					isTerminated = messageProcessor.isDeactivated();
@@ -1067,6 +1136,11 @@ public class ForwardingService implements Task, ManagedLifecycle {
 		if (!isTerminated) {
 			checkAndDeactivateProcessor(msgCtx, originalEnvelop, originalJsonInputStream);
 
+			if (!isSuccessful && !isTerminated
+					&& yieldToWaitingMessage(msgCtx, attemptCount, originalEnvelop, originalJsonInputStream)) {
+				return;
+			}
+
 			if (log.isDebugEnabled()) {
 				log.debug("Failed to send to client retrying after " + retryInterval +
 				          "s with attempt count - " + attemptCount);
@@ -1081,8 +1155,51 @@ public class ForwardingService implements Task, ManagedLifecycle {
 		}
 	}
 
+	/*
+	 * Puts the message back in the store if a message of higher priority is waiting, so that the
+	 * urgent message is not held up by the retries of this one.
+	 */
+	boolean yieldToWaitingMessage(MessageContext msgCtx, int attempts, SOAPEnvelope originalEnvelop,
+								  ByteArrayInputStream originalJsonInputStream) throws AxisFault {
+		if (!isPriorityBypass || !(messageConsumer instanceof PriorityMessageConsumer)) {
+			return false;
+		}
+		PriorityMessageConsumer consumer = (PriorityMessageConsumer) messageConsumer;
+		int priority = MessagePriority.of(msgCtx);
+		int waitingPriority = consumer.getWaitingPriority();
+		if (waitingPriority <= priority) {
+			return false;
+		}
+		// an in memory store keeps the message context itself, it goes back as it was fetched
+		getFreshCopyOfOriginalMessage(msgCtx, originalEnvelop, originalJsonInputStream);
+		if (!consumer.release()) {
+			return false;
+		}
+		yielded = true;
+		yieldedAttemptCounts.put(msgCtx.getMessageID(), attempts);
+		if (log.isDebugEnabled()) {
+			log.debug("Message processor [" + messageProcessor.getName() + "] put back message "
+					+ msgCtx.getMessageID() + " of priority " + priority + " after " + attempts
+					+ " attempts, a message of priority " + waitingPriority + " is waiting");
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the attempt count of a message which was put back for a message of higher priority,
+	 * 0 for a message fetched for the first time.
+	 */
+	int takeYieldedAttemptCount(MessageContext msgCtx) {
+		Integer attempts = yieldedAttemptCounts.remove(msgCtx.getMessageID());
+		return attempts != null ? attempts : 0;
+	}
+
 	private void deactivateMessageProcessor(MessageContext messageContext) {
-		this.messageProcessor.deactivate();
+		if (worker != null) {
+			worker.deactivate();
+		} else {
+			this.messageProcessor.deactivate();
+		}
 		if (null != messageContext) {
 			sendThroughDeactivateSeq(messageContext);
 		}
@@ -1090,6 +1207,7 @@ public class ForwardingService implements Task, ManagedLifecycle {
 
 	private void resetService() {
 		isSuccessful = false;
+		yielded = false;
 		attemptCount = 0;
 	}
 
@@ -1160,6 +1278,11 @@ public class ForwardingService implements Task, ManagedLifecycle {
 	 * @throws StoreForwardException on an issue initializing the consumer if not done
 	 */
 	private void setMessageConsumer() throws StoreForwardException {
+		if (worker != null) {
+			// the partitioned service owns the store consumer and hands messages over to the worker
+			messageConsumer = worker;
+			return;
+		}
 		final String messageStore = messageProcessor.getMessageStoreName();
 		messageConsumer =
 				synapseEnvironment.getSynapseConfiguration()
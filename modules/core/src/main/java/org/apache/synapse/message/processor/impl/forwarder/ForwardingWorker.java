@@ -0,0 +1,299 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.forwarder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker of a {@link PartitionedForwardingService}. Messages of the partitions assigned to the
+ * worker are queued in the order they were taken from the store and forwarded one at a time by a
+ * {@link ForwardingService} of its own, so retries of a message hold back only its partitions.
+ * <p/>
+ * The worker acts as the message consumer of its forwarding service: a message is acknowledged
+ * when it is forwarded, dropped or moved to the fail messages store. Any other message, as well as
+ * every message reaching a deactivated worker, is put back into the message store by the worker
+ * thread, which keeps the order of the messages of a partition. A message which the store does not
+ * take back is kept by the worker, together with the later ones, and the processor is deactivated.
+ */
+class ForwardingWorker implements MessageConsumer, Runnable {
+
+    private static final Log log = LogFactory.getLog(ForwardingWorker.class);
+
+    private static final long POLL_MILLIS = 500;
+
+    private final int index;
+
+    private final PartitionedForwardingService owner;
+
+    private final BlockingQueue<MessageContext> queue;
+
+    /**
+     * Messages the store did not take back, in the order they have to be put back
+     */
+    private final Deque<MessageContext> unstored = new ArrayDeque<>();
+
+    private ForwardingService service;
+
+    private MessageProducer producer;
+
+    private volatile boolean running = true;
+
+    private volatile boolean deactivated = false;
+
+    private MessageContext current;
+
+    private boolean acknowledged;
+
+    private String consumerId;
+
+    private final AtomicLong forwarded = new AtomicLong();
+
+    private final AtomicLong requeued = new AtomicLong();
+
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    private final AtomicLong deactivations = new AtomicLong();
+
+    ForwardingWorker(int index, int queueSize, PartitionedForwardingService owner) {
+        this.index = index;
+        this.owner = owner;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+    }
+
+    void setService(ForwardingService service) {
+        this.service = service;
+    }
+
+    /**
+     * Queue a message for the worker, waiting while the queue is full
+     *
+     * @param message message taken from the store
+     * @param timeout maximum time to wait in milliseconds
+     * @return false if the queue stayed full
+     */
+    boolean offer(MessageContext message, long timeout) throws InterruptedException {
+        return queue.offer(message, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            MessageContext message;
+            try {
+                message = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            storeUnstored();
+            if (message != null) {
+                process(message);
+            }
+        }
+        MessageContext message;
+        while ((message = queue.poll()) != null) {
+            // a claimed message is still in the store
+            if (!owner.release(message)) {
+                requeue(message);
+            }
+        }
+        for (MessageContext lost : unstored) {
+            log.error("Worker " + getId() + " stopped before message " + lost.getMessageID()
+                    + " could be put back to the message store");
+        }
+        unstored.clear();
+    }
+
+    void process(MessageContext message) {
+        if (deactivated || owner.isProcessorStopped() || !unstored.isEmpty()) {
+            requeue(message);
+            return;
+        }
+        current = message;
+        acknowledged = false;
+        long start = System.nanoTime();
+        try {
+            service.forward(message);
+        } catch (Throwable e) {
+            log.error("Worker " + getId() + " failed to forward message " + message.getMessageID(), e);
+        } finally {
+            busyNanos.addAndGet(System.nanoTime() - start);
+            current = null;
+        }
+        if (acknowledged) {
+            forwarded.incrementAndGet();
+        } else {
+            requeue(message);
+        }
+    }
+
+    /**
+     * Put a message back to the end of the message store. If the store does not take it, a claimed
+     * message is left where it is in the store, any other message is kept until the store takes it.
+     */
+    private void requeue(MessageContext message) {
+        if (!unstored.isEmpty()) {
+            // keep the order of the messages waiting to be put back
+            unstored.add(message);
+            return;
+        }
+        if (store(message)) {
+            if (!owner.acknowledge(message)) {
+                log.warn("Worker " + getId() + " could not acknowledge message " + message.getMessageID()
+                        + " after putting it back, it will be delivered twice");
+            }
+            return;
+        }
+        log.error("Worker " + getId() + " could not put message " + message.getMessageID()
+                + " back to the message store");
+        if (!owner.release(message)) {
+            unstored.add(message);
+        }
+        owner.onRequeueFailed(this);
+    }
+
+    /**
+     * Put back the messages the store did not take before, as long as it takes them
+     */
+    void storeUnstored() {
+        MessageContext message;
+        while ((message = unstored.peek()) != null) {
+            if (!store(message)) {
+                return;
+            }
+            unstored.poll();
+        }
+    }
+
+    private boolean store(MessageContext message) {
+        if (producer == null) {
+            producer = owner.createProducer();
+        }
+        if (producer != null && producer.storeMessage(message)) {
+            requeued.incrementAndGet();
+            if (deactivated) {
+                owner.markRequeued(message);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop forwarding the partitions of the worker, called when a message of them could not be
+     * delivered within the maximum delivery attempts
+     */
+    void deactivate() {
+        if (!deactivated) {
+            deactivated = true;
+            deactivations.incrementAndGet();
+            owner.onWorkerDeactivated(this);
+        }
+    }
+
+    void activate() {
+        deactivated = false;
+    }
+
+    boolean isDeactivated() {
+        return deactivated;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    long getForwarded() {
+        return forwarded.get();
+    }
+
+    long getRequeued() {
+        return requeued.get();
+    }
+
+    /**
+     * @return state and counters of the worker in a single line
+     */
+    String getStatistics() {
+        long busy = busyNanos.get();
+        long count = forwarded.get();
+        return String.format(Locale.ENGLISH,
+                "%s : state=%s, queued=%d, forwarded=%d, requeued=%d, deactivations=%d, busyMillis=%d, "
+                        + "messagesPerSecond=%.1f", getId(), deactivated ? "deactivated" : "active", queue.size(),
+                count, requeued.get(), deactivations.get(), TimeUnit.NANOSECONDS.toMillis(busy),
+                busy == 0 ? 0.0 : count * 1e9 / busy);
+    }
+
+    @Override
+    public MessageContext receive() {
+        return current;
+    }
+
+    @Override
+    public boolean ack() {
+        acknowledged = current != null && owner.acknowledge(current);
+        return acknowledged;
+    }
+
+    @Override
+    public boolean cleanup() {
+        return true;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return running;
+    }
+
+    @Override
+    public void setAlive(boolean isAlive) {
+        // the worker is stopped only with its partitioned service
+    }
+
+    @Override
+    public void setId(int id) {
+        consumerId = "[" + owner.getName() + "-W-" + id + "]";
+    }
+
+    @Override
+    public String getId() {
+        return consumerId == null ? "[worker-" + index + "]" : consumerId;
+    }
+
+    @Override
+    public boolean reInitialize() {
+        return false;
+    }
+}
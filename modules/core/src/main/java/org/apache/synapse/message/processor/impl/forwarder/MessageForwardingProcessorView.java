@@ -72,4 +72,9 @@ public class MessageForwardingProcessorView implements MessageForwardingProcesso
         assert processor != null;
         return processor.isTaskLocationKnown();
     }
+
+    public String[] getWorkerStatistics() {
+        assert processor != null;
+        return processor.getWorkerStatistics();
+    }
 }
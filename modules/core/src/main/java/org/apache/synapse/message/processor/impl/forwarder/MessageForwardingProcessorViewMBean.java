@@ -92,4 +92,10 @@ public interface MessageForwardingProcessorViewMBean {
      * @return true if the task location linked to this Message Processor is known
      */
     public boolean isTaskLocationKnown();
+
+    /**
+     * Get the statistics of the workers when the processor forwards with several workers
+     * @return one line with the state and counters of each worker
+     */
+    public String[] getWorkerStatistics();
 }
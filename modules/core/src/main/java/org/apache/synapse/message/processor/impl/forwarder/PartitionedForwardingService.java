@@ -0,0 +1,546 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.forwarder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.xml.SynapsePath;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.message.ClaimingMessageConsumer;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+import org.apache.synapse.message.processor.MessageProcessorConstants;
+import org.apache.synapse.message.processor.MessageProcessorUtils;
+import org.apache.synapse.message.processor.impl.ScheduledMessageProcessor;
+import org.apache.synapse.message.senders.blocking.BlockingMsgSender;
+import org.apache.synapse.message.store.MessageStore;
+import org.apache.synapse.task.Task;
+import org.apache.synapse.util.concurrent.SynapseThreadFactory;
+import org.apache.synapse.util.xpath.SynapseJsonPath;
+import org.apache.synapse.util.xpath.SynapseXPath;
+import org.jaxen.JaxenException;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwarding task which delivers messages of a store with several workers at once. Each message is
+ * assigned to a partition by evaluating the partition key expression over it, and all messages of
+ * a partition go to the same worker, so the order of delivery is kept within a partition instead
+ * of across the whole store. Messages without a partition key are spread over the workers.
+ * <p/>
+ * The task takes messages from the store and hands them over to the workers. When the store can
+ * claim several messages at a time (see {@link ClaimingMessageConsumer}), a message is acknowledged
+ * to the store only once its worker has delivered it, so the messages held by the workers are not
+ * lost if the server stops. Other stores can only acknowledge the last message received, so a
+ * message is acknowledged to them once a worker has accepted it. Retries, dropping and the fail
+ * messages store apply per worker as they would for a {@link ForwardingService}. When a message
+ * exhausts its delivery attempts the worker is deactivated instead of the processor: the message
+ * and later messages of its partitions go back to the store, while the other workers keep going.
+ * The processor is deactivated once every worker is. Re-activating the processor re-activates the
+ * workers.
+ * <p/>
+ * A message whose worker has a full queue, e.g. as its partition is being retried, is parked by
+ * the task, which goes on handing the messages of the other partitions over. Up to queue size
+ * messages are parked per worker, the task only waits for a worker once that many are parked for
+ * it. At most twice concurrency times queue size messages are held in memory by the task and the
+ * workers. They are put back to the store when the processor is deactivated or undeployed. If a
+ * message can not be put back, the processor is deactivated and the worker keeps the message until
+ * the store takes it.
+ */
+public class PartitionedForwardingService implements Task, ManagedLifecycle {
+
+    private static final Log log = LogFactory.getLog(PartitionedForwardingService.class);
+
+    private static final long OFFER_MILLIS = 200;
+
+    private static final int DEFAULT_WORKER_QUEUE_SIZE = 10;
+
+    /** Time the workers are given to put their queued messages back when the service is destroyed */
+    private static final long STOP_MILLIS = 5000;
+
+    private final ScheduledMessageProcessor messageProcessor;
+
+    private final BlockingMsgSender sender;
+
+    private final SynapseEnvironment synapseEnvironment;
+
+    private final long interval;
+
+    private final int concurrency;
+
+    private ForwardingWorker[] workers;
+
+    /**
+     * Messages taken for each worker while its queue was full, in the order they were taken
+     */
+    private List<Deque<MessageContext>> parked;
+
+    private int parkedLimit;
+
+    private ExecutorService workerPool;
+
+    private SynapsePath partitionKey;
+
+    private MessageConsumer messageConsumer;
+
+    /**
+     * The message consumer if it can claim messages, null otherwise
+     */
+    private volatile ClaimingMessageConsumer claimingConsumer;
+
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    /**
+     * Ids of the messages deactivated workers have put back to the store, used to notice that the
+     * store has been gone through once
+     */
+    private final Set<String> requeuedIds = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isTerminated = false;
+
+    private boolean initialized = false;
+
+    /**
+     * Specifies whether the service should be started as deactivated or not
+     */
+    private boolean isDeactivatedAtStartup;
+
+    public PartitionedForwardingService(ScheduledMessageProcessor messageProcessor, BlockingMsgSender sender,
+                                        SynapseEnvironment synapseEnvironment, long interval, int concurrency,
+                                        boolean isDeactivatedAtStartup) {
+        this.messageProcessor = messageProcessor;
+        this.sender = sender;
+        this.synapseEnvironment = synapseEnvironment;
+        this.interval = interval;
+        this.concurrency = concurrency;
+        this.isDeactivatedAtStartup = isDeactivatedAtStartup;
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        Map<String, Object> parameters = messageProcessor.getParameters();
+        Object expression = parameters.get(ForwardingProcessorConstants.PARTITION_KEY);
+        if (expression != null && !expression.toString().trim().isEmpty()) {
+            partitionKey = createPartitionKey(expression.toString().trim());
+        }
+        int queueSize = DEFAULT_WORKER_QUEUE_SIZE;
+        Object queueSizeParameter = parameters.get(ForwardingProcessorConstants.WORKER_QUEUE_SIZE);
+        if (queueSizeParameter != null) {
+            try {
+                queueSize = Math.max(1, Integer.parseInt(queueSizeParameter.toString().trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + ForwardingProcessorConstants.WORKER_QUEUE_SIZE + " : " + queueSizeParameter
+                        + " of message processor [" + messageProcessor.getName() + "], using " + queueSize);
+            }
+        }
+
+        String threadName = "MessageProcessor-" + messageProcessor.getName() + "-worker";
+        workerPool = Executors.newFixedThreadPool(concurrency,
+                new SynapseThreadFactory(new ThreadGroup(threadName), threadName));
+        ForwardingWorker[] created = new ForwardingWorker[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            ForwardingWorker worker = new ForwardingWorker(i, queueSize, this);
+            worker.setId(i);
+            ForwardingService service = new ForwardingService(messageProcessor, sender, synapseEnvironment,
+                    interval, worker);
+            service.init(se);
+            worker.setService(service);
+            created[i] = worker;
+        }
+        setWorkers(created, queueSize);
+        for (ForwardingWorker worker : created) {
+            workerPool.execute(worker);
+        }
+        initialized = true;
+        log.info("Message processor [" + messageProcessor.getName() + "] forwards with " + concurrency
+                + " workers" + (partitionKey != null ? " partitioned by " + expression : ""));
+    }
+
+    /**
+     * Set the workers messages are handed over to
+     *
+     * @param workers     the workers
+     * @param parkedLimit number of messages parked at most for a worker whose queue is full
+     */
+    void setWorkers(ForwardingWorker[] workers, int parkedLimit) {
+        List<Deque<MessageContext>> parkedPerWorker = new ArrayList<Deque<MessageContext>>(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            parkedPerWorker.add(new ConcurrentLinkedDeque<MessageContext>());
+        }
+        this.parked = parkedPerWorker;
+        this.parkedLimit = parkedLimit;
+        this.workers = workers;
+    }
+
+    /**
+     * Parse a partition key expression, which is an XPath or a json-eval() JSON path
+     *
+     * @param expression partition key expression
+     * @return path to evaluate over the messages
+     */
+    static SynapsePath createPartitionKey(String expression) {
+        try {
+            if (expression.startsWith("json-eval(") && expression.endsWith(")")) {
+                return new SynapseJsonPath(expression.substring("json-eval(".length(), expression.length() - 1));
+            }
+            return new SynapseXPath(expression);
+        } catch (JaxenException e) {
+            throw new SynapseException("Invalid partition key expression : " + expression, e);
+        }
+    }
+
+    /**
+     * Worker of a partition key, the same key is always assigned to the same worker
+     *
+     * @param key     partition key of a message
+     * @param workers number of workers
+     * @return index of the worker
+     */
+    static int workerOf(String key, int workers) {
+        return Math.floorMod(key.hashCode(), workers);
+    }
+
+    @Override
+    public void execute() {
+        if (isDeactivatedAtStartup) {
+            // wait until the task is paused by the processor, as the forwarding service does
+            try {
+                TimeUnit.MILLISECONDS.sleep(MessageProcessorConstants.INITIAL_EXECUTION_DELAY);
+            } catch (InterruptedException e) {
+                log.warn("Initial delay interrupted when the message processor [" + messageProcessor.getName()
+                        + "] started as inactive", e);
+            }
+            isDeactivatedAtStartup = false;
+        }
+        if (!initialized) {
+            try {
+                init(synapseEnvironment);
+            } catch (SynapseException e) {
+                log.fatal("Deactivating the message processor [" + messageProcessor.getName()
+                        + "] due to initialization issue", e);
+                messageProcessor.deactivate();
+                return;
+            }
+        }
+        if (isProcessorStopped() || isTerminated) {
+            if (!isTerminated) {
+                handOverParked(true);
+            }
+            return;
+        }
+        if (messageConsumer == null || !messageConsumer.isAlive()) {
+            MessageStore store = synapseEnvironment.getSynapseConfiguration()
+                    .getMessageStore(messageProcessor.getMessageStoreName());
+            messageConsumer = store.getConsumer();
+            messageProcessor.setMessageConsumer(messageConsumer);
+            claimingConsumer = messageConsumer instanceof ClaimingMessageConsumer
+                    ? (ClaimingMessageConsumer) messageConsumer : null;
+        }
+
+        try {
+            dispatch();
+        } finally {
+            if (isProcessorStopped() && !isTerminated) {
+                // the workers put the messages back to the store, after the ones they hold
+                handOverParked(true);
+            }
+        }
+    }
+
+    private void dispatch() {
+        // hand messages over while there are any, giving control back to the scheduler after a
+        // second as the forwarding service does
+        long startTime = System.currentTimeMillis();
+        while (!isTerminated && !isProcessorStopped()
+                && System.currentTimeMillis() - startTime < MessageProcessorConstants.THRESHOULD_INTERVAL) {
+            handOverParked(false);
+            ClaimingMessageConsumer claiming = claimingConsumer;
+            MessageContext message;
+            try {
+                message = claiming != null ? claiming.claim() : messageConsumer.receive();
+            } catch (SynapseException e) {
+                log.error("Message processor [" + messageProcessor.getName() + "] failed to receive a message", e);
+                return;
+            }
+            if (message == null) {
+                return;
+            }
+            MessageProcessorUtils.removeStatisticsReportingEventHolder(message);
+            boolean seenBefore = message.getMessageID() != null && requeuedIds.contains(message.getMessageID());
+            if (!handOver(message, workerIndexOf(message))) {
+                // not acknowledged, the message stays in the store
+                if (claiming != null) {
+                    claiming.release(message);
+                }
+                return;
+            }
+            if (claiming == null) {
+                // the store can not hold the message for the worker
+                messageConsumer.ack();
+            }
+            if (seenBefore) {
+                // only messages of deactivated workers are left to go through
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand a message over to a worker, or park it if the worker is busy. Only once as many messages
+     * are parked for the worker as it can queue, this waits for the worker.
+     *
+     * @param message message taken from the store
+     * @param index   index of the worker of the message
+     * @return false if the message was not accepted as the processor stopped
+     */
+    boolean handOver(MessageContext message, int index) {
+        ForwardingWorker worker = workers[index];
+        Deque<MessageContext> waiting = parked.get(index);
+        try {
+            // parked messages of the partitions of the worker go first
+            if (waiting.isEmpty() && worker.offer(message, 0)) {
+                return true;
+            }
+            while (waiting.size() >= parkedLimit) {
+                if (isTerminated || isProcessorStopped()) {
+                    return false;
+                }
+                if (worker.offer(waiting.peek(), OFFER_MILLIS)) {
+                    waiting.poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        waiting.add(message);
+        return true;
+    }
+
+    /**
+     * Hand the parked messages over to their workers, in the order they were taken
+     *
+     * @param wait whether to wait for the workers until every parked message is accepted
+     */
+    void handOverParked(boolean wait) {
+        for (int i = 0; i < workers.length; i++) {
+            Deque<MessageContext> waiting = parked.get(i);
+            try {
+                MessageContext message;
+                while ((message = waiting.peek()) != null && !isTerminated) {
+                    if (workers[i].offer(message, wait ? OFFER_MILLIS : 0)) {
+                        waiting.poll();
+                    } else if (!wait) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of messages parked for busy workers
+     */
+    int getParkedCount() {
+        int count = 0;
+        if (parked != null) {
+            for (Deque<MessageContext> waiting : parked) {
+                count += waiting.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Put the parked messages back to the store once the workers have put back theirs, which were
+     * taken before
+     */
+    private void returnParked() {
+        if (parked == null) {
+            return;
+        }
+        MessageProducer producer = null;
+        for (Deque<MessageContext> waiting : parked) {
+            MessageContext message;
+            while ((message = waiting.poll()) != null) {
+                // a claimed message is still in the store
+                if (release(message)) {
+                    continue;
+                }
+                if (producer == null) {
+                    producer = createProducer();
+                }
+                if (producer == null || !producer.storeMessage(message)) {
+                    log.error("Message processor [" + messageProcessor.getName() + "] could not put message "
+                            + message.getMessageID() + " back to the message store");
+                } else if (!acknowledge(message)) {
+                    log.warn("Message processor [" + messageProcessor.getName() + "] could not acknowledge "
+                            + "message " + message.getMessageID() + " after putting it back, it will be "
+                            + "delivered twice");
+                }
+            }
+        }
+    }
+
+    private int workerIndexOf(MessageContext message) {
+        String key = null;
+        if (partitionKey != null) {
+            try {
+                key = partitionKey.stringValueOf(message);
+            } catch (Exception e) {
+                log.warn("Could not evaluate the partition key of message " + message.getMessageID(), e);
+            }
+        }
+        if (key == null || key.isEmpty()) {
+            return Math.floorMod(roundRobin.getAndIncrement(), workers.length);
+        }
+        return workerOf(key, workers.length);
+    }
+
+    boolean isProcessorStopped() {
+        return messageProcessor.isDeactivated() || messageProcessor.isServerShuttingDown();
+    }
+
+    String getName() {
+        return messageProcessor.getName();
+    }
+
+    MessageProducer createProducer() {
+        MessageStore store = synapseEnvironment.getSynapseConfiguration()
+                .getMessageStore(messageProcessor.getMessageStoreName());
+        return store != null ? store.getProducer() : null;
+    }
+
+    /**
+     * Acknowledge a message delivered by a worker to the store, if it was claimed from the store
+     *
+     * @param message message handed over to a worker
+     * @return false if the claimed message could not be acknowledged
+     */
+    boolean acknowledge(MessageContext message) {
+        ClaimingMessageConsumer claiming = claimingConsumer;
+        return claiming == null || claiming.ack(message);
+    }
+
+    /**
+     * Leave a message in the store, if it was claimed from the store
+     *
+     * @param message message handed over to a worker
+     * @return false if the message was not claimed, it is not in the store anymore
+     */
+    boolean release(MessageContext message) {
+        ClaimingMessageConsumer claiming = claimingConsumer;
+        return claiming != null && claiming.release(message);
+    }
+
+    void markRequeued(MessageContext message) {
+        if (message.getMessageID() != null) {
+            requeuedIds.add(message.getMessageID());
+        }
+    }
+
+    void onWorkerDeactivated(ForwardingWorker worker) {
+        log.warn("Message processor [" + messageProcessor.getName() + "] deactivated worker " + worker.getId()
+                + ", messages of its partitions go back to the store until the processor is re-activated");
+        for (ForwardingWorker other : workers) {
+            if (!other.isDeactivated()) {
+                return;
+            }
+        }
+        log.warn("Deactivating message processor [" + messageProcessor.getName() + "] as all workers are deactivated");
+        messageProcessor.deactivate();
+    }
+
+    void onRequeueFailed(ForwardingWorker worker) {
+        if (!messageProcessor.isDeactivated()) {
+            log.error("Deactivating message processor [" + messageProcessor.getName() + "] as worker "
+                    + worker.getId() + " could not put messages back to the message store");
+            messageProcessor.deactivate();
+        }
+    }
+
+    /**
+     * @return statistics of each worker, one line per worker
+     */
+    public String[] getWorkerStatistics() {
+        ForwardingWorker[] current = workers;
+        if (current == null) {
+            return new String[0];
+        }
+        String[] statistics = new String[current.length];
+        for (int i = 0; i < current.length; i++) {
+            statistics[i] = current[i].getStatistics();
+        }
+        return statistics;
+    }
+
+    public boolean terminate() {
+        isTerminated = true;
+        return true;
+    }
+
+    /**
+     * Re-open the task after the processor is resumed, deactivated workers are activated again
+     */
+    public void resetTerminated() {
+        isTerminated = false;
+        requeuedIds.clear();
+        if (workers != null) {
+            for (ForwardingWorker worker : workers) {
+                worker.activate();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        terminate();
+        if (workers != null) {
+            for (ForwardingWorker worker : workers) {
+                worker.stop();
+            }
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(STOP_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        returnParked();
+    }
+}
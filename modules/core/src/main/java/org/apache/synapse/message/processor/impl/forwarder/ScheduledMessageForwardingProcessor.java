@@ -23,6 +23,11 @@ import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.message.processor.impl.ScheduledMessageProcessor;
 import org.apache.synapse.task.Task;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Redelivery processor is the Message processor which implements the Dead letter channel EIP
  * It will Time to time Redeliver the Messages to a given target.
@@ -30,6 +35,12 @@ import org.apache.synapse.task.Task;
 public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcessor {
     private MessageForwardingProcessorView view;
 
+    /**
+     * Tasks forwarding with several workers, when a concurrency is configured
+     */
+    private final List<PartitionedForwardingService> partitionedServices =
+            new CopyOnWriteArrayList<PartitionedForwardingService>();
+
 	@Override
 	public void init(SynapseEnvironment se) {
 		parameters.put(ForwardingProcessorConstants.THROTTLE,
@@ -72,8 +83,61 @@ public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcess
         return view;
     }
     
+	@Override
+	public boolean start() {
+		// tasks are created again, stop the workers of the previous ones
+		for (PartitionedForwardingService service : partitionedServices) {
+			service.destroy();
+		}
+		partitionedServices.clear();
+		return super.start();
+	}
+
+	@Override
+	public void destroy(boolean preserveState, boolean isArtifactUpdate) {
+		for (PartitionedForwardingService service : partitionedServices) {
+			service.destroy();
+		}
+		partitionedServices.clear();
+		super.destroy(preserveState, isArtifactUpdate);
+	}
+
+	/**
+	 * @return number of workers forwarding messages at once
+	 */
+	public int getConcurrency() {
+		Object concurrency = parameters.get(ForwardingProcessorConstants.CONCURRENCY);
+		if (concurrency == null) {
+			return 1;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(concurrency.toString().trim()));
+		} catch (NumberFormatException e) {
+			throw new SynapseException("Invalid " + ForwardingProcessorConstants.CONCURRENCY + " : " + concurrency, e);
+		}
+	}
+
+	/**
+	 * @return statistics of every worker of the processor, empty if messages are forwarded one by one
+	 */
+	public String[] getWorkerStatistics() {
+		List<String> statistics = new ArrayList<String>();
+		for (PartitionedForwardingService service : partitionedServices) {
+			Collections.addAll(statistics, service.getWorkerStatistics());
+		}
+		return statistics.toArray(new String[statistics.size()]);
+	}
+
 	@Override
 	protected Task getTask() {
+		int concurrency = getConcurrency();
+		if (concurrency > 1) {
+			PartitionedForwardingService service =
+					new PartitionedForwardingService(this, sender, synapseEnvironment, interval, concurrency,
+							isProcessorStartAsDeactivated());
+			partitionedServices.add(service);
+			return service;
+		}
 		return new ForwardingService(this, sender, synapseEnvironment, interval, isProcessorStartAsDeactivated());
 	}
 }
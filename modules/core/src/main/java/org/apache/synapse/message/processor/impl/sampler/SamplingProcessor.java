@@ -20,9 +20,13 @@ package org.apache.synapse.message.processor.impl.sampler;
 
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.message.processor.MessageProcessorConstants;
 import org.apache.synapse.message.processor.impl.ScheduledMessageProcessor;
 import org.apache.synapse.task.Task;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Implements the functionality of the Sampling message processor which injects
  * a message to a given sequence.
@@ -33,10 +37,30 @@ public class SamplingProcessor extends ScheduledMessageProcessor {
     private static final String CONCURRENCY = "concurrency";
     private static final String SEQUENCE = "sequence";
 
+    /**
+     * Messages per second to inject. When set, the processor is paced by a token bucket which holds
+     * up to <code>concurrency</code> messages, instead of injecting <code>concurrency</code> messages
+     * on each interval. The rate is for the processor as a whole, each of its
+     * <code>member.count</code> tasks injects an equal share of it.
+     */
+    public static final String RATE = "rate";
+
+    /**
+     * Maximum number of injected messages which are still being mediated, when paced by a rate.
+     * Defaults to the number of messages injected in a second. Divided across the tasks as the rate.
+     */
+    public static final String MAX_IN_FLIGHT = "max.in.flight";
+
     private SamplingProcessorView view;
 
+    private final List<SamplingService> samplingServices = new CopyOnWriteArrayList<SamplingService>();
+
     @Override
     public void init(SynapseEnvironment se) {
+        if (getTargetRate() > 0) {
+            // pacing is done by the sampling service, the task is only fired as often as allowed
+            interval = MessageProcessorConstants.THRESHOULD_INTERVAL;
+        }
         super.init(se);
 
         try {
@@ -59,8 +83,62 @@ public class SamplingProcessor extends ScheduledMessageProcessor {
 		return view;
 	}
     
+	@Override
+	public boolean start() {
+		samplingServices.clear();
+		return super.start();
+	}
+
+	@Override
+	public void destroy(boolean preserveState, boolean isArtifactUpdate) {
+		super.destroy(preserveState, isArtifactUpdate);
+		// the services are destroyed with their tasks, do not keep reporting their rates
+		samplingServices.clear();
+	}
+
+	/**
+	 * @return messages per second the processor is paced to, zero if it is not paced by a rate
+	 */
+	public double getTargetRate() {
+		Object rate = parameters != null ? parameters.get(RATE) : null;
+		if (rate != null) {
+			try {
+				return Double.parseDouble(rate.toString());
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return messages per second injected by the tasks of this processor over the last
+	 * measurement window
+	 */
+	public double getAchievedRate() {
+		double achievedRate = 0;
+		for (SamplingService service : samplingServices) {
+			achievedRate += service.getAchievedRate();
+		}
+		return achievedRate;
+	}
+
+	/**
+	 * @return number of injected messages which are still being mediated
+	 */
+	public int getInFlightCount() {
+		int inFlight = 0;
+		for (SamplingService service : samplingServices) {
+			inFlight += service.getInFlightCount();
+		}
+		return inFlight;
+	}
+
 	@Override
 	protected Task getTask() {
-		return new SamplingService(this, synapseEnvironment, CONCURRENCY, SEQUENCE, isProcessorStartAsDeactivated());
+		SamplingService service = new SamplingService(this, synapseEnvironment, CONCURRENCY, SEQUENCE,
+				isProcessorStartAsDeactivated());
+		samplingServices.add(service);
+		return service;
 	}
 }
@@ -43,4 +43,19 @@ public class SamplingProcessorView implements SamplingProcessorViewMBean {
         assert processor != null;
         return processor.isTaskLocationKnown();
     }
+
+    public double getTargetRate() {
+        assert processor != null;
+        return processor.getTargetRate();
+    }
+
+    public double getAchievedRate() {
+        assert processor != null;
+        return processor.getAchievedRate();
+    }
+
+    public int getInFlightCount() {
+        assert processor != null;
+        return processor.getInFlightCount();
+    }
 }
@@ -43,4 +43,22 @@ public interface SamplingProcessorViewMBean {
      * @return true if the task location linked to this Message Processor is known
      */
     public boolean isTaskLocationKnown();
+
+    /**
+     * Get the rate the Sampling processor is paced to
+     * @return messages per second, zero if the processor is not paced by a rate
+     */
+    public double getTargetRate();
+
+    /**
+     * Get the rate at which the Sampling processor injected messages recently
+     * @return messages per second
+     */
+    public double getAchievedRate();
+
+    /**
+     * Get the number of injected messages which are still being mediated
+     * @return number of in flight messages
+     */
+    public int getInFlightCount();
 }
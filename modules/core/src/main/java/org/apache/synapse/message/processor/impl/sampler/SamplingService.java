@@ -23,7 +23,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
@@ -59,6 +62,14 @@ import org.apache.synapse.task.Task;
 public class SamplingService implements Task, ManagedLifecycle {
     private static Log log = LogFactory.getLog(SamplingService.class);
 
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	// Time over which the achieved injection rate is measured
+	private static final long RATE_MEASUREMENT_WINDOW = 5 * NANOS_PER_SECOND;
+
+	// Minimum time to wait before polling the store again once it is found empty
+	private static final long EMPTY_STORE_BACKOFF = 100 * 1000000L;
+
 	// The consumer that is associated with the particular message store
 	private MessageConsumer messageConsumer;
 
@@ -94,6 +105,28 @@ public class SamplingService implements Task, ManagedLifecycle {
      */
     private boolean isDeactivatedAtStartup = false;
 
+	/*
+	 * Messages per second this task injects. When set, messages are paced by a token bucket instead
+	 * of being fetched concurrency at a time on each scheduled execution. The rate of the processor
+	 * is divided across its member.count tasks, which may run on different members of a cluster.
+	 */
+	private double rate = 0;
+
+	// Paces the injection when a rate is configured
+	private TokenBucket tokenBucket;
+
+	// Limits the number of injected messages which are still being mediated when a rate is configured
+	private Semaphore inFlight;
+
+	private int maxInFlight = 0;
+
+	// Number of messages injected since the start of the current measurement window
+	private long injectedInWindow = 0;
+
+	private long windowStart;
+
+	private volatile double achievedRate = 0;
+
 	public SamplingService(MessageProcessor messageProcessor,
 	                       SynapseEnvironment synapseEnvironment, String concurrencyPropName,
 	                       String sequencePropName) {
@@ -171,7 +204,10 @@ public class SamplingService implements Task, ManagedLifecycle {
 				}
 			}
 
-			if (!this.messageProcessor.isDeactivated()) {
+			boolean isDeactivated = this.messageProcessor.isDeactivated();
+			if (!isDeactivated && tokenBucket != null) {
+				executePaced(isStatisticsEnabled, aspectConfiguration);
+			} else if (!isDeactivated) {
 				for (int i = 0; i < concurrency; i++) {
 
 					final MessageContext messageContext = fetch();
@@ -216,6 +252,97 @@ public class SamplingService implements Task, ManagedLifecycle {
 	}
 
 
+	/**
+	 * Injects messages at the configured rate for one scheduled execution. The execution returns
+	 * once the threshold interval of the scheduler has elapsed, so the task keeps firing, while the
+	 * token bucket carries the pacing over from one execution to the next. Sub-second rates do not
+	 * depend on the interval of the task.
+	 *
+	 * @param isStatisticsEnabled whether statistics are reported for the injected messages
+	 * @param aspectConfiguration aspect configuration of the message processor
+	 */
+	private void executePaced(boolean isStatisticsEnabled, AspectConfiguration aspectConfiguration) {
+		long executionEnd = System.nanoTime() +
+				TimeUnit.MILLISECONDS.toNanos(MessageProcessorConstants.THRESHOULD_INTERVAL);
+
+		while (messageConsumer.isAlive() && !Thread.currentThread().isInterrupted() &&
+		       !this.messageProcessor.isDeactivated()) {
+			long now = System.nanoTime();
+			updateAchievedRate(now);
+			if (now - executionEnd >= 0) {
+				break;
+			}
+
+			long wait = tokenBucket.tryAcquire(now);
+			if (wait > 0) {
+				LockSupport.parkNanos(Math.min(wait, executionEnd - now));
+				continue;
+			}
+
+			try {
+				if (!inFlight.tryAcquire(executionEnd - now, TimeUnit.NANOSECONDS)) {
+					// too many messages are still being mediated, keep the token for the next execution
+					tokenBucket.release();
+					if (log.isDebugEnabled()) {
+						log.debug("Maximum number of in flight messages " + maxInFlight +
+						          " reached for message processor [" + messageProcessor.getName() + "]");
+					}
+					break;
+				}
+			} catch (InterruptedException e) {
+				tokenBucket.release();
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			MessageContext messageContext = null;
+			try {
+				messageContext = fetch();
+			} finally {
+				if (messageContext == null) {
+					inFlight.release();
+					tokenBucket.release();
+				}
+			}
+
+			if (messageContext == null) {
+				if (log.isDebugEnabled()) {
+					log.debug("No messages were received for message processor [" +
+					          messageProcessor.getName() + "]");
+				}
+				long backoff = Math.max(EMPTY_STORE_BACKOFF, (long) (NANOS_PER_SECOND / rate));
+				LockSupport.parkNanos(Math.min(backoff, executionEnd - System.nanoTime()));
+				continue;
+			}
+
+			Integer statisticReportingIndex = null;
+			if (isStatisticsEnabled) {
+				statisticReportingIndex = OpenEventCollector.reportEntryEvent(messageContext,
+						messageProcessor.getName(), aspectConfiguration, ComponentType.MESSAGEPROCESSOR);
+			}
+			try {
+				dispatch(messageContext, statisticReportingIndex, inFlight);
+			} catch (RejectedExecutionException e) {
+				inFlight.release();
+				throw e;
+			}
+			injectedInWindow++;
+		}
+	}
+
+	private void updateAchievedRate(long now) {
+		long elapsed = now - windowStart;
+		if (elapsed >= RATE_MEASUREMENT_WINDOW) {
+			achievedRate = injectedInWindow * (double) NANOS_PER_SECOND / elapsed;
+			injectedInWindow = 0;
+			windowStart = now;
+			if (log.isDebugEnabled()) {
+				log.debug("Message processor [" + messageProcessor.getName() + "] injected " +
+				          achievedRate + " messages per second against the target rate of " + rate);
+			}
+		}
+	}
+
 	public void init(SynapseEnvironment se) {
 		// Setting up the JMS consumer here.
 		setMessageConsumer();
@@ -245,6 +372,38 @@ public class SamplingService implements Task, ManagedLifecycle {
 			}
 		}
 
+		String rateParam = (String) parameterMap.get(SamplingProcessor.RATE);
+		if (rateParam != null) {
+			try {
+				rate = Double.parseDouble(rateParam);
+			} catch (NumberFormatException e) {
+				parameterMap.remove(SamplingProcessor.RATE);
+				log.error("Invalid value for rate, messages are sampled on the processor interval", e);
+			}
+		}
+		String maxInFlightParam = (String) parameterMap.get(SamplingProcessor.MAX_IN_FLIGHT);
+		if (maxInFlightParam != null) {
+			try {
+				maxInFlight = Integer.parseInt(maxInFlightParam);
+			} catch (NumberFormatException e) {
+				parameterMap.remove(SamplingProcessor.MAX_IN_FLIGHT);
+				log.error("Invalid value for maximum in flight messages switching back to default value", e);
+			}
+		}
+		if (rate > 0) {
+			int memberCount = getMemberCount(parameterMap);
+			if (maxInFlight <= 0) {
+				maxInFlight = Math.max(1, (int) Math.ceil(rate));
+			}
+			// each task injects its share, so that the processor as a whole meets the rate
+			rate = rate / memberCount;
+			maxInFlight = Math.max(1, (int) Math.ceil((double) maxInFlight / memberCount));
+			// concurrency is the largest burst of messages injected at once when paced by a rate
+			tokenBucket = new TokenBucket(rate, concurrency, System.nanoTime());
+			inFlight = new Semaphore(maxInFlight);
+			windowStart = System.nanoTime();
+		}
+
 		/*
 		 * Make sure to set the isInitialized flag too TRUE in order to avoid
 		 * re-initialization.
@@ -252,6 +411,19 @@ public class SamplingService implements Task, ManagedLifecycle {
 		initialized = true;
 	}
 
+	private int getMemberCount(Map<String, Object> parameterMap) {
+		Object memberCount = parameterMap.get(MessageProcessorConstants.MEMBER_COUNT);
+		if (memberCount != null) {
+			try {
+				return Math.max(1, Integer.parseInt(memberCount.toString()));
+			} catch (NumberFormatException e) {
+				log.warn("Invalid value " + memberCount + " for " + MessageProcessorConstants.MEMBER_COUNT +
+				         ", pacing message processor [" + messageProcessor.getName() + "] as a single task");
+			}
+		}
+		return 1;
+	}
+
 	/**
 	 * Receives the next message from the message store.
 	 *
@@ -312,6 +484,11 @@ public class SamplingService implements Task, ManagedLifecycle {
 	 *
 	 */
     public void dispatch(final MessageContext messageContext, Integer statisticReportingIndex) {
+		dispatch(messageContext, statisticReportingIndex, null);
+	}
+
+	private void dispatch(final MessageContext messageContext, final Integer statisticReportingIndex,
+	                      final Semaphore permit) {
 
 		setSoapHeaderBlock(messageContext);
 
@@ -337,6 +514,9 @@ public class SamplingService implements Task, ManagedLifecycle {
 						CloseEventCollector.closeEntryEvent(messageContext, messageProcessor.getName(),
 								ComponentType.MESSAGEPROCESSOR, statisticReportingIndex, false);
 					}
+					if (permit != null) {
+						permit.release();
+					}
 				}
             }
         });
@@ -383,6 +563,28 @@ public class SamplingService implements Task, ManagedLifecycle {
 		return initialized;
 	}
 
+	/**
+	 * @return messages per second this task is paced to, its share of the rate of the processor,
+	 * zero if it is not paced by a rate
+	 */
+	public double getTargetRate() {
+		return rate;
+	}
+
+	/**
+	 * @return messages per second injected over the last measurement window
+	 */
+	public double getAchievedRate() {
+		return achievedRate;
+	}
+
+	/**
+	 * @return number of injected messages which are still being mediated, when paced by a rate
+	 */
+	public int getInFlightCount() {
+		return inFlight != null ? maxInFlight - inFlight.availablePermits() : 0;
+	}
+
 	public void destroy() {
 		terminate();
 
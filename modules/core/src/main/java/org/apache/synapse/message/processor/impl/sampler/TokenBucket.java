@@ -0,0 +1,90 @@
+/**
+ *  Copyright (c) 2024, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.sampler;
+
+/**
+ * Token bucket which paces the sampling processor to a given number of messages per second. Tokens
+ * are refilled continuously from the elapsed time, so the rate stays accurate across scheduler ticks
+ * and any shortfall of a slow tick is made up, up to the capacity of the bucket, in the next one.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /** Number of tokens added per nanosecond */
+    private final double refillRate;
+
+    /** Maximum number of tokens, i.e. the largest burst of messages allowed at once */
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param rate     messages per second
+     * @param capacity maximum burst size
+     * @param now      current time in nanoseconds
+     */
+    TokenBucket(double rate, int capacity, long now) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate should be a positive value : " + rate);
+        }
+        this.refillRate = rate / NANOS_PER_SECOND;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = 1;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes a token from the bucket if there is one.
+     *
+     * @param now current time in nanoseconds
+     * @return zero if a token was taken, otherwise the number of nanoseconds until the next token
+     * is available
+     */
+    synchronized long tryAcquire(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / refillRate));
+    }
+
+    /**
+     * Returns a token which was taken but not used, e.g. since the store was empty.
+     */
+    synchronized void release() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    synchronized double getAvailableTokens(long now) {
+        refill(now);
+        return tokens;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * refillRate);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *  Copyright (c) 2024, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import java.util.Map;
+
+/**
+ * Priority of a stored message. The priority is taken from the {@link #PROPERTY} Synapse property and
+ * falls back to the {@code JMS_PRIORITY} transport property. Stores which have {@link #PRIORITY_ENABLED}
+ * set hand out messages of higher priority first.
+ */
+public final class MessagePriority {
+
+    /** Synapse property which holds the priority of the message being stored */
+    public static final String PROPERTY = "MESSAGE_STORE_PRIORITY";
+
+    /** Message store parameter which enables priority aware consumption */
+    public static final String PRIORITY_ENABLED = "store.priority.enabled";
+
+    public static final int LOWEST = 0;
+
+    public static final int HIGHEST = 9;
+
+    /** Priority of messages which do not carry one, same as the JMS default */
+    public static final int DEFAULT = 4;
+
+    private static final String JMS_PRIORITY = "JMS_PRIORITY";
+
+    private MessagePriority() {
+    }
+
+    /**
+     * Returns the priority of the given message, clamped to the range {@link #LOWEST} - {@link #HIGHEST}.
+     * @param synCtx the message
+     * @return the priority of the message or {@link #DEFAULT} if it does not carry a valid one
+     */
+    public static int of(MessageContext synCtx) {
+        Object value = synCtx.getProperty(PROPERTY);
+        if (value == null && synCtx instanceof Axis2MessageContext) {
+            value = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getProperty(JMS_PRIORITY);
+        }
+        return parse(value);
+    }
+
+    /**
+     * @param parameters message store parameters
+     * @return {@code true} if priority aware consumption is enabled for the store
+     */
+    public static boolean isEnabled(Map<String, Object> parameters) {
+        return parameters != null && Boolean.parseBoolean(String.valueOf(parameters.get(PRIORITY_ENABLED)));
+    }
+
+    static int parse(Object value) {
+        int priority = DEFAULT;
+        if (value instanceof Integer) {
+            priority = (Integer) value;
+        } else if (value instanceof String) {
+            try {
+                priority = Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return DEFAULT;
+            }
+        }
+        return Math.max(LOWEST, Math.min(HIGHEST, priority));
+    }
+}
@@ -109,7 +109,7 @@ public interface MessageStore extends ManagedLifecycle, Nameable, SynapseArtifac
      * Returns the type of this message store. <br/>
      * The type of a message store can be one of following types, <br/>
      * {@link Constants#JMS_MS}, {@link Constants#INMEMORY_MS},
-     * or {@link Constants#JDBC_MS}
+     * {@link Constants#JDBC_MS}, {@link Constants#RABBIT_MS} or {@link Constants#FILE_MS}
      *
      * @return Type of the message store.
      */
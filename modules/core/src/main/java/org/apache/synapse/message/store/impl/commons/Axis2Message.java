@@ -19,7 +19,10 @@
 package org.apache.synapse.message.store.impl.commons;
 
 import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 /**
@@ -27,6 +30,10 @@ import java.util.HashMap;
  * , and it will be saved as a message in the Store.
  */
 public class Axis2Message implements Serializable {
+    // the value computed for the class before the envelope bytes were introduced, which keeps
+    // the messages already stored with Java serialization readable
+    private static final long serialVersionUID = 4039974525414318462L;
+
     private String messageID;
 
     private String operationAction;
@@ -61,6 +68,9 @@ public class Axis2Message implements Serializable {
 
     private String soapEnvelope;
 
+    /** The serialized envelope, the string form is only created when it is asked for */
+    private transient byte[] soapEnvelopeBytes;
+
     private byte[] jsonStream;
 
     private int FLOW;
@@ -125,15 +135,31 @@ public class Axis2Message implements Serializable {
     }
 
     public String getSoapEnvelope() {
+        if (soapEnvelope == null && soapEnvelopeBytes != null) {
+            soapEnvelope = new String(soapEnvelopeBytes, StandardCharsets.UTF_8);
+        }
         return soapEnvelope;
     }
 
+    /**
+     * @return the envelope serialized in UTF-8, or null if the envelope has been set as a string
+     */
+    public byte[] getSoapEnvelopeBytes() {
+        return soapEnvelopeBytes;
+    }
+
+    public void setSoapEnvelopeBytes(byte[] soapEnvelopeBytes) {
+        this.soapEnvelopeBytes = soapEnvelopeBytes;
+        this.soapEnvelope = null;
+    }
+
     public void setJsonStream(byte[] jsonStream) { this.jsonStream = jsonStream; }
 
     public byte[] getJsonStream() { return this.jsonStream; }
 
     public void setSoapEnvelope(String soapEnvelope) {
         this.soapEnvelope = soapEnvelope;
+        this.soapEnvelopeBytes = null;
     }
 
     public int getFLOW() {
@@ -223,4 +249,10 @@ public class Axis2Message implements Serializable {
     public void setTransportOutName(String transportOutName) {
         this.transportOutName = transportOutName;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Java serialization only carries the string form of the envelope
+        getSoapEnvelope();
+        out.defaultWriteObject();
+    }
 }
@@ -50,6 +50,7 @@ import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.commons.json.JsonUtil;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.message.store.MessagePriority;
 import org.apache.synapse.rest.RESTConstants;
 import org.apache.synapse.util.UUIDGenerator;
 
@@ -100,7 +101,7 @@ public final class MessageConverter {
         }
         Axis2Message axis2Msg = message.getAxis2message();
         try {
-            SOAPEnvelope envelope = getSoapEnvelope(axis2Msg.getSoapEnvelope());
+            SOAPEnvelope envelope = getSoapEnvelope(axis2Msg);
             axis2Ctx.setEnvelope(envelope);
             // set the RMSMessageDto properties
             axis2Ctx.getOptions().setAction(axis2Msg.getAction());
@@ -253,8 +254,8 @@ public final class MessageConverter {
             axis2msg.setDoingPOX(msgCtx.isDoingREST());
             axis2msg.setDoingMTOM(msgCtx.isDoingMTOM());
             axis2msg.setDoingSWA(msgCtx.isDoingSwA());
-            String soapEnvelope = msgCtx.getEnvelope().toString();
-            axis2msg.setSoapEnvelope(soapEnvelope);
+            // kept as the serialized bytes, the string form is created only if it is asked for
+            axis2msg.setSoapEnvelopeBytes(serializeEnvelope(msgCtx.getEnvelope()));
             axis2msg.setFLOW(msgCtx.getFLOW());
             if (msgCtx.getTransportIn() != null) {
                 axis2msg.setTransportInName(msgCtx.getTransportIn().getName());
@@ -338,6 +339,9 @@ public final class MessageConverter {
                 }
             }
             message.setSynapseMessage(synMsg);
+            if (synCtx.getProperty(MessagePriority.PROPERTY) != null) {
+                message.setPriority(MessagePriority.of(synCtx));
+            }
         } else {
             throw new SynapseException("Cannot store message to store.");
         }
@@ -355,10 +359,25 @@ public final class MessageConverter {
                 RESTConstants.SYNAPSE_RESOURCE.equals(property);
     }
 
-    private static SOAPEnvelope getSoapEnvelope(String soapEnvelpe) {
+    private static byte[] serializeEnvelope(SOAPEnvelope envelope) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            envelope.serialize(bos);
+        } catch (XMLStreamException e) {
+            throw new SynapseException("Cannot serialize the SOAP envelope of the message", e);
+        }
+        return bos.toByteArray();
+    }
+
+    private static SOAPEnvelope getSoapEnvelope(Axis2Message axis2Msg) {
         OMElement response;
         try {
-            response = AXIOMUtil.stringToOM(soapEnvelpe);
+            byte[] envelopeBytes = axis2Msg.getSoapEnvelopeBytes();
+            if (envelopeBytes != null) {
+                response = new StAXOMBuilder(new ByteArrayInputStream(envelopeBytes)).getDocumentElement();
+            } else {
+                response = AXIOMUtil.stringToOM(axis2Msg.getSoapEnvelope());
+            }
         } catch (Exception e) {
             logger.error("Cannot create SOAP Envelop. Error:" + e.getLocalizedMessage(), e);
             return null;
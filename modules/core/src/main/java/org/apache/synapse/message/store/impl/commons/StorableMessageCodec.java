@@ -0,0 +1,667 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.commons;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary codec of the {@link StorableMessage}, used by the message stores instead of Java
+ * serialization. An encoded message starts with a four byte header, the magic bytes {@code SM},
+ * the format version and the compression. It is followed by length prefixed sections for the
+ * message, its Axis2 part and its Synapse part, so that a reader skips the fields appended to a
+ * section by a later version. The SOAP envelope and the JSON payload are stored as raw bytes.
+ * <p/>
+ * {@link #decode(byte[])} also reads the messages stored with Java serialization, hence the store
+ * contents remain readable when the codec is switched.
+ */
+public final class StorableMessageCodec {
+
+    /** Message store parameter selecting the serialization, either binary or java */
+    public static final String SERIALIZATION = "store.message.serialization";
+
+    /** Message store parameter selecting the compression of the binary format, none or deflate */
+    public static final String COMPRESSION = "store.message.compression";
+
+    public enum Compression {
+        NONE, DEFLATE
+    }
+
+    static final byte VERSION = 1;
+
+    private static final byte MAGIC_0 = 'S';
+
+    private static final byte MAGIC_1 = 'M';
+
+    private static final int HEADER_LENGTH = 4;
+
+    /** Upper bound of the deflate compression ratio, a larger inflated length is corrupted */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte CHARACTER = 6;
+    private static final byte MAP = 7;
+    private static final byte BYTES = 8;
+    /** Any other value, which is stored with Java serialization */
+    private static final byte SERIALIZED = 9;
+
+    private static final StorableMessageCodec JAVA = new StorableMessageCodec(false, Compression.NONE);
+
+    private final boolean binary;
+
+    private final Compression compression;
+
+    private StorableMessageCodec(boolean binary, Compression compression) {
+        this.binary = binary;
+        this.compression = compression;
+    }
+
+    /**
+     * @param compression compression of the encoded messages
+     * @return a codec writing the binary format
+     */
+    public static StorableMessageCodec binary(Compression compression) {
+        return new StorableMessageCodec(true, compression);
+    }
+
+    /**
+     * @return a codec writing the messages with Java serialization, as done before the binary
+     * format was introduced
+     */
+    public static StorableMessageCodec java() {
+        return JAVA;
+    }
+
+    /**
+     * Creates the codec configured by the parameters of a message store. The binary format without
+     * compression is used by default.
+     *
+     * @param parameters message store parameters
+     * @return the codec
+     */
+    public static StorableMessageCodec fromParameters(Map<String, Object> parameters) {
+        Object serialization = parameters != null ? parameters.get(SERIALIZATION) : null;
+        if (serialization != null && "java".equalsIgnoreCase(serialization.toString().trim())) {
+            return JAVA;
+        }
+        Object compression = parameters != null ? parameters.get(COMPRESSION) : null;
+        return binary(compression != null && "deflate".equalsIgnoreCase(compression.toString().trim()) ?
+                Compression.DEFLATE : Compression.NONE);
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Encode a message
+     *
+     * @param message the message
+     * @return the encoded message
+     * @throws IOException if a property value cannot be serialized
+     */
+    public byte[] encode(StorableMessage message) throws IOException {
+        if (!binary) {
+            return javaSerialize(message);
+        }
+        Output out = new Output(estimateSize(message));
+        out.writeBytesRaw(new byte[]{MAGIC_0, MAGIC_1, VERSION, (byte) compression.ordinal()});
+
+        int section = out.startSection();
+        out.writeInt(message.getPriority());
+        out.endSection(section);
+
+        writeAxis2Message(out, message.getAxis2message());
+        writeSynapseMessage(out, message.getSynapseMessage());
+
+        if (compression == Compression.DEFLATE) {
+            return deflate(out.buffer, out.size);
+        }
+        return out.buffer.length == out.size ? out.buffer : Arrays.copyOf(out.buffer, out.size);
+    }
+
+    /**
+     * Decode a message written either in the binary format or with Java serialization
+     *
+     * @param data the encoded message
+     * @return the message
+     * @throws IOException an {@link java.io.ObjectStreamException} if the data is not a readable
+     *                     message
+     */
+    public static StorableMessage decode(byte[] data) throws IOException {
+        if (!isBinary(data)) {
+            Object message = javaDeserialize(data, 0, data.length);
+            if (!(message instanceof StorableMessage)) {
+                throw new StreamCorruptedException("Stored object is not a message : " +
+                        (message != null ? message.getClass().getName() : null));
+            }
+            return (StorableMessage) message;
+        }
+        if (data[2] > VERSION) {
+            throw new StreamCorruptedException("Unsupported message format version " + data[2]);
+        }
+        ByteBuffer in;
+        if (data[3] == Compression.DEFLATE.ordinal()) {
+            in = ByteBuffer.wrap(inflate(data));
+        } else if (data[3] == Compression.NONE.ordinal()) {
+            // the fields are read straight from the stored bytes
+            in = ByteBuffer.wrap(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        } else {
+            throw new StreamCorruptedException("Unsupported message compression " + data[3]);
+        }
+
+        try {
+            StorableMessage message = new StorableMessage();
+            int end = sectionEnd(in);
+            message.setPriority(in.getInt());
+            in.position(end);
+
+            message.setAxis2message(readAxis2Message(in));
+            message.setSynapseMessage(readSynapseMessage(in));
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("Truncated message");
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Corrupted message : " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param data stored message
+     * @return true if the message is stored in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    private static void writeAxis2Message(Output out, Axis2Message axis2Message) throws IOException {
+        if (axis2Message == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int section = out.startSection();
+        out.writeString(axis2Message.getMessageID());
+        out.writeString(axis2Message.getOperationAction());
+        QName operationName = axis2Message.getOperationName();
+        out.writeBoolean(operationName != null);
+        if (operationName != null) {
+            out.writeString(operationName.getNamespaceURI());
+            out.writeString(operationName.getLocalPart());
+            out.writeString(operationName.getPrefix());
+        }
+        out.writeString(axis2Message.getAction());
+        out.writeString(axis2Message.getService());
+        out.writeString(axis2Message.getRelatesToMessageId());
+        out.writeString(axis2Message.getReplyToAddress());
+        out.writeString(axis2Message.getFaultToAddress());
+        out.writeString(axis2Message.getFromAddress());
+        out.writeString(axis2Message.getToAddress());
+        out.writeString(axis2Message.getTransportInName());
+        out.writeString(axis2Message.getTransportOutName());
+        out.writeBoolean(axis2Message.isDoingMTOM());
+        out.writeBoolean(axis2Message.isDoingSWA());
+        out.writeBoolean(axis2Message.isDoingPOX());
+        out.writeBoolean(axis2Message.isDoingGET());
+        out.writeInt(axis2Message.getFLOW());
+        byte[] envelope = axis2Message.getSoapEnvelopeBytes();
+        if (envelope == null && axis2Message.getSoapEnvelope() != null) {
+            envelope = axis2Message.getSoapEnvelope().getBytes(StandardCharsets.UTF_8);
+        }
+        out.writeBytes(envelope);
+        out.writeBytes(axis2Message.getJsonStream());
+        writeMap(out, axis2Message.getProperties());
+        out.endSection(section);
+    }
+
+    private static Axis2Message readAxis2Message(ByteBuffer in) throws IOException {
+        int end = sectionEnd(in);
+        if (end < 0) {
+            return null;
+        }
+        Axis2Message axis2Message = new Axis2Message();
+        axis2Message.setMessageID(readString(in));
+        axis2Message.setOperationAction(readString(in));
+        if (readBoolean(in)) {
+            String namespaceURI = readString(in);
+            String localPart = readString(in);
+            String prefix = readString(in);
+            axis2Message.setOperationName(new QName(namespaceURI, localPart, prefix));
+        }
+        axis2Message.setAction(readString(in));
+        axis2Message.setService(readString(in));
+        axis2Message.setRelatesToMessageId(readString(in));
+        axis2Message.setReplyToAddress(readString(in));
+        axis2Message.setFaultToAddress(readString(in));
+        axis2Message.setFromAddress(readString(in));
+        axis2Message.setToAddress(readString(in));
+        axis2Message.setTransportInName(readString(in));
+        axis2Message.setTransportOutName(readString(in));
+        axis2Message.setDoingMTOM(readBoolean(in));
+        axis2Message.setDoingSWA(readBoolean(in));
+        axis2Message.setDoingPOX(readBoolean(in));
+        axis2Message.setDoingGET(readBoolean(in));
+        axis2Message.setFLOW(in.getInt());
+        axis2Message.setSoapEnvelopeBytes(readBytes(in));
+        axis2Message.setJsonStream(readBytes(in));
+        int size = readCount(in, 5);
+        for (int i = 0; i < size; i++) {
+            axis2Message.addProperty(readString(in), readValue(in));
+        }
+        in.position(end);
+        return axis2Message;
+    }
+
+    private static void writeSynapseMessage(Output out, SynapseMessage synapseMessage) throws IOException {
+        if (synapseMessage == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int section = out.startSection();
+        out.writeBoolean(synapseMessage.isResponse());
+        out.writeBoolean(synapseMessage.isFaultResponse());
+        out.writeInt(synapseMessage.getTracingState());
+        out.writeInt(synapseMessage.getMessageFlowTracingState());
+        List<String> localEntries = synapseMessage.getLocalEntries();
+        out.writeInt(localEntries.size());
+        for (String localEntry : localEntries) {
+            out.writeString(localEntry);
+        }
+        out.writeInt(synapseMessage.getProperties().size());
+        for (Map.Entry<String, String> property : synapseMessage.getProperties().entrySet()) {
+            out.writeString(property.getKey());
+            out.writeString(property.getValue());
+        }
+        out.writeInt(synapseMessage.getPropertyObjects().size());
+        for (Map.Entry<String, byte[]> property : synapseMessage.getPropertyObjects().entrySet()) {
+            out.writeString(property.getKey());
+            out.writeBytes(property.getValue());
+        }
+        out.endSection(section);
+    }
+
+    private static SynapseMessage readSynapseMessage(ByteBuffer in) {
+        int end = sectionEnd(in);
+        if (end < 0) {
+            return null;
+        }
+        SynapseMessage synapseMessage = new SynapseMessage();
+        synapseMessage.setResponse(readBoolean(in));
+        synapseMessage.setFaultResponse(readBoolean(in));
+        synapseMessage.setTracingState(in.getInt());
+        synapseMessage.setMessageFlowTracingState(in.getInt());
+        int size = readCount(in, 4);
+        for (int i = 0; i < size; i++) {
+            synapseMessage.addLocalEntry(readString(in));
+        }
+        size = readCount(in, 8);
+        for (int i = 0; i < size; i++) {
+            synapseMessage.addProperty(readString(in), readString(in));
+        }
+        size = readCount(in, 8);
+        for (int i = 0; i < size; i++) {
+            synapseMessage.addPropertyObject(readString(in), readBytes(in));
+        }
+        in.position(end);
+        return synapseMessage;
+    }
+
+    private static void writeMap(Output out, Map<?, ?> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            out.writeString(String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeValue(Output out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeInt((Character) value);
+        } else if (value instanceof Map && hasStringKeys((Map<?, ?>) value)) {
+            out.writeByte(MAP);
+            writeMap(out, (Map<?, ?>) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            out.writeBytes(javaSerialize(value));
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return readBoolean(in);
+            case INTEGER:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.getLong());
+            case CHARACTER:
+                return (char) in.getInt();
+            case MAP:
+                int size = readCount(in, 5);
+                Map<String, Object> map = new HashMap<String, Object>(Math.max(16, size * 2));
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readValue(in));
+                }
+                return map;
+            case BYTES:
+                return readBytes(in);
+            case SERIALIZED:
+                int length = in.getInt();
+                if (length < 0 || length > in.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                Object value = javaDeserialize(in.array(), in.arrayOffset() + in.position(), length);
+                in.position(in.position() + length);
+                return value;
+            default:
+                throw new StreamCorruptedException("Unknown property type " + type);
+        }
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int sectionEnd(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return -1;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return in.position() + length;
+    }
+
+    /**
+     * Read the number of entries of a collection, which cannot be more than the remaining bytes
+     * hold, so that a corrupted count does not size a collection
+     *
+     * @param in             the message being read
+     * @param minEntryLength smallest number of bytes an entry is written with
+     * @return the number of entries
+     */
+    private static int readCount(ByteBuffer in, int minEntryLength) {
+        int count = in.getInt();
+        if (count > in.remaining() / minEntryLength) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static boolean readBoolean(ByteBuffer in) {
+        return in.get() != 0;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        // a single bulk copy out of the stored bytes
+        int from = in.arrayOffset() + in.position();
+        byte[] value = Arrays.copyOfRange(in.array(), from, from + length);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static int estimateSize(StorableMessage message) {
+        int size = 512;
+        Axis2Message axis2Message = message.getAxis2message();
+        if (axis2Message != null) {
+            if (axis2Message.getSoapEnvelopeBytes() != null) {
+                size += axis2Message.getSoapEnvelopeBytes().length;
+            } else if (axis2Message.getSoapEnvelope() != null) {
+                size += axis2Message.getSoapEnvelope().length();
+            }
+            if (axis2Message.getJsonStream() != null) {
+                size += axis2Message.getJsonStream().length;
+            }
+        }
+        return size;
+    }
+
+    private static byte[] deflate(byte[] data, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, HEADER_LENGTH, length - HEADER_LENGTH);
+            deflater.finish();
+            Output out = new Output(length / 2 + 64);
+            out.writeBytesRaw(Arrays.copyOf(data, HEADER_LENGTH));
+            // the length of the inflated sections, to inflate into a buffer of the exact size
+            out.writeInt(length - HEADER_LENGTH);
+            while (!deflater.finished()) {
+                out.ensureCapacity(4096);
+                out.size += deflater.deflate(out.buffer, out.size, out.buffer.length - out.size);
+            }
+            return Arrays.copyOf(out.buffer, out.size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        if (data.length < HEADER_LENGTH + 4) {
+            throw new StreamCorruptedException("Truncated message");
+        }
+        int length = ByteBuffer.wrap(data, HEADER_LENGTH, 4).getInt();
+        // checked before the inflated sections are allocated
+        if (length < 0 || length > (long) (data.length - HEADER_LENGTH - 4) * MAX_DEFLATE_RATIO) {
+            throw new StreamCorruptedException("Corrupted message length " + length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_LENGTH + 4, data.length - HEADER_LENGTH - 4);
+            byte[] sections = new byte[length];
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(sections, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new StreamCorruptedException("Truncated compressed message");
+            }
+            return sections;
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupted compressed message : " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] javaSerialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] data, int offset, int length) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            InvalidClassException error = new InvalidClassException(e.getMessage(),
+                    "Could not find the class of a stored object");
+            error.initCause(e);
+            throw error;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Growable buffer the message is encoded into. Section lengths are written in place once the
+     * section has been encoded, avoiding a copy of each section.
+     */
+    private static final class Output {
+
+        private byte[] buffer;
+
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        int startSection() {
+            writeInt(0);
+            return size;
+        }
+
+        void endSection(int start) {
+            putInt(start - 4, size - start);
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[size++] = value;
+        }
+
+        void writeBoolean(boolean value) {
+            writeByte(value ? (byte) 1 : (byte) 0);
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            putInt(size, value);
+            size += 4;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) {
+            writeBytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+        }
+
+        void writeBytes(byte[] value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(value.length);
+            writeBytesRaw(value);
+        }
+
+        void writeBytesRaw(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+
+        private void putInt(int index, int value) {
+            buffer[index] = (byte) (value >>> 24);
+            buffer[index + 1] = (byte) (value >>> 16);
+            buffer[index + 2] = (byte) (value >>> 8);
+            buffer[index + 3] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.message.MessageConsumer;
+
+/**
+ * Consumer of a file message store. The consumer holds the message it received until it is
+ * acknowledged, and receives the same message again meanwhile. Other consumers of the store
+ * receive the following messages. A message which cannot be read is left for another attempt, and
+ * moved out of the log once it failed to be read {@link FileMessageStore#MAX_READ_ATTEMPTS} times,
+ * so that it does not hold back the messages after it.
+ */
+public class FileConsumer implements MessageConsumer {
+
+    private static final Log logger = LogFactory.getLog(FileConsumer.class.getName());
+
+    private final FileMessageStore store;
+
+    private String idString;
+
+    private FileMessageLog.Entry current;
+
+    private MessageContext currentMessage;
+
+    public FileConsumer(FileMessageStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public MessageContext receive() {
+        FileMessageLog log = store.getMessageLog();
+        if (current != null && log.claim(current, this, System.currentTimeMillis())) {
+            return currentMessage;
+        }
+        current = log.claimNext(this);
+        currentMessage = null;
+        if (current == null) {
+            return null;
+        }
+        try {
+            currentMessage = store.read(current);
+        } catch (SynapseException e) {
+            logger.error(getId() + " could not read MessageID : " + current.getMessageId(), e);
+            if (current.readFailed() >= store.getMaxReadAttempts()) {
+                moveAside(current);
+            } else {
+                log.release(current, this);
+            }
+            current = null;
+            return null;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(getId() + " received MessageID : " + current.getMessageId());
+        }
+        return currentMessage;
+    }
+
+    @Override
+    public boolean ack() {
+        if (current == null) {
+            return false;
+        }
+        try {
+            boolean acknowledged = store.acknowledge(current);
+            if (logger.isDebugEnabled()) {
+                logger.debug(getId() + " ack of MessageID : " + current.getMessageId() + " => " + acknowledged);
+            }
+            return acknowledged;
+        } catch (SynapseException e) {
+            logger.error(getId() + " could not acknowledge MessageID : " + current.getMessageId(), e);
+            return false;
+        } finally {
+            current = null;
+            currentMessage = null;
+        }
+    }
+
+    @Override
+    public boolean cleanup() {
+        if (current != null) {
+            store.getMessageLog().release(current, this);
+            current = null;
+            currentMessage = null;
+        }
+        return true;
+    }
+
+    private void moveAside(FileMessageLog.Entry entry) {
+        try {
+            store.moveAside(entry);
+        } catch (SynapseException e) {
+            logger.error(getId() + " could not move MessageID : " + entry.getMessageId() + " out of the log", e);
+            store.getMessageLog().release(entry, this);
+        }
+    }
+
+    @Override
+    public boolean isAlive() {
+        return true;
+    }
+
+    @Override
+    public void setAlive(boolean isAlive) {
+    }
+
+    @Override
+    public void setId(int id) {
+        idString = "[" + store.getName() + "-C-" + id + "]";
+    }
+
+    @Override
+    public String getId() {
+        return idString;
+    }
+
+    @Override
+    public boolean reInitialize() {
+        cleanup();
+        return true;
+    }
+}
@@ -0,0 +1,793 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of messages kept in segment files of a directory. Every stored message and
+ * every acknowledgement is appended as a checksummed record, and the messages which are not
+ * acknowledged are kept in an index by sequence number. When the log is opened the segments are
+ * replayed to rebuild the index, and a record torn by a crash is truncated.
+ * <p/>
+ * When syncing is enabled, appending returns once the record is forced to the disk. Threads
+ * which append at the same time share a single force. The oldest segment is deleted once all of
+ * its messages are acknowledged; if only a few of them are left, they are copied to the end of
+ * the log first, keeping their sequence numbers so that the order of delivery does not change.
+ * Compaction runs on a background thread of the log, so acknowledging a message does not wait
+ * for it.
+ * <p/>
+ * Consumers compete for the messages. A consumer claims the first message which is not claimed
+ * by another consumer, and holds it until it is acknowledged or released. A claim which is not
+ * renewed within the claim timeout can be taken by another consumer.
+ */
+class FileMessageLog {
+
+    private static final Log log = LogFactory.getLog(FileMessageLog.class);
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /** Sub directory the messages which cannot be read are moved to */
+    static final String MOVED_ASIDE_DIRECTORY = "moved-aside";
+
+    private static final byte MESSAGE = 1;
+
+    private static final byte ACK = 2;
+
+    /** Length and checksum of a record */
+    private static final int RECORD_HEADER = 8;
+
+    /** Type and sequence number of a record */
+    private static final int RECORD_PREFIX = 9;
+
+    private static final int MAX_RECORD_LENGTH = Integer.MAX_VALUE - RECORD_HEADER;
+
+    /**
+     * A segment file of the log
+     */
+    static final class Segment {
+
+        private final long base;
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        /** Write position, only changed by the thread holding the write lock */
+        private volatile long size;
+
+        /** Number of messages written to the segment */
+        private volatile int records;
+
+        private final AtomicInteger live = new AtomicInteger();
+
+        private Segment(long base, File file) throws IOException {
+            this.base = base;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        long getBase() {
+            return base;
+        }
+    }
+
+    private static final class Location {
+
+        private final Segment segment;
+
+        private final long offset;
+
+        private Location(Segment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A message of the log which is not acknowledged yet
+     */
+    static final class Entry {
+
+        private final long sequence;
+
+        private final String messageId;
+
+        private final int dataOffset;
+
+        private final int dataLength;
+
+        private volatile Location location;
+
+        private final AtomicReference<Object> owner = new AtomicReference<Object>();
+
+        private volatile long claimedAt;
+
+        /** Number of times the message could not be read or decoded */
+        private final AtomicInteger readFailures = new AtomicInteger();
+
+        private Entry(long sequence, String messageId, int dataOffset, int dataLength, Location location) {
+            this.sequence = sequence;
+            this.messageId = messageId;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.location = location;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        String getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * Record a failure to read or decode the message
+         *
+         * @return the number of failures so far
+         */
+        int readFailed() {
+            return readFailures.incrementAndGet();
+        }
+    }
+
+    private final File directory;
+
+    private final long segmentSize;
+
+    private final boolean sync;
+
+    private final double compactionRatio;
+
+    private final long claimTimeout;
+
+    private final ConcurrentSkipListMap<Long, Entry> index = new ConcurrentSkipListMap<Long, Entry>();
+
+    private final Map<String, Entry> messageIds = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Deque<Segment> segments = new ConcurrentLinkedDeque<Segment>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final ReentrantLock compactionLock = new ReentrantLock();
+
+    private volatile Segment active;
+
+    private long nextSequence;
+
+    private final Object syncMonitor = new Object();
+
+    private boolean syncing;
+
+    private long syncedPosition;
+
+    private final AtomicLong syncs = new AtomicLong();
+
+    private final AtomicLong relocatedMessages = new AtomicLong();
+
+    private ExecutorService compactor;
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * @param directory       directory of the segment files
+     * @param segmentSize     size after which a new segment is started
+     * @param sync            whether appends wait for the records to be forced to the disk
+     * @param compactionRatio share of live messages below which the oldest segment is compacted
+     * @param claimTimeout    time in milliseconds after which a claim can be taken over
+     */
+    FileMessageLog(File directory, long segmentSize, boolean sync, double compactionRatio, long claimTimeout) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        this.compactionRatio = compactionRatio;
+        this.claimTimeout = claimTimeout;
+    }
+
+    /**
+     * Open the log, recovering the messages which are not acknowledged
+     *
+     * @throws IOException if the segments cannot be read
+     */
+    void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        List<File> segmentFiles = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    segmentFiles.add(file);
+                }
+            }
+        }
+        File[] sorted = segmentFiles.toArray(new File[segmentFiles.size()]);
+        // names are zero padded base offsets, so they sort in the order of the log
+        Arrays.sort(sorted);
+        for (File file : sorted) {
+            String name = file.getName();
+            Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() -
+                    SEGMENT_SUFFIX.length())), file);
+            segments.addLast(segment);
+            recover(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(newSegment(0));
+        }
+        active = segments.peekLast();
+        syncedPosition = active.base + active.size;
+        final String threadName = "file-store-compaction-" + directory.getName();
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (log.isDebugEnabled()) {
+            log.debug("Recovered " + size.get() + " messages from " + segments.size() + " segments of " + directory);
+        }
+    }
+
+    private void recover(Segment segment) throws IOException {
+        long length = segment.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (position < length) {
+            header.clear();
+            if (!readFully(segment.channel, header, position)) {
+                break;
+            }
+            int recordLength = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (recordLength < RECORD_PREFIX || position + RECORD_HEADER + recordLength > length) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(recordLength);
+            if (!readFully(segment.channel, body, position + RECORD_HEADER) ||
+                    checksum != checksum(body.array(), 0, recordLength)) {
+                break;
+            }
+            byte type = body.get(0);
+            long sequence = body.getLong(1);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (type == MESSAGE) {
+                segment.records++;
+                Entry entry = readEntry(body, sequence, new Location(segment, position));
+                entry.location.segment.live.incrementAndGet();
+                index(entry);
+            } else if (type == ACK) {
+                Entry entry = index.get(sequence);
+                if (unindex(entry)) {
+                    entry.location.segment.live.decrementAndGet();
+                }
+            }
+            position += RECORD_HEADER + recordLength;
+        }
+        if (position < length) {
+            log.warn("Truncating " + (length - position) + " bytes of an incomplete record at " + position +
+                    " of " + segment.file);
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    private Entry readEntry(ByteBuffer body, long sequence, Location location) {
+        int idLength = body.getShort(RECORD_PREFIX) & 0xFFFF;
+        String messageId = new String(body.array(), RECORD_PREFIX + 2, idLength, StandardCharsets.UTF_8);
+        int dataOffset = RECORD_HEADER + RECORD_PREFIX + 2 + idLength;
+        return new Entry(sequence, messageId, dataOffset, body.limit() - (dataOffset - RECORD_HEADER), location);
+    }
+
+    /**
+     * Add an entry to the index, the live count of its segment is already incremented
+     */
+    private void index(Entry entry) {
+        Entry previous = index.put(entry.sequence, entry);
+        if (previous != null) {
+            // a message copied by a compaction which was interrupted
+            previous.location.segment.live.decrementAndGet();
+        } else {
+            size.incrementAndGet();
+        }
+        messageIds.put(entry.messageId, entry);
+    }
+
+    private boolean unindex(Entry entry) {
+        if (entry == null || !index.remove(entry.sequence, entry)) {
+            return false;
+        }
+        size.decrementAndGet();
+        messageIds.remove(entry.messageId, entry);
+        return true;
+    }
+
+    /**
+     * Append a message to the log
+     *
+     * @param messageId id of the message
+     * @param data      serialized message
+     * @return the entry of the message
+     * @throws IOException if the message cannot be written
+     */
+    Entry append(String messageId, byte[] data) throws IOException {
+        byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 0xFFFF || (long) data.length + id.length + RECORD_PREFIX + 2 > MAX_RECORD_LENGTH) {
+            throw new IOException("Message " + messageId + " is too large to be stored");
+        }
+        Entry entry;
+        writeLock.lock();
+        try {
+            long sequence = nextSequence++;
+            ByteBuffer record = messageRecord(sequence, id, data);
+            Location location = write(record);
+            location.segment.records++;
+            // counted before it is indexed, so that the segment is not deleted meanwhile
+            location.segment.live.incrementAndGet();
+            entry = new Entry(sequence, messageId, RECORD_HEADER + RECORD_PREFIX + 2 + id.length, data.length,
+                    location);
+        } finally {
+            writeLock.unlock();
+        }
+        sync(entry.location.segment.base + entry.location.offset);
+        // visible to consumers only when it is durable
+        index(entry);
+        return entry;
+    }
+
+    /**
+     * Acknowledge a message, removing it from the log
+     *
+     * @param entry entry of the message
+     * @return false if the message was already acknowledged
+     * @throws IOException if the acknowledgement cannot be written
+     */
+    boolean acknowledge(Entry entry) throws IOException {
+        // removed from the index first, so that a compaction does not copy the message after the ack
+        if (!unindex(entry)) {
+            return false;
+        }
+        long position;
+        writeLock.lock();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + RECORD_PREFIX);
+            record.putInt(RECORD_PREFIX).putInt(0).put(ACK).putLong(entry.sequence);
+            record.putInt(4, checksum(record.array(), RECORD_HEADER, RECORD_PREFIX));
+            record.flip();
+            Location location = write(record);
+            position = location.segment.base + location.offset;
+            entry.location.segment.live.decrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+        sync(position);
+        scheduleCompaction();
+        return true;
+    }
+
+    /**
+     * Move a message which cannot be delivered out of the log. The serialized message is written
+     * to a file of the {@link #MOVED_ASIDE_DIRECTORY} sub directory, named after its sequence
+     * number, and the message is acknowledged.
+     *
+     * @param entry entry of the message
+     * @return false if the message was already acknowledged
+     * @throws IOException if the message cannot be acknowledged
+     */
+    boolean moveAside(Entry entry) throws IOException {
+        try {
+            byte[] data = read(entry);
+            File movedAside = new File(directory, MOVED_ASIDE_DIRECTORY);
+            if (!movedAside.isDirectory() && !movedAside.mkdirs()) {
+                throw new IOException("Cannot create directory " + movedAside);
+            }
+            FileOutputStream out = new FileOutputStream(new File(movedAside,
+                    String.format("%020d", entry.sequence) + ".msg"));
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // the message is dropped all the same, it cannot be delivered
+            log.error("Could not keep a copy of the message " + entry.messageId + " moved out of " +
+                    directory, e);
+        }
+        return acknowledge(entry);
+    }
+
+    /**
+     * Read the serialized message of an entry
+     *
+     * @param entry entry of the message
+     * @return serialized message
+     * @throws IOException if the message cannot be read
+     */
+    byte[] read(Entry entry) throws IOException {
+        while (true) {
+            Location location = entry.location;
+            ByteBuffer data = ByteBuffer.allocate(entry.dataLength);
+            try {
+                if (!readFully(location.segment.channel, data, location.offset + entry.dataOffset)) {
+                    throw new IOException("Message " + entry.messageId + " is truncated in " + location.segment.file);
+                }
+                return data.array();
+            } catch (ClosedChannelException e) {
+                if (entry.location == location) {
+                    throw e;
+                }
+                // the message was moved by a compaction while it was read
+            }
+        }
+    }
+
+    /**
+     * Claim the first message which is not held by another consumer
+     *
+     * @param consumer the consumer
+     * @return the entry of the message, or null if there is none
+     */
+    Entry claimNext(Object consumer) {
+        long now = System.currentTimeMillis();
+        for (Entry entry : index.values()) {
+            if (claim(entry, consumer, now)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claim the given message or renew the claim of the consumer on it
+     *
+     * @param entry    entry of the message
+     * @param consumer the consumer
+     * @param now      current time in milliseconds
+     * @return false if the message is held by another consumer or is acknowledged
+     */
+    boolean claim(Entry entry, Object consumer, long now) {
+        if (index.get(entry.sequence) != entry) {
+            return false;
+        }
+        Object owner = entry.owner.get();
+        if (owner == consumer || ((owner == null || now - entry.claimedAt > claimTimeout) &&
+                entry.owner.compareAndSet(owner, consumer))) {
+            entry.claimedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    void release(Entry entry, Object consumer) {
+        entry.owner.compareAndSet(consumer, null);
+    }
+
+    Entry get(String messageId) {
+        return messageIds.get(messageId);
+    }
+
+    Collection<Entry> entries() {
+        return index.values();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getSyncCount() {
+        return syncs.get();
+    }
+
+    long getRelocatedMessages() {
+        return relocatedMessages.get();
+    }
+
+    /**
+     * Wait until the compactions scheduled so far are done
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        compactor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * Close the segment files, the messages stay in the log
+     */
+    void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("Compaction of " + directory + " did not finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            for (Segment segment : segments) {
+                try {
+                    segment.channel.close();
+                } catch (IOException e) {
+                    log.warn("Error closing " + segment.file, e);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write a record at the end of the log, must be called holding the write lock
+     */
+    private Location write(ByteBuffer record) throws IOException {
+        Segment segment = active;
+        if (segment.size > 0 && segment.size + record.remaining() > segmentSize) {
+            segment = rollOver(segment);
+        }
+        long offset = segment.size;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += segment.channel.write(record, position);
+        }
+        segment.size = position;
+        return new Location(segment, offset);
+    }
+
+    private Segment rollOver(Segment segment) throws IOException {
+        if (sync) {
+            // records of the previous segment are not covered by a force of the new one
+            segment.channel.force(false);
+        }
+        Segment next = newSegment(segment.base + segment.size);
+        segments.addLast(next);
+        active = next;
+        if (sync) {
+            synchronized (syncMonitor) {
+                syncedPosition = Math.max(syncedPosition, next.base);
+            }
+        }
+        return next;
+    }
+
+    private Segment newSegment(long base) throws IOException {
+        return new Segment(base, new File(directory, String.format("%020d", base) + SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Wait until the log is forced to the disk beyond the start of a record. The thread which finds
+     * no force in progress forces the log for all the threads waiting.
+     */
+    private void sync(long position) throws IOException {
+        if (!sync) {
+            return;
+        }
+        while (true) {
+            synchronized (syncMonitor) {
+                while (syncing && syncedPosition <= position) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the log to be synced");
+                    }
+                }
+                if (syncedPosition > position) {
+                    return;
+                }
+                syncing = true;
+            }
+            long target = -1;
+            try {
+                Segment segment;
+                writeLock.lock();
+                try {
+                    segment = active;
+                    target = segment.base + segment.size;
+                } finally {
+                    writeLock.unlock();
+                }
+                try {
+                    segment.channel.force(false);
+                } catch (ClosedChannelException e) {
+                    if (segment == active) {
+                        throw e;
+                    }
+                    // rolled over and compacted away, it was forced when the log rolled over
+                }
+                syncs.incrementAndGet();
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    if (target >= 0) {
+                        syncedPosition = Math.max(syncedPosition, target);
+                    }
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a compaction on the compaction thread, unless one is already waiting to run
+     */
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(new Runnable() {
+                public void run() {
+                    // cleared first, so that an ack during the compaction schedules another one
+                    compactionScheduled.set(false);
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        log.error("Error compacting the message log of " + directory, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the log is being closed
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Delete the oldest segments which have no messages left, after copying the messages of a
+     * segment which has only a few left to the end of the log
+     */
+    private void compact() throws IOException {
+        if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                Segment oldest = segments.peekFirst();
+                if (oldest == null || oldest == active) {
+                    return;
+                }
+                int live = oldest.live.get();
+                if (live > 0) {
+                    if (live > oldest.records * compactionRatio) {
+                        return;
+                    }
+                    relocate(oldest);
+                    if (oldest.live.get() > 0) {
+                        return;
+                    }
+                }
+                writeLock.lock();
+                try {
+                    segments.removeFirst();
+                    oldest.channel.close();
+                } finally {
+                    writeLock.unlock();
+                }
+                if (!oldest.file.delete()) {
+                    log.warn("Could not delete the segment " + oldest.file);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Deleted the segment " + oldest.file);
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void relocate(Segment segment) throws IOException {
+        long position = -1;
+        for (Entry entry : index.values()) {
+            if (entry.location.segment != segment) {
+                continue;
+            }
+            byte[] data = read(entry);
+            byte[] id = entry.messageId.getBytes(StandardCharsets.UTF_8);
+            writeLock.lock();
+            try {
+                // an acknowledged message must not be written again after its ack
+                if (index.get(entry.sequence) != entry) {
+                    continue;
+                }
+                Location location = write(messageRecord(entry.sequence, id, data));
+                location.segment.records++;
+                location.segment.live.incrementAndGet();
+                entry.location = location;
+                segment.live.decrementAndGet();
+                position = location.segment.base + location.offset;
+                relocatedMessages.incrementAndGet();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        if (position >= 0) {
+            sync(position);
+        }
+    }
+
+    private static ByteBuffer messageRecord(long sequence, byte[] id, byte[] data) {
+        int length = RECORD_PREFIX + 2 + id.length + data.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+        record.putInt(length).putInt(0).put(MESSAGE).putLong(sequence).putShort((short) id.length).put(id).put(data);
+        record.putInt(4, checksum(record.array(), RECORD_HEADER, length));
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
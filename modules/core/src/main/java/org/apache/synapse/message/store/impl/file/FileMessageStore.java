@@ -0,0 +1,333 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+import org.apache.synapse.message.store.AbstractMessageStore;
+import org.apache.synapse.message.store.Constants;
+import org.apache.synapse.message.store.impl.commons.MessageConverter;
+import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Message store which keeps the messages in an append-only log of local files, so that
+ * guaranteed delivery does not depend on a database or a broker. Messages survive a restart of
+ * the server; with {@link #SYNC} enabled, which is the default, a stored message survives a crash
+ * of the machine as well.
+ */
+public class FileMessageStore extends AbstractMessageStore {
+
+    private static final Log logger = LogFactory.getLog(FileMessageStore.class.getName());
+
+    /** Directory of the log, a directory named after the store by default */
+    public static final String DIRECTORY = "store.file.directory";
+
+    /** Size in bytes after which a new segment file is started */
+    public static final String SEGMENT_SIZE = "store.file.segment.size";
+
+    /** Whether storing and acknowledging a message waits for the disk, true by default */
+    public static final String SYNC = "store.file.sync";
+
+    /** Share of live messages below which the oldest segment is compacted */
+    public static final String COMPACTION_RATIO = "store.file.compaction.ratio";
+
+    /** Time in milliseconds after which a message received by a consumer can go to another one */
+    public static final String CLAIM_TIMEOUT = "store.file.claim.timeout";
+
+    /** Number of failed attempts to read a message after which it is moved out of the log */
+    public static final String MAX_READ_ATTEMPTS = "store.file.max.read.attempts";
+
+    private static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final double DEFAULT_COMPACTION_RATIO = 0.25;
+
+    private static final long DEFAULT_CLAIM_TIMEOUT = 60000;
+
+    private static final long DEFAULT_MAX_READ_ATTEMPTS = 3;
+
+    private FileMessageLog messageLog;
+
+    private StorableMessageCodec messageCodec;
+
+    private int maxReadAttempts;
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        Object directory = parameters.get(DIRECTORY);
+        File logDirectory = new File(directory != null ? directory.toString().trim() :
+                "message-stores" + File.separator + getName());
+        Object sync = parameters.get(SYNC);
+        messageLog = new FileMessageLog(logDirectory,
+                readLong(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE),
+                sync == null || Boolean.parseBoolean(sync.toString().trim()),
+                readRatio(),
+                readLong(CLAIM_TIMEOUT, DEFAULT_CLAIM_TIMEOUT));
+        messageCodec = StorableMessageCodec.fromParameters(parameters);
+        maxReadAttempts = (int) Math.min(Integer.MAX_VALUE, readLong(MAX_READ_ATTEMPTS, DEFAULT_MAX_READ_ATTEMPTS));
+        try {
+            messageLog.open();
+        } catch (IOException e) {
+            throw new SynapseException("Could not open the message log of " + nameString() + " at " +
+                    logDirectory, e);
+        }
+        logger.info("Initialized " + nameString() + " with " + messageLog.size() + " messages in " +
+                logDirectory.getAbsolutePath());
+    }
+
+    @Override
+    public void destroy() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Destroying " + nameString() + "...");
+        }
+        if (messageLog != null) {
+            messageLog.close();
+        }
+        super.destroy();
+    }
+
+    public MessageProducer getProducer() {
+        FileProducer producer = new FileProducer(this);
+        producer.setId(nextProducerId());
+        if (logger.isDebugEnabled()) {
+            logger.debug(nameString() + " created a new File Message Producer.");
+        }
+        return producer;
+    }
+
+    public MessageConsumer getConsumer() {
+        FileConsumer consumer = new FileConsumer(this);
+        consumer.setId(nextConsumerId());
+        if (logger.isDebugEnabled()) {
+            logger.debug(nameString() + " created a new File Message Consumer.");
+        }
+        return consumer;
+    }
+
+    @Override
+    public int getType() {
+        return Constants.FILE_MS;
+    }
+
+    @Override
+    public int size() {
+        return messageLog.size();
+    }
+
+    public MessageContext remove() throws NoSuchElementException {
+        for (FileMessageLog.Entry entry : messageLog.entries()) {
+            MessageContext message = remove(entry);
+            if (message != null) {
+                return message;
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    public void clear() {
+        for (FileMessageLog.Entry entry : messageLog.entries()) {
+            acknowledge(entry);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(nameString() + " cleared.");
+        }
+    }
+
+    public MessageContext remove(String messageID) {
+        FileMessageLog.Entry entry = messageLog.get(messageID);
+        return entry != null ? remove(entry) : null;
+    }
+
+    public MessageContext get(int index) {
+        if (index < 0) {
+            return null;
+        }
+        int i = 0;
+        for (FileMessageLog.Entry entry : messageLog.entries()) {
+            if (i++ == index) {
+                return read(entry);
+            }
+        }
+        return null;
+    }
+
+    public List<MessageContext> getAll() {
+        List<MessageContext> list = new ArrayList<MessageContext>();
+        for (FileMessageLog.Entry entry : messageLog.entries()) {
+            list.add(read(entry));
+        }
+        return list;
+    }
+
+    public MessageContext get(String messageId) {
+        FileMessageLog.Entry entry = messageLog.get(messageId);
+        return entry != null ? read(entry) : null;
+    }
+
+    FileMessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    int getMaxReadAttempts() {
+        return maxReadAttempts;
+    }
+
+    /**
+     * Append a message to the log
+     *
+     * @param synCtx the message
+     */
+    void store(MessageContext synCtx) {
+        try {
+            StorableMessage message = MessageConverter.toStorableMessage(synCtx);
+            messageLog.append(synCtx.getMessageID(), messageCodec.encode(message));
+        } catch (IOException e) {
+            throw new SynapseException("Error writing the message " + synCtx.getMessageID() + " to " +
+                    nameString(), e);
+        }
+    }
+
+    /**
+     * Read and build a message of the log
+     *
+     * @param entry entry of the message
+     * @return the message context
+     */
+    MessageContext read(FileMessageLog.Entry entry) {
+        try {
+            StorableMessage message = StorableMessageCodec.decode(messageLog.read(entry));
+            org.apache.axis2.context.MessageContext axis2Mc = ((Axis2SynapseEnvironment) synapseEnvironment)
+                    .getAxis2ConfigurationContext().createMessageContext();
+            SynapseConfiguration configuration = synapseEnvironment.getSynapseConfiguration();
+            MessageContext synapseMc = new Axis2MessageContext(axis2Mc, configuration, synapseEnvironment);
+            return MessageConverter.toMessageContext(message, axis2Mc, synapseMc);
+        } catch (IOException e) {
+            throw new SynapseException("Error reading the message " + entry.getMessageId() + " from " +
+                    nameString(), e);
+        }
+    }
+
+    /**
+     * Remove a message from the log
+     *
+     * @param entry entry of the message
+     * @return false if the message was already removed
+     */
+    boolean acknowledge(FileMessageLog.Entry entry) {
+        try {
+            if (messageLog.acknowledge(entry)) {
+                dequeued();
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new SynapseException("Error removing the message " + entry.getMessageId() + " from " +
+                    nameString(), e);
+        }
+    }
+
+    /**
+     * Move a message which cannot be read out of the log, keeping a copy of it in the
+     * {@link FileMessageLog#MOVED_ASIDE_DIRECTORY} sub directory of the log
+     *
+     * @param entry entry of the message
+     * @return false if the message was already removed
+     */
+    boolean moveAside(FileMessageLog.Entry entry) {
+        try {
+            if (messageLog.moveAside(entry)) {
+                dequeued();
+                logger.warn(nameString() + " moved the MessageID : " + entry.getMessageId() +
+                        " out of the log after " + maxReadAttempts + " failed attempts to read it");
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new SynapseException("Error removing the message " + entry.getMessageId() + " from " +
+                    nameString(), e);
+        }
+    }
+
+    private MessageContext remove(FileMessageLog.Entry entry) {
+        // read before the ack, the segment of the message may be deleted right after it
+        MessageContext message = read(entry);
+        if (!acknowledge(entry)) {
+            return null;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(nameString() + " removed MessageID:" + message.getMessageID());
+        }
+        return message;
+    }
+
+    private long readLong(String key, long defaultValue) {
+        Object value = parameters.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.toString().trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        logger.warn(nameString() + " invalid value " + value + " for " + key + ", using " + defaultValue);
+        return defaultValue;
+    }
+
+    private double readRatio() {
+        Object value = parameters.get(COMPACTION_RATIO);
+        if (value == null) {
+            return DEFAULT_COMPACTION_RATIO;
+        }
+        try {
+            double parsed = Double.parseDouble(value.toString().trim());
+            if (parsed >= 0 && parsed <= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        logger.warn(nameString() + " invalid value " + value + " for " + COMPACTION_RATIO + ", using " +
+                DEFAULT_COMPACTION_RATIO);
+        return DEFAULT_COMPACTION_RATIO;
+    }
+
+    private String nameString() {
+        return "Store [" + getName() + "]";
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.message.MessageProducer;
+
+/**
+ * Producer of a file message store
+ */
+public class FileProducer implements MessageProducer {
+
+    private static final Log logger = LogFactory.getLog(FileProducer.class.getName());
+
+    private final FileMessageStore store;
+
+    private String idString;
+
+    public FileProducer(FileMessageStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public boolean storeMessage(MessageContext synCtx) {
+        if (synCtx == null) {
+            return false;
+        }
+        try {
+            store.store(synCtx);
+        } catch (SynapseException e) {
+            logger.error(getId() + " error while storing message : " + synCtx.getMessageID(), e);
+            return false;
+        }
+        store.enqueued();
+        if (logger.isDebugEnabled()) {
+            logger.debug(getId() + " stored MessageID: " + synCtx.getMessageID());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean cleanup() {
+        return true;
+    }
+
+    @Override
+    public void setId(int id) {
+        idString = "[" + store.getName() + "-P-" + id + "]";
+    }
+
+    @Override
+    public String getId() {
+        return idString;
+    }
+}
@@ -21,12 +21,27 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
-import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.ClaimingMessageConsumer;
+import org.apache.synapse.message.PriorityMessageConsumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * JDBC Store Consumer
+ * JDBC Store Consumer. When the store has a prefetch size larger than one, the consumer claims that
+ * many messages from the head of the table at once, hands them out in order and deletes the
+ * acknowledged ones together once the batch is consumed or the consumer is cleaned up. A batch
+ * whose rows are locked is also completed on the first receive or ack after the batch lock timeout
+ * of the store, releasing the messages not acknowledged yet, including a message which is being
+ * retried.
+ * <p/>
+ * Messages can also be claimed one by one, apart from the received message, and acknowledged in any
+ * order. Claims are kept by the consumer, they are not visible to the consumers of other servers.
  */
-public class JDBCConsumer implements MessageConsumer {
+public class JDBCConsumer implements PriorityMessageConsumer, ClaimingMessageConsumer {
 
     /**
      * Logger for the class
@@ -48,6 +63,17 @@ public class JDBCConsumer implements MessageConsumer {
      */
     private String currentMessageId;
 
+    /**
+     * Messages claimed from the store when prefetching
+     */
+    private JDBCMessageBatch batch;
+
+    /**
+     * Claimed messages and the indexIds of their rows
+     */
+    private final Map<MessageContext, Long> claims =
+            Collections.synchronizedMap(new IdentityHashMap<MessageContext, Long>());
+
     /**
      * Boolean to store if the message processor is alive
      */
@@ -71,6 +97,9 @@ public class JDBCConsumer implements MessageConsumer {
     @Override
     public MessageContext receive() {
         if (isAlive()) {
+            if (store.getPrefetchSize() > 1 || batch != null) {
+                return receiveFromBatch();
+            }
             // Message will get peeked from the table
             MessageContext msg = null;
             try {
@@ -90,6 +119,57 @@ public class JDBCConsumer implements MessageConsumer {
         }
     }
 
+    private MessageContext receiveFromBatch() {
+        try {
+            // checked first, so that a message which is retried for long does not keep the whole
+            // batch locked, it is released with the rest of the batch and claimed again
+            if (batch != null && (isLockTimedOut() || (batch.getCurrent() == null && !batch.hasNext()))) {
+                completeBatch();
+            }
+            if (batch != null && batch.getCurrent() != null) {
+                // not acknowledged yet, hand out the head message again as peeking the table would
+                return store.deserializeMessage(batch.getCurrent().getMessage());
+            }
+            if (batch == null) {
+                batch = store.fetchMessageBatch(store.getPrefetchSize());
+                if (!batch.hasNext()) {
+                    completeBatch();
+                    return null;
+                }
+            }
+            JDBCMessageBatch.StoredRow row = batch.next();
+            currentMessageId = row.getMessageId();
+            return store.deserializeMessage(row.getMessage());
+        } catch (SynapseException e) {
+            logger.error("Can't receive message ", e);
+        }
+        return null;
+    }
+
+    /**
+     * Delete the acknowledged messages of the current batch and release the rest of it
+     *
+     * @return false if the acknowledged messages could not be deleted
+     */
+    private boolean completeBatch() {
+        if (batch == null) {
+            return true;
+        }
+        try {
+            store.completeMessageBatch(batch);
+            return true;
+        } catch (SynapseException e) {
+            logger.error(getId() + " could not delete acknowledged messages, they will be delivered again", e);
+            return false;
+        } finally {
+            batch = null;
+        }
+    }
+
+    private boolean isLockTimedOut() {
+        return batch.isLockHeldFor(store.getBatchLockTimeout(), System.currentTimeMillis());
+    }
+
     public boolean reInitialize() {
         // To keep the existing behaviour, return false
         return false;
@@ -102,6 +182,14 @@ public class JDBCConsumer implements MessageConsumer {
      */
     @Override
     public boolean ack() {
+        if (batch != null) {
+            if (batch.ack() == null) {
+                return false;
+            }
+            currentMessageId = null;
+            store.dequeued();
+            return (batch.hasNext() && !isLockTimedOut()) || completeBatch();
+        }
         // Message will be removed at this point
         MessageContext msg = store.remove(currentMessageId);
         if (msg != null) {
@@ -112,6 +200,101 @@ public class JDBCConsumer implements MessageConsumer {
         }
     }
 
+    /**
+     * Claim the first message of the table which is not claimed by this consumer
+     *
+     * @return the claimed message or null if no message is waiting
+     */
+    @Override
+    public MessageContext claim() {
+        if (!isAlive()) {
+            return null;
+        }
+        try {
+            List<Long> claimedIndexIds;
+            synchronized (claims) {
+                claimedIndexIds = new ArrayList<Long>(claims.values());
+            }
+            JDBCMessageBatch.StoredRow row = store.fetchUnclaimedMessage(claimedIndexIds);
+            if (row == null) {
+                return null;
+            }
+            MessageContext message = store.deserializeMessage(row.getMessage());
+            if (message != null) {
+                claims.put(message, row.getIndexId());
+            }
+            return message;
+        } catch (SynapseException e) {
+            logger.error("Can't claim message ", e);
+        }
+        return null;
+    }
+
+    /**
+     * Remove a claimed message from the table
+     *
+     * @param message claimed message
+     * @return false if the message is not claimed by this consumer or could not be removed
+     */
+    @Override
+    public boolean ack(MessageContext message) {
+        Long indexId = claims.get(message);
+        if (indexId == null) {
+            return false;
+        }
+        try {
+            store.deleteClaimedMessage(indexId);
+        } catch (SynapseException e) {
+            logger.error(getId() + " could not remove claimed message " + message.getMessageID(), e);
+            return false;
+        }
+        claims.remove(message);
+        store.dequeued();
+        return true;
+    }
+
+    /**
+     * Leave a claimed message in the table, it will be claimed again
+     *
+     * @param message claimed message
+     * @return false if the message is not claimed by this consumer
+     */
+    @Override
+    public boolean release(MessageContext message) {
+        return claims.remove(message) != null;
+    }
+
+    /**
+     * Highest priority of the messages waiting in the table, -1 if the store does not hand out
+     * messages by priority
+     *
+     * @return the priority or -1 if no other message is waiting
+     */
+    @Override
+    public int getWaitingPriority() {
+        if (!store.isPriorityEnabled()) {
+            return -1;
+        }
+        return store.getWaitingPriority(currentMessageId,
+                batch != null ? batch.getAcknowledgedIds() : Collections.<Long>emptyList());
+    }
+
+    /**
+     * Leave the current message in the table. A claimed batch is completed, so that the released
+     * messages are claimed again by priority. If the batch cannot be completed the message stays
+     * the current one, so that it can still be acknowledged.
+     *
+     * @return false if the store does not hand out messages by priority or the message was not released
+     */
+    @Override
+    public boolean release() {
+        if (!store.isPriorityEnabled() || currentMessageId == null || !completeBatch()) {
+            return false;
+        }
+        currentMessageId = null;
+        return true;
+    }
+
     /**
      * Cleanup the consumer
      *
@@ -120,7 +303,7 @@ public class JDBCConsumer implements MessageConsumer {
     @Override
     public boolean cleanup() {
         currentMessageId = null;
-        return true;
+        return completeBatch();
     }
 
 
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Exposes the statistics of the group commit of a JDBC message store
+ */
+public class JDBCGroupCommitView implements JDBCGroupCommitViewMBean {
+
+    private final JDBCGroupCommitter committer;
+
+    JDBCGroupCommitView(JDBCGroupCommitter committer) {
+        this.committer = committer;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return committer.getMaxBatchSize();
+    }
+
+    @Override
+    public long getBatchWindowMillis() {
+        return committer.getWindowMillis();
+    }
+
+    @Override
+    public long getCommits() {
+        long commits = 0;
+        for (int i = 0; i < JDBCGroupCommitter.BUCKETS; i++) {
+            commits += committer.getCommits(i);
+        }
+        return commits;
+    }
+
+    @Override
+    public long getCommittedMessages() {
+        long messages = 0;
+        for (int i = 0; i < JDBCGroupCommitter.BUCKETS; i++) {
+            messages += committer.getMessages(i);
+        }
+        return messages;
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        long commits = getCommits();
+        return commits == 0 ? 0 : (double) getCommittedMessages() / commits;
+    }
+
+    @Override
+    public long getFailedBatches() {
+        return committer.getFailedBatches();
+    }
+
+    @Override
+    public String[] getThroughputByBatchSize() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < JDBCGroupCommitter.BUCKETS; i++) {
+            long commits = committer.getCommits(i);
+            if (commits == 0) {
+                continue;
+            }
+            long messages = committer.getMessages(i);
+            long nanos = Math.max(1, committer.getCommitNanos(i));
+            String range = i == JDBCGroupCommitter.BUCKETS - 1 ? (1 << i) + "+" :
+                    i == 0 ? "1" : (1 << i) + "-" + ((1 << (i + 1)) - 1);
+            lines.add(String.format(Locale.ENGLISH,
+                    "%s : commits=%d, messages=%d, avgCommitMillis=%.3f, messagesPerSecond=%.1f",
+                    range, commits, messages, nanos / 1e6 / commits, messages * 1e9 / nanos));
+        }
+        return lines.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.jdbc;
+
+/**
+ * Statistics of the group commit of messages into a JDBC message store
+ */
+public interface JDBCGroupCommitViewMBean {
+
+    int getMaxBatchSize();
+
+    long getBatchWindowMillis();
+
+    long getCommits();
+
+    long getCommittedMessages();
+
+    double getAverageBatchSize();
+
+    long getFailedBatches();
+
+    /**
+     * @return commits, messages, average commit time and throughput of each range of batch sizes
+     */
+    String[] getThroughputByBatchSize();
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.message.store.impl.jdbc.util.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent inserts into a JDBC message store into batches written with a single commit.
+ * <p/>
+ * There is no writer thread. A caller queues its insert and the first caller to get hold of the
+ * commit lock becomes the leader: it optionally waits up to the batch window for more inserts,
+ * writes up to the maximum batch size of queued inserts in one transaction and releases their
+ * callers. Inserts queued while a batch is being committed form the next batch, so batches grow
+ * with the load even without a window. Each caller returns only once its own insert is committed,
+ * so storing a message stays synchronous.
+ * <p/>
+ * If a batch fails, its inserts are retried one by one so that only the offending message fails.
+ */
+class JDBCGroupCommitter {
+
+    private static final Log log = LogFactory.getLog(JDBCGroupCommitter.class);
+
+    /**
+     * Writes a list of statements in a single transaction
+     */
+    interface BatchWriter {
+        void write(List<Statement> statements) throws SynapseException;
+    }
+
+    /**
+     * Batch sizes are bucketed by powers of two, the last bucket takes the rest
+     */
+    static final int BUCKETS = 12;
+
+    private static final long FOLLOWER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long LEADER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final BatchWriter writer;
+
+    private final int maxBatchSize;
+
+    private final long windowNanos;
+
+    private final Queue<PendingInsert> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    private final AtomicLongArray bucketCommits = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLongArray bucketMessages = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLongArray bucketNanos = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    JDBCGroupCommitter(BatchWriter writer, int maxBatchSize, long windowMillis) {
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+    }
+
+    /**
+     * Insert with the given statement and wait until it is committed
+     *
+     * @param statement insert statement of a message
+     * @return true once the insert is committed
+     * @throws SynapseException if the insert failed
+     */
+    boolean insert(Statement statement) throws SynapseException {
+        PendingInsert insert = new PendingInsert(statement);
+        pending.add(insert);
+        pendingCount.incrementAndGet();
+        while (!insert.done) {
+            if (commitLock.tryLock()) {
+                try {
+                    while (!insert.done) {
+                        awaitBatch();
+                        commitBatch();
+                    }
+                } finally {
+                    commitLock.unlock();
+                }
+                // hand over to a waiting caller rather than letting it find out after its park
+                PendingInsert next = pending.peek();
+                if (next != null) {
+                    LockSupport.unpark(next.thread);
+                }
+            } else {
+                LockSupport.parkNanos(this, FOLLOWER_PARK_NANOS);
+            }
+        }
+        if (insert.failure != null) {
+            throw insert.failure;
+        }
+        return true;
+    }
+
+    private void awaitBatch() {
+        if (windowNanos == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + windowNanos;
+        while (pendingCount.get() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, LEADER_PARK_NANOS));
+        }
+    }
+
+    private void commitBatch() {
+        List<PendingInsert> batch = new ArrayList<>(Math.min(maxBatchSize, pendingCount.get()));
+        PendingInsert insert;
+        while (batch.size() < maxBatchSize && (insert = pending.poll()) != null) {
+            batch.add(insert);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        pendingCount.addAndGet(-batch.size());
+
+        List<Statement> statements = new ArrayList<>(batch.size());
+        for (PendingInsert pendingInsert : batch) {
+            statements.add(pendingInsert.statement);
+        }
+        long start = System.nanoTime();
+        try {
+            writer.write(statements);
+            record(batch.size(), System.nanoTime() - start);
+            for (PendingInsert pendingInsert : batch) {
+                pendingInsert.complete(null);
+            }
+        } catch (RuntimeException e) {
+            failedBatches.incrementAndGet();
+            if (batch.size() == 1) {
+                batch.get(0).complete(toSynapseException(e));
+                return;
+            }
+            log.warn("Writing a batch of " + batch.size() + " messages failed, retrying them one by one", e);
+            for (PendingInsert pendingInsert : batch) {
+                long singleStart = System.nanoTime();
+                try {
+                    writer.write(Collections.singletonList(pendingInsert.statement));
+                    record(1, System.nanoTime() - singleStart);
+                    pendingInsert.complete(null);
+                } catch (RuntimeException singleFailure) {
+                    pendingInsert.complete(toSynapseException(singleFailure));
+                }
+            }
+        } finally {
+            // never leave a caller waiting for an insert which will not be written, e.g. on an Error
+            for (PendingInsert pendingInsert : batch) {
+                if (!pendingInsert.done) {
+                    pendingInsert.complete(new SynapseException("Writing the message to the store was aborted"));
+                }
+            }
+        }
+    }
+
+    private static SynapseException toSynapseException(RuntimeException e) {
+        if (e instanceof SynapseException) {
+            return (SynapseException) e;
+        }
+        return new SynapseException("Error while writing the message to the store", e);
+    }
+
+    private void record(int batchSize, long nanos) {
+        int bucket = bucketOf(batchSize);
+        bucketCommits.incrementAndGet(bucket);
+        bucketMessages.addAndGet(bucket, batchSize);
+        bucketNanos.addAndGet(bucket, nanos);
+    }
+
+    static int bucketOf(int batchSize) {
+        return Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(Math.max(1, batchSize)));
+    }
+
+    int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    long getCommits(int bucket) {
+        return bucketCommits.get(bucket);
+    }
+
+    long getMessages(int bucket) {
+        return bucketMessages.get(bucket);
+    }
+
+    long getCommitNanos(int bucket) {
+        return bucketNanos.get(bucket);
+    }
+
+    private static final class PendingInsert {
+
+        private final Statement statement;
+
+        private final Thread thread = Thread.currentThread();
+
+        private volatile boolean done;
+
+        private SynapseException failure;
+
+        private PendingInsert(Statement statement) {
+            this.statement = statement;
+        }
+
+        private void complete(SynapseException failure) {
+            this.failure = failure;
+            done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.jdbc;
+
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Messages claimed from the head of a JDBC message store by a consumer. Messages are handed out
+ * one at a time in indexId order and the acknowledged ones are deleted together when the batch is
+ * completed. When the rows were selected with a locking statement, the connection holding the
+ * locks is kept with the batch and the deletes run in the same transaction. As the locks block
+ * other consumers of the table, the consumer completes a locked batch early once it has held the
+ * locks for longer than the batch lock timeout of the store.
+ */
+class JDBCMessageBatch {
+
+    /**
+     * A message row read from the store table
+     */
+    static class StoredRow {
+
+        private final long indexId;
+
+        private final String messageId;
+
+        private final byte[] message;
+
+        StoredRow(long indexId, String messageId, byte[] message) {
+            this.indexId = indexId;
+            this.messageId = messageId;
+            this.message = message;
+        }
+
+        long getIndexId() {
+            return indexId;
+        }
+
+        String getMessageId() {
+            return messageId;
+        }
+
+        byte[] getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Connection holding the row locks of the batch, null if the rows are not locked
+     */
+    private final Connection connection;
+
+    private final Deque<StoredRow> rows;
+
+    private final List<Long> acknowledgedIds;
+
+    /**
+     * Time the rows were claimed at, in milliseconds
+     */
+    private final long claimedAt;
+
+    /**
+     * Row handed out to the consumer and not acknowledged yet
+     */
+    private StoredRow current;
+
+    JDBCMessageBatch(Connection connection, List<StoredRow> rows) {
+        this.connection = connection;
+        this.rows = new ArrayDeque<>(rows);
+        this.acknowledgedIds = new ArrayList<>(rows.size());
+        this.claimedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the next row of the batch, which becomes the current row, or null if none is left
+     */
+    StoredRow next() {
+        current = rows.poll();
+        return current;
+    }
+
+    StoredRow getCurrent() {
+        return current;
+    }
+
+    boolean hasNext() {
+        return !rows.isEmpty();
+    }
+
+    /**
+     * Mark the current row as acknowledged, so that it is deleted when the batch is completed
+     *
+     * @return the acknowledged row or null if there was no current row
+     */
+    StoredRow ack() {
+        StoredRow acknowledged = current;
+        if (acknowledged != null) {
+            acknowledgedIds.add(acknowledged.getIndexId());
+            current = null;
+        }
+        return acknowledged;
+    }
+
+    List<Long> getAcknowledgedIds() {
+        return Collections.unmodifiableList(acknowledgedIds);
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Whether the rows of the batch are locked and have been for at least the given time
+     *
+     * @param timeout lock timeout in milliseconds
+     * @param now     current time in milliseconds
+     * @return true if the batch should be completed to release its locks
+     */
+    boolean isLockHeldFor(long timeout, long now) {
+        return connection != null && now - claimedAt >= timeout;
+    }
+}
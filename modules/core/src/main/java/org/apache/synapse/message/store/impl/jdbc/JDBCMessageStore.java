@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
@@ -28,21 +29,23 @@ import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.message.MessageConsumer;
 import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.store.AbstractMessageStore;
+import org.apache.synapse.message.store.MessagePriority;
 import org.apache.synapse.message.store.impl.commons.MessageConverter;
 import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
+import org.apache.synapse.message.store.impl.jdbc.util.BatchFetchStatement;
 import org.apache.synapse.message.store.impl.jdbc.util.JDBCConfiguration;
 import org.apache.synapse.message.store.impl.jdbc.util.Statement;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +62,11 @@ public class JDBCMessageStore extends AbstractMessageStore {
      */
     private JDBCConfiguration jdbcConfiguration;
 
+    /**
+     * Codec of the messages written to the database
+     */
+    private StorableMessageCodec messageCodec = StorableMessageCodec.fromParameters(null);
+
     /**
      * Logger for the class
      */
@@ -72,6 +80,33 @@ public class JDBCMessageStore extends AbstractMessageStore {
     private final AtomicBoolean cleaningFlag = new AtomicBoolean(false);
     protected static final String MESSAGE_COLUMN_NAME = "message";
 
+    /**
+     * Number of messages a consumer claims from the table at once
+     */
+    private int prefetchSize = 1;
+
+    /**
+     * Time in milliseconds a consumer keeps the rows of a claimed batch locked
+     */
+    private int batchLockTimeout = JDBCMessageStoreConstants.JDBC_DEFAULT_BATCH_LOCK_TIMEOUT;
+
+    /**
+     * Whether messages are handed out by priority, which requires an integer priority column
+     */
+    private boolean priorityEnabled;
+
+    /**
+     * Statement claiming a batch of messages, built from the database metadata on first use
+     */
+    private volatile BatchFetchStatement batchFetchStatement;
+
+    /**
+     * Coalesces concurrent inserts into group commits, null if messages are committed one by one
+     */
+    private JDBCGroupCommitter groupCommitter;
+
+    private static final String GROUP_COMMIT_MBEAN_CATEGORY = "MessageStoreGroupCommit";
+
     /**
      * Initializes the JDBC Message Store
      *
@@ -90,6 +125,18 @@ public class JDBCMessageStore extends AbstractMessageStore {
         jdbcConfiguration = new JDBCConfiguration();
         jdbcConfiguration.setSynapseEnvironment(synapseEnvironment);
         jdbcConfiguration.buildDataSource(parameters);
+        messageCodec = StorableMessageCodec.fromParameters(parameters);
+        prefetchSize = readPrefetchSize();
+        batchLockTimeout = readPositiveInt(JDBCMessageStoreConstants.JDBC_CONSUMER_BATCH_LOCK_TIMEOUT,
+                JDBCMessageStoreConstants.JDBC_DEFAULT_BATCH_LOCK_TIMEOUT);
+        priorityEnabled = MessagePriority.isEnabled(parameters);
+        int batchSize = readPositiveInt(JDBCMessageStoreConstants.JDBC_PRODUCER_BATCH_SIZE, 1);
+        if (batchSize > 1) {
+            long window = readPositiveInt(JDBCMessageStoreConstants.JDBC_PRODUCER_BATCH_WINDOW, 0);
+            groupCommitter = new JDBCGroupCommitter(this::processBatchedStatements, batchSize, window);
+            MBeanRegistrar.getInstance().registerMBean(new JDBCGroupCommitView(groupCommitter),
+                    GROUP_COMMIT_MBEAN_CATEGORY, getName());
+        }
 
 //        JDBCMessageConverter.setSynapseEnvironment(synapseEnvironment);
     }
@@ -98,6 +145,58 @@ public class JDBCMessageStore extends AbstractMessageStore {
         return jdbcConfiguration;
     }
 
+    private int readPrefetchSize() {
+        return Math.max(1, readPositiveInt(JDBCMessageStoreConstants.JDBC_CONSUMER_PREFETCH, 1));
+    }
+
+    private int readPositiveInt(String key, int defaultValue) {
+        Object value = parameters != null ? parameters.get(key) : null;
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.toString().trim());
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        logger.warn(getNameString() + " invalid value '" + value + "' for " + key + ", using " + defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Number of messages a consumer of the store claims from the table at once. When this is 1
+     * the consumer peeks the head of the table for each message and removes it on ack.
+     *
+     * @return prefetch size of the consumers
+     */
+    protected int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Time after which a consumer completes a batch whose rows are locked, so that the locks are not
+     * held for the whole delivery of a large batch
+     *
+     * @return batch lock timeout in milliseconds
+     */
+    protected int getBatchLockTimeout() {
+        return batchLockTimeout;
+    }
+
+    /**
+     * Whether the store hands out messages by priority, highest first and in insertion order within
+     * a priority. The table needs an integer {@code priority} column, which should be indexed
+     * together with indexId, e.g. {@code CREATE INDEX priority_idx ON jdbc_store_table (priority, indexId)}.
+     *
+     * @return true if {@link MessagePriority#PRIORITY_ENABLED} is set for the store
+     */
+    protected boolean isPriorityEnabled() {
+        return priorityEnabled;
+    }
+
     /**
      * @see org.apache.synapse.message.store.MessageStore#getProducer()
      */
@@ -136,6 +235,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
         // Rebuild utils after setting new parameters
         if (jdbcConfiguration != null) {
             jdbcConfiguration.buildDataSource(parameters);
+            batchFetchStatement = null;
         }
     }
 
@@ -206,25 +306,15 @@ public class JDBCMessageStore extends AbstractMessageStore {
     protected MessageContext deserializeMessage(byte[] msgObj) {
         MessageContext messageContext = null;
         if (msgObj != null) {
-            ObjectInputStream ios = null;
             try {
-                // Convert back to MessageContext and add to list
-                ios = new ObjectInputStream(new ByteArrayInputStream(msgObj));
-                Object msg = ios.readObject();
-                if (msg instanceof StorableMessage) {
-                    StorableMessage jdbcMsg = (StorableMessage) msg;
-                    org.apache.axis2.context.MessageContext axis2Mc = this.newAxis2Mc();
-                    MessageContext synapseMc = this.newSynapseMc(axis2Mc);
-                    messageContext = MessageConverter.toMessageContext(jdbcMsg, axis2Mc, synapseMc);
-                }
+                // Convert back to MessageContext, messages written with Java serialization are
+                // recognized by the codec as well
+                StorableMessage jdbcMsg = StorableMessageCodec.decode(msgObj);
+                org.apache.axis2.context.MessageContext axis2Mc = this.newAxis2Mc();
+                MessageContext synapseMc = this.newSynapseMc(axis2Mc);
+                messageContext = MessageConverter.toMessageContext(jdbcMsg, axis2Mc, synapseMc);
             } catch (IOException e) {
-                throw new SynapseException("Error reading object input stream", e);
-            } catch (ClassNotFoundException e) {
-                throw new SynapseException("Could not find the class", e);
-            } finally {
-                if (ios != null) {
-                    closeStream(ios);
-                }
+                throw new SynapseException("Error reading the stored message", e);
             }
         } else {
             throw new SynapseException("Retrieved Object is null");
@@ -232,19 +322,6 @@ public class JDBCMessageStore extends AbstractMessageStore {
         return messageContext;
     }
 
-    /**
-     * Closes the object stream after completing the DB operations.
-     *
-     * @param ios stream which should be closed.
-     */
-    private void closeStream(ObjectInputStream ios) {
-        try {
-            ios.close();
-        } catch (IOException e) {
-            logger.error("Error while closing object input stream", e);
-        }
-    }
-
     private org.apache.axis2.context.MessageContext newAxis2Mc() {
         return ((Axis2SynapseEnvironment) synapseEnvironment)
                 .getAxis2ConfigurationContext().createMessageContext();
@@ -287,18 +364,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
             connection.setAutoCommit(false);
             for(Statement statement : statements) {
                 preparedStatement = connection.prepareStatement(statement.getStatement());
-                int index = 1;
-                for (Object param : statement.getParameters()) {
-                    if (param instanceof String) {
-                        preparedStatement.setString(index, (String) param);
-                    } else if (param instanceof Long) {
-                        preparedStatement.setLong(index, (Long) param);
-                    } else if (param instanceof StorableMessage) {
-                        //Serialize the object into byteArray and update the statement
-                        preparedStatement.setBytes(index, serialize(param));
-                    }
-                    index++;
-                }
+                setParameters(preparedStatement, statement);
                 if(logger.isDebugEnabled()){
                     logger.debug("Executing statement:"+preparedStatement);
                 }
@@ -329,7 +395,66 @@ public class JDBCMessageStore extends AbstractMessageStore {
         return result;
     }
 
+    /**
+     * Process statements that do not give a ResultSet as JDBC batches in a single transaction.
+     * Consecutive statements with the same SQL are sent together.
+     *
+     * @param statements - Statements to process
+     */
+    void processBatchedStatements(List<Statement> statements) throws SynapseException {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        String sql = null;
+        try {
+            connection = jdbcConfiguration.getConnection();
+            connection.setAutoCommit(false);
+            for (Statement statement : statements) {
+                if (!statement.getStatement().equals(sql)) {
+                    if (preparedStatement != null) {
+                        preparedStatement.executeBatch();
+                        preparedStatement.close();
+                    }
+                    sql = statement.getStatement();
+                    preparedStatement = connection.prepareStatement(sql);
+                }
+                setParameters(preparedStatement, statement);
+                preparedStatement.addBatch();
+            }
+            if (preparedStatement != null) {
+                preparedStatement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            rollback(connection, "storing a batch of messages");
+            throw new SynapseException("Processing a batch of " + statements.size()
+                    + " statements failed against DataSource : " + jdbcConfiguration.getDSName(), e);
+        } finally {
+            close(connection, preparedStatement, null);
+        }
+    }
+
+    private void setParameters(PreparedStatement preparedStatement, Statement statement)
+            throws SQLException, IOException {
+        int index = 1;
+        for (Object param : statement.getParameters()) {
+            if (param instanceof String) {
+                preparedStatement.setString(index, (String) param);
+            } else if (param instanceof Long) {
+                preparedStatement.setLong(index, (Long) param);
+            } else if (param instanceof Integer) {
+                preparedStatement.setInt(index, (Integer) param);
+            } else if (param instanceof StorableMessage) {
+                //Serialize the object into byteArray and update the statement
+                preparedStatement.setBytes(index, serialize(param));
+            }
+            index++;
+        }
+    }
+
     public byte[] serialize(Object obj) throws IOException {
+        if (obj instanceof StorableMessage) {
+            return messageCodec.encode((StorableMessage) obj);
+        }
         ByteArrayOutputStream b = new ByteArrayOutputStream();
         ObjectOutputStream o = new ObjectOutputStream(b);
         o.writeObject(obj);
@@ -341,6 +466,10 @@ public class JDBCMessageStore extends AbstractMessageStore {
      */
     @Override
     public void destroy() {
+        if (groupCommitter != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(GROUP_COMMIT_MBEAN_CATEGORY, getName());
+            groupCommitter = null;
+        }
         super.destroy();
         jdbcConfiguration = null;
     }
@@ -368,6 +497,9 @@ public class JDBCMessageStore extends AbstractMessageStore {
             }
             ArrayList<Statement> statements = new ArrayList<>();
             Statement statement = getStoreMessageStatement(messageContext, null);
+            if (groupCommitter != null) {
+                return groupCommitter.insert(statement);
+            }
             statements.add(statement);
             return processNonResultingStatement(statements);
         } catch (Exception e) {
@@ -398,7 +530,19 @@ public class JDBCMessageStore extends AbstractMessageStore {
         StorableMessage persistentMessage = MessageConverter.toStorableMessage(messageContext);
         String msgId = persistentMessage.getAxis2message().getMessageID();
         Statement statement;
-        if (null == sequenceId) {
+        if (null == sequenceId && isPriorityEnabled()) {
+            String insertMessageStatement = "INSERT INTO " + jdbcConfiguration.getTableName()
+                    + " (msg_id,priority,message) VALUES (?,?,?)";
+            statement = new Statement(insertMessageStatement) {
+                @Override
+                public List<Map> getResult(ResultSet resultSet) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            statement.addParameter(msgId);
+            statement.addParameter(MessagePriority.of(messageContext));
+            statement.addParameter(persistentMessage);
+        } else if (null == sequenceId) {
             String insertMessageStatement = "INSERT INTO " + jdbcConfiguration.getTableName()
                     + " (msg_id,message) VALUES (?,?)";
             statement = new Statement(insertMessageStatement) {
@@ -432,9 +576,13 @@ public class JDBCMessageStore extends AbstractMessageStore {
      */
     public MessageContext peek() throws SynapseException {
         MessageContext msg;
+        String tableName = jdbcConfiguration.getTableName();
+        String head = isPriorityEnabled()
+                ? "(SELECT min(indexId) from " + tableName + " WHERE priority=(SELECT max(priority) from "
+                        + tableName + "))"
+                : "(SELECT min(indexId) from " + tableName + ")";
         try {
-        Statement statement = new Statement("SELECT message FROM " + jdbcConfiguration.getTableName() +
-                        " WHERE indexId=(SELECT min(indexId) from " + jdbcConfiguration.getTableName() + ")") {
+        Statement statement = new Statement("SELECT message FROM " + tableName + " WHERE indexId=" + head) {
                     @Override
                     public List<Map> getResult(ResultSet resultSet) throws SQLException {
                         return messageContentResultSet(resultSet, this.getStatement());
@@ -515,6 +663,216 @@ public class JDBCMessageStore extends AbstractMessageStore {
         return statements;
     }
 
+    /**
+     * Claim up to the given number of messages from the head of the table, in indexId order. If the
+     * database supports skipping locked rows, the claimed rows stay locked until the batch is
+     * completed so that other consumers of the table do not pick them up. Consumers complete such a
+     * batch once it is locked for longer than {@link #getBatchLockTimeout()}.
+     *
+     * @param size maximum number of messages to claim
+     * @return the claimed messages, the batch is empty if the table is empty
+     * @see #completeMessageBatch(JDBCMessageBatch)
+     */
+    JDBCMessageBatch fetchMessageBatch(int size) throws SynapseException {
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        boolean keepConnection = false;
+        try {
+            con = jdbcConfiguration.getConnection();
+            BatchFetchStatement fetchStatement = batchFetchStatement;
+            if (fetchStatement == null) {
+                fetchStatement = BatchFetchStatement.create(con.getMetaData(), jdbcConfiguration.getTableName(), size,
+                        isPriorityEnabled());
+                batchFetchStatement = fetchStatement;
+                if (logger.isDebugEnabled()) {
+                    logger.debug(getNameString() + " claims messages with : " + fetchStatement.getStatement());
+                }
+            }
+            if (fetchStatement.isLocking()) {
+                con.setAutoCommit(false);
+            }
+            ps = con.prepareStatement(fetchStatement.getStatement());
+            ps.setMaxRows(size);
+            ps.setFetchSize(size);
+            rs = ps.executeQuery();
+            List<JDBCMessageBatch.StoredRow> rows = new ArrayList<>(size);
+            while (rs.next()) {
+                rows.add(new JDBCMessageBatch.StoredRow(rs.getLong("indexId"), rs.getString("msg_id"),
+                        rs.getBytes(MESSAGE_COLUMN_NAME)));
+            }
+            keepConnection = fetchStatement.isLocking() && !rows.isEmpty();
+            if (fetchStatement.isLocking() && rows.isEmpty()) {
+                con.commit();
+            }
+            return new JDBCMessageBatch(keepConnection ? con : null, rows);
+        } catch (SQLException e) {
+            rollback(con, "claiming messages");
+            throw new SynapseException("Claiming messages failed against DataSource : "
+                    + jdbcConfiguration.getDSName(), e);
+        } finally {
+            close(keepConnection ? null : con, ps, rs);
+        }
+    }
+
+    /**
+     * Delete the acknowledged messages of a batch and release the claim on the rest of them, which
+     * will be claimed again from the head of the table.
+     *
+     * @param batch batch claimed with {@link #fetchMessageBatch(int)}
+     */
+    void completeMessageBatch(JDBCMessageBatch batch) throws SynapseException {
+        deleteMessages(batch.getAcknowledgedIds(), batch.getConnection());
+    }
+
+    /**
+     * Claim the first message of the table, in the order messages are handed out, which is not
+     * claimed already. The row is not locked, the claim is kept by the consumer.
+     *
+     * @param claimedIndexIds indexIds of the messages claimed already
+     * @return the claimed message or null if no other message is in the table
+     */
+    JDBCMessageBatch.StoredRow fetchUnclaimedMessage(List<Long> claimedIndexIds) throws SynapseException {
+        StringBuilder query = new StringBuilder("SELECT indexId, msg_id, ").append(MESSAGE_COLUMN_NAME)
+                .append(" FROM ").append(jdbcConfiguration.getTableName());
+        if (!claimedIndexIds.isEmpty()) {
+            query.append(" WHERE indexId NOT IN (")
+                    .append(String.join(",", Collections.nCopies(claimedIndexIds.size(), "?"))).append(')');
+        }
+        query.append(isPriorityEnabled() ? " ORDER BY priority DESC, indexId" : " ORDER BY indexId");
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = jdbcConfiguration.getConnection();
+            ps = con.prepareStatement(query.toString());
+            ps.setMaxRows(1);
+            int index = 1;
+            for (Long indexId : claimedIndexIds) {
+                ps.setLong(index++, indexId);
+            }
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                return new JDBCMessageBatch.StoredRow(rs.getLong("indexId"), rs.getString("msg_id"),
+                        rs.getBytes(MESSAGE_COLUMN_NAME));
+            }
+            return null;
+        } catch (SQLException e) {
+            throw new SynapseException("Claiming a message failed against DataSource : "
+                    + jdbcConfiguration.getDSName(), e);
+        } finally {
+            close(con, ps, rs);
+        }
+    }
+
+    /**
+     * Delete a claimed message
+     *
+     * @param indexId indexId of the message
+     */
+    void deleteClaimedMessage(long indexId) throws SynapseException {
+        deleteMessages(Collections.singletonList(indexId), null);
+    }
+
+    /**
+     * Delete messages by their indexIds and commit
+     *
+     * @param indexIds indexIds of the messages
+     * @param con      connection holding the row locks of the messages, null to use a new connection
+     */
+    private void deleteMessages(List<Long> indexIds, Connection con) throws SynapseException {
+        if (indexIds.isEmpty() && con == null) {
+            return;
+        }
+        PreparedStatement ps = null;
+        boolean cleaningState = false;
+        try {
+            if (cleaningFlag.get()) {
+                try {
+                    removeLock.lock();
+                    cleaningState = true;
+                } catch (Exception ie) {
+                    logger.error("Message Cleanup lock released unexpectedly", ie);
+                }
+            }
+            if (con == null) {
+                con = jdbcConfiguration.getConnection();
+                con.setAutoCommit(false);
+            }
+            for (int from = 0; from < indexIds.size(); from += JDBCMessageStoreConstants.JDBC_MAX_BATCH_DELETE_SIZE) {
+                List<Long> chunk = indexIds.subList(from,
+                        Math.min(indexIds.size(), from + JDBCMessageStoreConstants.JDBC_MAX_BATCH_DELETE_SIZE));
+                StringBuilder delete = new StringBuilder("DELETE FROM ").append(jdbcConfiguration.getTableName())
+                        .append(" WHERE indexId IN (");
+                delete.append(String.join(",", Collections.nCopies(chunk.size(), "?"))).append(')');
+                ps = con.prepareStatement(delete.toString());
+                int index = 1;
+                for (Long indexId : chunk) {
+                    ps.setLong(index++, indexId);
+                }
+                ps.executeUpdate();
+                ps.close();
+                ps = null;
+            }
+            con.commit();
+        } catch (SQLException e) {
+            rollback(con, "deleting acknowledged messages");
+            throw new SynapseException("Deleting " + indexIds.size() + " acknowledged messages failed against "
+                    + "DataSource : " + jdbcConfiguration.getDSName(), e);
+        } finally {
+            close(con, ps, null);
+            if (cleaningState) {
+                removeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Highest priority of the messages in the table, other than the given ones. Acknowledged
+     * messages of a batch are excluded as they stay in the table until the batch is completed.
+     *
+     * @param excludedMessageId message id of the message being processed, may be null
+     * @param excludedIndexIds  indexIds of the acknowledged messages not deleted yet
+     * @return the highest priority or -1 if no other message is in the table
+     */
+    int getWaitingPriority(String excludedMessageId, List<Long> excludedIndexIds) {
+        StringBuilder query = new StringBuilder("SELECT MAX(priority) FROM ")
+                .append(jdbcConfiguration.getTableName()).append(" WHERE 1=1");
+        if (excludedMessageId != null) {
+            query.append(" AND msg_id<>?");
+        }
+        if (!excludedIndexIds.isEmpty()) {
+            query.append(" AND indexId NOT IN (")
+                    .append(String.join(",", Collections.nCopies(excludedIndexIds.size(), "?"))).append(')');
+        }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            con = jdbcConfiguration.getConnection();
+            ps = con.prepareStatement(query.toString());
+            int index = 1;
+            if (excludedMessageId != null) {
+                ps.setString(index++, excludedMessageId);
+            }
+            for (Long indexId : excludedIndexIds) {
+                ps.setLong(index++, indexId);
+            }
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                int priority = rs.getInt(1);
+                return rs.wasNull() ? -1 : priority;
+            }
+            return -1;
+        } catch (SQLException e) {
+            logger.error("Error executing statement : " + query + " against DataSource : "
+                    + jdbcConfiguration.getDSName(), e);
+            return -1;
+        } finally {
+            close(con, ps, rs);
+        }
+    }
+
     /**
      * Delete all entries from table
      */
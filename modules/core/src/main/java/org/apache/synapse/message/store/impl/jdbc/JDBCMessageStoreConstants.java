@@ -60,4 +60,35 @@ public class JDBCMessageStoreConstants {
      * Default name of the database table
      */
     public static final String JDBC_DEFAULT_TABLE_NAME = "jdbc_message_store";
+
+    /**
+     * Number of messages a consumer claims from the table at once, messages are fetched one by one if not set
+     */
+    public static final String JDBC_CONSUMER_PREFETCH = "store.jdbc.consumer.prefetch";
+
+    /**
+     * Time in milliseconds after which a consumer releases the row locks of a claimed batch, deleting the
+     * acknowledged messages and leaving the rest of the batch to be claimed again
+     */
+    public static final String JDBC_CONSUMER_BATCH_LOCK_TIMEOUT = "store.jdbc.consumer.batch.lock.timeout";
+
+    /**
+     * Default batch lock timeout in milliseconds
+     */
+    public static final int JDBC_DEFAULT_BATCH_LOCK_TIMEOUT = 30000;
+
+    /**
+     * Maximum number of acknowledged messages deleted by a single statement
+     */
+    public static final int JDBC_MAX_BATCH_DELETE_SIZE = 500;
+
+    /**
+     * Maximum number of concurrently stored messages committed together, messages are committed one by one if not set
+     */
+    public static final String JDBC_PRODUCER_BATCH_SIZE = "store.jdbc.producer.batch.size";
+
+    /**
+     * Time in milliseconds a group commit waits for more messages before committing, 0 if not set
+     */
+    public static final String JDBC_PRODUCER_BATCH_WINDOW = "store.jdbc.producer.batch.window";
 }
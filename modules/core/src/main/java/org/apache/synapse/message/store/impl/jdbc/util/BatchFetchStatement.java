@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.jdbc.util;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Statement which selects a batch of messages from the head of a JDBC message store table, in
+ * indexId order. Where the database supports it the selected rows are locked and rows locked by
+ * other consumers are skipped, i.e. SELECT ... FOR UPDATE SKIP LOCKED or the equivalent table
+ * hints. Other databases get a plain ordered select. Stores which hand out messages by priority
+ * select in descending priority order first.
+ */
+public class BatchFetchStatement {
+
+    private final String statement;
+
+    private final boolean locking;
+
+    private BatchFetchStatement(String statement, boolean locking) {
+        this.statement = statement;
+        this.locking = locking;
+    }
+
+    /**
+     * Build the statement for the database behind the given connection metadata
+     *
+     * @param metaData  metadata of the database connection
+     * @param tableName name of the message store table
+     * @param batchSize maximum number of rows to select
+     * @return batch fetch statement for the database
+     * @throws SQLException if the database metadata cannot be read
+     */
+    public static BatchFetchStatement create(DatabaseMetaData metaData, String tableName, int batchSize)
+            throws SQLException {
+        return create(metaData, tableName, batchSize, false);
+    }
+
+    /**
+     * Build the statement for the database behind the given connection metadata
+     *
+     * @param metaData   metadata of the database connection
+     * @param tableName  name of the message store table
+     * @param batchSize  maximum number of rows to select
+     * @param byPriority whether rows are selected by descending priority before indexId
+     * @return batch fetch statement for the database
+     * @throws SQLException if the database metadata cannot be read
+     */
+    public static BatchFetchStatement create(DatabaseMetaData metaData, String tableName, int batchSize,
+                                             boolean byPriority) throws SQLException {
+        return create(metaData.getDatabaseProductName(), metaData.getDatabaseProductVersion(),
+                metaData.getDatabaseMajorVersion(), metaData.getDatabaseMinorVersion(), tableName, batchSize,
+                byPriority);
+    }
+
+    /**
+     * Build the statement for the given database product
+     *
+     * @param productName    database product name as reported by the driver
+     * @param productVersion database product version as reported by the driver, may be null
+     * @param major          major version of the database
+     * @param minor          minor version of the database
+     * @param tableName      name of the message store table
+     * @param batchSize      maximum number of rows to select
+     * @return batch fetch statement for the database
+     */
+    public static BatchFetchStatement create(String productName, String productVersion, int major, int minor,
+                                             String tableName, int batchSize) {
+        return create(productName, productVersion, major, minor, tableName, batchSize, false);
+    }
+
+    /**
+     * Build the statement for the given database product
+     *
+     * @param productName    database product name as reported by the driver
+     * @param productVersion database product version as reported by the driver, may be null
+     * @param major          major version of the database
+     * @param minor          minor version of the database
+     * @param tableName      name of the message store table
+     * @param batchSize      maximum number of rows to select
+     * @param byPriority     whether rows are selected by descending priority before indexId
+     * @return batch fetch statement for the database
+     */
+    public static BatchFetchStatement create(String productName, String productVersion, int major, int minor,
+                                             String tableName, int batchSize, boolean byPriority) {
+        String product = productName == null ? "" : productName.toLowerCase(Locale.ENGLISH);
+        String version = productVersion == null ? "" : productVersion.toLowerCase(Locale.ENGLISH);
+        String columns = "indexId,msg_id,message";
+        String orderBy = byPriority ? " ORDER BY priority DESC, indexId" : " ORDER BY indexId";
+        String limited = "SELECT " + columns + " FROM " + tableName + orderBy + " LIMIT " + batchSize;
+
+        if (product.contains("mariadb") || (product.contains("mysql") && version.contains("mariadb"))) {
+            boolean skipLocked = major > 10 || (major == 10 && minor >= 6);
+            return skipLocked ? locking(limited) : new BatchFetchStatement(limited, false);
+        } else if (product.contains("mysql")) {
+            return major >= 8 ? locking(limited) : new BatchFetchStatement(limited, false);
+        } else if (product.contains("postgresql")) {
+            boolean skipLocked = major > 9 || (major == 9 && minor >= 5);
+            return skipLocked ? locking(limited) : new BatchFetchStatement(limited, false);
+        } else if (product.equals("h2")) {
+            return major >= 2 ? locking(limited) : new BatchFetchStatement(limited, false);
+        } else if (product.contains("microsoft sql server")) {
+            return new BatchFetchStatement("SELECT TOP " + batchSize + " " + columns + " FROM " + tableName
+                    + " WITH (UPDLOCK, READPAST, ROWLOCK)" + orderBy, true);
+        } else if (product.contains("oracle")) {
+            // Oracle does not allow a row limit together with FOR UPDATE, rows are limited by the
+            // max rows of the statement and locked as they are fetched
+            return locking("SELECT " + columns + " FROM " + tableName + orderBy);
+        }
+        return new BatchFetchStatement("SELECT " + columns + " FROM " + tableName + orderBy, false);
+    }
+
+    private static BatchFetchStatement locking(String select) {
+        return new BatchFetchStatement(select + " FOR UPDATE SKIP LOCKED", true);
+    }
+
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * @return true if the selected rows stay locked until the transaction of the select ends
+     */
+    public boolean isLocking() {
+        return locking;
+    }
+}
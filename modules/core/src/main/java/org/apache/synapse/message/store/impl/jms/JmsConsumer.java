@@ -28,12 +28,15 @@ import org.apache.synapse.message.processor.MessageProcessorConstants;
 import org.apache.synapse.message.store.Constants;
 import org.apache.synapse.message.store.impl.commons.MessageConverter;
 import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
+import java.io.IOException;
 
 public class JmsConsumer implements MessageConsumer {
 
@@ -57,6 +60,17 @@ public class JmsConsumer implements MessageConsumer {
     /** Did last receive() call cause an error? */
     private boolean isReceiveError;
 
+    /** Number of processed messages acknowledged together */
+    private int ackBatchSize = 1;
+
+    /** Last processed message which is not acknowledged to the provider yet */
+    private Message pendingAck;
+
+    private int pendingAcks;
+
+    /** Whether the last received message was acknowledged */
+    private boolean lastReceivedAcked = true;
+
     /**
      * Boolean to store if the message processor is alive
      */
@@ -92,30 +106,37 @@ public class JmsConsumer implements MessageConsumer {
             try {
                 Message message = consumer.receive(1000);
                 if (message == null) {
+                    // nothing more to process for now, acknowledge what was processed so far
+                    flushAcks();
                     return null;
                 }
-                if (!(message instanceof ObjectMessage)) {
-                    logger.warn("JMS Consumer " + getId() + " did not receive a javax.jms.ObjectMessage");
-                    //we just discard this message as we only store Object messages via JMS Message store
+                if (!(message instanceof BytesMessage) && !(message instanceof ObjectMessage)) {
+                    logger.warn("JMS Consumer " + getId() + " did not receive a javax.jms.BytesMessage" +
+                                " or a javax.jms.ObjectMessage");
+                    //we just discard this message as we only store Bytes or Object messages via JMS Message store
                     message.acknowledge();
+                    pendingAck = null;
+                    pendingAcks = 0;
                     return null;
                 }
-                ObjectMessage msg = (ObjectMessage) message;
-                String messageId = msg.getStringProperty(Constants.OriginalMessageID);
-                if (!(msg.getObject() instanceof StorableMessage)) {
+                String messageId = message.getStringProperty(Constants.OriginalMessageID);
+                StorableMessage storableMessage = readStoredMessage(message);
+                if (storableMessage == null) {
                     logger.warn("JMS Consumer " + getId() + " did not receive a valid message.");
                     message.acknowledge();
+                    pendingAck = null;
+                    pendingAcks = 0;
                     return null;
                 }
 
                 //create a ,essage context back from the stored message
-                StorableMessage storableMessage = (StorableMessage) msg.getObject();
                 org.apache.axis2.context.MessageContext axis2Mc = store.newAxis2Mc();
                 MessageContext synapseMc = store.newSynapseMc(axis2Mc);
                 synapseMc = MessageConverter.toMessageContext(storableMessage, axis2Mc, synapseMc);
 
                 //cache the message
                 updateCache(message, synapseMc, messageId, false);
+                lastReceivedAcked = false;
 
                 if (logger.isDebugEnabled()) {
                     logger.debug(getId() + " Received MessageId:" + messageId + " priority:" + message.getJMSPriority());
@@ -141,13 +162,51 @@ public class JmsConsumer implements MessageConsumer {
     }
 
     public boolean ack() {
-        boolean result = cachedMessage.ack();
+        boolean result;
+        if (ackBatchSize > 1) {
+            // a client acknowledgement covers all the messages received by the session before it
+            pendingAck = cachedMessage.getMessage();
+            lastReceivedAcked = true;
+            result = true;
+            if (pendingAck != null && ++pendingAcks >= ackBatchSize) {
+                result = flushAcks();
+            }
+        } else {
+            result = cachedMessage.ack();
+            lastReceivedAcked = result;
+        }
         if (result) {
             store.dequeued();
         }
         return result;
     }
 
+    /**
+     * Set the number of processed messages acknowledged together. Messages processed since the
+     * last acknowledgement are received again if the consumer fails in between.
+     *
+     * @param ackBatchSize number of messages
+     */
+    public void setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = Math.max(1, ackBatchSize);
+    }
+
+    /**
+     * Acknowledge the processed messages which are not acknowledged to the provider yet. This is
+     * not done while a received message is in process, as it would be acknowledged as well.
+     *
+     * @return false if the acknowledgement failed
+     */
+    private boolean flushAcks() {
+        if (pendingAck == null || !lastReceivedAcked) {
+            return true;
+        }
+        Message message = pendingAck;
+        pendingAck = null;
+        pendingAcks = 0;
+        return acknowledge(message);
+    }
+
     public boolean cleanup() throws SynapseException {
         // cleanup() only releases JMS resources and clears the local handles. It must not change
         // the raw isAlive flag because receive() calls cleanup() after a JMSException and then calls
@@ -156,6 +215,11 @@ public class JmsConsumer implements MessageConsumer {
         if (logger.isDebugEnabled()) {
             logger.debug(getId() + " cleaning up...");
         }
+        if (session != null) {
+            flushAcks();
+        }
+        pendingAck = null;
+        pendingAcks = 0;
         try {
             store.cleanup(connection, session);
             return true;
@@ -268,6 +332,26 @@ public class JmsConsumer implements MessageConsumer {
     private void writeToFileSystem() {
     }
 
+    /*
+     * Reads a message written by the binary codec into a bytes message, or with Java serialization
+     * into an object message. Returns null if the message cannot be read.
+     */
+    private StorableMessage readStoredMessage(Message message) throws JMSException {
+        if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(data);
+            try {
+                return StorableMessageCodec.decode(data);
+            } catch (IOException e) {
+                logger.warn("JMS Consumer " + getId() + " could not read the stored message. " + e.getMessage());
+                return null;
+            }
+        }
+        Object object = ((ObjectMessage) message).getObject();
+        return object instanceof StorableMessage ? (StorableMessage) object : null;
+    }
+
     private void updateCache(Message message, MessageContext synCtx, String messageId, boolean receiveError) {
         isReceiveError = receiveError;
         cachedMessage.setMessage(message);
@@ -297,6 +381,38 @@ public class JmsConsumer implements MessageConsumer {
         return false;
     }
 
+    /**
+     * Acknowledge the given message and the messages received by the session before it
+     *
+     * @param message the message, may be null
+     * @return true if ack is processed successfully. If there was some issue,
+     * we call recover on session will return false
+     */
+    private boolean acknowledge(Message message) {
+        try {
+            if (message != null) {
+                message.acknowledge();
+            }
+        } catch (javax.jms.IllegalStateException e) {
+            logger.warn("JMS Session is in an illegal state. Recovering session.");
+
+            try {
+                getSession().recover();
+                logger.warn("JMS Session recovered.");
+            } catch (JMSException e1) {
+                logger.error("Error occurred while recovering session: "
+                        + e.getLocalizedMessage(), e);
+                return false;
+            }
+            return false;
+        } catch (JMSException e) {
+            logger.error(getId() + " cannot ack last read message. Error:"
+                    + e.getLocalizedMessage(), e);
+            return false;
+        }
+        return true;
+    }
+
     private final class CachedMessage {
         private Message message = null;
         private MessageContext mc = null;
@@ -314,28 +430,7 @@ public class JmsConsumer implements MessageConsumer {
          * we call recover on session will return false
          */
         public boolean ack() {
-            try {
-                if (message != null) {
-                    message.acknowledge();
-                }
-            } catch (javax.jms.IllegalStateException e) {
-                logger.warn("JMS Session is in an illegal state. Recovering session.");
-
-                try {
-                    getSession().recover();
-                    logger.warn("JMS Session recovered.");
-                } catch (JMSException e1) {
-                    logger.error("Error occurred while recovering session: "
-                            + e.getLocalizedMessage(), e);
-                    return false;
-                }
-                return false;
-            } catch (JMSException e) {
-                logger.error(getId() + " cannot ack last read message. Error:"
-                        + e.getLocalizedMessage(), e);
-                return false;
-            }
-            return true;
+            return acknowledge(message);
         }
 
         public Message getMessage() {
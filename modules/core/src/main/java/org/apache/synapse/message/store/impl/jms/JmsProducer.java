@@ -27,8 +27,10 @@ import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.StoreForwardException;
 import org.apache.synapse.message.store.impl.commons.MessageConverter;
 import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 
 import javax.jms.*;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
@@ -82,13 +84,13 @@ public class JmsProducer implements MessageProducer {
         boolean error = false;
         Throwable throwable = null;
         try {
-            ObjectMessage objectMessage = session.createObjectMessage(message);
-            objectMessage.setStringProperty(OriginalMessageID, synCtx.getMessageID());
-            setPriority(producer, objectMessage, message);
+            Message jmsMessage = createMessage(message);
+            jmsMessage.setStringProperty(OriginalMessageID, synCtx.getMessageID());
+            setPriority(producer, jmsMessage, message);
             setJmsProducerProperties(producer, synCtx);
-            setJmsMessageProperties(objectMessage, synCtx);
-            setTransportHeaders(objectMessage,synCtx);
-            producer.send(objectMessage);
+            setJmsMessageProperties(jmsMessage, synCtx);
+            setTransportHeaders(jmsMessage,synCtx);
+            producer.send(jmsMessage);
 
             if (session.getTransacted()) {
                 session.commit();
@@ -212,7 +214,21 @@ public class JmsProducer implements MessageProducer {
         return true;
     }
 
-    private void setPriority(javax.jms.MessageProducer producer, ObjectMessage objectMessage,
+    /*
+     * Creates a bytes message holding the encoded message, or an object message when the store
+     * is configured to use Java serialization
+     */
+    private Message createMessage(StorableMessage message) throws JMSException, IOException {
+        StorableMessageCodec codec = store.getMessageCodec();
+        if (!codec.isBinary()) {
+            return session.createObjectMessage(message);
+        }
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(codec.encode(message));
+        return bytesMessage;
+    }
+
+    private void setPriority(javax.jms.MessageProducer producer, Message jmsMessage,
                              StorableMessage message) {
         if (message.getPriority(DEFAULT_PRIORITY) != Message.DEFAULT_PRIORITY) {
             try {
@@ -258,6 +274,8 @@ public class JmsProducer implements MessageProducer {
             disableMessageId = (Boolean) prop;
         }
         prop = synCtx.getProperty(JMS_PROD_PRIORITY);
+        // the priority of the stored message is kept unless the producer priority is set
+        boolean overridePriority = prop != null;
         int priority = Message.DEFAULT_PRIORITY;
         if (prop instanceof Integer) {
             priority = (Integer) prop;
@@ -269,7 +287,9 @@ public class JmsProducer implements MessageProducer {
             producer.setDisableMessageTimestamp(disableMessageTimestamp);
             producer.setDeliveryMode(deliveryMode);
             producer.setDisableMessageID(disableMessageId);
-            producer.setPriority(priority);
+            if (overridePriority) {
+                producer.setPriority(priority);
+            }
         } catch (JMSException e) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Could not save Producer property: " + e.getLocalizedMessage());
@@ -31,6 +31,7 @@ import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.StoreForwardException;
 import org.apache.synapse.message.store.AbstractMessageStore;
 import org.apache.synapse.message.store.Constants;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 import org.apache.synapse.util.resolver.SecureVaultResolver;
 
 import javax.jms.Connection;
@@ -79,6 +80,8 @@ public class JmsStore extends AbstractMessageStore {
     public static final String QUEUE_PREFIX = "queue.";
     /** Guaranteed delivery status*/
     public static final String GUARANTEED_DELIVERY_ENABLE = "store.producer.guaranteed.delivery.enable";
+    /** Number of processed messages a consumer acknowledges together */
+    public static final String CONSUMER_ACK_BATCH_SIZE = "store.jms.consumer.ack.batch.size";
 
     /** JMS connection properties */
     private final Properties connectionProperties = new Properties();
@@ -114,6 +117,10 @@ public class JmsStore extends AbstractMessageStore {
     private long retryTime = -1;
     /** Guaranteed delivery enable or disable flag */
     private boolean isGuaranteedDeliveryEnable = false;
+    /** Number of processed messages a consumer acknowledges together */
+    private int consumerAckBatchSize = 1;
+    /** Codec of the stored messages, the Java serialization codec sends object messages */
+    private StorableMessageCodec messageCodec = StorableMessageCodec.fromParameters(null);
     /** Preserve session for caching */
     private MessageProducer cachedProducer;
 
@@ -183,6 +190,7 @@ public class JmsStore extends AbstractMessageStore {
     public MessageConsumer getConsumer() throws SynapseException {
         JmsConsumer consumer = new JmsConsumer(this);
         consumer.setId(nextConsumerId());
+        consumer.setAckBatchSize(consumerAckBatchSize);
         try {
             Connection connection = newConnection();
             Session session = newSession(connection, Session.CLIENT_ACKNOWLEDGE, false);
@@ -484,6 +492,10 @@ public class JmsStore extends AbstractMessageStore {
         super.setParameters(parameters);
     }
 
+    public StorableMessageCodec getMessageCodec() {
+        return messageCodec;
+    }
+
     public void setCachedProducer(MessageProducer cachedProducer) {
         this.cachedProducer = cachedProducer;
     }
@@ -536,6 +548,18 @@ public class JmsStore extends AbstractMessageStore {
             isGuaranteedDeliveryEnable = Boolean.valueOf(parameters.get(GUARANTEED_DELIVERY_ENABLE).toString());
         }
 
+        messageCodec = StorableMessageCodec.fromParameters(parameters);
+
+        String ackBatchSize = (String) parameters.get(CONSUMER_ACK_BATCH_SIZE);
+        if (ackBatchSize != null) {
+            try {
+                consumerAckBatchSize = Math.max(1, Integer.parseInt(ackBatchSize.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn(nameString() + ". Invalid " + CONSUMER_ACK_BATCH_SIZE + " value [" + ackBatchSize
+                        + "], acknowledging each message.");
+            }
+        }
+
         String consumerReceiveTimeOut = (String) parameters.get(CONSUMER_TIMEOUT);
         int consumerReceiveTimeOutI = 6000;
         if (consumerReceiveTimeOut != null) {
@@ -21,11 +21,11 @@ package org.apache.synapse.message.store.impl.memory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
-import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.PriorityMessageConsumer;
 
 import java.util.Queue;
 
-public class InMemoryConsumer implements MessageConsumer {
+public class InMemoryConsumer implements PriorityMessageConsumer {
     private static final Log logger = LogFactory.getLog(InMemoryConsumer.class.getName());
     /** */
     private Queue<MessageContext> queue;
@@ -36,25 +36,42 @@ public class InMemoryConsumer implements MessageConsumer {
 
     private MessageContext lastMessage;
 
-    private final Object queueLock;
+    /** Slot of the last message received from a bounded store */
+    private OffHeapMessageQueue.Slot lastSlot;
+
+    /** Whether the last message was released, the next receive then takes the highest priority */
+    private boolean released;
 
     public InMemoryConsumer(InMemoryStore store) {
         this.store = store;
-        this.queueLock = store.getQLock();
     }
 
     public MessageContext receive() {
         MessageContext message;
-        synchronized (queueLock) {
+        OffHeapMessageQueue offHeapQueue = store.getOffHeapQueue();
+        if (offHeapQueue != null) {
+            OffHeapMessageQueue.Slot slot = offHeapQueue.peek();
+            if (slot == null) {
+                message = null;
+            } else if (slot == lastSlot && lastMessage != null) {
+                // not acknowledged yet, no need to build the message again
+                message = lastMessage;
+            } else {
+                message = store.decode(offHeapQueue.read(slot));
+            }
+            lastSlot = slot;
+        } else if (released && queue instanceof PriorityLaneQueue) {
+            message = ((PriorityLaneQueue<MessageContext>) queue).peekHighest();
+        } else {
             message = queue.peek();
-            if (logger.isDebugEnabled()) {
-                if (message != null) {
-                    logger.debug(getId() + " received MessageID : " + message.getMessageID());
-                }
+        }
+        released = false;
+        if (logger.isDebugEnabled()) {
+            if (message != null) {
+                logger.debug(getId() + " received MessageID : " + message.getMessageID());
             }
-            lastMessage = message;
-
         }
+        lastMessage = message;
         return message;
     }
 
@@ -62,13 +79,39 @@ public class InMemoryConsumer implements MessageConsumer {
         if (logger.isDebugEnabled() && lastMessage != null) {
             logger.debug(getId() + " ack");
         }
-        synchronized (queueLock) {
-            Object o = queue.poll();
-            if (o != null) {
-                store.dequeued();
-            }
-            lastMessage = null;
+        // only the received message is removed, it may not be at the head of the queue anymore
+        boolean removed;
+        OffHeapMessageQueue offHeapQueue = store.getOffHeapQueue();
+        if (offHeapQueue != null) {
+            removed = lastSlot != null && offHeapQueue.remove(lastSlot);
+        } else {
+            removed = lastMessage != null && queue.remove(lastMessage);
+        }
+        if (removed) {
+            store.dequeued();
+        }
+        lastMessage = null;
+        lastSlot = null;
+        return true;
+    }
+
+    public int getWaitingPriority() {
+        if (queue instanceof PriorityLaneQueue && store.getOffHeapQueue() == null) {
+            return ((PriorityLaneQueue<MessageContext>) queue).highestPriorityExcept(lastMessage);
+        }
+        return -1;
+    }
+
+    public boolean release() {
+        if (!(queue instanceof PriorityLaneQueue) || lastMessage == null) {
+            return false;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(getId() + " released MessageID : " + lastMessage.getMessageID());
         }
+        lastMessage = null;
+        lastSlot = null;
+        released = true;
         return true;
     }
 
@@ -34,18 +34,18 @@ public class InMemoryProducer implements MessageProducer {
     /** */
     private String idString;
 
-    private final Object queueLock;
-
     public InMemoryProducer(InMemoryStore store) {
         this.store = store;
-        this.queueLock = store.getQLock();
     }
 
     public boolean storeMessage(MessageContext synCtx) {
         boolean result = false;
         if (synCtx != null) {
             synCtx.getEnvelope().buildWithAttachments();
-            synchronized (queueLock) {
+            OffHeapMessageQueue offHeapQueue = store.getOffHeapQueue();
+            if (offHeapQueue != null) {
+                result = offHeapQueue.offer(synCtx.getMessageID(), store.encode(synCtx));
+            } else {
                 result = queue.offer(synCtx);
             }
             if (!result) {
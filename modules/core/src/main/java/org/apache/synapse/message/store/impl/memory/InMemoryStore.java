@@ -16,18 +16,31 @@
  * under the License.
  */
 
+
 package org.apache.synapse.message.store.impl.memory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.message.MessageConsumer;
 import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.store.AbstractMessageStore;
 import org.apache.synapse.message.store.Constants;
+import org.apache.synapse.message.store.MessagePriority;
+import org.apache.synapse.message.store.impl.commons.MessageConverter;
+import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
@@ -36,10 +49,37 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class InMemoryStore extends AbstractMessageStore {
     private static final Log logger = LogFactory.getLog(InMemoryStore.class.getName());
 
+    /** Size of the off-heap ring in bytes, the store is bounded when it is set */
+    public static final String RING_SIZE = "store.memory.ring.size";
+
+    /** Directory of the files messages are spilled to when the ring is full */
+    public static final String SPILL_DIRECTORY = "store.memory.spill.directory";
+
+    /** Size of a spill segment file in bytes */
+    public static final String SPILL_SEGMENT_SIZE = "store.memory.spill.segment.size";
+
+    /** Maximum number of bytes of spilled messages, the store rejects messages beyond it */
+    public static final String SPILL_MAX_SIZE = "store.memory.spill.max.size";
+
+    /**
+     * Comma separated weights of the priority lanes, from the lowest priority to the highest. Lanes
+     * are served in proportion to their weights when priority consumption is enabled.
+     */
+    public static final String PRIORITY_WEIGHTS = "store.memory.priority.weights";
+
+    private static final int DEFAULT_SPILL_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String MBEAN_CATEGORY = "MessageStoreMemory";
+
     private Queue<MessageContext> queue = new ConcurrentLinkedQueue<MessageContext>();
 
     private final Object queueLock = new Object();
 
+    /** Serialized messages of a bounded store, null when messages are kept on the heap */
+    private OffHeapMessageQueue offHeapQueue;
+
+    private StorableMessageCodec messageCodec;
+
     public MessageProducer getProducer() {
         InMemoryProducer producer = new InMemoryProducer(this);
         producer.setId(nextProducerId());
@@ -65,14 +105,17 @@ public class InMemoryStore extends AbstractMessageStore {
     }
 
     public int size() {
-        synchronized (queueLock) {
-            return queue.size();
-        }
+        return offHeapQueue != null ? offHeapQueue.size() : queue.size();
     }
 
     public MessageContext remove() throws NoSuchElementException {
         MessageContext message;
-        synchronized (queueLock) {
+        if (offHeapQueue != null) {
+            message = removeSlot(offHeapQueue.peek());
+            if (message == null) {
+                throw new NoSuchElementException();
+            }
+        } else {
             message = queue.remove();
         }
         if (message != null) {
@@ -85,9 +128,16 @@ public class InMemoryStore extends AbstractMessageStore {
     }
 
     public void clear() {
-        synchronized (queueLock) {
-            while (!queue.isEmpty()) {
-                remove();
+        if (offHeapQueue != null) {
+            OffHeapMessageQueue.Slot slot;
+            while ((slot = offHeapQueue.peek()) != null) {
+                if (offHeapQueue.remove(slot)) {
+                    dequeued();
+                }
+            }
+        } else {
+            while (queue.poll() != null) {
+                dequeued();
             }
         }
         if (logger.isDebugEnabled()) {
@@ -96,61 +146,69 @@ public class InMemoryStore extends AbstractMessageStore {
     }
 
     public MessageContext remove(final String messageID) {
-        MessageContext message = null;
-        synchronized (queueLock) {
-            for (MessageContext m : queue) {
-                if (m.getMessageID().equals(messageID)) {
-                    message = m;
-                    break;
-                }
-            }
-            if (message != null) {
-                boolean result = queue.remove(message);
-                if (logger.isDebugEnabled()) {
-                    logger.debug(nameString() + " removed MessageID:" + message.getMessageID() + " => " + result);
-                }
+        if (offHeapQueue != null) {
+            return removeSlot(findSlot(messageID));
+        }
+        MessageContext message = get(messageID);
+        if (message != null) {
+            boolean result = queue.remove(message);
+            if (logger.isDebugEnabled()) {
+                logger.debug(nameString() + " removed MessageID:" + message.getMessageID() + " => " + result);
             }
         }
         return message;
     }
 
     public MessageContext get(final int index) {
-        if (index < 0 || index >= queue.size()) {
+        if (index < 0 || index >= size()) {
             return null;
         }
-        MessageContext message = null;
-        synchronized (queueLock) {
+        if (offHeapQueue != null) {
             int i = 0;
-            for (MessageContext m : queue) {
+            for (Iterator<OffHeapMessageQueue.Slot> it = offHeapQueue.iterator(); it.hasNext(); ++i) {
+                OffHeapMessageQueue.Slot slot = it.next();
                 if (i == index) {
-                    message = m;
-                    break;
+                    return decode(offHeapQueue.read(slot));
                 }
-                ++i;
             }
+            return null;
+        }
+        int i = 0;
+        for (MessageContext m : queue) {
+            if (i == index) {
+                return m;
+            }
+            ++i;
         }
-        return message;
+        return null;
     }
 
     public List<MessageContext> getAll() {
         List<MessageContext> list = new ArrayList<MessageContext>();
-        synchronized (queueLock) {
+        if (offHeapQueue != null) {
+            for (Iterator<OffHeapMessageQueue.Slot> it = offHeapQueue.iterator(); it.hasNext(); ) {
+                MessageContext message = decode(offHeapQueue.read(it.next()));
+                if (message != null) {
+                    list.add(message);
+                }
+            }
+        } else {
             list.addAll(queue);
         }
         return list;
     }
 
     public MessageContext get(String messageId) {
-        MessageContext message = null;
-        synchronized (queueLock) {
-            for (MessageContext m : queue) {
-                if (m.getMessageID().equals(messageId)) {
-                    message = m;
-                    break;
-                }
+        if (offHeapQueue != null) {
+            OffHeapMessageQueue.Slot slot = findSlot(messageId);
+            return slot != null ? decode(offHeapQueue.read(slot)) : null;
+        }
+        for (MessageContext m : queue) {
+            if (m.getMessageID().equals(messageId)) {
+                return m;
             }
         }
-        return message;
+        return null;
     }
 
     public void init(SynapseEnvironment se) {
@@ -159,6 +217,33 @@ public class InMemoryStore extends AbstractMessageStore {
             return;
         }
         super.init(se);
+        long ringSize = readSize(RING_SIZE, -1);
+        if (ringSize > 0) {
+            Object directory = parameters.get(SPILL_DIRECTORY);
+            File spillDirectory = directory != null ? new File(directory.toString().trim()) :
+                    new File(System.getProperty("java.io.tmpdir"), "synapse-store-" + getName());
+            offHeapQueue = new OffHeapMessageQueue((int) Math.min(ringSize, Integer.MAX_VALUE),
+                    spillDirectory,
+                    (int) Math.min(readSize(SPILL_SEGMENT_SIZE, DEFAULT_SPILL_SEGMENT_SIZE), Integer.MAX_VALUE),
+                    readSize(SPILL_MAX_SIZE, -1));
+            messageCodec = StorableMessageCodec.fromParameters(parameters);
+            MBeanRegistrar.getInstance().registerMBean(new InMemoryStoreView(offHeapQueue),
+                    MBEAN_CATEGORY, getName());
+            logger.info(nameString() + " keeps up to " + ringSize + " bytes of messages off-heap and spills to "
+                    + spillDirectory);
+        }
+        if (MessagePriority.isEnabled(parameters)) {
+            if (offHeapQueue != null) {
+                logger.warn(nameString() + " does not order messages by priority when they are kept off-heap");
+            } else {
+                queue = new PriorityLaneQueue<MessageContext>(readWeights()) {
+                    int priorityOf(MessageContext synCtx) {
+                        return MessagePriority.of(synCtx);
+                    }
+                };
+                logger.info(nameString() + " hands out messages by priority");
+            }
+        }
         logger.info("Initialized " + nameString() + "...");
     }
 
@@ -167,13 +252,132 @@ public class InMemoryStore extends AbstractMessageStore {
         if (logger.isDebugEnabled()) {
             logger.debug("Destroying " + nameString() + "...");
         }
+        if (offHeapQueue != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, getName());
+            offHeapQueue.close();
+            offHeapQueue = null;
+        }
         super.destroy();
     }
 
+    /**
+     * @deprecated the queue of the store is lock free, the lock is not used by the store anymore
+     */
+    @Deprecated
     public Object getQLock() {
         return queueLock;
     }
 
+    /**
+     * @return the off-heap queue of a bounded store, null if messages are kept on the heap
+     */
+    OffHeapMessageQueue getOffHeapQueue() {
+        return offHeapQueue;
+    }
+
+    /**
+     * Serialize a message to be kept off-heap
+     *
+     * @param synCtx message to be serialized
+     * @return serialized message
+     */
+    byte[] encode(MessageContext synCtx) {
+        try {
+            StorableMessage message = MessageConverter.toStorableMessage(synCtx);
+            return messageCodec.encode(message);
+        } catch (IOException e) {
+            throw new SynapseException("Error serializing the message " + synCtx.getMessageID(), e);
+        }
+    }
+
+    /**
+     * Build a message from its serialized form
+     *
+     * @param data serialized message, null if the message was removed while it was read
+     * @return the message context, or null if there is no data
+     */
+    MessageContext decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            StorableMessage message = StorableMessageCodec.decode(data);
+            org.apache.axis2.context.MessageContext axis2Mc = ((Axis2SynapseEnvironment) synapseEnvironment)
+                    .getAxis2ConfigurationContext().createMessageContext();
+            SynapseConfiguration configuration = synapseEnvironment.getSynapseConfiguration();
+            MessageContext synapseMc = new Axis2MessageContext(axis2Mc, configuration, synapseEnvironment);
+            return MessageConverter.toMessageContext(message, axis2Mc, synapseMc);
+        } catch (IOException e) {
+            throw new SynapseException("Error reading the stored message", e);
+        }
+    }
+
+    private OffHeapMessageQueue.Slot findSlot(String messageId) {
+        for (Iterator<OffHeapMessageQueue.Slot> it = offHeapQueue.iterator(); it.hasNext(); ) {
+            OffHeapMessageQueue.Slot slot = it.next();
+            if (slot.getMessageId().equals(messageId)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private MessageContext removeSlot(OffHeapMessageQueue.Slot slot) {
+        if (slot == null) {
+            return null;
+        }
+        // the bytes have to be read before the space is given back
+        byte[] data = offHeapQueue.read(slot);
+        if (data == null || !offHeapQueue.remove(slot)) {
+            return null;
+        }
+        return decode(data);
+    }
+
+    private long readSize(String key, long defaultValue) {
+        Object value = parameters != null ? parameters.get(key) : null;
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            logger.warn(nameString() + " invalid value " + value + " for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private int[] readWeights() {
+        int[] weights = new int[MessagePriority.HIGHEST - MessagePriority.LOWEST + 1];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i + 1;
+        }
+        Object value = parameters.get(PRIORITY_WEIGHTS);
+        if (value == null) {
+            return weights;
+        }
+        String[] tokens = value.toString().split(",");
+        if (tokens.length != weights.length) {
+            logger.warn(nameString() + " expects " + weights.length + " values for " + PRIORITY_WEIGHTS
+                    + ", using the default weights");
+            return weights;
+        }
+        int[] configured = new int[weights.length];
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                configured[i] = Integer.parseInt(tokens[i].trim());
+                if (configured[i] <= 0) {
+                    throw new NumberFormatException(tokens[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.warn(nameString() + " invalid value " + value + " for " + PRIORITY_WEIGHTS
+                    + ", using the default weights");
+            return weights;
+        }
+        return configured;
+    }
+
     private String nameString() {
         return "Store [" + getName() + "]";
     }
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+/**
+ * Exposes the occupancy of a bounded in-memory message store
+ */
+public class InMemoryStoreView implements InMemoryStoreViewMBean {
+
+    private final OffHeapMessageQueue queue;
+
+    InMemoryStoreView(OffHeapMessageQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public int getMessageCount() {
+        return queue.size();
+    }
+
+    @Override
+    public int getRingCapacityBytes() {
+        return queue.getCapacity();
+    }
+
+    @Override
+    public long getRingUsedBytes() {
+        return queue.getRingBytes();
+    }
+
+    @Override
+    public int getSpilledMessageCount() {
+        return queue.getSpilledMessages();
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return queue.getSpilledBytes();
+    }
+
+    @Override
+    public long getTotalSpilledMessages() {
+        return queue.getTotalSpilledMessages();
+    }
+
+    @Override
+    public int getSpillSegmentsCreated() {
+        return queue.getSpillSegments();
+    }
+
+    @Override
+    public long getRejectedMessages() {
+        return queue.getRejectedMessages();
+    }
+}
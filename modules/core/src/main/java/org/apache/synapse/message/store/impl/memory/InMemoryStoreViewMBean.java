@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+/**
+ * Occupancy of the off-heap ring and the spill files of a bounded in-memory message store
+ */
+public interface InMemoryStoreViewMBean {
+
+    int getMessageCount();
+
+    int getRingCapacityBytes();
+
+    long getRingUsedBytes();
+
+    int getSpilledMessageCount();
+
+    long getSpilledBytes();
+
+    long getTotalSpilledMessages();
+
+    int getSpillSegmentsCreated();
+
+    /**
+     * @return number of messages rejected because the spill files reached their maximum size
+     */
+    long getRejectedMessages();
+}
@@ -0,0 +1,473 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded FIFO of serialized messages kept off the heap. Messages are written to a direct byte
+ * buffer used as a ring, and to segment files once the ring is full. The heap only holds a small
+ * slot per message recording where its bytes are.
+ * <p/>
+ * Segment files are read and written through positional file channel operations rather than
+ * memory mapped, so that the file of a segment can be closed and deleted as soon as it is
+ * drained, without waiting for a mapping to be garbage collected.
+ * <p/>
+ * Space in the ring is reserved by advancing the tail with a compare-and-set, and given back by
+ * moving the head up to the oldest message still in the ring, so the ring is reused as messages
+ * are consumed even if they are removed out of order. Segment files are appended to in the same
+ * way and deleted once every message written to them is removed. The order of delivery is the
+ * order of the slots, wherever the bytes are kept. Segment files are scratch space of the running
+ * server, they are not recovered after a restart.
+ */
+class OffHeapMessageQueue {
+
+    private static final Log log = LogFactory.getLog(OffHeapMessageQueue.class);
+
+    /**
+     * Location of a message in the ring or in a spill segment
+     */
+    static final class Slot {
+
+        private final String messageId;
+
+        private final long position;
+
+        private final int length;
+
+        private final SpillSegment segment;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Slot(String messageId, long position, int length, SpillSegment segment) {
+            this.messageId = messageId;
+            this.position = position;
+            this.length = length;
+            this.segment = segment;
+        }
+
+        String getMessageId() {
+            return messageId;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        boolean isSpilled() {
+            return segment != null;
+        }
+    }
+
+    private static final class SpillSegment {
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        private final int capacity;
+
+        private final AtomicInteger writePosition = new AtomicInteger();
+
+        private final AtomicInteger live = new AtomicInteger();
+
+        private final AtomicBoolean deleted = new AtomicBoolean();
+
+        private volatile boolean sealed;
+
+        private SpillSegment(File file, FileChannel channel, int capacity) {
+            this.file = file;
+            this.channel = channel;
+            this.capacity = capacity;
+        }
+
+        private int reserve(int length) {
+            while (true) {
+                int position = writePosition.get();
+                if (position + length > capacity) {
+                    return -1;
+                }
+                if (writePosition.compareAndSet(position, position + length)) {
+                    return position;
+                }
+            }
+        }
+
+        private void releaseRecord() {
+            if (live.decrementAndGet() == 0 && sealed) {
+                delete();
+            }
+        }
+
+        private void seal() {
+            sealed = true;
+            if (live.get() == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            if (!deleted.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing the spill segment " + file, e);
+            }
+            if (!file.delete()) {
+                log.warn("Could not delete the spill segment " + file);
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private final ByteBuffer ring;
+
+    private final int capacity;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Messages in the ring by position, the first one holds the head back
+     */
+    private final ConcurrentSkipListMap<Long, Slot> ringSlots = new ConcurrentSkipListMap<>();
+
+    private final Queue<Slot> slots = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final File spillDirectory;
+
+    private final int segmentSize;
+
+    private final long maxSpillBytes;
+
+    private volatile SpillSegment currentSegment;
+
+    private final Object rolloverLock = new Object();
+
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    private final AtomicInteger spilledMessages = new AtomicInteger();
+
+    private final AtomicLong totalSpilledMessages = new AtomicLong();
+
+    private final AtomicInteger spillSegments = new AtomicInteger();
+
+    private final AtomicLong rejectedMessages = new AtomicLong();
+
+    /**
+     * @param capacity       size of the off-heap ring in bytes
+     * @param spillDirectory directory of the spill segment files
+     * @param segmentSize    size of a spill segment file in bytes
+     * @param maxSpillBytes  maximum number of bytes of spilled messages, -1 for no limit
+     */
+    OffHeapMessageQueue(int capacity, File spillDirectory, int segmentSize, long maxSpillBytes) {
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity);
+        this.spillDirectory = spillDirectory;
+        this.segmentSize = segmentSize;
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    /**
+     * Append a serialized message
+     *
+     * @param messageId id of the message
+     * @param data      serialized message
+     * @return false if neither the ring nor the spill files can take the message
+     */
+    boolean offer(String messageId, byte[] data) {
+        Slot slot = writeToRing(messageId, data);
+        if (slot == null) {
+            slot = writeToSpill(messageId, data);
+            if (slot == null) {
+                rejectedMessages.incrementAndGet();
+                return false;
+            }
+        }
+        slots.add(slot);
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the first message in the queue, or null if the queue is empty
+     */
+    Slot peek() {
+        return slots.peek();
+    }
+
+    /**
+     * Remove the given message and give its space back
+     *
+     * @param slot slot of the message
+     * @return false if the message was already removed
+     */
+    boolean remove(Slot slot) {
+        if (!slot.released.compareAndSet(false, true)) {
+            return false;
+        }
+        slots.remove(slot);
+        size.decrementAndGet();
+        if (slot.segment == null) {
+            ringSlots.remove(slot.position, slot);
+            reclaim();
+        } else {
+            spilledBytes.addAndGet(-slot.length);
+            spilledMessages.decrementAndGet();
+            slot.segment.releaseRecord();
+        }
+        return true;
+    }
+
+    /**
+     * Read the serialized form of a message
+     *
+     * @param slot slot of the message
+     * @return bytes of the message, or null if the message was removed while it was read
+     */
+    byte[] read(Slot slot) {
+        byte[] data = new byte[slot.length];
+        if (slot.segment != null) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                long position = slot.position;
+                while (buffer.hasRemaining()) {
+                    int read = slot.segment.channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of the spill segment " + slot.segment.file);
+                    }
+                    position += read;
+                }
+            } catch (IOException e) {
+                if (slot.released.get()) {
+                    // the segment was deleted once the message was removed
+                    return null;
+                }
+                throw new IllegalStateException("Could not read the message " + slot.messageId +
+                        " from the spill segment " + slot.segment.file, e);
+            }
+        } else {
+            int offset = (int) (slot.position % capacity);
+            int first = Math.min(slot.length, capacity - offset);
+            ByteBuffer view = ring.duplicate();
+            view.position(offset);
+            view.get(data, 0, first);
+            if (first < slot.length) {
+                view.position(0);
+                view.get(data, first, slot.length - first);
+            }
+            // once removed, the head can pass the slot and a later offer can overwrite its bytes,
+            // so the copy is only valid if the slot was still in use after it was taken
+            VarHandle.acquireFence();
+            if (slot.released.get()) {
+                return null;
+            }
+        }
+        return data;
+    }
+
+    Iterator<Slot> iterator() {
+        return slots.iterator();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    void clear() {
+        Slot slot;
+        while ((slot = slots.peek()) != null) {
+            remove(slot);
+        }
+    }
+
+    /**
+     * Drop all the messages and delete the spill files
+     */
+    void close() {
+        clear();
+        synchronized (rolloverLock) {
+            if (currentSegment != null) {
+                currentSegment.seal();
+                currentSegment = null;
+            }
+        }
+    }
+
+    private Slot writeToRing(String messageId, byte[] data) {
+        int length = data.length;
+        if (length > capacity) {
+            return null;
+        }
+        while (true) {
+            long position = tail.get();
+            if (position + length - head.get() > capacity) {
+                reclaim();
+                if (position + length - head.get() > capacity) {
+                    return null;
+                }
+            }
+            // the slot is visible before the space is reserved, so that the head cannot pass it
+            Slot slot = new Slot(messageId, position, length, null);
+            if (ringSlots.putIfAbsent(position, slot) != null) {
+                continue;
+            }
+            if (!tail.compareAndSet(position, position + length)) {
+                ringSlots.remove(position, slot);
+                continue;
+            }
+            int offset = (int) (position % capacity);
+            int first = Math.min(length, capacity - offset);
+            ByteBuffer view = ring.duplicate();
+            view.position(offset);
+            view.put(data, 0, first);
+            if (first < length) {
+                view.position(0);
+                view.put(data, first, length - first);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Move the head up to the oldest message left in the ring
+     */
+    private void reclaim() {
+        // read the tail first, a slot reserved after this read is at or beyond it
+        long limit = tail.get();
+        Map.Entry<Long, Slot> oldest = ringSlots.firstEntry();
+        long newHead = oldest == null ? limit : Math.min(oldest.getKey(), limit);
+        long current;
+        while (newHead > (current = head.get())) {
+            if (head.compareAndSet(current, newHead)) {
+                return;
+            }
+        }
+    }
+
+    private Slot writeToSpill(String messageId, byte[] data) {
+        int length = data.length;
+        if (maxSpillBytes >= 0 && spilledBytes.get() + length > maxSpillBytes) {
+            return null;
+        }
+        while (true) {
+            SpillSegment segment = currentSegment;
+            if (segment != null) {
+                segment.live.incrementAndGet();
+                int position = segment.reserve(length);
+                if (position >= 0) {
+                    try {
+                        ByteBuffer buffer = ByteBuffer.wrap(data);
+                        long offset = position;
+                        while (buffer.hasRemaining()) {
+                            offset += segment.channel.write(buffer, offset);
+                        }
+                    } catch (IOException e) {
+                        log.error("Could not write to the spill segment " + segment.file, e);
+                        segment.releaseRecord();
+                        return null;
+                    }
+                    spilledBytes.addAndGet(length);
+                    spilledMessages.incrementAndGet();
+                    totalSpilledMessages.incrementAndGet();
+                    return new Slot(messageId, position, length, segment);
+                }
+                segment.releaseRecord();
+            }
+            synchronized (rolloverLock) {
+                if (currentSegment == segment) {
+                    SpillSegment next = newSegment(Math.max(segmentSize, length));
+                    if (next == null) {
+                        return null;
+                    }
+                    if (segment != null) {
+                        segment.seal();
+                    }
+                    currentSegment = next;
+                }
+            }
+        }
+    }
+
+    private SpillSegment newSegment(int size) {
+        try {
+            if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+                throw new IOException("Cannot create directory " + spillDirectory);
+            }
+            File file = File.createTempFile("spill-", ".seg", spillDirectory);
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            spillSegments.incrementAndGet();
+            return new SpillSegment(file, channel, size);
+        } catch (IOException e) {
+            log.error("Could not create a spill segment in " + spillDirectory, e);
+            return null;
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getRingBytes() {
+        reclaim();
+        return tail.get() - head.get();
+    }
+
+    long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    int getSpilledMessages() {
+        return spilledMessages.get();
+    }
+
+    long getTotalSpilledMessages() {
+        return totalSpilledMessages.get();
+    }
+
+    int getSpillSegments() {
+        return spillSegments.get();
+    }
+
+    long getRejectedMessages() {
+        return rejectedMessages.get();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue with a FIFO lane per message priority. Lanes are served by stride scheduling, every lane
+ * gets a share of the removals proportional to its weight so that a backlog of urgent messages
+ * does not starve the lower lanes. A lane which was empty joins at the current virtual time, it is
+ * not credited for the time it was idle. Ties are broken in favour of the higher priority.
+ * <p/>
+ * The head of the queue moves when an element is removed, and when an element is offered to a lane
+ * which then comes before the lane of the head, e.g. an idle lane of a higher priority. Consumers
+ * must hence remove the element they peeked by {@link #remove(Object)} rather than polling the
+ * head. Offering is lock free, choosing and removing the head is serialized.
+ */
+abstract class PriorityLaneQueue<E> extends AbstractQueue<E> {
+
+    private static final long STRIDE_UNIT = 1L << 20;
+
+    private final ConcurrentLinkedQueue<E>[] lanes;
+
+    private final long[] strides;
+
+    private final long[] passes;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private long virtualTime;
+
+    /**
+     * @param weights weight of each lane, the index being the priority
+     */
+    @SuppressWarnings("unchecked")
+    PriorityLaneQueue(int[] weights) {
+        lanes = new ConcurrentLinkedQueue[weights.length];
+        strides = new long[weights.length];
+        passes = new long[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) {
+                throw new IllegalArgumentException("Weight of priority " + i + " must be positive");
+            }
+            lanes[i] = new ConcurrentLinkedQueue<E>();
+            strides[i] = STRIDE_UNIT / weights[i];
+        }
+    }
+
+    /**
+     * @param e an element of the queue
+     * @return priority of the element, the index of its lane
+     */
+    abstract int priorityOf(E e);
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        int priority = Math.max(0, Math.min(lanes.length - 1, priorityOf(e)));
+        lanes[priority].offer(e);
+        size.incrementAndGet();
+        return true;
+    }
+
+    public synchronized E peek() {
+        int lane = nextLane();
+        return lane < 0 ? null : lanes[lane].peek();
+    }
+
+    public synchronized E poll() {
+        int lane = nextLane();
+        if (lane < 0) {
+            return null;
+        }
+        long headPass = Math.max(passes[lane], virtualTime);
+        E e = lanes[lane].poll();
+        if (e != null) {
+            removed(lane, headPass);
+        }
+        return e;
+    }
+
+    public synchronized boolean remove(Object o) {
+        int head = nextLane();
+        if (head < 0) {
+            return false;
+        }
+        long headPass = Math.max(passes[head], virtualTime);
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            if (lanes[i].remove(o)) {
+                removed(i, headPass);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Iterates the lanes from the highest priority to the lowest, the order is not the order of
+     * removal. Removing through the iterator does not advance the lanes.
+     */
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int lane = lanes.length - 1;
+            private Iterator<E> current = lanes[lane].iterator();
+
+            public boolean hasNext() {
+                while (!current.hasNext() && lane > 0) {
+                    current = lanes[--lane].iterator();
+                }
+                return current.hasNext();
+            }
+
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            public void remove() {
+                current.remove();
+                size.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * @return the oldest element of the highest priority, regardless of the share of its lane
+     */
+    E peekHighest() {
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            E e = lanes[i].peek();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param excluded element which is not counted, may be null
+     * @return the highest priority of the elements other than the given one, -1 if there are none
+     */
+    int highestPriorityExcept(Object excluded) {
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            for (E e : lanes[i]) {
+                if (e != excluded) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int nextLane() {
+        int next = -1;
+        long nextPass = Long.MAX_VALUE;
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            if (!lanes[i].isEmpty()) {
+                long pass = Math.max(passes[i], virtualTime);
+                if (pass < nextPass) {
+                    next = i;
+                    nextPass = pass;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Charges the lane an element was removed from. The virtual time only moves up to the pass of
+     * the head lane, so removing an element out of turn does not push the other lanes back.
+     */
+    private void removed(int lane, long headPass) {
+        size.decrementAndGet();
+        passes[lane] = Math.max(passes[lane], virtualTime) + strides[lane];
+        virtualTime = headPass;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks the publisher confirms of a channel in confirm mode, so that several producers can have
+ * messages in flight on the channel at the same time. Each producer waits only for the confirm of
+ * its own message instead of waiting for all the outstanding confirms of the channel, and a
+ * confirm of multiple messages releases all the producers it covers.
+ */
+class PublisherConfirms implements ConfirmListener, ShutdownListener {
+
+    /**
+     * Publishes a single message on the channel
+     */
+    interface Publisher {
+        void publish() throws IOException;
+    }
+
+    private final Channel channel;
+
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Boolean>> outstanding =
+            new ConcurrentSkipListMap<Long, CompletableFuture<Boolean>>();
+
+    /** Pairs the sequence number with the publish of a message */
+    private final Object publishLock = new Object();
+
+    PublisherConfirms(Channel channel) throws IOException {
+        this.channel = channel;
+        channel.confirmSelect();
+        channel.addConfirmListener(this);
+        channel.addShutdownListener(this);
+    }
+
+    /**
+     * Publish a message and wait until the broker confirms it
+     *
+     * @param publisher publishes the message
+     * @param timeout   maximum time to wait in milliseconds, 0 to wait until the channel closes
+     * @return true if the broker confirmed the message, false if it was rejected or the channel closed
+     * @throws IOException          if the message cannot be published
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException     if the confirm did not arrive in time
+     */
+    boolean publish(Publisher publisher, long timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        CompletableFuture<Boolean> confirm = new CompletableFuture<Boolean>();
+        long sequence;
+        synchronized (publishLock) {
+            sequence = channel.getNextPublishSeqNo();
+            outstanding.put(sequence, confirm);
+            try {
+                publisher.publish();
+            } catch (IOException | RuntimeException e) {
+                outstanding.remove(sequence);
+                throw e;
+            }
+        }
+        try {
+            return timeout > 0 ? confirm.get(timeout, TimeUnit.MILLISECONDS) : confirm.get();
+        } catch (ExecutionException e) {
+            return false;
+        } finally {
+            outstanding.remove(sequence, confirm);
+        }
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        complete(deliveryTag, multiple, true);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        complete(deliveryTag, multiple, false);
+    }
+
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        // messages which are not confirmed yet will never be
+        for (Map.Entry<Long, CompletableFuture<Boolean>> entry : outstanding.entrySet()) {
+            entry.getValue().complete(false);
+        }
+        outstanding.clear();
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return number of messages published and not confirmed yet
+     */
+    int getOutstanding() {
+        return outstanding.size();
+    }
+
+    private void complete(long deliveryTag, boolean multiple, boolean result) {
+        if (multiple) {
+            ConcurrentNavigableMap<Long, CompletableFuture<Boolean>> confirmed =
+                    outstanding.headMap(deliveryTag, true);
+            for (CompletableFuture<Boolean> confirm : confirmed.values()) {
+                confirm.complete(result);
+            }
+            confirmed.clear();
+        } else {
+            CompletableFuture<Boolean> confirm = outstanding.remove(deliveryTag);
+            if (confirm != null) {
+                confirm.complete(result);
+            }
+        }
+    }
+}
@@ -17,8 +17,10 @@
  */
 package org.apache.synapse.message.store.impl.rabbitmq;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
 import com.rabbitmq.client.GetResponse;
 import com.rabbitmq.client.ShutdownSignalException;
 import org.apache.commons.logging.Log;
@@ -28,11 +30,12 @@ import org.apache.synapse.message.MessageConsumer;
 
 import org.apache.synapse.message.store.impl.commons.MessageConverter;
 import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * The message consumer responsible for read a message from the queue and set it into the message context
@@ -47,6 +50,11 @@ public class RabbitMQConsumer implements MessageConsumer {
     private String queueName;
     private String idString;
     private CachedMessage cachedMessage; // Holds the last message read from the message store
+    private int prefetch;
+    private int ackBatchSize = 1;
+    private BlockingQueue<Delivery> deliveries; // Messages pushed by the broker, when prefetching
+    private long pendingAckTag = -1; // Last delivery tag processed but not acknowledged to the broker
+    private int pendingAcks;
 
     public RabbitMQConsumer(RabbitMQStore store) {
         if (store == null) {
@@ -65,30 +73,55 @@ public class RabbitMQConsumer implements MessageConsumer {
     @Override
     public MessageContext receive() {
         if (isAlive()) {
-            GetResponse delivery = null;
+            long deliveryTag = -1;
             try {
-                delivery = channel.basicGet(queueName, false);
-                if (delivery != null) {
-                    StorableMessage storableMessage = deserializeMessage(delivery);
+                byte[] body = null;
+                AMQP.BasicProperties properties = null;
+                if ((ackBatchSize > 1 || prefetch > 0) && cachedMessage.getDeliveryTag() >= 0) {
+                    // the message in process was not acknowledged, it is returned again instead of
+                    // putting it back to the queue behind the messages already pushed to this consumer
+                    // or covering it with a multiple ack of the next messages
+                    deliveryTag = cachedMessage.getDeliveryTag();
+                    body = cachedMessage.getBody();
+                    properties = cachedMessage.getProperties();
+                } else if (prefetch > 0) {
+                    Delivery delivery = nextDelivery();
+                    if (delivery != null) {
+                        deliveryTag = delivery.getEnvelope().getDeliveryTag();
+                        body = delivery.getBody();
+                        properties = delivery.getProperties();
+                    }
+                } else {
+                    GetResponse delivery = channel.basicGet(queueName, false);
+                    if (delivery != null) {
+                        deliveryTag = delivery.getEnvelope().getDeliveryTag();
+                        body = delivery.getBody();
+                        properties = delivery.getProps();
+                    }
+                }
+                if (body != null) {
+                    StorableMessage storableMessage = deserializeMessage(body);
                     org.apache.axis2.context.MessageContext axis2Mc = store.newAxis2Mc();
                     MessageContext synapseMc = store.newSynapseMc(axis2Mc);
                     synapseMc = MessageConverter.toMessageContext(storableMessage, axis2Mc, synapseMc);
-                    updateCache(delivery, delivery.getProps().getMessageId());
+                    updateCache(deliveryTag, body, properties);
                     if (log.isDebugEnabled()) {
-                        log.debug(getId() + " Received MessageId: " + delivery.getProps().getMessageId());
+                        log.debug(getId() + " Received MessageId: " + properties.getMessageId());
                     }
                     return synapseMc;
                 }
-            } catch (ShutdownSignalException | IOException e) {
-                log.error(getId() + " connection error when receiving messages.", e);
-                cleanup();
-            } catch (ClassNotFoundException e) {
+                // nothing more to process for now, acknowledge what was processed so far
+                flushAcks();
+            } catch (ObjectStreamException e) {
                 log.error(getId() + "unable to read the stored message.", e);
                 try {
-                    channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+                    channel.basicAck(deliveryTag, false);
                 } catch (IOException ex) {
                     log.error(getId() + "unable to acknowledge the stored message.", e);
                 }
+            } catch (ShutdownSignalException | IOException e) {
+                log.error(getId() + " connection error when receiving messages.", e);
+                cleanup();
             }
         } else {
             log.warn("The connection and channel to the RabbitMQ broker are unhealthy.");
@@ -117,17 +150,46 @@ public class RabbitMQConsumer implements MessageConsumer {
     /**
      * Deserialize the message taken from the queue
      *
-     * @param delivery the message received from the broker
+     * @param body the body of the message received from the broker
      * @return a {@link StorableMessage} object
-     * @throws IOException
+     * @throws IOException an {@link ObjectStreamException} if the message cannot be read
      */
-    private StorableMessage deserializeMessage(GetResponse delivery) throws IOException, ClassNotFoundException {
-        StorableMessage storableMessage;
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(delivery.getBody());
-             ObjectInput objectInput = new ObjectInputStream(inputStream)) {
-            storableMessage = (StorableMessage) objectInput.readObject();
+    private StorableMessage deserializeMessage(byte[] body) throws IOException {
+        return StorableMessageCodec.decode(body);
+    }
+
+    /**
+     * Take the next message pushed by the broker, subscribing to the queue with the prefetch
+     * window first if needed
+     *
+     * @return the next message or null if none is waiting
+     * @throws IOException if the subscription fails
+     */
+    private Delivery nextDelivery() throws IOException {
+        if (deliveries == null) {
+            final BlockingQueue<Delivery> buffer = new LinkedBlockingQueue<Delivery>();
+            channel.basicQos(prefetch);
+            channel.basicConsume(queueName, false, (consumerTag, delivery) -> buffer.add(delivery),
+                    consumerTag -> log.warn(getId() + " subscription to " + queueName + " was cancelled"));
+            deliveries = buffer;
+        }
+        return deliveries.poll();
+    }
+
+    /**
+     * Acknowledge the processed messages which are not acknowledged to the broker yet
+     */
+    private void flushAcks() {
+        if (pendingAcks > 0 && channel != null && channel.isOpen()) {
+            try {
+                channel.basicAck(pendingAckTag, true);
+            } catch (IOException e) {
+                log.error(getId() + " cannot ack " + pendingAcks + " processed messages. Error: " +
+                        e.getLocalizedMessage(), e);
+            }
         }
-        return storableMessage;
+        pendingAcks = 0;
+        pendingAckTag = -1;
     }
 
     /**
@@ -151,6 +213,10 @@ public class RabbitMQConsumer implements MessageConsumer {
      */
     @Override
     public boolean cleanup() {
+        // the message in process is not covered, it is redelivered when the channel is closed
+        flushAcks();
+        deliveries = null;
+        cachedMessage.clear();
         try {
             if (channel != null) {
                 channel.abort(); // Forcefully close the channel
@@ -241,15 +307,29 @@ public class RabbitMQConsumer implements MessageConsumer {
         this.queueName = queueName;
     }
 
+    /**
+     * Set how messages are taken from the queue and acknowledged
+     *
+     * @param prefetch     number of unacknowledged messages the broker pushes to the consumer,
+     *                     0 to poll the queue for each message
+     * @param ackBatchSize number of processed messages acknowledged together
+     */
+    public void setPrefetch(int prefetch, int ackBatchSize) {
+        this.prefetch = Math.max(0, prefetch);
+        this.ackBatchSize = Math.max(1, ackBatchSize);
+    }
+
     /**
      * Update the cached message with the message received from the queue
      *
-     * @param delivery  the received message from the queue
-     * @param messageId the message id
+     * @param deliveryTag the delivery tag of the received message
+     * @param body        the body of the received message
+     * @param properties  the properties of the received message
      */
-    private void updateCache(GetResponse delivery, String messageId) {
-        cachedMessage.setMessage(delivery);
-        cachedMessage.setId(messageId);
+    private void updateCache(long deliveryTag, byte[] body, AMQP.BasicProperties properties) {
+        cachedMessage.setDeliveryTag(deliveryTag);
+        cachedMessage.setId(properties.getMessageId());
+        cachedMessage.setBody(body, properties);
     }
 
     /**
@@ -259,19 +339,57 @@ public class RabbitMQConsumer implements MessageConsumer {
      * <p/>
      * In RabbitMQ message ack should be using the same channel which was consumed the message
      * There for the consumed channel will also stored without closing until the message is ackd
+     * <p/>
+     * When acks are batched, the delivery tag of the last processed message is kept and all the
+     * processed messages are acknowledged at once with a multiple ack. The body of the message is
+     * kept as well, so that it can be returned again while it is not acknowledged
      */
     private final class CachedMessage {
-        private GetResponse message = null;
+        private long deliveryTag = -1;
         private String id = "";
+        private byte[] body;
+        private AMQP.BasicProperties properties;
 
-        public void setMessage(GetResponse message) {
-            this.message = message;
+        public void setDeliveryTag(long deliveryTag) {
+            this.deliveryTag = deliveryTag;
+        }
+
+        public long getDeliveryTag() {
+            return deliveryTag;
+        }
+
+        public void setBody(byte[] body, AMQP.BasicProperties properties) {
+            this.body = body;
+            this.properties = properties;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public AMQP.BasicProperties getProperties() {
+            return properties;
+        }
+
+        public void clear() {
+            deliveryTag = -1;
+            body = null;
+            properties = null;
         }
 
         public boolean ack() {
-            if (message != null && channel != null && channel.isOpen()) {
+            if (deliveryTag >= 0 && channel != null && channel.isOpen()) {
+                if (ackBatchSize > 1) {
+                    pendingAckTag = deliveryTag;
+                    clear();
+                    if (++pendingAcks >= ackBatchSize) {
+                        flushAcks();
+                    }
+                    return true;
+                }
                 try {
-                    channel.basicAck(message.getEnvelope().getDeliveryTag(), false);
+                    channel.basicAck(deliveryTag, false);
+                    clear();
                     return true;
                 } catch (IOException e) {
                     log.error(getId() + " cannot ack last read message. Error: " + e.getLocalizedMessage(), e);
@@ -281,10 +399,6 @@ public class RabbitMQConsumer implements MessageConsumer {
             return false;
         }
 
-        public GetResponse getMessage() {
-            return message;
-        }
-
         public CachedMessage setId(String id) {
             this.id = id;
             return this;
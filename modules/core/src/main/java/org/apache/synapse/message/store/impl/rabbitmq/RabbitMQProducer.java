@@ -31,10 +31,7 @@ import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.store.impl.commons.MessageConverter;
 import org.apache.synapse.message.store.impl.commons.StorableMessage;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.concurrent.TimeoutException;
 
@@ -53,6 +50,8 @@ public class RabbitMQProducer implements MessageProducer {
     private boolean isInitialized = false;
     private String idString; // ID of the MessageProducer
     private boolean publisherConfirmsEnabled;
+    private PublisherConfirms publisherConfirms;
+    private long publisherConfirmTimeout;
     private Channel channel;
     private boolean isQueueDeclared = true;
     public static final String AMQ_PREFIX = "amq.";
@@ -97,16 +96,20 @@ public class RabbitMQProducer implements MessageProducer {
         }
         boolean result = false;
         try {
-            if (publisherConfirmsEnabled) {
-                channel.confirmSelect();
-            }
             StorableMessage storableMessage = MessageConverter.toStorableMessage(synCtx);
             final byte[] message = serializeMessage(storableMessage);
             final AMQP.BasicProperties basicProperties = getBasicProperties(synCtx, storableMessage);
-            publishMessage(channel, exchangeName, routingKey, basicProperties, message);
-            if (publisherConfirmsEnabled) {
+            if (publisherConfirmsEnabled && publisherConfirms != null && publisherConfirms.getChannel() == channel) {
+                // other producers keep publishing on the channel while this one waits for its confirm
+                result = publisherConfirms.publish(
+                        () -> publishMessage(channel, exchangeName, routingKey, basicProperties, message),
+                        publisherConfirmTimeout);
+            } else if (publisherConfirmsEnabled) {
+                channel.confirmSelect();
+                publishMessage(channel, exchangeName, routingKey, basicProperties, message);
                 result = channel.waitForConfirms();
             } else {
+                publishMessage(channel, exchangeName, routingKey, basicProperties, message);
                 result = true;
             }
             if (log.isDebugEnabled()) {
@@ -189,10 +192,7 @@ public class RabbitMQProducer implements MessageProducer {
      * @throws IOException
      */
     private byte[] serializeMessage(StorableMessage storableMessage) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ObjectOutput objectOutput = new ObjectOutputStream(outputStream);
-        objectOutput.writeObject(storableMessage);
-        return outputStream.toByteArray();
+        return store.getMessageCodec().encode(storableMessage);
     }
 
     /**
@@ -306,6 +306,17 @@ public class RabbitMQProducer implements MessageProducer {
         this.publisherConfirmsEnabled = publisherConfirmsEnabled;
     }
 
+    /**
+     * Set the confirms of the channel shared by the producers of the store
+     *
+     * @param publisherConfirms confirms of the channel, null to wait for the confirms of the channel
+     * @param timeout           maximum time to wait for a confirm in milliseconds, 0 for no limit
+     */
+    void setPublisherConfirms(PublisherConfirms publisherConfirms, long timeout) {
+        this.publisherConfirms = publisherConfirms;
+        this.publisherConfirmTimeout = timeout;
+    }
+
     /**
      * Verify to whether producer was initialized
      *
@@ -38,6 +38,7 @@ import org.apache.synapse.message.MessageConsumer;
 import org.apache.synapse.message.MessageProducer;
 import org.apache.synapse.message.store.AbstractMessageStore;
 import org.apache.synapse.message.store.Constants;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
@@ -72,6 +73,12 @@ public class RabbitMQStore extends AbstractMessageStore {
     public static final String RETRY_INTERVAL = "rabbitmq.connection.retry.interval";
     public static final String RETRY_COUNT = "rabbitmq.connection.retry.count";
     public static final String PUBLISHER_CONFIRMS = "store.producer.guaranteed.delivery.enable";
+    /** Maximum time in milliseconds a producer waits for the confirm of a message, 0 for no limit */
+    public static final String PUBLISHER_CONFIRM_TIMEOUT = "store.rabbitmq.publisher.confirm.timeout";
+    /** Number of unacknowledged messages the broker pushes to a consumer, 0 to poll one at a time */
+    public static final String CONSUMER_PREFETCH = "store.rabbitmq.consumer.prefetch";
+    /** Number of processed messages acknowledged together */
+    public static final String CONSUMER_ACK_BATCH_SIZE = "store.rabbitmq.consumer.ack.batch.size";
     public static final int DEFAULT_RETRY_INTERVAL = 30000;
     public static final int DEFAULT_RETRY_COUNT = 3;
 
@@ -101,7 +108,12 @@ public class RabbitMQStore extends AbstractMessageStore {
     private int retryInterval;
     private int retryCount;
     private boolean publisherConfirmsEnabled;
+    private PublisherConfirms publisherConfirms;
+    private long publisherConfirmTimeout;
+    private int consumerPrefetch;
+    private int consumerAckBatchSize;
     private boolean isQueueDeclared = false;
+    private StorableMessageCodec messageCodec = StorableMessageCodec.fromParameters(null);
     private Channel channel;
 
     @Override
@@ -111,9 +123,13 @@ public class RabbitMQStore extends AbstractMessageStore {
         }
         super.init(se);
         loadAndValidateParams();
+        messageCodec = StorableMessageCodec.fromParameters(parameters);
         initConnectionFactory();
         publisherConfirmsEnabled = BooleanUtils.toBooleanDefaultIfNull(
                 BooleanUtils.toBoolean((String) parameters.get(PUBLISHER_CONFIRMS)), false);
+        publisherConfirmTimeout = Math.max(0, NumberUtils.toLong((String) parameters.get(PUBLISHER_CONFIRM_TIMEOUT), 0));
+        consumerPrefetch = Math.max(0, NumberUtils.toInt((String) parameters.get(CONSUMER_PREFETCH), 0));
+        consumerAckBatchSize = Math.max(1, NumberUtils.toInt((String) parameters.get(CONSUMER_ACK_BATCH_SIZE), 1));
         producerConnection = createConnection();
         if (producerConnection != null) {
             try (Channel channel = producerConnection.createChannel()) {
@@ -269,6 +285,13 @@ public class RabbitMQStore extends AbstractMessageStore {
         return connection;
     }
 
+    /**
+     * @return the codec of the messages published to the queue
+     */
+    public StorableMessageCodec getMessageCodec() {
+        return messageCodec;
+    }
+
     /**
      * Create a RabbitMQ channel from given connection
      *
@@ -401,9 +424,32 @@ public class RabbitMQStore extends AbstractMessageStore {
             }
         }
         producer.setChannel(channel);
+        producer.setPublisherConfirms(getPublisherConfirms(), publisherConfirmTimeout);
         return producer;
     }
 
+    /**
+     * Put the producer channel in confirm mode once, so that confirms of the messages published by
+     * different producers are pipelined on the channel
+     *
+     * @return the confirms of the producer channel, or null if confirms are not enabled
+     */
+    private synchronized PublisherConfirms getPublisherConfirms() {
+        if (!publisherConfirmsEnabled || channel == null) {
+            return null;
+        }
+        if (publisherConfirms == null || publisherConfirms.getChannel() != channel) {
+            try {
+                publisherConfirms = new PublisherConfirms(channel);
+            } catch (IOException e) {
+                log.warn(nameString() + " could not enable publisher confirms on the channel, each message will " +
+                        "wait for the confirms of the channel", e);
+                publisherConfirms = null;
+            }
+        }
+        return publisherConfirms;
+    }
+
     /**
      * Resolve secure-vault property values
      *
@@ -444,6 +490,7 @@ public class RabbitMQStore extends AbstractMessageStore {
         RabbitMQConsumer consumer = new RabbitMQConsumer(this);
         consumer.setId(nextConsumerId());
         consumer.setQueueName(queueName);
+        consumer.setPrefetch(consumerPrefetch, consumerAckBatchSize);
         Connection connection = createConnection();
         consumer.setConnection(connection);
         consumer.setChannel(createChannel(connection));
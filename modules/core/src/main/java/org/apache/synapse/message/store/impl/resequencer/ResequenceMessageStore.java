@@ -428,6 +428,27 @@ public class ResequenceMessageStore extends JDBCMessageStore {
         return nextElapsedTime < 0 || currentTime <= nextElapsedTime;
     }
 
+    /**
+     * Messages are always peeked one by one, as the next message depends on the sequence id of the
+     * last one delivered rather than on the order of insertion.
+     *
+     * @return 1
+     */
+    @Override
+    protected int getPrefetchSize() {
+        return 1;
+    }
+
+    /**
+     * Messages are handed out in sequence, the priority of a message is not considered.
+     *
+     * @return false
+     */
+    @Override
+    protected boolean isPriorityEnabled() {
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
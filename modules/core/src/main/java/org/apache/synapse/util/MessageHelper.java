@@ -30,7 +30,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.Policy;
 import org.apache.neethi.PolicyEngine;
-import org.apache.synapse.ContinuationState;
 import org.apache.synapse.FaultHandler;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
@@ -39,7 +38,6 @@ import org.apache.synapse.aspects.flow.statistics.tracing.opentelemetry.manageme
 import org.apache.synapse.commons.json.JsonUtil;
 import org.apache.synapse.commons.CorrelationConstants;
 import org.apache.synapse.continuation.ContinuationStackManager;
-import org.apache.synapse.continuation.SeqContinuationState;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.ResponseState;
 import org.apache.synapse.debug.constructs.SynapseMediationFlowPoint;
@@ -251,16 +249,8 @@ public class MessageHelper {
 
         // Copy ContinuationStateStack from original MC to the new MC
         if (synCtx.isContinuationEnabled()) {
-            Stack<ContinuationState> continuationStates =  synCtx.getContinuationStateStack();
             newCtx.setContinuationEnabled(true);
-
-            for (ContinuationState continuationState : continuationStates) {
-                if (continuationState != null) {
-                   newCtx.pushContinuationState(
-                           ContinuationStackManager.getClonedSeqContinuationState(
-                                   (SeqContinuationState) continuationState));
-                }
-            }
+            ContinuationStackManager.copyContinuationStateStack(synCtx, newCtx);
         }
         newCtx.setMessageFlowTracingState(synCtx.getMessageFlowTracingState());
         return newCtx;
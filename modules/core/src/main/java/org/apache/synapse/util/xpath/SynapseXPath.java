@@ -643,6 +643,15 @@ public class SynapseXPath extends SynapsePath {
     	this.forceDisableStreamXpath = forceDisableStreamXpath;
     }
 
+    /**
+     * Whether this expression can be evaluated over the message stream without building the message
+     *
+     * @return true if a streaming XPath is compiled for this expression and it is not disabled
+     */
+    public boolean isStreamable() {
+        return !forceDisableStreamXpath && "true".equals(enableStreamingXpath) && streamingXPATH != null;
+    }
+
     /**
      * This is a wrapper class used to inject both envelope and message contexts for xpath
      * We use this to resolve function scope xpath variables
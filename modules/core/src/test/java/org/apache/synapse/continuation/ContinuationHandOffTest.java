@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.continuation;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that hand overs are only run once the outermost entry point is done with the message
+ */
+public class ContinuationHandOffTest extends TestCase {
+
+    public void testHandOverRunsWhenTheOuterScopeIsClosed() {
+        final List<String> handedOver = new ArrayList<String>();
+        assertTrue(ContinuationHandOff.open());
+        // e.g. a message injected while another one is mediated on the same thread
+        assertFalse(ContinuationHandOff.open());
+        ContinuationHandOff.defer(new Runnable() {
+            public void run() {
+                handedOver.add("first");
+            }
+        });
+        ContinuationHandOff.defer(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("not started");
+            }
+        });
+        ContinuationHandOff.defer(new Runnable() {
+            public void run() {
+                handedOver.add("second");
+            }
+        });
+        assertTrue(handedOver.isEmpty());
+
+        ContinuationHandOff.close();
+
+        assertEquals(2, handedOver.size());
+        assertEquals("first", handedOver.get(0));
+        assertEquals("second", handedOver.get(1));
+        assertFalse(ContinuationHandOff.isOpen());
+    }
+
+    public void testHandOverCannotBeDeferredWithoutAScope() {
+        assertFalse(ContinuationHandOff.isOpen());
+        try {
+            ContinuationHandOff.defer(new Runnable() {
+                public void run() {
+                }
+            });
+            fail("a hand over without a scope would never run");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+}
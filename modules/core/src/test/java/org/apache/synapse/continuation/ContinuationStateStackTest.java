@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.continuation;
+
+import junit.framework.TestCase;
+import org.apache.synapse.ContinuationState;
+import org.apache.synapse.SequenceType;
+
+import java.util.EmptyStackException;
+
+/**
+ * Unit tests for {@link ContinuationStateStack} and the cloning of continuation states.
+ */
+public class ContinuationStateStackTest extends TestCase {
+
+    public void testPushPopBeyondInitialCapacity() {
+        ContinuationStateStack stack = new ContinuationStateStack();
+        for (int i = 0; i < 25; i++) {
+            stack.push(new SeqContinuationState(SequenceType.NAMED, "seq" + i));
+        }
+        assertEquals(25, stack.size());
+        assertEquals("seq24", ((SeqContinuationState) stack.peek()).getSeqName());
+        assertEquals("seq0", ((SeqContinuationState) stack.get(0)).getSeqName());
+        for (int i = 24; i >= 0; i--) {
+            assertEquals("seq" + i, ((SeqContinuationState) stack.pop()).getSeqName());
+        }
+        assertTrue(stack.isEmpty());
+        assertTrue(stack.empty());
+    }
+
+    public void testPopOnEmptyStack() {
+        ContinuationStateStack stack = new ContinuationStateStack();
+        try {
+            stack.pop();
+            fail("EmptyStackException expected");
+        } catch (EmptyStackException expected) {
+            // expected
+        }
+    }
+
+    public void testClearAndIterate() {
+        ContinuationStateStack stack = new ContinuationStateStack();
+        stack.push(new SeqContinuationState(SequenceType.PROXY_INSEQ, null));
+        stack.push(new SeqContinuationState(SequenceType.NAMED, "named"));
+        int count = 0;
+        for (ContinuationState state : stack) {
+            assertNotNull(state);
+            count++;
+        }
+        assertEquals(2, count);
+        stack.clear();
+        assertEquals(0, stack.size());
+        assertTrue(stack.isEmpty());
+    }
+
+    public void testClonedSeqContinuationStateIsIndependent() {
+        SeqContinuationState original = new SeqContinuationState(SequenceType.NAMED, "named");
+        original.setPosition(2);
+        ReliantContinuationState first = new ReliantContinuationState(1);
+        first.setPosition(3);
+        original.addLeafChild(first);
+        ReliantContinuationState second = new ReliantContinuationState(0);
+        second.setPosition(4);
+        original.addLeafChild(second);
+
+        SeqContinuationState clone = ContinuationStackManager.getClonedSeqContinuationState(original);
+        assertEquals("named", clone.getSeqName());
+        assertEquals(2, clone.getPosition());
+        ReliantContinuationState clonedFirst = (ReliantContinuationState) clone.getChildContState();
+        assertNotSame(first, clonedFirst);
+        assertEquals(1, clonedFirst.getSubBranch());
+        assertEquals(3, clonedFirst.getPosition());
+        ReliantContinuationState clonedSecond = (ReliantContinuationState) clonedFirst.getChildContState();
+        assertEquals(0, clonedSecond.getSubBranch());
+        assertEquals(4, clonedSecond.getPosition());
+        assertFalse(clonedSecond.hasChild());
+
+        original.getLeafChild().setPosition(9);
+        original.removeLeafChild();
+        assertEquals(4, clone.getLeafChild().getPosition());
+        assertSame(clonedSecond, clone.getLeafChild());
+    }
+}
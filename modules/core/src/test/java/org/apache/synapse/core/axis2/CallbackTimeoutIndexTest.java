@@ -0,0 +1,80 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link CallbackTimeoutIndex}.
+ */
+public class CallbackTimeoutIndexTest extends TestCase {
+
+    public void testOnlyExpiredCallbacksArePolled() {
+        CallbackTimeoutIndex index = new CallbackTimeoutIndex(100);
+        index.add("a", 1050);
+        index.add("b", 1090);
+        index.add("c", 1250);
+        index.add("d", 5000);
+
+        List<String> expired = index.pollExpired(1070);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+        // "b" shares the due bucket but has not expired yet, hence it should stay in the index
+        assertEquals(3, index.size());
+
+        expired = index.pollExpired(1300);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("b"));
+        assertTrue(expired.contains("c"));
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollExpired(4999).isEmpty());
+        assertEquals("d", index.pollExpired(6000).get(0));
+        assertEquals(0, index.size());
+    }
+
+    public void testRemovedCallbacksAreNotPolled() {
+        CallbackTimeoutIndex index = new CallbackTimeoutIndex(1000);
+        index.add("a", 1500);
+        index.add("b", 1600);
+        index.remove("a", 1500);
+
+        List<String> expired = index.pollExpired(2000);
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0));
+    }
+
+    public void testCallbacksWithoutTimeoutExpireImmediately() {
+        CallbackTimeoutIndex index = new CallbackTimeoutIndex(15000);
+        index.add("a", 0);
+        assertEquals("a", index.pollExpired(System.currentTimeMillis()).get(0));
+    }
+
+    public void testInvalidResolution() {
+        try {
+            new CallbackTimeoutIndex(0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
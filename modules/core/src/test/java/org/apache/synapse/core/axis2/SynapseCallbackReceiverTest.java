@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.description.InOutAxisOperation;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.HedgedRequest;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the handling of responses by the SynapseCallbackReceiver
+ */
+public class SynapseCallbackReceiverTest extends TestCase {
+
+    private SynapseConfiguration synapseConfiguration;
+
+    private SynapseEnvironment environment;
+
+    private SynapseCallbackReceiver receiver;
+
+    private final List<MessageContext> injected = new ArrayList<MessageContext>();
+
+    @Override
+    protected void setUp() throws Exception {
+        synapseConfiguration = new SynapseConfiguration();
+        environment = Mockito.mock(SynapseEnvironment.class);
+        Mockito.when(environment.injectMessage(Mockito.any(MessageContext.class))).thenAnswer(
+                new Answer<Boolean>() {
+                    public Boolean answer(InvocationOnMock invocation) {
+                        injected.add((MessageContext) invocation.getArguments()[0]);
+                        return true;
+                    }
+                });
+        receiver = new SynapseCallbackReceiver(synapseConfiguration, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        synapseConfiguration.getSynapseTimer().cancel();
+    }
+
+    public void testHedgedRequestDoesNotOutliveItsResponse() throws Exception {
+        MessageContext firstCall = createOutMessage(new org.apache.axis2.context.MessageContext(), "urn:uuid:first");
+        MessageContext otherAttempt = createOutMessage(new org.apache.axis2.context.MessageContext(),
+                "urn:uuid:other");
+        HedgedRequest hedgedRequest = new HedgedRequest();
+        firstCall.setProperty(SynapseConstants.HEDGED_REQUEST, hedgedRequest);
+        otherAttempt.setProperty(SynapseConstants.HEDGED_REQUEST, hedgedRequest);
+
+        receiver.receive(createResponse("urn:uuid:first"));
+        assertEquals(1, injected.size());
+        MessageContext firstResponse = injected.get(0);
+        assertNull(firstCall.getProperty(SynapseConstants.HEDGED_REQUEST));
+        assertNull(firstResponse.getProperty(SynapseConstants.HEDGED_REQUEST));
+
+        // the response to the other attempt of the hedged message is discarded
+        receiver.receive(createResponse("urn:uuid:other"));
+        assertEquals(1, injected.size());
+
+        // a second call of the same flow gets its response
+        org.apache.axis2.context.MessageContext secondCallAxis2Ctx =
+                ((Axis2MessageContext) firstResponse).getAxis2MessageContext();
+        createOutMessage(secondCallAxis2Ctx, firstResponse, "urn:uuid:second");
+        receiver.receive(createResponse("urn:uuid:second"));
+        assertEquals(2, injected.size());
+    }
+
+    private MessageContext createOutMessage(org.apache.axis2.context.MessageContext axis2Ctx, String messageId)
+            throws Exception {
+        MessageContext synCtx = new Axis2MessageContext(axis2Ctx, synapseConfiguration, environment);
+        synCtx.setEnvelope(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+        return createOutMessage(axis2Ctx, synCtx, messageId);
+    }
+
+    private MessageContext createOutMessage(org.apache.axis2.context.MessageContext axis2Ctx, MessageContext synCtx,
+                                            String messageId) {
+        axis2Ctx.setMessageID(messageId);
+        axis2Ctx.setAxisOperation(new InOutAxisOperation());
+        AsyncCallback callback = new AsyncCallback(axis2Ctx, synCtx);
+        callback.setTimeout(60000);
+        receiver.addCallback(messageId, callback);
+        return synCtx;
+    }
+
+    private org.apache.axis2.context.MessageContext createResponse(String relatesTo) throws Exception {
+        org.apache.axis2.context.MessageContext response = new org.apache.axis2.context.MessageContext();
+        response.setConfigurationContext(new ConfigurationContext(new AxisConfiguration()));
+        response.setEnvelope(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+        response.setProperty(SynapseConstants.RELATES_TO_FOR_POX, relatesTo);
+        return response;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.AdaptiveConcurrencyLimiter;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for the expiry of callbacks by the TimeoutHandler
+ */
+public class TimeoutHandlerTest extends TestCase {
+
+    private final Map callbackStore = Collections.synchronizedMap(new HashMap());
+
+    private final CallbackTimeoutIndex timeoutIndex = new CallbackTimeoutIndex(1);
+
+    private SynapseConfiguration synapseConfiguration;
+
+    @Override
+    protected void setUp() throws Exception {
+        synapseConfiguration = new SynapseConfiguration();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        synapseConfiguration.getSynapseTimer().cancel();
+    }
+
+    public void testConcurrencyPermitReturnedOnTimeoutWithoutAction() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100);
+        MessageContext synCtx = createOutMessage("urn:uuid:timeout");
+        synCtx.setProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT, limiter.tryAcquirePermit());
+        AsyncCallback callback = addCallback("urn:uuid:timeout", synCtx);
+        assertEquals(SynapseConstants.NONE, callback.getTimeOutAction());
+        assertEquals(1, limiter.getInFlight());
+
+        new TimeoutHandler(callbackStore, timeoutIndex, null).run();
+
+        assertTrue(callbackStore.isEmpty());
+        assertTrue(callback.isMarkedForRemoval());
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.getLimit() < 20);
+        assertNull(synCtx.getProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT));
+    }
+
+    private MessageContext createOutMessage(String messageId) throws Exception {
+        org.apache.axis2.context.MessageContext axis2Ctx = new org.apache.axis2.context.MessageContext();
+        axis2Ctx.setMessageID(messageId);
+        axis2Ctx.setTo(new EndpointReference("http://localhost:9000/services/SimpleStockQuoteService"));
+        MessageContext synCtx = new Axis2MessageContext(axis2Ctx, synapseConfiguration,
+                Mockito.mock(SynapseEnvironment.class));
+        synCtx.setEnvelope(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+        return synCtx;
+    }
+
+    private AsyncCallback addCallback(String messageId, MessageContext synCtx) {
+        AsyncCallback callback = new AsyncCallback(((Axis2MessageContext) synCtx).getAxis2MessageContext(), synCtx);
+        // already expired
+        callback.setTimeout(-1000);
+        callback.setTimeoutType(SynapseConstants.ENDPOINT_TIMEOUT_TYPE.ENDPOINT_TIMEOUT);
+        callbackStore.put(messageId, callback);
+        timeoutIndex.add(messageId, callback.getTimeOutOn());
+        return callback;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.TestMessageContext;
+
+/**
+ * Tests for the AdaptiveConcurrencyLimiter
+ */
+public class AdaptiveConcurrencyLimiterTest extends TestCase {
+
+    private static final long RTT = 10000000L;
+
+    public void testRejectWhenLimitReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejected());
+
+        limiter.release();
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    public void testLimitGrowsWithStableResponseTimes() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            fill(limiter);
+            limiter.onSuccess(RTT);
+            drain(limiter);
+        }
+        assertTrue("limit : " + limiter.getLimit(), limiter.getLimit() > 10);
+        assertTrue(limiter.getLimit() <= 100);
+    }
+
+    public void testLimitDoesNotGrowWhenNotLoaded() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(RTT);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    public void testLimitShrinksWhenResponseTimesGrow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100);
+        fill(limiter);
+        limiter.onSuccess(RTT);
+        drain(limiter);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 20; i++) {
+            fill(limiter);
+            limiter.onSuccess(RTT * 10);
+            drain(limiter);
+        }
+        assertTrue("limit : " + limiter.getLimit(), limiter.getLimit() < limit);
+    }
+
+    public void testBackoffOnDrop() {
+        final long[] now = {0};
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100) {
+            long nanoTime() {
+                return now[0];
+            }
+        };
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        assertEquals(18, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        for (int i = 0; i < 50; i++) {
+            now[0] += RTT * 10;
+            assertTrue(limiter.tryAcquire());
+            limiter.onDropped();
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    public void testBurstOfDropsBacksOffOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100);
+        fill(limiter);
+        for (int i = 0; i < 20; i++) {
+            limiter.onDropped();
+        }
+        assertEquals(18, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    public void testPermitReturnedOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquirePermit();
+        assertNotNull(permit);
+        assertSame(limiter, permit.getLimiter());
+        assertNotNull(limiter.tryAcquirePermit());
+        assertNull(limiter.tryAcquirePermit());
+
+        permit.onSuccess(RTT);
+        permit.onDropped();
+        permit.release();
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    public void testDropPermitOfMessage() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100);
+        MessageContext synCtx = new TestMessageContext();
+        synCtx.setProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT, limiter.tryAcquirePermit());
+        assertEquals(1, limiter.getInFlight());
+
+        AdaptiveConcurrencyLimiter.dropPermit(synCtx);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(18, limiter.getLimit());
+        assertNull(synCtx.getProperty(SynapseConstants.ENDPOINT_CONCURRENCY_PERMIT));
+
+        // a message without a permit is left alone
+        AdaptiveConcurrencyLimiter.dropPermit(synCtx);
+        AdaptiveConcurrencyLimiter.releasePermit(new TestMessageContext());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    public void testInvalidLimits() {
+        try {
+            new AdaptiveConcurrencyLimiter(10, 0, 10);
+            fail("A minimum limit below one should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new AdaptiveConcurrencyLimiter(10, 10, 5);
+            fail("A maximum limit below the minimum should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void fill(AdaptiveConcurrencyLimiter limiter) {
+        while (limiter.tryAcquire()) {
+            // take all the permits, so that the limiter is loaded
+        }
+    }
+
+    private static void drain(AdaptiveConcurrencyLimiter limiter) {
+        while (limiter.getInFlight() > 0) {
+            limiter.release();
+        }
+    }
+}
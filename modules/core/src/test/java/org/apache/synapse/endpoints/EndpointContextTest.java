@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the local (non clustered) state transitions of the EndpointContext
+ */
+public class EndpointContextTest extends TestCase {
+
+    private EndpointContext createContext(int retriesOnTimeout) {
+        EndpointDefinition definition = new EndpointDefinition();
+        definition.setRetriesOnTimeoutBeforeSuspend(retriesOnTimeout);
+        definition.setRetryDurationOnTimeout(60000);
+        definition.setInitialSuspendDuration(60000);
+        definition.setSuspendProgressionFactor(2);
+        return new EndpointContext("testEndpoint", definition, false, null, null);
+    }
+
+    public void testTimeoutRetriesBeforeSuspension() {
+        EndpointContext context = createContext(2);
+        assertTrue(context.isState(EndpointContext.ST_ACTIVE));
+        assertTrue(context.readyToSend());
+
+        context.onTimeout();
+        assertTrue(context.isState(EndpointContext.ST_TIMEOUT));
+        assertFalse(context.readyToSend());
+
+        context.onTimeout();
+        assertTrue(context.isState(EndpointContext.ST_TIMEOUT));
+
+        context.onTimeout();
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+        assertFalse(context.readyToSend());
+
+        context.onSuccess();
+        assertTrue(context.isState(EndpointContext.ST_ACTIVE));
+        assertTrue(context.readyToSend());
+
+        // retries are restored once the endpoint is active again
+        context.onTimeout();
+        assertTrue(context.isState(EndpointContext.ST_TIMEOUT));
+    }
+
+    public void testSwitchOffAndOn() {
+        EndpointContext context = createContext(0);
+        context.onFault();
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+
+        context.switchOff();
+        assertTrue(context.isState(EndpointContext.ST_OFF));
+        assertFalse(context.readyToSend());
+
+        // a successful message does not bring an endpoint out of maintenance
+        context.onSuccess();
+        assertTrue(context.isState(EndpointContext.ST_OFF));
+
+        context.switchOn();
+        assertTrue(context.isState(EndpointContext.ST_ACTIVE));
+        assertTrue(context.readyToSend());
+    }
+
+    public void testSuspensionExpiry() {
+        EndpointContext context = createContext(0);
+        context.onFailoverRetryLimit(false);
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+
+        EndpointDefinition definition = new EndpointDefinition();
+        definition.setInitialSuspendDuration(0);
+        EndpointContext expired = new EndpointContext("expiredEndpoint", definition, false, null, null);
+        expired.onFault();
+        assertTrue(expired.isState(EndpointContext.ST_SUSPENDED));
+        // the suspension has already expired, so the endpoint is ready to be retried
+        assertTrue(expired.readyToSend());
+    }
+
+    public void testConcurrentTimeouts() throws Exception {
+        final int threads = 8;
+        final int timeoutsPerThread = 50;
+        final EndpointContext context = createContext(threads * timeoutsPerThread);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < timeoutsPerThread; j++) {
+                        context.onTimeout();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // every timeout consumed exactly one retry, so the next one suspends the endpoint
+        assertTrue(context.isState(EndpointContext.ST_TIMEOUT));
+        context.onTimeout();
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+    }
+}
@@ -31,6 +31,10 @@ import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test class for unit testing of EndpointView.
@@ -416,6 +420,74 @@ public class EndpointViewTest extends TestCase {
                             endpointView.getConsecutiveEndpointSuspensions());
     }
 
+    /**
+     * Tests if the response codes beyond the HTTP status code range are counted as well.
+     */
+    public void testReportResponseCode() {
+        EndpointView endpointView = createMockEndPointView(0);
+        endpointView.reportResponseCode(200);
+        endpointView.reportResponseCode(200);
+        endpointView.reportResponseCode(101503);
+        Assert.assertEquals("Response code table not updated", 2,
+                            endpointView.getResponseCodeTable().get(200).longValue());
+        Assert.assertEquals("Response code table not updated", 1,
+                            endpointView.getResponseCodeTable().get(101503).longValue());
+        Assert.assertEquals("Unexpected entries in response code table", 2,
+                            endpointView.getResponseCodeTable().size());
+    }
+
+    /**
+     * Records response times from 1ms to 1000ms and asserts the reported percentiles are within the
+     * precision of the response time histogram.
+     */
+    public void testResponseTimePercentiles() {
+        EndpointView endpointView = createMockEndPointView(0);
+        Assert.assertEquals("Percentile reported without responses", 0.0,
+                            endpointView.getResponseTime99thPercentile());
+        for (int i = 1; i <= 1000; i++) {
+            endpointView.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Assert.assertEquals("Incorrect median response time", 500, endpointView.getResponseTime50thPercentile(), 35);
+        Assert.assertEquals("Incorrect 99th percentile", 990, endpointView.getResponseTime99thPercentile(), 65);
+        Assert.assertEquals("Incorrect max response time", 1000, endpointView.getMaxResponseTime(), 0.001);
+        Assert.assertEquals("Incorrect average response time", 500.5, endpointView.getAvgResponseTime(), 0.001);
+        Assert.assertTrue("Percentile exceeds the max response time",
+                          endpointView.getResponseTime999thPercentile() <= endpointView.getMaxResponseTime());
+    }
+
+    /**
+     * Tests if the message and size statistics are not lost when updated from many threads.
+     *
+     * @throws Exception if the updating threads are interrupted
+     */
+    public void testConcurrentStatisticsUpdates() throws Exception {
+        final EndpointView endpointView = createMockEndPointView(0);
+        final int threads = 8;
+        final int messages = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int i = 1; i <= messages; i++) {
+                        endpointView.incrementMessagesSent();
+                        endpointView.notifySentMessageSize(i);
+                        endpointView.reportResponseCode(200);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        Assert.assertTrue("Updating threads did not complete", done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals("Sent messages lost", threads * messages, endpointView.getMessagesSent());
+        Assert.assertEquals("Incorrect min size", 1, endpointView.getMinSizeSent());
+        Assert.assertEquals("Incorrect max size", messages, endpointView.getMaxSizeSent());
+        Assert.assertEquals("Incorrect average size", (messages + 1) / 2.0, endpointView.getAvgSizeSent(), 0.001);
+        Assert.assertEquals("Response codes lost", threads * messages,
+                            endpointView.getResponseCodeTable().get(200).longValue());
+    }
+
     /**
      * Method to change statistics of and endpoint view.
      *
@@ -435,6 +507,7 @@ public class EndpointViewTest extends TestCase {
         endpointView.incrementTimeoutsSending();
         endpointView.incrementBytesSent(10);
         endpointView.reportResponseCode(100);
+        endpointView.recordResponseTime(1000000);
     }
 
     /**
@@ -460,6 +533,7 @@ public class EndpointViewTest extends TestCase {
         Assert.assertEquals("Average message size setn not reset", 0.0, endpointView.getAvgSizeSent());
         Assert.assertEquals("Sending failut table not cleared", 0, endpointView.getSendingFaultTable().size());
         Assert.assertEquals("Response code table not cleared", 0, endpointView.getResponseCodeTable().size());
+        Assert.assertEquals("Response times not reset", 0.0, endpointView.getMaxResponseTime());
     }
 
 }
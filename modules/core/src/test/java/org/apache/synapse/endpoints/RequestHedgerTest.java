@@ -0,0 +1,242 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+import org.apache.synapse.FaultHandler;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.TestMessageContext;
+import org.apache.synapse.mediators.TestUtils;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Stack;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the RequestHedger and the HedgedRequest attempt tracking
+ */
+public class RequestHedgerTest extends TestCase {
+
+    public void testFirstResponseWins() {
+        HedgedRequest request = new HedgedRequest();
+        assertTrue(request.startHedge());
+        assertTrue(request.complete());
+        assertFalse(request.complete());
+        // the failure of the other attempt is ignored once a response was processed
+        assertFalse(request.fail());
+    }
+
+    public void testFaultHandledWhenNoAttemptRemains() {
+        HedgedRequest request = new HedgedRequest();
+        assertTrue(request.startHedge());
+        assertFalse(request.fail());
+        assertTrue(request.fail());
+        assertFalse(request.startHedge());
+    }
+
+    public void testHedgeNotStartedAfterCompletion() {
+        HedgedRequest request = new HedgedRequest();
+        assertTrue(request.complete());
+        assertFalse(request.startHedge());
+    }
+
+    public void testCompletionCancelsHedge() {
+        HedgedRequest request = new HedgedRequest();
+        TimerTask hedge = new TimerTask() {
+            public void run() {
+            }
+        };
+        Timer timer = new Timer(true);
+        try {
+            timer.schedule(hedge, 60000);
+            request.setHedge(hedge);
+            assertFalse(request.isDone());
+            assertTrue(request.complete());
+            assertTrue(request.isDone());
+            // already cancelled by the completion
+            assertFalse(hedge.cancel());
+        } finally {
+            timer.cancel();
+        }
+    }
+
+    public void testFaultOfHedgedMessage() {
+        MessageContext original = new TestMessageContext();
+        MessageContext copy = new TestMessageContext();
+        HedgedRequest request = new HedgedRequest();
+        original.setProperty(SynapseConstants.HEDGED_REQUEST, request);
+        copy.setProperty(SynapseConstants.HEDGED_REQUEST, request);
+        assertTrue(request.startHedge());
+
+        assertFalse(HedgedRequest.onAttemptFailed(original));
+        assertTrue(HedgedRequest.onAttemptFailed(copy));
+        // a retry of the failed copy is not treated as hedged anymore
+        assertNull(copy.getProperty(SynapseConstants.HEDGED_REQUEST));
+        assertTrue(HedgedRequest.onAttemptFailed(copy));
+        assertTrue(HedgedRequest.onAttemptFailed(new TestMessageContext()));
+    }
+
+    public void testSelectTarget() {
+        Endpoint first = createEndpoint(true);
+        Endpoint second = createEndpoint(false);
+        Endpoint third = createEndpoint(true);
+        List<Endpoint> children = new ArrayList<Endpoint>();
+        children.add(first);
+        children.add(second);
+        children.add(third);
+
+        assertSame(third, RequestHedger.selectTarget(children, first));
+        assertSame(first, RequestHedger.selectTarget(children, third));
+        assertSame(third, RequestHedger.selectTarget(children, second));
+
+        children.remove(third);
+        assertNull(RequestHedger.selectTarget(children, first));
+    }
+
+    public void testBudget() {
+        RequestHedger hedger = new RequestHedger(95, 10, 50);
+        assertFalse(hedger.tryAcquireBudget());
+        hedger.addBudget();
+        assertFalse(hedger.tryAcquireBudget());
+        hedger.addBudget();
+        assertTrue(hedger.tryAcquireBudget());
+        assertFalse(hedger.tryAcquireBudget());
+
+        // the budget which can be saved up is capped
+        for (int i = 0; i < 1000; i++) {
+            hedger.addBudget();
+        }
+        int hedges = 0;
+        while (hedger.tryAcquireBudget()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+
+    public void testDelayWithoutStatistics() {
+        RequestHedger hedger = new RequestHedger(95, 25, 5);
+        hedger.refreshDelay(createEndpoint(true));
+        assertEquals(25, hedger.getDelay());
+    }
+
+    public void testDelayFollowsRecentResponseTimes() {
+        Endpoint endpoint = createEndpoint(true);
+        EndpointView view = new EndpointView("endpoint", endpoint);
+        Mockito.when(endpoint.getMetricsMBean()).thenReturn(view);
+        Mockito.when(endpoint.getChildren()).thenReturn(null);
+        RequestHedger hedger = new RequestHedger(50, 10, 5);
+        try {
+            recordResponseTimes(view, 100, RequestHedger.MIN_DELAY_SAMPLES);
+            hedger.refreshDelay(endpoint);
+            long slow = hedger.getDelay();
+            assertTrue("delay : " + slow, slow >= 100 && slow <= 110);
+
+            // too few responses to tell, the delay is kept
+            recordResponseTimes(view, 20, 1);
+            hedger.refreshDelay(endpoint);
+            assertEquals(slow, hedger.getDelay());
+
+            // the endpoint became fast, the slow responses of the past do not count anymore
+            recordResponseTimes(view, 20, RequestHedger.MIN_DELAY_SAMPLES);
+            hedger.refreshDelay(endpoint);
+            long fast = hedger.getDelay();
+            assertTrue("delay : " + fast, fast >= 20 && fast <= 22);
+
+            // the minimum delay is kept
+            recordResponseTimes(view, 1, RequestHedger.MIN_DELAY_SAMPLES);
+            hedger.refreshDelay(endpoint);
+            assertEquals(10, hedger.getDelay());
+        } finally {
+            view.destroy();
+        }
+    }
+
+    public void testFailedHedgeOnlyFailsOverOnce() throws Exception {
+        MessageContext synCtx = TestUtils.getTestContextWithAxis2("<test/>");
+        FaultHandler caller = Mockito.mock(FaultHandler.class);
+        synCtx.pushFaultHandler(caller);
+        List<FaultHandler> faultHandlers = new ArrayList<FaultHandler>(synCtx.getFaultStack());
+
+        Endpoint primary = createEndpoint(true);
+        Endpoint hedgeTarget = createEndpoint(true);
+        List<Endpoint> children = new ArrayList<Endpoint>();
+        children.add(primary);
+        children.add(hedgeTarget);
+        AbstractEndpoint parent = Mockito.mock(AbstractEndpoint.class);
+        Mockito.when(parent.getChildren()).thenReturn(children);
+
+        // the primary attempt is sent with its own fault handlers before the message is copied
+        synCtx.pushFaultHandler(parent);
+        synCtx.pushFaultHandler(Mockito.mock(FaultHandler.class));
+
+        final List<Stack<FaultHandler>> hedgeFaultStacks = new ArrayList<Stack<FaultHandler>>();
+        Mockito.doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                MessageContext hedgeCtx = invocation.getArgument(0);
+                Stack<FaultHandler> faultStack = new Stack<FaultHandler>();
+                faultStack.addAll(hedgeCtx.getFaultStack());
+                hedgeFaultStacks.add(faultStack);
+                throw new IllegalStateException("connection refused");
+            }
+        }).when(hedgeTarget).send(ArgumentMatchers.any(MessageContext.class));
+
+        RequestHedger hedger = new RequestHedger(95, 10, 100);
+        hedger.addBudget();
+        HedgedRequest request = new HedgedRequest();
+        hedger.sendHedge(synCtx, null, new HashSet<Object>(synCtx.getPropertyKeySet()), faultHandlers,
+                synCtx.getTo(), request, parent, primary);
+
+        assertEquals(1, hedgeFaultStacks.size());
+        Stack<FaultHandler> hedgeFaultStack = hedgeFaultStacks.get(0);
+        // only the parent fails the hedge over, before the fault reaches the caller
+        assertEquals(2, hedgeFaultStack.size());
+        assertSame(caller, hedgeFaultStack.get(0));
+        assertSame(parent, hedgeFaultStack.get(1));
+        // the primary attempt is still waiting for its response
+        assertTrue(request.fail());
+        assertEquals(3, synCtx.getFaultStack().size());
+    }
+
+    private static void recordResponseTimes(EndpointView view, long millis, long count) {
+        for (int i = 0; i < count; i++) {
+            view.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    public void testNotSlowUntilHedgeDelayPasses() {
+        RequestHedger hedger = new RequestHedger(95, 25, 5);
+        assertFalse(hedger.isSlow());
+    }
+
+    private static Endpoint createEndpoint(boolean ready) {
+        Endpoint endpoint = Mockito.mock(Endpoint.class);
+        Mockito.when(endpoint.readyToSend()).thenReturn(ready);
+        return endpoint;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.TestMessageContext;
+import org.apache.synapse.endpoints.Endpoint;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ResponseAwareLoadbalanceAlgorithmTest extends TestCase {
+
+    public void testLeastOutstandingRequestsAvoidsLoadedEndpoint() {
+        List<Endpoint> endpoints = createEndpoints(2);
+        LeastOutstandingRequests algorithm = new LeastOutstandingRequests();
+        algorithm.setEndpoints(endpoints);
+
+        // the first endpoint never responds, so all further messages go to the second one
+        Endpoint first = algorithm.getNextEndpoint(null, null);
+        Endpoint other = first == endpoints.get(0) ? endpoints.get(1) : endpoints.get(0);
+        for (int i = 0; i < 10; i++) {
+            Endpoint next = algorithm.getNextEndpoint(null, null);
+            assertSame(other, next);
+            algorithm.onResponse(next, null, 1000);
+        }
+        assertEquals(1, algorithm.getOutstandingRequests(endpoints.indexOf(first)));
+        assertEquals(0, algorithm.getOutstandingRequests(endpoints.indexOf(other)));
+
+        algorithm.onFailure(first, null);
+        assertEquals(0, algorithm.getOutstandingRequests(endpoints.indexOf(first)));
+        // unmatched completions do not make the count negative
+        algorithm.onFailure(first, null);
+        assertEquals(0, algorithm.getOutstandingRequests(endpoints.indexOf(first)));
+    }
+
+    public void testTimedOutMessageIsNoLongerOutstanding() {
+        List<Endpoint> endpoints = createEndpoints(1);
+        LeastOutstandingRequests algorithm = new LeastOutstandingRequests();
+        algorithm.setEndpoints(endpoints);
+        MessageContext synCtx = new TestMessageContext();
+        assertSame(endpoints.get(0), algorithm.getNextEndpoint(synCtx, null));
+        assertEquals(1, algorithm.getOutstandingRequests(0));
+
+        // the callback expired with no timeout action, the load balance endpoint is not informed
+        LeastOutstandingRequests.dropRequests(synCtx);
+        assertEquals(0, algorithm.getOutstandingRequests(0));
+        // a late failure of the same message is not counted again
+        assertSame(endpoints.get(0), algorithm.getNextEndpoint(null, null));
+        algorithm.onFailure(endpoints.get(0), synCtx);
+        assertEquals(1, algorithm.getOutstandingRequests(0));
+    }
+
+    public void testResponseThroughNestedEndpoint() {
+        List<Endpoint> outerEndpoints = createEndpoints(1);
+        List<Endpoint> innerEndpoints = createEndpoints(1);
+        LeastOutstandingRequests outer = new LeastOutstandingRequests();
+        outer.setEndpoints(outerEndpoints);
+        LeastOutstandingRequests inner = new LeastOutstandingRequests();
+        inner.setEndpoints(innerEndpoints);
+        MessageContext synCtx = new TestMessageContext();
+        outer.getNextEndpoint(synCtx, null);
+        inner.getNextEndpoint(synCtx, null);
+
+        // the inner endpoint fails and is retried, only its own request is completed
+        inner.onFailure(innerEndpoints.get(0), synCtx);
+        assertEquals(0, inner.getOutstandingRequests(0));
+        assertEquals(1, outer.getOutstandingRequests(0));
+        inner.getNextEndpoint(synCtx, null);
+        // a retry without a reported failure does not leave the first attempt outstanding
+        inner.getNextEndpoint(synCtx, null);
+        assertEquals(1, inner.getOutstandingRequests(0));
+
+        // the inner endpoint informs its algorithm, the outer one is further down the fault stack
+        inner.onResponse(innerEndpoints.get(0), synCtx, 1000);
+        LeastOutstandingRequests.completeRequests(synCtx, 1000);
+        assertEquals(0, inner.getOutstandingRequests(0));
+        assertEquals(0, outer.getOutstandingRequests(0));
+    }
+
+    public void testNotReadyEndpointsAreSkipped() {
+        List<Endpoint> endpoints = createEndpoints(5);
+        for (int i = 0; i < 4; i++) {
+            Mockito.when(endpoints.get(i).readyToSend()).thenReturn(false);
+        }
+        LeastOutstandingRequests algorithm = new LeastOutstandingRequests();
+        algorithm.setEndpoints(endpoints);
+        for (int i = 0; i < 20; i++) {
+            assertSame(endpoints.get(4), algorithm.getNextEndpoint(null, null));
+        }
+
+        Mockito.when(endpoints.get(4).readyToSend()).thenReturn(false);
+        assertNull(algorithm.getNextEndpoint(null, null));
+    }
+
+    public void testPeakEWMAPrefersFasterEndpoint() {
+        List<Endpoint> endpoints = createEndpoints(2);
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setEndpoints(endpoints);
+        algorithm.onResponse(endpoints.get(0), null, TimeUnit.MILLISECONDS.toNanos(200));
+        algorithm.onResponse(endpoints.get(1), null, TimeUnit.MILLISECONDS.toNanos(10));
+
+        int slow = 0;
+        for (int i = 0; i < 100; i++) {
+            Endpoint next = algorithm.getNextEndpoint(null, null);
+            if (next == endpoints.get(0)) {
+                slow++;
+            }
+            algorithm.onResponse(next, null, TimeUnit.MILLISECONDS.toNanos(next == endpoints.get(0) ? 200 : 10));
+        }
+        assertEquals(0, slow);
+    }
+
+    public void testPeakEWMADoesNotFloodEndpointWithoutResponses() {
+        List<Endpoint> endpoints = createEndpoints(2);
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setEndpoints(endpoints);
+        algorithm.onResponse(endpoints.get(0), null, TimeUnit.MILLISECONDS.toNanos(10));
+
+        // the second endpoint never responds, it is costed with the average of the first one
+        for (int i = 0; i < 20; i++) {
+            Endpoint next = algorithm.getNextEndpoint(null, null);
+            if (next == endpoints.get(0)) {
+                algorithm.onResponse(next, null, TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+        assertTrue(algorithm.getOutstandingRequests(1) <= 1);
+    }
+
+    public void testPeakEWMAFollowsPeaksAndDecays() throws Exception {
+        List<Endpoint> endpoints = createEndpoints(1);
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setDecayTime(50);
+        algorithm.setEndpoints(endpoints);
+
+        algorithm.onResponse(endpoints.get(0), null, 1000);
+        algorithm.onResponse(endpoints.get(0), null, 1000000);
+        assertTrue(algorithm.getResponseTimeAverage(0) > 900000);
+
+        Thread.sleep(200);
+        assertTrue(algorithm.getResponseTimeAverage(0) < 100000);
+
+        algorithm.reset(null);
+        assertEquals(0.0, algorithm.getResponseTimeAverage(0));
+    }
+
+    private static List<Endpoint> createEndpoints(int count) {
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int i = 0; i < count; i++) {
+            Endpoint endpoint = Mockito.mock(Endpoint.class);
+            Mockito.when(endpoint.readyToSend()).thenReturn(true);
+            endpoints.add(endpoint);
+        }
+        return endpoints;
+    }
+}
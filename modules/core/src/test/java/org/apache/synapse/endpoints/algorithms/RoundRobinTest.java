@@ -0,0 +1,165 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoundRobinTest extends TestCase {
+
+    public void testRoundRobinOrder() {
+        List<Endpoint> endpoints = createEndpoints(1, 1, 1);
+        RoundRobin algorithm = new RoundRobin(endpoints);
+        AlgorithmContext context = createAlgorithmContext();
+        for (int round = 0; round < 3; round++) {
+            for (Endpoint endpoint : endpoints) {
+                assertSame(endpoint, algorithm.getNextEndpoint(null, context));
+            }
+        }
+
+        algorithm.reset(context);
+        assertSame(endpoints.get(0), algorithm.getNextEndpoint(null, context));
+    }
+
+    public void testRoundRobinSpreadsOverReadyEndpoints() {
+        List<Endpoint> endpoints = createEndpoints(1, 1, 1, 1);
+        Mockito.when(endpoints.get(1).readyToSend()).thenReturn(false);
+        RoundRobin algorithm = new RoundRobin(endpoints);
+        AlgorithmContext context = createAlgorithmContext();
+
+        int[] counts = new int[endpoints.size()];
+        for (int i = 0; i < 1200; i++) {
+            counts[endpoints.indexOf(algorithm.getNextEndpoint(null, context))]++;
+        }
+        assertEquals(0, counts[1]);
+        for (int i : new int[]{0, 2, 3}) {
+            assertTrue("Unbalanced load " + counts[i], counts[i] >= 350 && counts[i] <= 450);
+        }
+
+        for (Endpoint endpoint : endpoints) {
+            Mockito.when(endpoint.readyToSend()).thenReturn(false);
+        }
+        assertNull(algorithm.getNextEndpoint(null, context));
+    }
+
+    public void testWeightedRoundRobinSchedule() {
+        List<Endpoint> endpoints = createEndpoints(5, 3, 2);
+        WeightedRoundRobin algorithm = createWeightedRoundRobin(endpoints);
+
+        int[] expected = {0, 1, 2, 0, 0, 1, 0, 2, 1, 0};
+        for (int round = 0; round < 2; round++) {
+            for (int position : expected) {
+                assertSame(endpoints.get(position), algorithm.getNextEndpoint(null, null));
+            }
+        }
+
+        algorithm.changeWeight(2, 5);
+        assertEquals(5, algorithm.getCurrentWeights()[2]);
+        int[] counts = new int[endpoints.size()];
+        for (int i = 0; i < 13; i++) {
+            counts[endpoints.indexOf(algorithm.getNextEndpoint(null, null))]++;
+        }
+        assertEquals(5, counts[0]);
+        assertEquals(3, counts[1]);
+        assertEquals(5, counts[2]);
+    }
+
+    public void testWeightedRoundRobinSkipsEndpointsNotReady() {
+        List<Endpoint> endpoints = createEndpoints(5, 3, 2);
+        Mockito.when(endpoints.get(0).readyToSend()).thenReturn(false);
+        WeightedRoundRobin algorithm = createWeightedRoundRobin(endpoints);
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(endpoints.get(0), algorithm.getNextEndpoint(null, null));
+        }
+    }
+
+    public void testConcurrentWeightedRoundRobin() throws Exception {
+        final List<Endpoint> endpoints = createEndpoints(3, 1);
+        final WeightedRoundRobin algorithm = createWeightedRoundRobin(endpoints);
+        final ConcurrentHashMap<Endpoint, AtomicInteger> counts = new ConcurrentHashMap<Endpoint, AtomicInteger>();
+        for (Endpoint endpoint : endpoints) {
+            counts.put(endpoint, new AtomicInteger());
+        }
+
+        int threads = 8;
+        final int messages = 4000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        counts.get(algorithm.getNextEndpoint(null, null)).incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // every cycle of the schedule is used exactly once
+        assertEquals(threads * messages * 3 / 4, counts.get(endpoints.get(0)).get());
+        assertEquals(threads * messages / 4, counts.get(endpoints.get(1)).get());
+    }
+
+    private static WeightedRoundRobin createWeightedRoundRobin(List<Endpoint> endpoints) {
+        LoadbalanceEndpoint loadbalanceEndpoint = new LoadbalanceEndpoint();
+        loadbalanceEndpoint.setName("weightedLB");
+        WeightedRoundRobin algorithm = new WeightedRoundRobin();
+        algorithm.setEndpoints(endpoints);
+        algorithm.setLoadBalanceEndpoint(loadbalanceEndpoint);
+        algorithm.init(null);
+        return algorithm;
+    }
+
+    private static AlgorithmContext createAlgorithmContext() {
+        return new AlgorithmContext(false, new ConfigurationContext(new AxisConfiguration()), "roundRobinLB");
+    }
+
+    private static List<Endpoint> createEndpoints(int... weights) {
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        for (int weight : weights) {
+            AddressEndpoint endpoint = Mockito.mock(AddressEndpoint.class);
+            MediatorProperty property = new MediatorProperty();
+            property.setName("loadbalance.weight");
+            property.setValue(String.valueOf(weight));
+            Mockito.when(endpoint.getProperty("loadbalance.weight")).thenReturn(property);
+            Mockito.when(endpoint.readyToSend()).thenReturn(true);
+            endpoints.add(endpoint);
+        }
+        return endpoints;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.dispatch;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the expiry and the eviction of the sessions kept in a {@link SessionTable}
+ */
+public class SessionTableTest extends TestCase {
+
+    private static final long TICK = 1000;
+
+    private static final int WHEEL_SIZE = 8;
+
+    private long now;
+
+    @Override
+    protected void setUp() throws Exception {
+        now = System.currentTimeMillis();
+    }
+
+    public void testExpiredSessionsAreCleared() {
+        SessionTable table = newTable(-1, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        table.put(session("short", now + 100));
+        // expires beyond the span of the wheel
+        table.put(session("long", now + 20 * TICK));
+
+        assertEquals(1, table.expire(now + 3 * TICK));
+        assertNull(table.get("short"));
+        assertNotNull(table.get("long"));
+
+        assertEquals(1, table.expire(now + 30 * TICK));
+        assertEquals(0, table.size());
+        assertEquals(2, table.getExpirations());
+    }
+
+    public void testRenewedSessionIsKept() {
+        SessionTable table = newTable(-1, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        SessionInformation information = session("renewed", now + 500);
+        table.put(information);
+        information.setExpiryTime(now + 5 * TICK);
+
+        assertEquals(0, table.expire(now + 3 * TICK));
+        assertSame(information, table.get("renewed"));
+        assertEquals(1, table.expire(now + 7 * TICK));
+    }
+
+    public void testRemovedAndReplacedSessionsAreSkipped() {
+        SessionTable table = newTable(-1, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        table.put(session("removed", now + 100));
+        table.remove("removed");
+        table.put(session("replaced", now + 100));
+        SessionInformation replacement = session("replaced", now + 6 * TICK);
+        table.put(replacement);
+
+        assertEquals(0, table.expire(now + 3 * TICK));
+        assertSame(replacement, table.get("replaced"));
+        assertEquals(0, table.getExpirations());
+    }
+
+    public void testSessionClosestToExpiryIsEvicted() {
+        SessionTable table = newTable(2, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        assertTrue(table.put(session("a", now + 5 * TICK)));
+        assertTrue(table.put(session("b", now + TICK)));
+        assertTrue(table.put(session("c", now + 3 * TICK)));
+
+        assertEquals(2, table.size());
+        assertNull(table.get("b"));
+        assertNotNull(table.get("a"));
+        assertNotNull(table.get("c"));
+        assertEquals(1, table.getEvictions());
+    }
+
+    public void testNewSessionIsRejectedOnFullTable() {
+        SessionTable table = newTable(1, SessionTable.EvictionPolicy.REJECT);
+        assertTrue(table.put(session("a", now + TICK)));
+        assertFalse(table.put(session("b", now + TICK)));
+        // an established session can still be replaced
+        assertTrue(table.put(session("a", now + 2 * TICK)));
+
+        assertEquals(1, table.size());
+        assertNull(table.get("b"));
+        assertEquals(1, table.getRejections());
+    }
+
+    public void testSessionBeyondWheelSpanIsEvicted() {
+        SessionTable table = newTable(1, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        assertTrue(table.put(session("a", now + 20 * TICK)));
+        assertTrue(table.put(session("b", now + 20 * TICK)));
+
+        assertEquals(1, table.size());
+        assertNotNull(table.get("b"));
+        assertEquals(1, table.getEvictions());
+    }
+
+    public void testConcurrentPutsDoNotOvershoot() throws Exception {
+        final SessionTable table = newTable(10, SessionTable.EvictionPolicy.EXPIRING_FIRST);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final int[] maxSeen = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 1000; i++) {
+                            table.put(session(thread + "-" + i, now + (i % 5) * TICK));
+                            maxSeen[thread] = Math.max(maxSeen[thread], table.size());
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        for (int size : maxSeen) {
+            assertTrue("table grew to " + size, size <= 10);
+        }
+        assertEquals(10, table.size());
+    }
+
+    private SessionTable newTable(int maxSize, SessionTable.EvictionPolicy policy) {
+        return new SessionTable(maxSize, policy, TICK, WHEEL_SIZE);
+    }
+
+    private SessionInformation session(String id, long expiryTime) {
+        return new SessionInformation(id, null, expiryTime);
+    }
+}
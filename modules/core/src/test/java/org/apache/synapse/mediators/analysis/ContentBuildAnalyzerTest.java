@@ -0,0 +1,128 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.analysis;
+
+import junit.framework.TestCase;
+import org.apache.synapse.config.xml.AnonymousListMediator;
+import org.apache.synapse.config.xml.XMLConfigConstants;
+import org.apache.synapse.mediators.TestMediator;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.builtin.PropertyMediator;
+import org.apache.synapse.mediators.filters.FilterMediator;
+import org.apache.synapse.mediators.transform.HeaderMediator;
+import org.apache.synapse.util.xpath.SynapseJsonPath;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import javax.xml.namespace.QName;
+import java.util.regex.Pattern;
+
+public class ContentBuildAnalyzerTest extends TestCase {
+
+    public void testFlowWithoutContentAccess() throws Exception {
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(createPropertyMediator("a"));
+        seq.addChild(createPropertyMediator("b"));
+
+        ContentBuildReport report = ContentBuildAnalyzer.analyze("Sequence:plain", seq);
+        assertEquals(ContentBuildRequirement.NONE, report.getRequirement());
+        assertNull(report.getEarliestBuildPoint());
+        assertTrue(report.getFullBuildMediators().isEmpty());
+    }
+
+    public void testFullBuildInsideBranch() throws Exception {
+        FilterMediator filter = new FilterMediator();
+        filter.setSource(new SynapseXPath("$ctx:symbol"));
+        filter.setRegex(Pattern.compile("IBM"));
+        filter.addChild(createPropertyMediator("a"));
+        filter.addChild(new TestMediator());
+        AnonymousListMediator elseMediator = new AnonymousListMediator();
+        elseMediator.addChild(createPropertyMediator("b"));
+        filter.setElseMediator(elseMediator);
+
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(createPropertyMediator("c"));
+        seq.addChild(filter);
+
+        ContentBuildReport report = ContentBuildAnalyzer.analyze("Sequence:branch", seq);
+        assertEquals(ContentBuildRequirement.FULL, report.getRequirement());
+        assertEquals(1, report.getFullBuildMediators().size());
+        assertEquals("1:filter/then/1:test", report.getEarliestBuildPoint());
+    }
+
+    public void testJsonPathFilter() throws Exception {
+        FilterMediator filter = new FilterMediator();
+        filter.setSource(new SynapseJsonPath("$.symbol"));
+        filter.setRegex(Pattern.compile("IBM"));
+
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(filter);
+
+        ContentBuildReport report = ContentBuildAnalyzer.analyze("Sequence:json", seq);
+        assertEquals(ContentBuildRequirement.JSON, report.getRequirement());
+        assertEquals("0:filter", report.getEarliestBuildPoint());
+        assertEquals(1, report.getPartialBuildMediators().size());
+    }
+
+    public void testSoapHeaderOnlyNeedsHeaders() throws Exception {
+        HeaderMediator soapHeader = new HeaderMediator();
+        soapHeader.setQName(new QName("http://example.org", "To"));
+        soapHeader.setValue("value");
+        HeaderMediator transportHeader = new HeaderMediator();
+        transportHeader.setScope(XMLConfigConstants.SCOPE_TRANSPORT);
+        transportHeader.setQName(new QName("Accept"));
+        transportHeader.setValue("application/xml");
+
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(transportHeader);
+        seq.addChild(soapHeader);
+
+        assertEquals(ContentBuildRequirement.NONE, ContentBuildAnalyzer.requirementOf(transportHeader));
+        ContentBuildReport report = ContentBuildAnalyzer.analyze("Sequence:headers", seq);
+        assertEquals(ContentBuildRequirement.HEADERS, report.getRequirement());
+        assertEquals("1:header", report.getEarliestBuildPoint());
+        assertTrue(report.getFullBuildMediators().isEmpty());
+    }
+
+    public void testBuildDecision() {
+        assertFalse(ContentBuildRequirement.NONE.requiresBuild());
+        assertFalse(ContentBuildRequirement.STREAMING_XPATH.requiresBuild());
+        assertTrue(ContentBuildRequirement.HEADERS.requiresBuild());
+        assertTrue(ContentBuildRequirement.JSON.requiresBuild());
+        assertTrue(ContentBuildRequirement.FULL.requiresBuild());
+        // a plain list mediator leaves the build to its own children
+        AnonymousListMediator list = new AnonymousListMediator();
+        list.addChild(new TestMediator());
+        assertEquals(ContentBuildRequirement.NONE, ContentBuildAnalyzer.requirementOf(list));
+    }
+
+    public void testCombine() {
+        assertEquals(ContentBuildRequirement.FULL,
+                ContentBuildRequirement.JSON.combine(ContentBuildRequirement.FULL));
+        assertEquals(ContentBuildRequirement.JSON,
+                ContentBuildRequirement.JSON.combine(ContentBuildRequirement.NONE));
+    }
+
+    private static PropertyMediator createPropertyMediator(String name) {
+        PropertyMediator propertyMediator = new PropertyMediator();
+        propertyMediator.setName(name);
+        propertyMediator.setValue("value");
+        return propertyMediator;
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.synapse.mediators.base;
 
 import junit.framework.TestCase;
+import org.apache.synapse.Mediator;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
@@ -33,6 +34,8 @@ import org.apache.synapse.mediators.TestUtils;
 import org.apache.axis2.engine.AxisConfiguration;
 import org.apache.axis2.context.ConfigurationContext;
 
+import java.util.ListIterator;
+
 public class SequenceMediatorTest extends TestCase {
 
     private StringBuffer result = new StringBuffer();
@@ -138,4 +141,70 @@ public class SequenceMediatorTest extends TestCase {
 
         assertTrue("T1.T2.T4".equals(result.toString()));
     }
+
+    public void testChildListChangesAfterMediation() throws Exception {
+
+        TestMediator t1 = new TestMediator();
+        t1.setHandler(
+            new TestMediateHandler() {
+                public void handle(MessageContext synCtx) {
+                    result.append("T1.");
+                }
+            });
+        TestMediator t2 = new TestMediator();
+        t2.setHandler(
+            new TestMediateHandler() {
+                public void handle(MessageContext synCtx) {
+                    result.append("T2.");
+                }
+            });
+
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(t1);
+        MessageContext synCtx = TestUtils.getTestContext("<empty/>");
+        seq.init(synCtx.getEnvironment());
+        seq.mediate(synCtx);
+
+        // the compiled child list should reflect the mediators added and removed afterwards
+        seq.addChild(0, t2);
+        seq.mediate(synCtx);
+        seq.removeChild(t1);
+        seq.mediate(synCtx);
+
+        assertEquals("T1.T2.T1.T2.", result.toString());
+    }
+
+    public void testChildListReplacedThroughList() throws Exception {
+
+        TestMediator t1 = new TestMediator();
+        t1.setHandler(
+            new TestMediateHandler() {
+                public void handle(MessageContext synCtx) {
+                    result.append("T1.");
+                }
+            });
+        TestMediator t2 = new TestMediator();
+        t2.setHandler(
+            new TestMediateHandler() {
+                public void handle(MessageContext synCtx) {
+                    result.append("T2.");
+                }
+            });
+
+        SequenceMediator seq = new SequenceMediator();
+        seq.addChild(t1);
+        MessageContext synCtx = TestUtils.getTestContext("<empty/>");
+        seq.init(synCtx.getEnvironment());
+        seq.mediate(synCtx);
+
+        // replacing a mediator keeps the size of the list, the compiled child list must still change
+        seq.getList().set(0, t2);
+        seq.mediate(synCtx);
+        ListIterator<Mediator> iterator = seq.getList().listIterator();
+        iterator.next();
+        iterator.set(t1);
+        seq.mediate(synCtx);
+
+        assertEquals("T1.T2.T1.", result.toString());
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin;
+
+import junit.framework.TestCase;
+import org.apache.synapse.FaultHandler;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SequenceType;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.continuation.SeqContinuationState;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Tests the continuation of the mediation flow after a blocking Call mediator invocation on a
+ * virtual thread
+ */
+public class BlockingCallWorkerTest extends TestCase {
+
+    private Semaphore permits;
+
+    @Override
+    protected void setUp() throws Exception {
+        permits = new Semaphore(1);
+        permits.acquire();
+    }
+
+    public void testFlowContinuesAfterTheCallMediator() throws Exception {
+        MessageContext synCtx = TestUtils.getTestContextWithAxis2("<test/>");
+        synCtx.setContinuationEnabled(true);
+        SequenceMediator sequence = new SequenceMediator();
+        sequence.setName("continued");
+        sequence.addChild(new MarkingMediator("call"));
+        sequence.addChild(new MarkingMediator("next"));
+        synCtx.getConfiguration().addSequence("continued", sequence);
+        // the Call mediator recorded its position before the flow was handed over
+        SeqContinuationState state = new SeqContinuationState(SequenceType.NAMED, "continued");
+        state.setPosition(0);
+        synCtx.pushContinuationState(state);
+        // set by the Call mediator before the invocation
+        synCtx.setProperty(CallMediator.IS_SOURCE_AVAILABLE, true);
+        synCtx.setProperty(CallMediator.IS_TARGET_AVAILABLE, false);
+
+        new BlockingCallWorker(new StubCallMediator(null), synCtx, permits).run();
+
+        assertEquals("response", synCtx.getProperty("called"));
+        // the flow is resumed through the environment, which completes the Call mediator first
+        assertEquals(Boolean.FALSE, synCtx.getProperty(CallMediator.IS_SOURCE_AVAILABLE));
+        assertNull("mediators before the call are not run again", synCtx.getProperty("call"));
+        assertEquals(Boolean.TRUE, synCtx.getProperty("next"));
+        assertTrue(synCtx.getContinuationStateStack().isEmpty());
+        assertEquals(1, permits.availablePermits());
+    }
+
+    public void testFailedCallIsHandedToTheFaultHandler() throws Exception {
+        MessageContext synCtx = TestUtils.getTestContextWithAxis2("<test/>");
+        final Exception[] handled = new Exception[1];
+        synCtx.pushFaultHandler(new FaultHandler() {
+            @Override
+            public void onFault(MessageContext synCtx) {
+                handled[0] = (Exception) synCtx.getProperty(SynapseConstants.ERROR_EXCEPTION);
+            }
+        });
+        SynapseException failure = new SynapseException("backend unavailable");
+
+        new BlockingCallWorker(new StubCallMediator(failure), synCtx, permits).run();
+
+        assertSame(failure, handled[0]);
+        assertEquals(1, permits.availablePermits());
+    }
+
+    private static class StubCallMediator extends CallMediator {
+
+        private final SynapseException failure;
+
+        StubCallMediator(SynapseException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        boolean invokeBlocking(MessageContext synInCtx) {
+            if (failure != null) {
+                throw failure;
+            }
+            synInCtx.setProperty("called", "response");
+            return true;
+        }
+    }
+
+    private static class MarkingMediator extends AbstractMediator {
+
+        private final String property;
+
+        MarkingMediator(String property) {
+            this.property = property;
+        }
+
+        public boolean mediate(MessageContext synCtx) {
+            synCtx.setProperty(property, Boolean.TRUE);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.forwarder;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.MessageProducer;
+import org.apache.synapse.message.processor.impl.ScheduledMessageProcessor;
+import org.apache.synapse.message.store.MessagePriority;
+import org.apache.synapse.message.store.impl.memory.InMemoryStore;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ForwardingServicePriorityBypassTest extends TestCase {
+
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+    private ForwardingService service;
+
+    @Override
+    protected void setUp() throws Exception {
+        SynapseConfiguration configuration = new SynapseConfiguration();
+        SynapseEnvironment environment = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), configuration);
+        InMemoryStore store = new InMemoryStore();
+        Map<String, Object> storeParameters = new HashMap<String, Object>();
+        storeParameters.put(MessagePriority.PRIORITY_ENABLED, "true");
+        store.setParameters(storeParameters);
+        store.init(environment);
+        configuration.addMessageStore("store", store);
+        producer = store.getProducer();
+
+        ScheduledMessageProcessor processor = Mockito.mock(ScheduledMessageProcessor.class);
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ForwardingProcessorConstants.PRIORITY_BYPASS, "true");
+        when(processor.getParameters()).thenReturn(parameters);
+        when(processor.getName()).thenReturn("processor");
+        when(processor.getMessageStoreName()).thenReturn("store");
+        when(processor.getIsActivatedParamValue()).thenReturn(true);
+
+        service = new ForwardingService(processor, null, environment, 1000);
+        service.init(environment);
+        ArgumentCaptor<MessageConsumer> consumerCaptor = ArgumentCaptor.forClass(MessageConsumer.class);
+        verify(processor).setMessageConsumer(consumerCaptor.capture());
+        consumer = consumerCaptor.getValue();
+    }
+
+    public void testAttemptsAreKeptForEachMessagePutBack() throws Exception {
+        store("low", 1);
+        MessageContext low = service.fetch();
+        assertEquals("low", low.getMessageID());
+
+        store("medium", 5);
+        assertTrue(service.yieldToWaitingMessage(low, 2, low.getEnvelope(), null));
+        MessageContext medium = service.fetch();
+        assertEquals("medium", medium.getMessageID());
+        assertEquals(0, service.takeYieldedAttemptCount(medium));
+
+        store("high", 9);
+        assertTrue(service.yieldToWaitingMessage(medium, 4, medium.getEnvelope(), null));
+        MessageContext high = service.fetch();
+        assertEquals("high", high.getMessageID());
+        assertTrue(consumer.ack());
+
+        // the lanes of the store are served by weight, either message may come first
+        Map<String, Integer> attempts = new HashMap<String, Integer>();
+        for (int i = 0; i < 2; i++) {
+            MessageContext retried = service.fetch();
+            attempts.put(retried.getMessageID(), service.takeYieldedAttemptCount(retried));
+            assertEquals("taken only once", 0, service.takeYieldedAttemptCount(retried));
+            assertTrue(consumer.ack());
+        }
+        assertEquals(Integer.valueOf(2), attempts.get("low"));
+        assertEquals(Integer.valueOf(4), attempts.get("medium"));
+    }
+
+    public void testMessageIsKeptWithoutWaitingMessageOfHigherPriority() throws Exception {
+        store("first", 5);
+        store("second", 5);
+        MessageContext first = service.fetch();
+        assertFalse(service.yieldToWaitingMessage(first, 1, first.getEnvelope(), null));
+        assertEquals("first", service.fetch().getMessageID());
+        assertEquals(0, service.takeYieldedAttemptCount(first));
+    }
+
+    private void store(String messageId, int priority) throws Exception {
+        MessageContext message = TestUtils.getTestContextWithAxis2("<test/>");
+        message.setMessageID(messageId);
+        message.setProperty(MessagePriority.PROPERTY, priority);
+        assertTrue(producer.storeMessage(message));
+    }
+}
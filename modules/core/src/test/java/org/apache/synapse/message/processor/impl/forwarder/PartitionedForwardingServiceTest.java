@@ -0,0 +1,267 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.forwarder;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.xml.SynapsePath;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.MessageProducer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PartitionedForwardingServiceTest extends TestCase {
+
+    public void testSameKeyGoesToSameWorker() {
+        for (String key : new String[]{"customer-1", "customer-2", "", "customer-3"}) {
+            int worker = PartitionedForwardingService.workerOf(key, 4);
+            assertTrue(worker >= 0 && worker < 4);
+            assertEquals(worker, PartitionedForwardingService.workerOf(key, 4));
+        }
+    }
+
+    public void testPartitionKeyIsEvaluatedOverTheMessage() throws Exception {
+        SynapsePath key = PartitionedForwardingService.createPartitionKey("//order/@customer");
+        MessageContext message = TestUtils.createLightweightSynapseMessageContext(
+                "<order customer=\"c1\"><item>book</item></order>");
+        assertEquals("c1", key.stringValueOf(message));
+    }
+
+    public void testDeactivatedWorkerPutsMessagesBackInOrder() throws Exception {
+        final List<String> stored = new ArrayList<String>();
+        PartitionedForwardingService owner = new PartitionedForwardingService(null, null, null, 1000, 2, false) {
+            @Override
+            MessageProducer createProducer() {
+                return new RecordingProducer(stored);
+            }
+
+            @Override
+            boolean isProcessorStopped() {
+                return false;
+            }
+
+            @Override
+            void onWorkerDeactivated(ForwardingWorker worker) {
+            }
+        };
+        ForwardingWorker worker = new ForwardingWorker(0, 4, owner);
+        worker.deactivate();
+
+        MessageContext first = TestUtils.createLightweightSynapseMessageContext("<order id=\"1\"/>");
+        first.setMessageID("urn:uuid:1");
+        MessageContext second = TestUtils.createLightweightSynapseMessageContext("<order id=\"2\"/>");
+        second.setMessageID("urn:uuid:2");
+        worker.process(first);
+        worker.process(second);
+
+        assertEquals(2, worker.getRequeued());
+        assertEquals(0, worker.getForwarded());
+        List<String> expected = new ArrayList<String>();
+        expected.add("urn:uuid:1");
+        expected.add("urn:uuid:2");
+        assertEquals(expected, stored);
+        assertTrue(worker.getStatistics().contains("state=deactivated"));
+
+        worker.activate();
+        assertFalse(worker.isDeactivated());
+    }
+
+    public void testClaimedMessageAcknowledgedAfterItIsPutBack() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        PartitionedForwardingService owner = new PartitionedForwardingService(null, null, null, 1000, 2, false) {
+            @Override
+            MessageProducer createProducer() {
+                return new RecordingProducer(events);
+            }
+
+            @Override
+            boolean isProcessorStopped() {
+                return false;
+            }
+
+            @Override
+            void onWorkerDeactivated(ForwardingWorker worker) {
+            }
+
+            @Override
+            boolean acknowledge(MessageContext message) {
+                return events.add("ack " + message.getMessageID());
+            }
+        };
+        ForwardingWorker worker = new ForwardingWorker(0, 4, owner);
+        worker.deactivate();
+
+        MessageContext message = TestUtils.createLightweightSynapseMessageContext("<order id=\"1\"/>");
+        message.setMessageID("urn:uuid:1");
+        worker.process(message);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("urn:uuid:1");
+        expected.add("ack urn:uuid:1");
+        assertEquals(expected, events);
+        // nothing was handed out to the forwarding service
+        assertFalse(worker.ack());
+    }
+
+    public void testFailedRequeueDeactivatesProcessorAndKeepsMessages() throws Exception {
+        final List<String> stored = new ArrayList<String>();
+        final RecordingProducer producer = new RecordingProducer(stored);
+        final List<ForwardingWorker> failed = new ArrayList<ForwardingWorker>();
+        PartitionedForwardingService owner = new PartitionedForwardingService(null, null, null, 1000, 2, false) {
+            @Override
+            MessageProducer createProducer() {
+                return producer;
+            }
+
+            @Override
+            boolean isProcessorStopped() {
+                return !failed.isEmpty();
+            }
+
+            @Override
+            void onWorkerDeactivated(ForwardingWorker worker) {
+            }
+
+            @Override
+            void onRequeueFailed(ForwardingWorker worker) {
+                failed.add(worker);
+            }
+        };
+        ForwardingWorker worker = new ForwardingWorker(0, 4, owner);
+        worker.deactivate();
+
+        MessageContext first = TestUtils.createLightweightSynapseMessageContext("<order id=\"1\"/>");
+        first.setMessageID("urn:uuid:1");
+        MessageContext second = TestUtils.createLightweightSynapseMessageContext("<order id=\"2\"/>");
+        second.setMessageID("urn:uuid:2");
+
+        producer.available = false;
+        worker.process(first);
+        assertEquals(1, failed.size());
+        producer.available = true;
+        // the second message waits behind the first one
+        worker.process(second);
+        assertTrue(stored.isEmpty());
+
+        worker.storeUnstored();
+        List<String> expected = new ArrayList<String>();
+        expected.add("urn:uuid:1");
+        expected.add("urn:uuid:2");
+        assertEquals(expected, stored);
+        assertEquals(2, worker.getRequeued());
+    }
+
+    public void testBusyWorkerDoesNotStallOtherPartitions() throws Exception {
+        final boolean[] stopped = new boolean[1];
+        PartitionedForwardingService owner = new PartitionedForwardingService(null, null, null, 1000, 2, false) {
+            @Override
+            boolean isProcessorStopped() {
+                return stopped[0];
+            }
+        };
+        AcceptingWorker busy = new AcceptingWorker(0, owner);
+        AcceptingWorker idle = new AcceptingWorker(1, owner);
+        busy.accepting = false;
+        owner.setWorkers(new ForwardingWorker[]{busy, idle}, 2);
+
+        assertTrue(owner.handOver(message("urn:uuid:1"), 0));
+        assertTrue(owner.handOver(message("urn:uuid:2"), 1));
+        assertTrue(owner.handOver(message("urn:uuid:3"), 0));
+        assertEquals(2, owner.getParkedCount());
+        assertTrue(busy.accepted.isEmpty());
+        List<String> expected = new ArrayList<String>();
+        expected.add("urn:uuid:2");
+        assertEquals(expected, idle.accepted);
+
+        // the parked messages go to the worker in the order they were taken
+        busy.accepting = true;
+        owner.handOverParked(false);
+        expected.clear();
+        expected.add("urn:uuid:1");
+        expected.add("urn:uuid:3");
+        assertEquals(expected, busy.accepted);
+        assertEquals(0, owner.getParkedCount());
+
+        // once the worker can not take more parked messages the task waits for it, until stopped
+        busy.accepting = false;
+        assertTrue(owner.handOver(message("urn:uuid:4"), 0));
+        assertTrue(owner.handOver(message("urn:uuid:5"), 0));
+        stopped[0] = true;
+        assertFalse(owner.handOver(message("urn:uuid:6"), 0));
+        assertEquals(2, owner.getParkedCount());
+    }
+
+    private static MessageContext message(String id) throws Exception {
+        MessageContext message = TestUtils.createLightweightSynapseMessageContext("<order/>");
+        message.setMessageID(id);
+        return message;
+    }
+
+    private static class AcceptingWorker extends ForwardingWorker {
+
+        private final List<String> accepted = new ArrayList<String>();
+
+        private volatile boolean accepting = true;
+
+        AcceptingWorker(int index, PartitionedForwardingService owner) {
+            super(index, 1, owner);
+        }
+
+        @Override
+        boolean offer(MessageContext message, long timeout) throws InterruptedException {
+            if (!accepting) {
+                Thread.sleep(timeout);
+                return false;
+            }
+            return accepted.add(message.getMessageID());
+        }
+    }
+
+    private static class RecordingProducer implements MessageProducer {
+
+        private final List<String> stored;
+
+        private boolean available = true;
+
+        RecordingProducer(List<String> stored) {
+            this.stored = stored;
+        }
+
+        @Override
+        public boolean storeMessage(MessageContext synCtx) {
+            return available && stored.add(synCtx.getMessageID());
+        }
+
+        @Override
+        public boolean cleanup() {
+            return true;
+        }
+
+        @Override
+        public void setId(int id) {
+        }
+
+        @Override
+        public String getId() {
+            return "[recording-producer]";
+        }
+    }
+}
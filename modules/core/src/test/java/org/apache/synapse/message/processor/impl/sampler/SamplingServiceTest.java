@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.sampler;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.message.MessageConsumer;
+import org.apache.synapse.message.processor.MessageProcessor;
+import org.apache.synapse.message.processor.MessageProcessorConstants;
+import org.apache.synapse.message.store.MessageStore;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the injection of messages by the sampling service when it is paced by a rate
+ */
+public class SamplingServiceTest extends TestCase {
+
+    private static final String CONCURRENCY = "concurrency";
+
+    private static final String SEQUENCE = "sequence";
+
+    private SynapseConfiguration configuration;
+    private SynapseEnvironment environment;
+    private MessageProcessor processor;
+    private Map<String, Object> parameters;
+    private AtomicInteger received;
+    private AtomicInteger mediated;
+    private CountDownLatch mediationAllowed;
+
+    @Override
+    protected void setUp() throws Exception {
+        configuration = new SynapseConfiguration();
+        environment = new Axis2SynapseEnvironment(new ConfigurationContext(new AxisConfiguration()),
+                configuration);
+        received = new AtomicInteger();
+        mediated = new AtomicInteger();
+        mediationAllowed = new CountDownLatch(0);
+
+        SequenceMediator sequence = new SequenceMediator();
+        sequence.setName("sampled");
+        sequence.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                try {
+                    mediationAllowed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                mediated.incrementAndGet();
+                return true;
+            }
+        });
+        configuration.addSequence("sampled", sequence);
+
+        MessageConsumer consumer = Mockito.mock(MessageConsumer.class);
+        when(consumer.isAlive()).thenReturn(true);
+        when(consumer.receive()).thenAnswer(new Answer<MessageContext>() {
+            public MessageContext answer(InvocationOnMock invocation) throws Throwable {
+                received.incrementAndGet();
+                return TestUtils.createSynapseMessageContext("<test/>", configuration);
+            }
+        });
+        MessageStore store = Mockito.mock(MessageStore.class);
+        when(store.getName()).thenReturn("store");
+        when(store.getConsumer()).thenReturn(consumer);
+        configuration.addMessageStore("store", store);
+
+        parameters = new HashMap<String, Object>();
+        parameters.put(SEQUENCE, "sampled");
+        processor = Mockito.mock(MessageProcessor.class);
+        when(processor.getName()).thenReturn("sampler");
+        when(processor.getMessageStoreName()).thenReturn("store");
+        when(processor.getParameters()).thenReturn(parameters);
+    }
+
+    public void testMessagesAreInjectedAtTheRate() throws Exception {
+        parameters.put(SamplingProcessor.RATE, "20");
+        SamplingService service = new SamplingService(processor, environment,
+                CONCURRENCY, SEQUENCE);
+
+        long start = System.nanoTime();
+        service.execute();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("the execution lasts for the scheduler threshold, took " + elapsed + " ms",
+                elapsed >= 1000 && elapsed < 2000);
+        // one token is available at once, twenty more are added over the second
+        assertTrue("received " + received.get() + " messages", received.get() >= 15 && received.get() <= 21);
+        waitForMediation(service, received.get());
+    }
+
+    public void testRateIsDividedAcrossTasks() throws Exception {
+        parameters.put(SamplingProcessor.RATE, "20");
+        parameters.put(MessageProcessorConstants.MEMBER_COUNT, "2");
+        parameters.put(SamplingProcessor.MAX_IN_FLIGHT, "4");
+        SamplingService service = new SamplingService(processor, environment,
+                CONCURRENCY, SEQUENCE);
+
+        service.execute();
+
+        assertEquals(10.0, service.getTargetRate());
+        // one token is available at once, ten more are added over the second
+        assertTrue("received " + received.get() + " messages", received.get() >= 7 && received.get() <= 11);
+        waitForMediation(service, received.get());
+    }
+
+    public void testInjectionStopsAtMaximumInFlight() throws Exception {
+        parameters.put(SamplingProcessor.RATE, "100");
+        parameters.put(CONCURRENCY, "10");
+        parameters.put(SamplingProcessor.MAX_IN_FLIGHT, "2");
+        mediationAllowed = new CountDownLatch(1);
+        SamplingService service = new SamplingService(processor, environment,
+                CONCURRENCY, SEQUENCE);
+
+        service.execute();
+
+        assertEquals(2, received.get());
+        assertEquals(2, service.getInFlightCount());
+        mediationAllowed.countDown();
+        waitForMediation(service, 2);
+    }
+
+    private void waitForMediation(SamplingService service, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((mediated.get() < expected || service.getInFlightCount() > 0) &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, mediated.get());
+        assertEquals(0, service.getInFlightCount());
+    }
+}
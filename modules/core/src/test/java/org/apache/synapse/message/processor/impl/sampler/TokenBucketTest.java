@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processor.impl.sampler;
+
+import junit.framework.TestCase;
+
+public class TokenBucketTest extends TestCase {
+
+    private static final long SECOND = 1000000000L;
+
+    public void testPacesToTheRate() {
+        TokenBucket bucket = new TokenBucket(4, 1, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(SECOND / 4, bucket.tryAcquire(0));
+        assertEquals(SECOND / 8, bucket.tryAcquire(SECOND / 8));
+
+        int acquired = 0;
+        for (long now = SECOND / 4; now <= 10 * SECOND; now += SECOND / 100) {
+            if (bucket.tryAcquire(now) == 0) {
+                acquired++;
+            }
+        }
+        assertEquals(40, acquired);
+    }
+
+    public void testSubSecondRateAcrossTicks() {
+        TokenBucket bucket = new TokenBucket(0.5, 1, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(2 * SECOND, bucket.tryAcquire(0));
+        // a scheduler tick ending in between does not lose the partially refilled token
+        assertEquals(SECOND, bucket.tryAcquire(SECOND));
+        assertEquals(0, bucket.tryAcquire(2 * SECOND));
+    }
+
+    public void testBurstIsBoundedByCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        assertEquals(3.0, bucket.getAvailableTokens(60 * SECOND), 0.0001);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(60 * SECOND));
+        }
+        assertTrue(bucket.tryAcquire(60 * SECOND) > 0);
+    }
+
+    public void testReleasedTokenIsReused() {
+        TokenBucket bucket = new TokenBucket(1, 2, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        bucket.release();
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) > 0);
+        bucket.release();
+        bucket.release();
+        bucket.release();
+        assertEquals(2.0, bucket.getAvailableTokens(0), 0.0001);
+    }
+}
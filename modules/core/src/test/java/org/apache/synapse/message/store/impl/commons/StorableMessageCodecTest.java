@@ -0,0 +1,191 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.commons;
+
+import junit.framework.TestCase;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the binary codec of the stored messages
+ */
+public class StorableMessageCodecTest extends TestCase {
+
+    private static final String ENVELOPE = "<soapenv:Envelope xmlns:soapenv=" +
+            "\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><m:getQuote " +
+            "xmlns:m=\"http://services.samples\"><m:symbol>IBM</m:symbol></m:getQuote>" +
+            "</soapenv:Body></soapenv:Envelope>";
+
+    public void testBinaryRoundTrip() throws Exception {
+        StorableMessage decoded = roundTrip(StorableMessageCodec.binary(StorableMessageCodec.Compression.NONE));
+        assertMessage(decoded);
+    }
+
+    public void testCompressedRoundTrip() throws Exception {
+        StorableMessageCodec codec = StorableMessageCodec.binary(StorableMessageCodec.Compression.DEFLATE);
+        StorableMessage message = createMessage();
+        byte[] compressed = codec.encode(message);
+        byte[] plain = StorableMessageCodec.binary(StorableMessageCodec.Compression.NONE).encode(message);
+        assertTrue(compressed.length < plain.length);
+        assertMessage(StorableMessageCodec.decode(compressed));
+    }
+
+    public void testJavaSerializedMessagesAreDecoded() throws Exception {
+        StorableMessage message = createMessage();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        assertFalse(StorableMessageCodec.isBinary(bytes.toByteArray()));
+        // the envelope bytes are transient, the string form has to be serialized instead
+        assertMessage(StorableMessageCodec.decode(bytes.toByteArray()));
+
+        assertMessage(roundTrip(StorableMessageCodec.java()));
+    }
+
+    public void testCodecFromParameters() {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        assertTrue(StorableMessageCodec.fromParameters(parameters).isBinary());
+        assertEquals(StorableMessageCodec.Compression.NONE,
+                StorableMessageCodec.fromParameters(parameters).getCompression());
+        parameters.put(StorableMessageCodec.COMPRESSION, "deflate");
+        assertEquals(StorableMessageCodec.Compression.DEFLATE,
+                StorableMessageCodec.fromParameters(parameters).getCompression());
+        parameters.put(StorableMessageCodec.SERIALIZATION, "java");
+        assertFalse(StorableMessageCodec.fromParameters(parameters).isBinary());
+    }
+
+    public void testCorruptedMessageIsRejected() throws Exception {
+        byte[] data = StorableMessageCodec.binary(StorableMessageCodec.Compression.NONE).encode(createMessage());
+        try {
+            StorableMessageCodec.decode(Arrays.copyOf(data, data.length / 2));
+            fail("Truncated message decoded");
+        } catch (ObjectStreamException expected) {
+        }
+
+        data[2] = StorableMessageCodec.VERSION + 1;
+        try {
+            StorableMessageCodec.decode(data);
+            fail("Message of an unknown version decoded");
+        } catch (ObjectStreamException expected) {
+        }
+    }
+
+    public void testCorruptedLengthIsNotAllocated() throws Exception {
+        byte[] data = StorableMessageCodec.binary(StorableMessageCodec.Compression.DEFLATE).encode(createMessage());
+        // the inflated length follows the four byte header
+        data[4] = 0x7F;
+        data[5] = (byte) 0xFF;
+        data[6] = (byte) 0xFF;
+        data[7] = (byte) 0xFF;
+        try {
+            StorableMessageCodec.decode(data);
+            fail("Message of a corrupted length decoded");
+        } catch (ObjectStreamException expected) {
+        }
+    }
+
+    private StorableMessage roundTrip(StorableMessageCodec codec) throws IOException {
+        return StorableMessageCodec.decode(codec.encode(createMessage()));
+    }
+
+    private StorableMessage createMessage() {
+        Axis2Message axis2Message = new Axis2Message();
+        axis2Message.setMessageID("urn:uuid:1234");
+        axis2Message.setOperationName(new QName("http://services.samples", "getQuote", "m"));
+        axis2Message.setAction("urn:getQuote");
+        axis2Message.setService("StockQuoteProxy");
+        axis2Message.setToAddress("http://localhost:9000/services/SimpleStockQuoteService");
+        axis2Message.setTransportInName("http");
+        axis2Message.setDoingMTOM(true);
+        axis2Message.setFLOW(2);
+        axis2Message.setSoapEnvelopeBytes(ENVELOPE.getBytes(StandardCharsets.UTF_8));
+        axis2Message.setJsonStream("{\"symbol\":\"IBM\"}".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> abstractProperties = new HashMap<String, Object>();
+        abstractProperties.put("string", "value");
+        abstractProperties.put("boolean", Boolean.TRUE);
+        abstractProperties.put("integer", 42);
+        abstractProperties.put("double", 4.2d);
+        abstractProperties.put("character", 'c');
+        axis2Message.addProperty("ABSTRACT_MC_PROPERTIES", abstractProperties);
+        Map<String, String> headers = new TreeMap<String, String>();
+        headers.put("Content-Type", "text/xml");
+        axis2Message.addProperty("TRANSPORT_HEADERS", headers);
+        axis2Message.addProperty("serialized", new StringBuilder("sb"));
+
+        SynapseMessage synapseMessage = new SynapseMessage();
+        synapseMessage.setResponse(true);
+        synapseMessage.setTracingState(1);
+        synapseMessage.addLocalEntry("entry");
+        synapseMessage.addProperty("name", "value");
+        synapseMessage.addPropertyObject("OM_ELEMENT_PREFIX_element", "<a/>".getBytes(StandardCharsets.UTF_8));
+
+        StorableMessage message = new StorableMessage();
+        message.setAxis2message(axis2Message);
+        message.setSynapseMessage(synapseMessage);
+        message.setPriority(7);
+        return message;
+    }
+
+    private void assertMessage(StorableMessage message) {
+        assertEquals(7, message.getPriority());
+        Axis2Message axis2Message = message.getAxis2message();
+        assertEquals("urn:uuid:1234", axis2Message.getMessageID());
+        assertEquals(new QName("http://services.samples", "getQuote"), axis2Message.getOperationName());
+        assertEquals("urn:getQuote", axis2Message.getAction());
+        assertEquals("StockQuoteProxy", axis2Message.getService());
+        assertEquals("http://localhost:9000/services/SimpleStockQuoteService", axis2Message.getToAddress());
+        assertNull(axis2Message.getReplyToAddress());
+        assertEquals("http", axis2Message.getTransportInName());
+        assertTrue(axis2Message.isDoingMTOM());
+        assertFalse(axis2Message.isDoingPOX());
+        assertEquals(2, axis2Message.getFLOW());
+        assertEquals(ENVELOPE, axis2Message.getSoapEnvelope());
+        assertEquals("{\"symbol\":\"IBM\"}", new String(axis2Message.getJsonStream(), StandardCharsets.UTF_8));
+
+        Map<?, ?> abstractProperties = (Map<?, ?>) axis2Message.getProperties().get("ABSTRACT_MC_PROPERTIES");
+        assertEquals("value", abstractProperties.get("string"));
+        assertEquals(Boolean.TRUE, abstractProperties.get("boolean"));
+        assertEquals(42, abstractProperties.get("integer"));
+        assertEquals(4.2d, abstractProperties.get("double"));
+        assertEquals('c', abstractProperties.get("character"));
+        assertEquals("text/xml", ((Map<?, ?>) axis2Message.getProperties().get("TRANSPORT_HEADERS"))
+                .get("Content-Type"));
+        assertEquals("sb", axis2Message.getProperties().get("serialized").toString());
+
+        SynapseMessage synapseMessage = message.getSynapseMessage();
+        assertTrue(synapseMessage.isResponse());
+        assertFalse(synapseMessage.isFaultResponse());
+        assertEquals(1, synapseMessage.getTracingState());
+        assertEquals(Arrays.asList("entry"), synapseMessage.getLocalEntries());
+        assertEquals("value", synapseMessage.getProperties().get("name"));
+        assertEquals("<a/>", new String(synapseMessage.getPropertyObjects().get("OM_ELEMENT_PREFIX_element"),
+                StandardCharsets.UTF_8));
+    }
+}
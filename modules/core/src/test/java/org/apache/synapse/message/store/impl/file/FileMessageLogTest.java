@@ -0,0 +1,263 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.file;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FileMessageLogTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "file-message-log-" + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    public void testRecovery() throws Exception {
+        FileMessageLog log = open(1024 * 1024, 0.25);
+        List<FileMessageLog.Entry> entries = new ArrayList<FileMessageLog.Entry>();
+        for (int i = 0; i < 5; i++) {
+            entries.add(log.append("ID" + i, bytes("message " + i)));
+        }
+        log.acknowledge(entries.get(1));
+        log.acknowledge(entries.get(3));
+        log.close();
+
+        log = open(1024 * 1024, 0.25);
+        assertEquals(3, log.size());
+        assertMessages(log, 0, 2, 4);
+
+        FileMessageLog.Entry entry = log.append("ID5", bytes("message 5"));
+        assertEquals("sequence continues after recovery", 5, entry.getSequence());
+        assertEquals("message 2", string(log.read(log.get("ID2"))));
+        log.close();
+    }
+
+    public void testTornRecordIsTruncated() throws Exception {
+        FileMessageLog log = open(1024 * 1024, 0.25);
+        log.append("ID0", bytes("message 0"));
+        log.append("ID1", bytes("message 1"));
+        log.close();
+
+        File segment = directory.listFiles()[0];
+        long length = segment.length();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(length - 3);
+        } finally {
+            file.close();
+        }
+
+        log = open(1024 * 1024, 0.25);
+        assertEquals(1, log.size());
+        assertMessages(log, 0);
+        log.append("ID2", bytes("message 2"));
+        log.close();
+
+        log = open(1024 * 1024, 0.25);
+        assertMessages(log, 0, 2);
+        log.close();
+    }
+
+    public void testAcknowledgedSegmentsAreDeleted() throws Exception {
+        FileMessageLog log = open(100, 0);
+        List<FileMessageLog.Entry> entries = new ArrayList<FileMessageLog.Entry>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(log.append("ID" + i, bytes("a message of forty bytes or so, " + i)));
+        }
+        assertEquals(10, log.getSegmentCount());
+        for (int i = 0; i < 9; i++) {
+            assertTrue(log.acknowledge(entries.get(i)));
+            assertFalse("acknowledged once", log.acknowledge(entries.get(i)));
+        }
+        log.awaitCompaction();
+        assertFalse(new File(directory, String.format("%020d", 0) + FileMessageLog.SEGMENT_SUFFIX).exists());
+        // the segment of the last message and the ones holding the acks are left
+        assertTrue(log.getSegmentCount() < 5);
+        log.close();
+
+        log = open(100, 0);
+        assertMessages(log, 9);
+        log.close();
+    }
+
+    public void testCompactionKeepsOrder() throws Exception {
+        FileMessageLog log = open(400, 0.5);
+        List<FileMessageLog.Entry> entries = new ArrayList<FileMessageLog.Entry>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(log.append("ID" + i, bytes("a message of forty bytes or so, " + i)));
+        }
+        int segments = log.getSegmentCount();
+        for (int i = 0; i < 20; i++) {
+            if (i % 4 != 0) {
+                log.acknowledge(entries.get(i));
+            }
+        }
+        log.awaitCompaction();
+        assertTrue("messages were copied", log.getRelocatedMessages() > 0);
+        assertTrue(log.getSegmentCount() < segments);
+        assertMessages(log, 0, 4, 8, 12, 16);
+        assertEquals("a message of forty bytes or so, 4", string(log.read(entries.get(4))));
+        log.close();
+
+        log = open(400, 0.5);
+        assertMessages(log, 0, 4, 8, 12, 16);
+        assertEquals("a message of forty bytes or so, 8", string(log.read(log.get("ID8"))));
+        log.close();
+    }
+
+    public void testMessageMovedAside() throws Exception {
+        FileMessageLog log = open(1024 * 1024, 0.25);
+        FileMessageLog.Entry unreadable = log.append("ID0", bytes("message 0"));
+        log.append("ID1", bytes("message 1"));
+        assertEquals(1, unreadable.readFailed());
+        assertEquals(2, unreadable.readFailed());
+
+        assertTrue(log.moveAside(unreadable));
+        assertFalse("moved once", log.moveAside(unreadable));
+        assertEquals("ID1", log.claimNext(new Object()).getMessageId());
+        File copy = new File(new File(directory, FileMessageLog.MOVED_ASIDE_DIRECTORY),
+                String.format("%020d", unreadable.getSequence()) + ".msg");
+        assertEquals("message 0", new String(Files.readAllBytes(copy.toPath()), StandardCharsets.UTF_8));
+        log.close();
+
+        log = open(1024 * 1024, 0.25);
+        assertMessages(log, 1);
+        log.close();
+    }
+
+    public void testConsumersClaimDifferentMessages() throws Exception {
+        FileMessageLog log = open(1024 * 1024, 0.25);
+        log.append("ID0", bytes("message 0"));
+        log.append("ID1", bytes("message 1"));
+        Object first = new Object();
+        Object second = new Object();
+
+        FileMessageLog.Entry claimed = log.claimNext(first);
+        assertEquals("ID0", claimed.getMessageId());
+        assertEquals("ID1", log.claimNext(second).getMessageId());
+        assertNull(log.claimNext(new Object()));
+        assertTrue("renewed by its owner", log.claim(claimed, first, System.currentTimeMillis()));
+
+        log.release(claimed, first);
+        assertEquals("ID0", log.claimNext(second).getMessageId());
+
+        FileMessageLog expiring = new FileMessageLog(new File(directory, "expiring"), 1024, false, 0, 10);
+        expiring.open();
+        FileMessageLog.Entry entry = expiring.append("ID0", bytes("message 0"));
+        assertTrue(expiring.claim(entry, first, 0));
+        assertTrue("claim timed out", expiring.claim(entry, second, 100));
+        expiring.close();
+        log.close();
+    }
+
+    public void testConcurrentAppendsShareSyncs() throws Exception {
+        final FileMessageLog log = open(64 * 1024, 0.25);
+        final int threads = 8;
+        final int messages = 50;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < messages; i++) {
+                            log.append(thread + "-" + i, bytes("message " + thread + "-" + i));
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(0, failures.get());
+        assertEquals(threads * messages, log.size());
+        assertTrue(log.getSyncCount() <= threads * messages);
+
+        Object consumer = new Object();
+        FileMessageLog.Entry entry;
+        int consumed = 0;
+        while ((entry = log.claimNext(consumer)) != null) {
+            assertEquals("message " + entry.getMessageId(), string(log.read(entry)));
+            log.acknowledge(entry);
+            consumed++;
+        }
+        assertEquals(threads * messages, consumed);
+        log.close();
+
+        FileMessageLog reopened = open(64 * 1024, 0.25);
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+
+    private FileMessageLog open(long segmentSize, double compactionRatio) throws Exception {
+        FileMessageLog log = new FileMessageLog(directory, segmentSize, true, compactionRatio, 60000);
+        log.open();
+        return log;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void assertMessages(FileMessageLog log, int... ids) {
+        List<String> expected = new ArrayList<String>();
+        for (int id : ids) {
+            expected.add("ID" + id);
+        }
+        List<String> actual = new ArrayList<String>();
+        for (FileMessageLog.Entry entry : log.entries()) {
+            actual.add(entry.getMessageId());
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jdbc;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.MessageConsumer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the batch consumption of the JDBC message store against an in-memory Derby database. Derby
+ * cannot skip locked rows, so the batches of the locking test keep an open transaction instead, as
+ * the batches of the databases which can do
+ */
+public class JDBCConsumerBatchTest extends TestCase {
+
+    private static final String URL = "jdbc:derby:memory:jdbcStoreBatch;create=true";
+
+    private static final String TABLE_NAME = "jdbc_store_table";
+
+    private Connection database;
+
+    @Override
+    protected void setUp() throws Exception {
+        database = DriverManager.getConnection(URL, "user", "pass");
+        Statement statement = database.createStatement();
+        try {
+            try {
+                statement.execute("DROP TABLE " + TABLE_NAME);
+            } catch (SQLException ignore) {
+            }
+            statement.execute("CREATE TABLE " + TABLE_NAME + " (indexId BIGINT GENERATED ALWAYS AS IDENTITY, " +
+                    "msg_id VARCHAR(200) NOT NULL, message BLOB NOT NULL, PRIMARY KEY (indexId))");
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.close();
+    }
+
+    public void testAcknowledgedMessagesAreDeletedTogether() throws Exception {
+        JDBCMessageStore store = createStore(new JDBCMessageStore(), 3);
+        try {
+            store("first", store);
+            store("second", store);
+            store("third", store);
+            store("fourth", store);
+            MessageConsumer consumer = store.getConsumer();
+
+            assertEquals("first", consumer.receive().getMessageID());
+            // handed out again until it is acknowledged
+            assertEquals("first", consumer.receive().getMessageID());
+            assertTrue(consumer.ack());
+            assertEquals("second", consumer.receive().getMessageID());
+            assertTrue(consumer.ack());
+            // acknowledged messages stay in the table until the batch is consumed
+            assertEquals(4, countMessages());
+            assertEquals("third", consumer.receive().getMessageID());
+            assertTrue(consumer.ack());
+            assertEquals(1, countMessages());
+
+            assertEquals("fourth", consumer.receive().getMessageID());
+            assertTrue(consumer.ack());
+            assertEquals(0, countMessages());
+            assertNull(consumer.receive());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testRetriedMessageReleasesTheBatchAfterLockTimeout() throws Exception {
+        LockingMessageStore store = createStore(new LockingMessageStore(), 3);
+        try {
+            store("first", store);
+            store("second", store);
+            store("third", store);
+            MessageConsumer consumer = store.getConsumer();
+
+            assertEquals("first", consumer.receive().getMessageID());
+            assertTrue(consumer.ack());
+            // the second message is retried without being acknowledged
+            assertEquals("second", consumer.receive().getMessageID());
+            assertEquals("second", consumer.receive().getMessageID());
+            assertEquals(1, store.batchConnections.size());
+            assertFalse(store.batchConnections.get(0).isClosed());
+
+            Thread.sleep(200);
+            // the batch is completed even though its current message is not acknowledged
+            assertEquals("second", consumer.receive().getMessageID());
+            assertTrue(store.batchConnections.get(0).isClosed());
+            assertEquals(2, store.batchConnections.size());
+            assertEquals(2, countMessages());
+
+            assertTrue(consumer.cleanup());
+            assertTrue(store.batchConnections.get(1).isClosed());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    private <T extends JDBCMessageStore> T createStore(T store, int prefetch) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_DRIVER, "org.apache.derby.jdbc.EmbeddedDriver");
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_URL, URL);
+        parameters.put(JDBCMessageStoreConstants.JDBC_USERNAME, "user");
+        parameters.put(JDBCMessageStoreConstants.JDBC_PASSWORD, "pass");
+        parameters.put(JDBCMessageStoreConstants.JDBC_TABLE, TABLE_NAME);
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONSUMER_PREFETCH, String.valueOf(prefetch));
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONSUMER_BATCH_LOCK_TIMEOUT, "100");
+        store.setParameters(parameters);
+        SynapseConfiguration configuration = new SynapseConfiguration();
+        store.init(new Axis2SynapseEnvironment(new ConfigurationContext(new AxisConfiguration()), configuration));
+        return store;
+    }
+
+    private void store(String messageId, JDBCMessageStore store) throws Exception {
+        MessageContext message = TestUtils.getTestContextWithAxis2("<test/>");
+        message.setMessageID(messageId);
+        assertTrue(store.store(message));
+    }
+
+    private int countMessages() throws SQLException {
+        Statement statement = database.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE_NAME);
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Keeps a transaction open for each claimed batch, in which its rows are deleted
+     */
+    private static class LockingMessageStore extends JDBCMessageStore {
+
+        private final List<Connection> batchConnections = new ArrayList<Connection>();
+
+        @Override
+        JDBCMessageBatch fetchMessageBatch(int size) throws SynapseException {
+            JDBCMessageBatch claimed = super.fetchMessageBatch(size);
+            List<JDBCMessageBatch.StoredRow> rows = new ArrayList<JDBCMessageBatch.StoredRow>();
+            while (claimed.hasNext()) {
+                rows.add(claimed.next());
+            }
+            if (rows.isEmpty()) {
+                return claimed;
+            }
+            try {
+                Connection connection = DriverManager.getConnection(URL, "user", "pass");
+                connection.setAutoCommit(false);
+                batchConnections.add(connection);
+                return new JDBCMessageBatch(connection, rows);
+            } catch (SQLException e) {
+                throw new SynapseException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jdbc;
+
+import junit.framework.TestCase;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.message.store.impl.jdbc.util.Statement;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JDBCGroupCommitterTest extends TestCase {
+
+    public void testConcurrentInsertsAreCommittedInBatches() throws Exception {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final JDBCGroupCommitter committer = new JDBCGroupCommitter(new JDBCGroupCommitter.BatchWriter() {
+            @Override
+            public void write(List<Statement> statements) {
+                batchSizes.add(statements.size());
+                for (Statement statement : statements) {
+                    written.add((String) statement.getParameters().get(0));
+                }
+            }
+        }, 8, 20);
+
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger committed = new AtomicInteger();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            final String id = "msg-" + i;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (committer.insert(insert(id))) {
+                            committed.incrementAndGet();
+                        }
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(10000);
+        }
+
+        assertEquals(threads, committed.get());
+        assertEquals(threads, written.size());
+        assertTrue("inserts were not coalesced: " + batchSizes, batchSizes.size() < threads);
+        for (int size : batchSizes) {
+            assertTrue(size <= 8);
+        }
+        JDBCGroupCommitView view = new JDBCGroupCommitView(committer);
+        assertEquals(threads, view.getCommittedMessages());
+        assertEquals(batchSizes.size(), view.getCommits());
+        assertTrue(view.getThroughputByBatchSize().length > 0);
+    }
+
+    public void testFailedBatchIsRetriedOneByOne() {
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        JDBCGroupCommitter committer = new JDBCGroupCommitter(new JDBCGroupCommitter.BatchWriter() {
+            @Override
+            public void write(List<Statement> statements) {
+                batchSizes.add(statements.size());
+                for (Statement statement : statements) {
+                    if ("poison".equals(statement.getParameters().get(0))) {
+                        throw new SynapseException("duplicate key");
+                    }
+                }
+            }
+        }, 8, 0);
+
+        assertTrue(committer.insert(insert("first")));
+        try {
+            committer.insert(insert("poison"));
+            fail("the failure of the insert should reach its caller");
+        } catch (SynapseException expected) {
+            assertEquals("duplicate key", expected.getMessage());
+        }
+        assertEquals(1, committer.getFailedBatches());
+    }
+
+    public void testRuntimeExceptionReachesCallerAsSynapseException() {
+        JDBCGroupCommitter committer = new JDBCGroupCommitter(new JDBCGroupCommitter.BatchWriter() {
+            @Override
+            public void write(List<Statement> statements) {
+                throw new IllegalStateException("connection pool closed");
+            }
+        }, 8, 0);
+
+        try {
+            committer.insert(insert("first"));
+            fail("the failure of the insert should reach its caller");
+        } catch (SynapseException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testNoCallerIsLeftWaitingAfterAnError() throws Exception {
+        final AtomicInteger writes = new AtomicInteger();
+        final JDBCGroupCommitter committer = new JDBCGroupCommitter(new JDBCGroupCommitter.BatchWriter() {
+            @Override
+            public void write(List<Statement> statements) {
+                if (writes.incrementAndGet() == 1) {
+                    throw new OutOfMemoryError("simulated");
+                }
+            }
+        }, 8, 50);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger returned = new AtomicInteger();
+        List<Thread> callers = new ArrayList<Thread>();
+        for (int i = 0; i < 2; i++) {
+            final String id = "msg-" + i;
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        committer.insert(insert(id));
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    } catch (SynapseException aborted) {
+                        // the insert was in the batch which failed
+                    } catch (OutOfMemoryError leader) {
+                        // the error reaches the caller which was writing the batch
+                    } finally {
+                        returned.incrementAndGet();
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join(10000);
+        }
+        assertEquals(2, returned.get());
+    }
+
+    public void testBucketsArePowersOfTwo() {
+        assertEquals(0, JDBCGroupCommitter.bucketOf(1));
+        assertEquals(1, JDBCGroupCommitter.bucketOf(3));
+        assertEquals(2, JDBCGroupCommitter.bucketOf(4));
+        assertEquals(JDBCGroupCommitter.BUCKETS - 1, JDBCGroupCommitter.bucketOf(Integer.MAX_VALUE));
+    }
+
+    private static Statement insert(String msgId) {
+        Statement statement = new Statement("INSERT INTO jdbc_store_table (msg_id,message) VALUES (?,?)") {
+            @Override
+            public List<Map> getResult(ResultSet resultSet) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        statement.addParameter(msgId);
+        return statement;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jdbc;
+
+import junit.framework.TestCase;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.util.Arrays;
+
+public class JDBCMessageBatchTest extends TestCase {
+
+    public void testRowsAreHandedOutInOrder() {
+        JDBCMessageBatch batch = new JDBCMessageBatch(null, Arrays.asList(row(3), row(4), row(7)));
+        assertEquals(3, batch.next().getIndexId());
+        assertEquals(4, batch.next().getIndexId());
+        assertTrue(batch.hasNext());
+        assertEquals(7, batch.next().getIndexId());
+        assertFalse(batch.hasNext());
+        assertNull(batch.next());
+    }
+
+    public void testOnlyAcknowledgedRowsAreDeleted() {
+        JDBCMessageBatch batch = new JDBCMessageBatch(null, Arrays.asList(row(3), row(4), row(7)));
+        batch.next();
+        assertEquals(3, batch.ack().getIndexId());
+        assertNull(batch.getCurrent());
+        assertNull("nothing to acknowledge", batch.ack());
+
+        batch.next();
+        assertEquals(4, batch.getCurrent().getIndexId());
+        assertEquals(Arrays.asList(3L), batch.getAcknowledgedIds());
+    }
+
+    public void testOnlyLockedBatchesTimeOut() {
+        long now = System.currentTimeMillis();
+        JDBCMessageBatch locked = new JDBCMessageBatch(Mockito.mock(Connection.class), Arrays.asList(row(3)));
+        assertFalse(locked.isLockHeldFor(30000, now));
+        assertTrue(locked.isLockHeldFor(30000, now + 60000));
+
+        JDBCMessageBatch unlocked = new JDBCMessageBatch(null, Arrays.asList(row(3)));
+        assertFalse("no locks to release", unlocked.isLockHeldFor(30000, now + 60000));
+    }
+
+    private static JDBCMessageBatch.StoredRow row(long indexId) {
+        return new JDBCMessageBatch.StoredRow(indexId, "urn:uuid:" + indexId, new byte[0]);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jdbc;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.store.MessagePriority;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the priority aware queries of the JDBC message store against an in-memory Derby database
+ */
+public class JDBCMessageStorePriorityTest extends TestCase {
+
+    private static final String URL = "jdbc:derby:memory:jdbcStorePriority;create=true";
+
+    private static final String TABLE_NAME = "jdbc_store_table";
+
+    private Connection database;
+    private JDBCMessageStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        database = DriverManager.getConnection(URL, "user", "pass");
+        Statement statement = database.createStatement();
+        try {
+            try {
+                statement.execute("DROP TABLE " + TABLE_NAME);
+            } catch (SQLException ignore) {
+            }
+            statement.execute("CREATE TABLE " + TABLE_NAME + " (indexId BIGINT GENERATED ALWAYS AS IDENTITY, " +
+                    "msg_id VARCHAR(200) NOT NULL, priority INT, message BLOB NOT NULL, PRIMARY KEY (indexId))");
+        } finally {
+            statement.close();
+        }
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_DRIVER, "org.apache.derby.jdbc.EmbeddedDriver");
+        parameters.put(JDBCMessageStoreConstants.JDBC_CONNECTION_URL, URL);
+        parameters.put(JDBCMessageStoreConstants.JDBC_USERNAME, "user");
+        parameters.put(JDBCMessageStoreConstants.JDBC_PASSWORD, "pass");
+        parameters.put(JDBCMessageStoreConstants.JDBC_TABLE, TABLE_NAME);
+        parameters.put(MessagePriority.PRIORITY_ENABLED, "true");
+        store = new JDBCMessageStore();
+        store.setParameters(parameters);
+        SynapseConfiguration configuration = new SynapseConfiguration();
+        store.init(new Axis2SynapseEnvironment(new ConfigurationContext(new AxisConfiguration()), configuration));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.destroy();
+        database.close();
+    }
+
+    public void testPeekTakesOldestMessageOfHighestPriority() throws Exception {
+        store("normal", 4);
+        store("urgent-1", 7);
+        store("urgent-2", 7);
+        assertEquals("urgent-1", store.peek().getMessageID());
+        store.remove("urgent-1");
+        assertEquals("urgent-2", store.peek().getMessageID());
+        store.remove("urgent-2");
+        assertEquals("normal", store.peek().getMessageID());
+    }
+
+    public void testWaitingPriorityExcludesMessagesInProcess() throws Exception {
+        assertEquals(-1, store.getWaitingPriority(null, Collections.<Long>emptyList()));
+        store("normal", 4);
+        store("urgent", 7);
+        assertEquals(7, store.getWaitingPriority(null, Collections.<Long>emptyList()));
+        assertEquals(4, store.getWaitingPriority("urgent", Collections.<Long>emptyList()));
+        assertEquals(-1, store.getWaitingPriority("urgent", Collections.singletonList(indexIdOf("normal"))));
+    }
+
+    private void store(String messageId, int priority) throws Exception {
+        MessageContext message = TestUtils.getTestContextWithAxis2("<test/>");
+        message.setMessageID(messageId);
+        message.setProperty(MessagePriority.PROPERTY, priority);
+        assertTrue(store.store(message));
+    }
+
+    private long indexIdOf(String messageId) throws SQLException {
+        Statement statement = database.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(
+                    "SELECT indexId FROM " + TABLE_NAME + " WHERE msg_id='" + messageId + "'");
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+}
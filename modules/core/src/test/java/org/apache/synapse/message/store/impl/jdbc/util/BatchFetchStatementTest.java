@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jdbc.util;
+
+import junit.framework.TestCase;
+
+public class BatchFetchStatementTest extends TestCase {
+
+    private static final String TABLE = "jdbc_store_table";
+
+    public void testSkipLockedOnSupportingVersions() {
+        assertLocking("MySQL", "8.0.33", 8, 0);
+        assertLocking("PostgreSQL", "9.5.1", 9, 5);
+        assertLocking("MariaDB", "10.6.12-MariaDB", 10, 6);
+        assertLocking("H2", "2.1.214", 2, 1);
+    }
+
+    public void testPlainSelectOnOlderVersions() {
+        assertPlain("MySQL", "5.7.40", 5, 7);
+        assertPlain("PostgreSQL", "9.4.2", 9, 4);
+        assertPlain("MySQL", "10.5.8-MariaDB", 10, 5);
+        assertPlain("H2", "1.4.200", 1, 4);
+    }
+
+    public void testSqlServerUsesTableHints() {
+        BatchFetchStatement statement = BatchFetchStatement.create("Microsoft SQL Server", "15.00", 15, 0, TABLE, 50);
+        assertTrue(statement.isLocking());
+        assertEquals("SELECT TOP 50 indexId,msg_id,message FROM " + TABLE
+                + " WITH (UPDLOCK, READPAST, ROWLOCK) ORDER BY indexId", statement.getStatement());
+    }
+
+    public void testUnknownDatabaseGetsOrderedSelect() {
+        BatchFetchStatement statement = BatchFetchStatement.create("DB2/LINUXX8664", "11.5", 11, 5, TABLE, 50);
+        assertFalse(statement.isLocking());
+        assertEquals("SELECT indexId,msg_id,message FROM " + TABLE + " ORDER BY indexId", statement.getStatement());
+    }
+
+    public void testPriorityOrderedSelect() {
+        BatchFetchStatement statement = BatchFetchStatement.create("MySQL", "8.0.33", 8, 0, TABLE, 50, true);
+        assertEquals("SELECT indexId,msg_id,message FROM " + TABLE
+                + " ORDER BY priority DESC, indexId LIMIT 50 FOR UPDATE SKIP LOCKED", statement.getStatement());
+        statement = BatchFetchStatement.create("Microsoft SQL Server", "15.00", 15, 0, TABLE, 50, true);
+        assertEquals("SELECT TOP 50 indexId,msg_id,message FROM " + TABLE
+                + " WITH (UPDLOCK, READPAST, ROWLOCK) ORDER BY priority DESC, indexId", statement.getStatement());
+    }
+
+    private void assertLocking(String product, String version, int major, int minor) {
+        BatchFetchStatement statement = BatchFetchStatement.create(product, version, major, minor, TABLE, 50);
+        assertTrue(product + " " + version, statement.isLocking());
+        assertEquals("SELECT indexId,msg_id,message FROM " + TABLE
+                + " ORDER BY indexId LIMIT 50 FOR UPDATE SKIP LOCKED", statement.getStatement());
+    }
+
+    private void assertPlain(String product, String version, int major, int minor) {
+        BatchFetchStatement statement = BatchFetchStatement.create(product, version, major, minor, TABLE, 50);
+        assertFalse(product + " " + version, statement.isLocking());
+        assertEquals("SELECT indexId,msg_id,message FROM " + TABLE + " ORDER BY indexId LIMIT 50",
+                statement.getStatement());
+    }
+}
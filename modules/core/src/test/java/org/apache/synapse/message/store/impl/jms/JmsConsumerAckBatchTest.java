@@ -0,0 +1,139 @@
+/*
+ *  Copyright (c) 2024, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.synapse.message.store.impl.jms;
+
+import junit.framework.Assert;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.impl.llom.soap11.SOAP11Factory;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.message.MessageConsumer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests batched acknowledgements of the JMS store consumer against an embedded broker
+ */
+public class JmsConsumerAckBatchTest {
+
+    private static final String BROKER_NAME = "ackBatchBroker";
+
+    private static BrokerService broker;
+
+    @BeforeClass
+    public static void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+    }
+
+    /**
+     * Messages processed before the consumer is cleaned up are acknowledged once
+     */
+    @Test
+    public void testProcessedMessagesAreAcknowledgedOnCleanup() throws Exception {
+        JmsStore store = createStore("AckBatchCleanupStore", 3);
+        storeMessages(store, "m1", "m2", "m3", "m4");
+
+        MessageConsumer consumer = store.getConsumer();
+        Assert.assertEquals("m1", consumer.receive().getMessageID());
+        Assert.assertTrue(consumer.ack());
+        Assert.assertEquals("m2", consumer.receive().getMessageID());
+        Assert.assertTrue(consumer.ack());
+        consumer.cleanup();
+
+        Assert.assertEquals(Arrays.asList("m3", "m4"), receiveAll(store));
+        store.destroy();
+    }
+
+    /**
+     * A message in process is not acknowledged by a batch, so it is received again after a failure
+     */
+    @Test
+    public void testMessageInProcessIsNotAcknowledged() throws Exception {
+        JmsStore store = createStore("AckBatchInProcessStore", 10);
+        storeMessages(store, "m1", "m2", "m3");
+
+        MessageConsumer consumer = store.getConsumer();
+        Assert.assertEquals("m1", consumer.receive().getMessageID());
+        Assert.assertTrue(consumer.ack());
+        Assert.assertEquals("m2", consumer.receive().getMessageID());
+        consumer.cleanup();
+
+        // m1 was not acknowledged to the broker yet, so it is received again along with m2
+        Assert.assertEquals(Arrays.asList("m1", "m2", "m3"), receiveAll(store));
+        store.destroy();
+    }
+
+    private static JmsStore createStore(String name, int ackBatchSize) {
+        JmsStore store = new JmsStore();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("java.naming.factory.initial", "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        parameters.put("java.naming.provider.url", "vm://" + BROKER_NAME + "?create=false");
+        parameters.put(JmsStore.CONSUMER_ACK_BATCH_SIZE, String.valueOf(ackBatchSize));
+        store.setParameters(parameters);
+        store.setName(name);
+        SynapseConfiguration synapseConfiguration = new SynapseConfiguration();
+        synapseConfiguration.addMessageStore(name, store);
+        ConfigurationContext configurationContext = new ConfigurationContext(new AxisConfiguration());
+        store.init(new Axis2SynapseEnvironment(configurationContext, synapseConfiguration));
+        return store;
+    }
+
+    private static void storeMessages(JmsStore store, String... messageIds) throws Exception {
+        SOAP11Factory factory = new SOAP11Factory();
+        for (String messageId : messageIds) {
+            MessageContext messageContext = store.newSynapseMc(store.newAxis2Mc());
+            SOAPEnvelope envelope = factory.createSOAPEnvelope();
+            messageContext.setEnvelope(envelope);
+            messageContext.setMessageID(messageId);
+            Assert.assertTrue(store.getProducer().storeMessage(messageContext));
+        }
+    }
+
+    private static List<String> receiveAll(JmsStore store) {
+        MessageConsumer consumer = store.getConsumer();
+        List<String> messageIds = new ArrayList<>();
+        MessageContext message;
+        while ((message = consumer.receive()) != null) {
+            messageIds.add(message.getMessageID());
+            consumer.ack();
+        }
+        consumer.cleanup();
+        return messageIds;
+    }
+
+    @AfterClass
+    public static void stopBroker() throws Exception {
+        if (broker.isStarted()) {
+            broker.stop();
+        }
+    }
+}
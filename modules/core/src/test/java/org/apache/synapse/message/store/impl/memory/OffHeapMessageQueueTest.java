@@ -0,0 +1,224 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class OffHeapMessageQueueTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "off-heap-queue-" + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testRingIsReusedAcrossWrapAround() {
+        OffHeapMessageQueue queue = new OffHeapMessageQueue(100, directory, 1024, -1);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(queue.offer("ID" + i, payload(i, 30)));
+            assertTrue(queue.offer("ID" + i + "b", payload(i + 1, 30)));
+            assertEquals(60, queue.getRingBytes());
+
+            OffHeapMessageQueue.Slot slot = queue.peek();
+            assertEquals("ID" + i, slot.getMessageId());
+            assertEquals(new String(payload(i, 30), StandardCharsets.UTF_8),
+                    new String(queue.read(slot), StandardCharsets.UTF_8));
+            assertTrue(queue.remove(slot));
+            assertFalse("already removed", queue.remove(slot));
+            slot = queue.peek();
+            assertEquals(new String(payload(i + 1, 30), StandardCharsets.UTF_8),
+                    new String(queue.read(slot), StandardCharsets.UTF_8));
+            queue.remove(slot);
+        }
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.getRingBytes());
+        assertEquals("nothing spilled", 0, queue.getTotalSpilledMessages());
+    }
+
+    public void testSpillWhenRingIsFull() {
+        OffHeapMessageQueue queue = new OffHeapMessageQueue(100, directory, 64, -1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer("ID" + i, payload(i, 40)));
+        }
+        assertEquals(10, queue.size());
+        assertEquals(80, queue.getRingBytes());
+        assertEquals(8, queue.getSpilledMessages());
+        assertEquals(320, queue.getSpilledBytes());
+        assertEquals("one record per segment", 8, directory.listFiles().length);
+
+        for (int i = 0; i < 10; i++) {
+            OffHeapMessageQueue.Slot slot = queue.peek();
+            assertEquals("delivered in order", "ID" + i, slot.getMessageId());
+            assertEquals(i >= 2, slot.isSpilled());
+            assertEquals(new String(payload(i, 40), StandardCharsets.UTF_8),
+                    new String(queue.read(slot), StandardCharsets.UTF_8));
+            queue.remove(slot);
+        }
+        assertEquals(0, queue.getSpilledBytes());
+        assertEquals("only the current segment is left", 1, directory.listFiles().length);
+        queue.close();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testRemovedSpilledMessageIsNotRead() {
+        OffHeapMessageQueue queue = new OffHeapMessageQueue(50, directory, 64, -1);
+        assertTrue(queue.offer("ID0", payload(0, 50)));
+        assertTrue(queue.offer("ID1", payload(1, 40)));
+        assertTrue(queue.offer("ID2", payload(2, 40)));
+        queue.remove(queue.peek());
+        OffHeapMessageQueue.Slot spilled = queue.peek();
+        assertTrue(spilled.isSpilled());
+
+        assertTrue(queue.remove(spilled));
+        assertEquals("the drained segment is deleted right away", 1, directory.listFiles().length);
+        assertNull(queue.read(spilled));
+        queue.close();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    public void testRemovedRingMessageIsNotRead() {
+        OffHeapMessageQueue queue = new OffHeapMessageQueue(50, directory, 1024, -1);
+        assertTrue(queue.offer("ID0", payload(0, 50)));
+        OffHeapMessageQueue.Slot removed = queue.peek();
+        assertTrue(queue.remove(removed));
+        // the ring space of the removed message is taken by the next one
+        assertTrue(queue.offer("ID1", payload(1, 50)));
+        assertFalse(queue.peek().isSpilled());
+        assertNull(queue.read(removed));
+        queue.close();
+    }
+
+    public void testReadRacesWithRemoveAndOffer() throws Exception {
+        final OffHeapMessageQueue queue = new OffHeapMessageQueue(256, directory, 8192, -1);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(String.valueOf(i), payload(i, 60));
+        }
+        final int messages = 20000;
+        final Throwable[] failure = new Throwable[1];
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < messages; i++) {
+                        OffHeapMessageQueue.Slot slot = queue.peek();
+                        if (slot == null) {
+                            continue;
+                        }
+                        byte[] data = queue.read(slot);
+                        if (data != null) {
+                            int value = Integer.parseInt(slot.getMessageId());
+                            assertEquals(new String(payload(value, 60), StandardCharsets.UTF_8),
+                                    new String(data, StandardCharsets.UTF_8));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        reader.start();
+        for (int i = 4; i < messages; i++) {
+            OffHeapMessageQueue.Slot slot = queue.peek();
+            queue.remove(slot);
+            assertTrue(queue.offer(String.valueOf(i), payload(i, 60)));
+        }
+        reader.join();
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+        assertEquals("nothing spilled", 0, queue.getTotalSpilledMessages());
+        queue.close();
+    }
+
+    public void testRejectWhenSpillIsFull() {
+        OffHeapMessageQueue queue = new OffHeapMessageQueue(50, directory, 1024, 100);
+        assertTrue(queue.offer("ID0", payload(0, 50)));
+        assertTrue(queue.offer("ID1", payload(1, 50)));
+        assertTrue(queue.offer("ID2", payload(2, 50)));
+        assertFalse(queue.offer("ID3", payload(3, 50)));
+        assertEquals(1, queue.getRejectedMessages());
+        assertEquals(3, queue.size());
+
+        queue.remove(queue.peek());
+        assertTrue("the ring has room again", queue.offer("ID3", payload(3, 50)));
+        queue.close();
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final OffHeapMessageQueue queue = new OffHeapMessageQueue(4096, directory, 8192, -1);
+        final int producers = 4;
+        final int messages = 2000;
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        int value = producer * messages + i;
+                        queue.offer(String.valueOf(value), payload(value, 20 + value % 50));
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        Set<String> received = new HashSet<String>();
+        while (received.size() < producers * messages) {
+            OffHeapMessageQueue.Slot slot = queue.peek();
+            if (slot == null) {
+                Thread.yield();
+                continue;
+            }
+            int value = Integer.parseInt(slot.getMessageId());
+            assertEquals(new String(payload(value, 20 + value % 50), StandardCharsets.UTF_8),
+                    new String(queue.read(slot), StandardCharsets.UTF_8));
+            assertTrue(received.add(slot.getMessageId()));
+            queue.remove(slot);
+        }
+        done.await();
+        assertEquals(0, queue.size());
+        queue.close();
+    }
+
+    private static byte[] payload(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + (seed + i) % 26);
+        }
+        return data;
+    }
+}
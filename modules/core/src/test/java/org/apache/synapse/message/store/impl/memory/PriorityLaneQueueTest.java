@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store.impl.memory;
+
+import junit.framework.TestCase;
+
+public class PriorityLaneQueueTest extends TestCase {
+
+    public void testLanesAreServedByWeight() {
+        PriorityLaneQueue<String> queue = newQueue(1, 3);
+        for (int i = 0; i < 40; i++) {
+            queue.offer("0:" + i);
+            queue.offer("1:" + i);
+        }
+        int high = 0;
+        for (int i = 0; i < 40; i++) {
+            if (queue.poll().startsWith("1:")) {
+                high++;
+            }
+        }
+        assertTrue("high priority share " + high, high >= 29 && high <= 31);
+        assertEquals(40, queue.size());
+    }
+
+    public void testOrderWithinLaneAndTiesGoToHigherPriority() {
+        PriorityLaneQueue<String> queue = newQueue(1, 1);
+        queue.offer("0:a");
+        queue.offer("0:b");
+        queue.offer("1:a");
+        assertEquals("1:a", queue.poll());
+        assertEquals("0:a", queue.poll());
+        assertEquals("0:b", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testIdleLaneIsNotCredited() {
+        PriorityLaneQueue<String> queue = newQueue(1, 1);
+        for (int i = 0; i < 10; i++) {
+            queue.offer("0:" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("0:" + i, queue.poll());
+        }
+        for (int i = 0; i < 5; i++) {
+            queue.offer("1:" + i);
+        }
+        // the new lane shares the removals instead of catching up on the ones it missed
+        int high = 0;
+        for (int i = 0; i < 4; i++) {
+            if (queue.poll().startsWith("1:")) {
+                high++;
+            }
+        }
+        assertTrue("high priority removals " + high, high >= 2 && high <= 3);
+    }
+
+    public void testPeekIsStableUntilRemoval() {
+        PriorityLaneQueue<String> queue = newQueue(1, 1, 1);
+        queue.offer("0:a");
+        queue.offer("2:a");
+        queue.offer("2:b");
+        String head = queue.peek();
+        assertEquals("2:a", head);
+        assertEquals(head, queue.peek());
+        assertTrue(queue.remove(head));
+        assertFalse(queue.remove(head));
+        assertEquals("0:a", queue.peek());
+        assertEquals(2, queue.size());
+    }
+
+    public void testOfferToIdleLaneMovesTheHead() {
+        PriorityLaneQueue<String> queue = newQueue(1, 1);
+        queue.offer("0:a");
+        String peeked = queue.peek();
+        assertEquals("0:a", peeked);
+        queue.offer("1:a");
+        assertEquals("1:a", queue.peek());
+        // the peeked element is removed, not the one which is at the head now
+        assertTrue(queue.remove(peeked));
+        assertEquals("1:a", queue.peek());
+        assertEquals(1, queue.size());
+    }
+
+    public void testHighestPriorityOfWaitingElements() {
+        PriorityLaneQueue<String> queue = newQueue(1, 1, 1);
+        assertEquals(-1, queue.highestPriorityExcept(null));
+        queue.offer("0:a");
+        queue.offer("0:b");
+        queue.offer("2:a");
+        assertEquals(2, queue.highestPriorityExcept(null));
+        assertEquals(0, queue.highestPriorityExcept("2:a"));
+        assertEquals("2:a", queue.peekHighest());
+        assertTrue(queue.remove("2:a"));
+        assertEquals(0, queue.highestPriorityExcept("0:a"));
+        assertEquals("0:a", queue.peekHighest());
+    }
+
+    private static PriorityLaneQueue<String> newQueue(int... weights) {
+        return new PriorityLaneQueue<String>(weights) {
+            int priorityOf(String e) {
+                return e.charAt(0) - '0';
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import junit.framework.TestCase;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PublisherConfirmsTest extends TestCase {
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testProducersWaitForTheirOwnConfirms() throws Exception {
+        Channel channel = Mockito.mock(Channel.class);
+        when(channel.getNextPublishSeqNo()).thenReturn(1L, 2L, 3L);
+        final PublisherConfirms confirms = new PublisherConfirms(channel);
+        verify(channel).confirmSelect();
+
+        Future<Boolean> first = publish(confirms);
+        Future<Boolean> second = publish(confirms);
+        Future<Boolean> third = publish(confirms);
+        waitForOutstanding(confirms, 3);
+
+        confirms.handleAck(2, true);
+        assertTrue(first.get());
+        assertTrue(second.get());
+        assertFalse("not confirmed yet", third.isDone());
+
+        confirms.handleNack(3, false);
+        assertFalse(third.get());
+        assertEquals(0, confirms.getOutstanding());
+    }
+
+    public void testChannelShutdownReleasesProducers() throws Exception {
+        Channel channel = Mockito.mock(Channel.class);
+        when(channel.getNextPublishSeqNo()).thenReturn(1L, 2L);
+        PublisherConfirms confirms = new PublisherConfirms(channel);
+
+        Future<Boolean> first = publish(confirms);
+        Future<Boolean> second = publish(confirms);
+        waitForOutstanding(confirms, 2);
+        confirms.shutdownCompleted(new ShutdownSignalException(false, false, null, channel));
+        assertFalse(first.get());
+        assertFalse(second.get());
+    }
+
+    public void testTimeout() throws Exception {
+        Channel channel = Mockito.mock(Channel.class);
+        when(channel.getNextPublishSeqNo()).thenReturn(1L);
+        PublisherConfirms confirms = new PublisherConfirms(channel);
+        try {
+            confirms.publish(() -> { }, 10);
+            fail("the confirm never arrives");
+        } catch (TimeoutException expected) {
+            assertEquals(0, confirms.getOutstanding());
+        }
+    }
+
+    private Future<Boolean> publish(final PublisherConfirms confirms) {
+        return executor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return confirms.publish(() -> { }, 0);
+            }
+        });
+    }
+
+    private static void waitForOutstanding(PublisherConfirms confirms, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (confirms.getOutstanding() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, confirms.getOutstanding());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * <p>
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.synapse.message.store.impl.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.message.store.impl.commons.Axis2Message;
+import org.apache.synapse.message.store.impl.commons.StorableMessage;
+import org.apache.synapse.message.store.impl.commons.StorableMessageCodec;
+import org.apache.synapse.message.store.impl.commons.SynapseMessage;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RabbitMQConsumerTest extends TestCase {
+
+    private Channel channel;
+    private RabbitMQConsumer consumer;
+
+    @Override
+    protected void setUp() throws Exception {
+        RabbitMQStore store = Mockito.mock(RabbitMQStore.class);
+        when(store.getName()).thenReturn("store");
+        MessageContext axis2Mc = Mockito.mock(MessageContext.class);
+        when(axis2Mc.getConfigurationContext()).thenReturn(Mockito.mock(ConfigurationContext.class));
+        when(store.newAxis2Mc()).thenReturn(axis2Mc);
+
+        Connection connection = Mockito.mock(Connection.class);
+        when(connection.isOpen()).thenReturn(true);
+        channel = Mockito.mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+
+        consumer = new RabbitMQConsumer(store);
+        consumer.setId(1);
+        consumer.setQueueName("queue");
+        consumer.setConnection(connection);
+        consumer.setChannel(channel);
+        consumer.setPrefetch(10, 1);
+    }
+
+    public void testMessageInProcessIsReturnedAgainWhenPrefetching() throws Exception {
+        consumer.receive();
+        ArgumentCaptor<DeliverCallback> subscription = ArgumentCaptor.forClass(DeliverCallback.class);
+        verify(channel).basicConsume(anyString(), anyBoolean(), subscription.capture(),
+                any(CancelCallback.class));
+        subscription.getValue().handle("consumer", delivery(1, "first"));
+        subscription.getValue().handle("consumer", delivery(2, "second"));
+
+        consumer.receive();
+        // the first message was not acknowledged, the processor takes it again
+        consumer.receive();
+        assertTrue(consumer.ack());
+        consumer.receive();
+        assertTrue(consumer.ack());
+
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+        InOrder acks = Mockito.inOrder(channel);
+        acks.verify(channel).basicAck(1, false);
+        acks.verify(channel).basicAck(2, false);
+        assertFalse("every message was acknowledged", consumer.ack());
+    }
+
+    private static Delivery delivery(long deliveryTag, String messageId) throws Exception {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().messageId(messageId).build();
+        Envelope envelope = new Envelope(deliveryTag, false, "", "queue");
+        StorableMessage message = new StorableMessage();
+        message.setAxis2message(new Axis2Message());
+        message.setSynapseMessage(new SynapseMessage());
+        byte[] body = StorableMessageCodec.binary(StorableMessageCodec.Compression.NONE).encode(message);
+        return new Delivery(envelope, properties, body);
+    }
+}